@@ -23,9 +23,11 @@ import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaE
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
@@ -35,6 +37,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Analytics service.
@@ -62,10 +68,16 @@ public class Analytics extends AbstractAppCenterService {
     private static final String ACTIVITY_SUFFIX = "Activity";
 
     /**
-     * Shared instance.
+     * Interval between metric summaries in milliseconds.
+     */
+    @VisibleForTesting
+    static final long METRICS_FLUSH_INTERVAL = 60 * 1000;
+
+    /**
+     * Shared instance, volatile so that tracking events does not lock once created.
      */
     @SuppressLint("StaticFieldLeak")
-    private static Analytics sInstance;
+    private static volatile Analytics sInstance;
 
     /**
      * Log factories managed by this service.
@@ -124,6 +136,82 @@ public class Analytics extends AbstractAppCenterService {
      */
     private boolean mAutoPageTrackingEnabled = false;
 
+    /**
+     * Screen performance tracking flag.
+     */
+    private boolean mScreenPerformanceTrackingEnabled;
+
+    /**
+     * Measures the resumed screen when screen performance tracking is enabled, used on main thread only.
+     */
+    private final ScreenPerformanceTracker mScreenPerformanceTracker = new ScreenPerformanceTracker();
+
+    /**
+     * Events tracked by any thread and waiting to be processed in background.
+     */
+    private final Queue<PendingEvent> mPendingEvents = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True when a command to process pending events has been posted and has not started yet.
+     */
+    private final AtomicBoolean mPendingEventsScheduled = new AtomicBoolean();
+
+    /**
+     * Process pending events.
+     */
+    private final Runnable mProcessPendingEvents = new Runnable() {
+
+        @Override
+        public void run() {
+            processPendingEvents();
+        }
+    };
+
+    /**
+     * Discard pending events when disabled.
+     */
+    private final Runnable mDiscardPendingEvents = new Runnable() {
+
+        @Override
+        public void run() {
+            discardPendingEvents();
+        }
+    };
+
+    /**
+     * Sampling policies by event name.
+     */
+    private final Map<String, EventSamplingPolicy> mEventSamplingPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Metric samples waiting to be sent as summaries.
+     */
+    private final MetricAggregator mMetricAggregator = new MetricAggregator();
+
+    /**
+     * Send metric summaries, posted on main thread after the flush interval.
+     */
+    private final Runnable mFlushMetricsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            Runnable clearMetrics = new Runnable() {
+
+                @Override
+                public void run() {
+                    mMetricAggregator.clear();
+                }
+            };
+            post(new Runnable() {
+
+                @Override
+                public void run() {
+                    flushMetrics();
+                }
+            }, clearMetrics, clearMetrics);
+        }
+    };
+
     /**
      * Init.
      */
@@ -142,16 +230,23 @@ public class Analytics extends AbstractAppCenterService {
      * @return shared instance.
      */
     @SuppressWarnings("WeakerAccess")
-    public static synchronized Analytics getInstance() {
-        if (sInstance == null) {
-            sInstance = new Analytics();
+    public static Analytics getInstance() {
+        Analytics instance = sInstance;
+        if (instance == null) {
+            synchronized (Analytics.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = sInstance = new Analytics();
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
     @VisibleForTesting
     static synchronized void unsetInstance() {
         sInstance = null;
+        AnalyticsTransmissionTarget.clearEnabledInStorageCache();
     }
 
     /**
@@ -234,6 +329,29 @@ public class Analytics extends AbstractAppCenterService {
         getInstance().setInstanceAutoPageTrackingEnabled(autoPageTrackingEnabled);
     }
 
+    /**
+     * Check if screen performance tracking is enabled.
+     *
+     * @return true if screen performance tracking is enabled, false otherwise.
+     * @see #setScreenPerformanceTrackingEnabled(boolean)
+     */
+    public static boolean isScreenPerformanceTrackingEnabled() {
+        return getInstance().isInstanceScreenPerformanceTrackingEnabled();
+    }
+
+    /**
+     * If enabled, every activity visit, from resume to pause, is measured and sent as a single
+     * <code>ScreenPerformance</code> event with the screen name, the time to first draw, the time in screen
+     * and the number of frames, janky frames and frozen frames while the screen was drawing.
+     * <p>
+     * This is disabled by default. The change applies from the next activity resume.
+     *
+     * @param screenPerformanceTrackingEnabled true to track screen performance, false otherwise.
+     */
+    public static void setScreenPerformanceTrackingEnabled(boolean screenPerformanceTrackingEnabled) {
+        getInstance().setInstanceScreenPerformanceTrackingEnabled(screenPerformanceTrackingEnabled);
+    }
+
     /**
      * Track a custom page with name.
      * <p>
@@ -308,7 +426,10 @@ public class Analytics extends AbstractAppCenterService {
      * @param properties Optional properties.
      */
     public static void trackEvent(String name, Map<String, String> properties) {
-        getInstance().trackEventAsync(name, convertProperties(properties), null);
+        Analytics analytics = getInstance();
+        if (analytics.isEventSampled(name)) {
+            analytics.trackEventAsync(name, convertProperties(properties), null);
+        }
     }
 
     /**
@@ -348,7 +469,45 @@ public class Analytics extends AbstractAppCenterService {
      * Internal method redirection for trackEvent.
      */
     static void trackEvent(String name, EventProperties properties, AnalyticsTransmissionTarget transmissionTarget) {
-        getInstance().trackEventAsync(name, convertProperties(properties), transmissionTarget);
+        Analytics analytics = getInstance();
+
+        /* Transmission targets apply their own policies before merging properties. */
+        if (transmissionTarget != null || analytics.isEventSampled(name)) {
+            analytics.trackEventAsync(name, convertProperties(properties), transmissionTarget);
+        }
+    }
+
+    /**
+     * Track an event built from a template, see {@link EventTemplate}.
+     * <p>
+     * The event name and property names were validated when the template was built,
+     * the same validation rules as {@link #trackEvent(String, EventProperties)} apply otherwise.
+     *
+     * @param event An event created by {@link EventTemplate#newEvent()}.
+     */
+    public static void trackEvent(EventTemplate.Event event) {
+        if (event == null) {
+            AppCenterLog.error(LOG_TAG, "Templated event cannot be null.");
+            return;
+        }
+        Analytics analytics = getInstance();
+        String name = event.getTemplate().getName();
+        if (analytics.isEventSampled(name)) {
+            analytics.trackEventAsync(name, event.toTypedProperties(), null);
+        }
+    }
+
+    /**
+     * Set a sampling policy for an event name, to limit how many occurrences of that event are sent.
+     * <p>
+     * The policy applies to events tracked with {@link #trackEvent}, events tracked with a transmission target
+     * use the policies of {@link AnalyticsTransmissionTarget#setEventSamplingPolicy(String, EventSamplingPolicy)}.
+     *
+     * @param name   event name.
+     * @param policy sampling policy, null to send all occurrences of the event again.
+     */
+    public static void setEventSamplingPolicy(String name, EventSamplingPolicy policy) {
+        getInstance().setInstanceEventSamplingPolicy(name, policy);
     }
 
     /**
@@ -386,6 +545,45 @@ public class Analytics extends AbstractAppCenterService {
         return typedProperties;
     }
 
+    /**
+     * Record a metric sample, for example a latency or a scroll depth.
+     * <p>
+     * Samples are aggregated by name and sent as a single summary event per minute, see
+     * {@link #trackMetric(String, double, Map)}.
+     *
+     * @param name  A metric name.
+     * @param value A finite sample value.
+     */
+    public static void trackMetric(String name, double value) {
+        trackMetric(name, value, null);
+    }
+
+    /**
+     * Record a metric sample with dimensions.
+     * <p>
+     * Samples with the same name and dimensions are aggregated and sent as a single summary event per minute,
+     * or when the application goes to background. The summary event is named after the metric and has
+     * the following properties in addition to the dimensions:
+     * <ul>
+     * <li><tt>count</tt>: number of samples.</li>
+     * <li><tt>sum</tt>, <tt>min</tt> and <tt>max</tt>: sum, minimum and maximum of the samples.</li>
+     * <li><tt>histogram</tt>: comma separated sample counts of buckets with the following inclusive upper bounds:
+     * 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 and a last bucket for values above 10000.
+     * These buckets are meant for durations in milliseconds, samples in other units should be scaled to
+     * that range or only rely on the other aggregates.</li>
+     * </ul>
+     * <p>
+     * The metric name follows the same rules as an event name.
+     * A metric cannot have more than 15 dimensions, the dimension names or values cannot be null.
+     *
+     * @param name       A metric name.
+     * @param value      A finite sample value.
+     * @param dimensions Optional dimensions.
+     */
+    public static void trackMetric(String name, double value, Map<String, String> dimensions) {
+        getInstance().trackInstanceMetric(name, value, dimensions);
+    }
+
     /**
      * Get a transmission target to use to track events. Will create a new transmission target if necessary.
      *
@@ -483,6 +681,9 @@ public class Analytics extends AbstractAppCenterService {
 
     @Override
     public synchronized void onActivityResumed(final Activity activity) {
+        if (mScreenPerformanceTrackingEnabled) {
+            mScreenPerformanceTracker.onActivityResumed(activity, generatePageName(activity.getClass()));
+        }
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -517,6 +718,7 @@ public class Analytics extends AbstractAppCenterService {
 
     @Override
     public synchronized void onActivityPaused(Activity activity) {
+        final List<TypedProperty> screenPerformanceProperties = mScreenPerformanceTracker.onActivityPaused();
         final Runnable updateCurrentActivityRunnable = new Runnable() {
 
             @Override
@@ -532,6 +734,12 @@ public class Analytics extends AbstractAppCenterService {
                 if (mSessionTracker != null) {
                     mSessionTracker.onActivityPaused();
                 }
+                if (screenPerformanceProperties != null && mStartedFromApp) {
+                    queueEvent(new PendingEvent(ScreenPerformanceTracker.EVENT_NAME, screenPerformanceProperties, null));
+                }
+
+                /* Don't lose metrics if the application is killed in background. */
+                flushMetrics();
             }
         }, updateCurrentActivityRunnable, updateCurrentActivityRunnable);
     }
@@ -542,6 +750,11 @@ public class Analytics extends AbstractAppCenterService {
 
             @Override
             public void onBeforeSending(Log log) {
+
+                /* The scheduled token refresh can be late after the device slept, check expiry before sending. */
+                if (log instanceof CommonSchemaLog) {
+                    AnalyticsTransmissionTarget.checkTokenExpiry();
+                }
                 if (mAnalyticsListener != null) {
                     mAnalyticsListener.onBeforeSending(log);
                 }
@@ -595,6 +808,8 @@ public class Analytics extends AbstractAppCenterService {
                 mChannel.removeListener(mAnalyticsTransmissionTargetListener);
                 mAnalyticsTransmissionTargetListener = null;
             }
+            HandlerUtils.getMainHandler().removeCallbacks(mFlushMetricsRunnable);
+            mMetricAggregator.clear();
         }
     }
 
@@ -667,36 +882,156 @@ public class Analytics extends AbstractAppCenterService {
 
     /**
      * Send an event.
+     * <p>
+     * This can be called from any thread without locking: the event is queued and
+     * all the events queued before the background command runs are processed together.
      *
      * @param name               event name.
      * @param properties         optional properties.
      * @param transmissionTarget optional target.
      */
-    private synchronized void trackEventAsync(final String name, final List<TypedProperty> properties, final AnalyticsTransmissionTarget transmissionTarget) {
-        post(new Runnable() {
+    private void trackEventAsync(String name, List<TypedProperty> properties, AnalyticsTransmissionTarget transmissionTarget) {
+        mPendingEvents.offer(new PendingEvent(name, properties, transmissionTarget));
 
-            @Override
-            public void run() {
-                AnalyticsTransmissionTarget aTransmissionTarget = (transmissionTarget == null) ? mDefaultTransmissionTarget : transmissionTarget;
-                EventLog eventLog = new EventLog();
-                if (aTransmissionTarget != null) {
-                    if (aTransmissionTarget.isEnabled()) {
-                        eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
-                        eventLog.setTag(aTransmissionTarget);
-                    } else {
-                        AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
-                        return;
-                    }
-                } else if (!mStartedFromApp) {
-                    AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
-                    return;
-                }
-                eventLog.setId(UUIDUtils.randomUUID());
-                eventLog.setName(name);
-                eventLog.setTypedProperties(properties);
-                mChannel.enqueue(eventLog, ANALYTICS_GROUP);
+        /* Only post a command if none is already waiting to run. */
+        if (mPendingEventsScheduled.compareAndSet(false, true)) {
+            if (!post(mProcessPendingEvents, mDiscardPendingEvents, mDiscardPendingEvents)) {
+                discardPendingEvents();
             }
-        });
+        }
+    }
+
+    /**
+     * Process all pending events in order.
+     */
+    @WorkerThread
+    private void processPendingEvents() {
+
+        /* Reset the flag first so that events queued while processing schedule another command. */
+        mPendingEventsScheduled.set(false);
+        PendingEvent pendingEvent;
+        while ((pendingEvent = mPendingEvents.poll()) != null) {
+            queueEvent(pendingEvent);
+        }
+    }
+
+    /**
+     * Discard pending events.
+     */
+    private void discardPendingEvents() {
+        mPendingEventsScheduled.set(false);
+        mPendingEvents.clear();
+    }
+
+    /**
+     * Send an event to the channel.
+     *
+     * @param pendingEvent event to send.
+     */
+    @WorkerThread
+    private void queueEvent(PendingEvent pendingEvent) {
+        AnalyticsTransmissionTarget aTransmissionTarget = (pendingEvent.transmissionTarget == null) ? mDefaultTransmissionTarget : pendingEvent.transmissionTarget;
+        EventLog eventLog = new EventLog();
+        if (aTransmissionTarget != null) {
+            if (aTransmissionTarget.isEnabled()) {
+                eventLog.addTransmissionTarget(aTransmissionTarget.getTransmissionTargetToken());
+                eventLog.setTag(aTransmissionTarget);
+            } else {
+                AppCenterLog.error(LOG_TAG, "This transmission target is disabled.");
+                return;
+            }
+        } else if (!mStartedFromApp) {
+            AppCenterLog.error(LOG_TAG, "Cannot track event using Analytics.trackEvent if not started from app, please start from the application or use Analytics.getTransmissionTarget.");
+            return;
+        }
+        eventLog.setId(UUIDUtils.randomUUID());
+        eventLog.setName(pendingEvent.name);
+        eventLog.setTypedProperties(pendingEvent.properties);
+        mChannel.enqueue(eventLog, ANALYTICS_GROUP);
+    }
+
+    /**
+     * Implements {@link #trackMetric(String, double, Map)}.
+     */
+    private void trackInstanceMetric(String name, double value, Map<String, String> dimensions) {
+        if (name == null || name.isEmpty()) {
+            AppCenterLog.error(LOG_TAG, "Metric name may not be null or empty.");
+            return;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            AppCenterLog.error(LOG_TAG, "Metric '" + name + "' value must be finite, sample discarded.");
+            return;
+        }
+
+        /* Schedule a flush when starting a new interval. */
+        if (mMetricAggregator.add(name, dimensions, value)) {
+            HandlerUtils.getMainHandler().postDelayed(mFlushMetricsRunnable, METRICS_FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Send metric summaries as events.
+     */
+    @WorkerThread
+    private void flushMetrics() {
+
+        /* The next sample schedules a new flush, cancel the one for the interval being flushed. */
+        HandlerUtils.getMainHandler().removeCallbacks(mFlushMetricsRunnable);
+        for (MetricAggregator.Series series : mMetricAggregator.flush()) {
+            queueEvent(new PendingEvent(series.name, series.toProperties(), null));
+        }
+    }
+
+    /**
+     * Implements {@link #setEventSamplingPolicy(String, EventSamplingPolicy)}.
+     */
+    private void setInstanceEventSamplingPolicy(String name, EventSamplingPolicy policy) {
+        setEventSamplingPolicy(mEventSamplingPolicies, name, policy);
+    }
+
+    /**
+     * Check the sampling policy of an event tracked without transmission target.
+     *
+     * @param name event name.
+     * @return true if the event must be sent.
+     */
+    private boolean isEventSampled(String name) {
+        return isEventSampled(mEventSamplingPolicies, name);
+    }
+
+    /**
+     * Update sampling policies.
+     *
+     * @param policies policies by event name.
+     * @param name     event name.
+     * @param policy   policy, null to remove.
+     */
+    static void setEventSamplingPolicy(Map<String, EventSamplingPolicy> policies, String name, EventSamplingPolicy policy) {
+        if (name == null) {
+            AppCenterLog.error(LOG_TAG, "Event name may not be null.");
+        } else if (policy == null) {
+            policies.remove(name);
+        } else {
+            policies.put(name, policy);
+        }
+    }
+
+    /**
+     * Check the sampling policy of an event.
+     *
+     * @param policies policies by event name.
+     * @param name     event name.
+     * @return true if the event must be sent.
+     */
+    static boolean isEventSampled(Map<String, EventSamplingPolicy> policies, String name) {
+
+        /* Invalid names are reported later by validation. */
+        EventSamplingPolicy policy = name == null ? null : policies.get(name);
+        if (policy == null || policy.sample()) {
+            return true;
+        }
+        AppCenterLog.verbose(LOG_TAG, "Event " + name + " dropped by its sampling policy.");
+        return false;
     }
 
     /**
@@ -713,6 +1048,29 @@ public class Analytics extends AbstractAppCenterService {
         mAutoPageTrackingEnabled = autoPageTrackingEnabled;
     }
 
+    /**
+     * Implements {@link #isScreenPerformanceTrackingEnabled()}.
+     */
+    private synchronized boolean isInstanceScreenPerformanceTrackingEnabled() {
+        return mScreenPerformanceTrackingEnabled;
+    }
+
+    /**
+     * Implements {@link #setScreenPerformanceTrackingEnabled(boolean)}.
+     */
+    private synchronized void setInstanceScreenPerformanceTrackingEnabled(boolean screenPerformanceTrackingEnabled) {
+        mScreenPerformanceTrackingEnabled = screenPerformanceTrackingEnabled;
+        if (!screenPerformanceTrackingEnabled) {
+            HandlerUtils.runOnUiThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    mScreenPerformanceTracker.stop();
+                }
+            });
+        }
+    }
+
     /**
      * Implements {@link #setListener(AnalyticsListener)}.
      */
@@ -818,4 +1176,31 @@ public class Analytics extends AbstractAppCenterService {
     String getEnabledPreferenceKeyPrefix() {
         return getEnabledPreferenceKey() + "/";
     }
+
+    /**
+     * Event tracked by the application and waiting to be processed in background.
+     */
+    private static class PendingEvent {
+
+        /**
+         * Event name.
+         */
+        final String name;
+
+        /**
+         * Copy of the event properties, can be null.
+         */
+        final List<TypedProperty> properties;
+
+        /**
+         * Transmission target, null for the default one.
+         */
+        final AnalyticsTransmissionTarget transmissionTarget;
+
+        PendingEvent(String name, List<TypedProperty> properties, AnalyticsTransmissionTarget transmissionTarget) {
+            this.name = name;
+            this.properties = properties;
+            this.transmissionTarget = transmissionTarget;
+        }
+    }
 }
@@ -22,6 +22,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
 
@@ -36,6 +37,21 @@ public class AnalyticsTransmissionTarget {
     @VisibleForTesting
     static AuthenticationProvider sAuthenticationProvider;
 
+    /**
+     * Cached enabled states by preference key (ignoring ancestors), a key is read from storage only the first time.
+     * Targets with the same token under different parents share the same key and thus the same state.
+     * Only accessed from the App Center thread. Storage is only written by {@link #setEnabledAsync(boolean)}
+     * that updates this cache as well.
+     */
+    private static final Map<String, Boolean> sEnabledInStorage = new HashMap<>();
+
+    /**
+     * Incremented each time enabled states change, to invalidate the effective states cached by targets.
+     * This includes targets with the same token under other parents, which share the same preference key.
+     * Only accessed from the App Center thread.
+     */
+    private static int sEnabledStateVersion;
+
     /**
      * Target token for this level.
      */
@@ -56,6 +72,11 @@ public class AnalyticsTransmissionTarget {
      */
     private final PropertyConfigurator mPropertyConfigurator;
 
+    /**
+     * Sampling policies by event name.
+     */
+    private final Map<String, EventSamplingPolicy> mEventSamplingPolicies = new ConcurrentHashMap<>();
+
     /**
      * App context.
      */
@@ -66,6 +87,22 @@ public class AnalyticsTransmissionTarget {
      */
     private Channel mChannel;
 
+    /**
+     * Preference key of the enabled state of this level, computed on first use.
+     */
+    private String mEnabledPreferenceKey;
+
+    /**
+     * Cached effective enabled state, including ancestors.
+     * Only valid when {@link #mEnabledStateVersion} matches {@link #sEnabledStateVersion}.
+     */
+    private boolean mEnabled;
+
+    /**
+     * Version of the enabled states when {@link #mEnabled} was computed.
+     */
+    private int mEnabledStateVersion = -1;
+
     /**
      * Create a new instance.
      *
@@ -137,6 +174,11 @@ public class AnalyticsTransmissionTarget {
      */
     private static void updateProvider(AuthenticationProvider authenticationProvider) {
 
+        /* Stop refreshing the token of the previous provider. */
+        if (sAuthenticationProvider != null) {
+            sAuthenticationProvider.cancelScheduledRefresh();
+        }
+
         /* Update reference. */
         sAuthenticationProvider = authenticationProvider;
 
@@ -198,6 +240,11 @@ public class AnalyticsTransmissionTarget {
      */
     public void trackEvent(String name, EventProperties properties) {
 
+        /* Apply sampling before doing any work for the event. */
+        if (!isEventSampled(name)) {
+            return;
+        }
+
         /* Merge common properties. More specific target wins conflicts. */
         EventProperties mergedProperties = new EventProperties();
         for (AnalyticsTransmissionTarget target = this; target != null; target = target.mParentTarget) {
@@ -221,6 +268,49 @@ public class AnalyticsTransmissionTarget {
         Analytics.trackEvent(name, mergedProperties, this);
     }
 
+    /**
+     * Track an event built from a template, see {@link EventTemplate}.
+     * <p>
+     * The same rules as {@link #trackEvent(String, EventProperties)} apply.
+     *
+     * @param event An event created by {@link EventTemplate#newEvent()}.
+     */
+    public void trackEvent(EventTemplate.Event event) {
+        if (event == null) {
+            AppCenterLog.error(LOG_TAG, "Templated event cannot be null.");
+            return;
+        }
+        trackEvent(event.getTemplate().getName(), event.toEventProperties());
+    }
+
+    /**
+     * Set a sampling policy for an event name, to limit how many occurrences of that event are sent with this target.
+     * The policy also applies to descendant targets that have no policy for the same event name.
+     *
+     * @param name   event name.
+     * @param policy sampling policy, null to send all occurrences of the event again.
+     */
+    public void setEventSamplingPolicy(String name, EventSamplingPolicy policy) {
+        Analytics.setEventSamplingPolicy(mEventSamplingPolicies, name, policy);
+    }
+
+    /**
+     * Check the sampling policy of an event, using the closest target that has a policy for the event name.
+     *
+     * @param name event name.
+     * @return true if the event must be sent.
+     */
+    private boolean isEventSampled(String name) {
+        if (name != null) {
+            for (AnalyticsTransmissionTarget target = this; target != null; target = target.mParentTarget) {
+                if (target.mEventSamplingPolicies.containsKey(name)) {
+                    return Analytics.isEventSampled(target.mEventSamplingPolicies, name);
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Create a new transmission target based on the properties of the current target.
      *
@@ -282,8 +372,10 @@ public class AnalyticsTransmissionTarget {
                  * Like the relation between AppCenter and Analytics, we cannot change state if one of the parent is disabled.
                  * If this callback is called then it was already checked that AppCenter and Analytics are both enabled.
                  */
-                if (areAncestorsEnabled()) {
+                if (mParentTarget == null || mParentTarget.isEnabled()) {
 
+                    /* Invalidate cached states of other targets sharing a preference key with a descendant. */
+                    sEnabledStateVersion++;
 
                     /* Propagate state to this instance then all descendants without a recursive call. */
                     List<AnalyticsTransmissionTarget> descendantTargets = new LinkedList<>();
@@ -293,7 +385,9 @@ public class AnalyticsTransmissionTarget {
                         while (descendantIterator.hasNext()) {
                             AnalyticsTransmissionTarget descendantTarget = descendantIterator.next();
                             descendantIterator.remove();
-                            StorageHelper.PreferencesStorage.putBoolean(descendantTarget.getEnabledPreferenceKey(), enabled);
+                            descendantTarget.setEnabledInStorage(enabled);
+                            descendantTarget.mEnabled = enabled;
+                            descendantTarget.mEnabledStateVersion = sEnabledStateVersion;
                             for (AnalyticsTransmissionTarget childTarget : descendantTarget.mChildrenTargets.values()) {
                                 descendantIterator.add(childTarget);
                             }
@@ -380,29 +474,67 @@ public class AnalyticsTransmissionTarget {
         }
     }
 
+    /**
+     * Refresh the token of the registered authentication provider if it's about to expire.
+     */
+    static synchronized void checkTokenExpiry() {
+        if (sAuthenticationProvider != null) {
+            sAuthenticationProvider.checkTokenExpiry();
+        }
+    }
+
     @NonNull
+    @WorkerThread
     private String getEnabledPreferenceKey() {
-        return Analytics.getInstance().getEnabledPreferenceKeyPrefix() + PartAUtils.getTargetKey(mTransmissionTargetToken);
+        if (mEnabledPreferenceKey == null) {
+            mEnabledPreferenceKey = Analytics.getInstance().getEnabledPreferenceKeyPrefix() + PartAUtils.getTargetKey(mTransmissionTargetToken);
+        }
+        return mEnabledPreferenceKey;
     }
 
+    /**
+     * Get the enabled state of this level, read from storage only the first time.
+     */
     @WorkerThread
     private boolean isEnabledInStorage() {
-        return StorageHelper.PreferencesStorage.getBoolean(getEnabledPreferenceKey(), true);
+        String enabledPreferenceKey = getEnabledPreferenceKey();
+        Boolean enabled = sEnabledInStorage.get(enabledPreferenceKey);
+        if (enabled == null) {
+            enabled = StorageHelper.PreferencesStorage.getBoolean(enabledPreferenceKey, true);
+            sEnabledInStorage.put(enabledPreferenceKey, enabled);
+        }
+        return enabled;
     }
 
+    /**
+     * Persist the enabled state of this level and update the cached value.
+     */
     @WorkerThread
-    private boolean areAncestorsEnabled() {
-        for (AnalyticsTransmissionTarget target = mParentTarget; target != null; target = target.mParentTarget) {
-            if (!target.isEnabledInStorage()) {
-                return false;
-            }
-        }
-        return true;
+    private void setEnabledInStorage(boolean enabled) {
+        String enabledPreferenceKey = getEnabledPreferenceKey();
+        StorageHelper.PreferencesStorage.putBoolean(enabledPreferenceKey, enabled);
+        sEnabledInStorage.put(enabledPreferenceKey, enabled);
     }
 
+    /**
+     * Forget the cached enabled states.
+     */
+    @VisibleForTesting
+    static void clearEnabledInStorageCache() {
+        sEnabledInStorage.clear();
+        sEnabledStateVersion++;
+    }
+
+    /**
+     * Get the effective enabled state including ancestors, cached until an enabled state changes.
+     */
     @WorkerThread
     boolean isEnabled() {
-        return areAncestorsEnabled() && isEnabledInStorage();
+        if (mEnabledStateVersion != sEnabledStateVersion) {
+            mEnabled = (mParentTarget == null || mParentTarget.isEnabled()) && isEnabledInStorage();
+            mEnabledStateVersion = sEnabledStateVersion;
+        }
+        return mEnabled;
     }
 
     /**
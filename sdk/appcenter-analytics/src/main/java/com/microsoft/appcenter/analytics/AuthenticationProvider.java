@@ -1,6 +1,9 @@
 package com.microsoft.appcenter.analytics;
 
+import android.support.annotation.VisibleForTesting;
+
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.HashUtils;
 import com.microsoft.appcenter.utils.TicketCache;
 
@@ -18,6 +21,12 @@ public class AuthenticationProvider {
      */
     private static final long REFRESH_THRESHOLD = 10 * 60 * 1000;
 
+    /**
+     * Minimum delay before a scheduled token refresh, to avoid refresh loops with short lived tokens.
+     */
+    @VisibleForTesting
+    static final long MIN_REFRESH_DELAY = 60 * 1000;
+
     /**
      * The authentication provider type.
      */
@@ -49,6 +58,24 @@ public class AuthenticationProvider {
      */
     private Date mExpiryDate;
 
+    /**
+     * True when this provider was replaced and must stop scheduling token refreshes.
+     */
+    private boolean mRefreshCancelled;
+
+    /**
+     * Refresh the token ahead of expiry, scheduled on main thread after each token update.
+     * The delay is measured in uptime that does not advance while the device sleeps, so the refresh can be late:
+     * {@link #checkTokenExpiry()} is the required fallback.
+     */
+    private final Runnable mRefreshRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            acquireTokenAsync();
+        }
+    };
+
     /**
      * Create a new authentication provider.
      *
@@ -158,10 +185,33 @@ public class AuthenticationProvider {
 
         /* Keep track of safe expiry time. */
         mExpiryDate = expiryDate;
+
+        /*
+         * Schedule the next refresh before the token expires so that the cached ticket stays valid
+         * and logs are not sent anonymously while waiting for a new token.
+         * The handler delay stops while the device sleeps, expiry is checked again with wall clock time
+         * before logs are sent.
+         */
+        if (!mRefreshCancelled) {
+            long refreshDelay = expiryDate.getTime() - System.currentTimeMillis() - REFRESH_THRESHOLD;
+            HandlerUtils.getMainHandler().removeCallbacks(mRefreshRunnable);
+            HandlerUtils.getMainHandler().postDelayed(mRefreshRunnable, Math.max(refreshDelay, MIN_REFRESH_DELAY));
+        }
+    }
+
+    /**
+     * Cancel the scheduled token refresh, when this provider is replaced.
+     */
+    synchronized void cancelScheduledRefresh() {
+        mRefreshCancelled = true;
+        HandlerUtils.getMainHandler().removeCallbacks(mRefreshRunnable);
     }
 
     /**
-     * Trigger asynchronous token refresh if the token is about to expire.
+     * Trigger asynchronous token refresh if the token is about to expire, according to wall clock time.
+     * <p>
+     * This is the required fallback of the scheduled refresh, that can be late after the device slept.
+     * It must be called whenever the ticket is about to be used: when logs are prepared and before they are sent.
      */
     synchronized void checkTokenExpiry() {
         if (mExpiryDate != null && mExpiryDate.getTime() <= System.currentTimeMillis() + REFRESH_THRESHOLD) {
@@ -0,0 +1,184 @@
+package com.microsoft.appcenter.analytics;
+
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.Random;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Policy deciding which occurrences of an event are sent, to limit high frequency events.
+ * <p>
+ * Policies are evaluated when the event is tracked, before the log is built.
+ * A policy instance keeps its own state: using the same instance for several event names
+ * makes them share the same budget.
+ *
+ * @see Analytics#setEventSamplingPolicy(String, EventSamplingPolicy)
+ * @see AnalyticsTransmissionTarget#setEventSamplingPolicy(String, EventSamplingPolicy)
+ */
+public abstract class EventSamplingPolicy {
+
+    EventSamplingPolicy() {
+    }
+
+    /**
+     * Send a random fraction of the events.
+     *
+     * @param samplingRate fraction of events to send, between 0 and 1.
+     * @return policy or null if the sampling rate is invalid.
+     */
+    public static EventSamplingPolicy fixedRate(double samplingRate) {
+        if (!(samplingRate >= 0 && samplingRate <= 1)) {
+            AppCenterLog.error(LOG_TAG, "Sampling rate must be between 0 and 1.");
+            return null;
+        }
+        return new FixedRate(samplingRate, new Random());
+    }
+
+    /**
+     * Send at most a number of events per period, events beyond that limit are dropped until the next period.
+     *
+     * @param maxEvents maximum number of events sent per period.
+     * @param period    period duration in milliseconds.
+     * @return policy or null if a parameter is invalid.
+     */
+    public static EventSamplingPolicy maxEventsPerPeriod(int maxEvents, long period) {
+        if (maxEvents < 0 || period <= 0) {
+            AppCenterLog.error(LOG_TAG, "Maximum number of events cannot be negative and period must be positive.");
+            return null;
+        }
+        return new MaxEventsPerPeriod(maxEvents, period);
+    }
+
+    /**
+     * Send events at a sustained rate while allowing bursts: each event consumes a token,
+     * tokens are refilled at a fixed rate up to the burst size.
+     *
+     * @param eventsPerSecond sustained rate of events sent.
+     * @param burstSize       maximum number of events sent at once, also the initial number of tokens.
+     * @return policy or null if a parameter is invalid.
+     */
+    public static EventSamplingPolicy tokenBucket(double eventsPerSecond, int burstSize) {
+        if (!(eventsPerSecond > 0) || Double.isInfinite(eventsPerSecond) || burstSize <= 0) {
+            AppCenterLog.error(LOG_TAG, "Event rate and burst size must be positive.");
+            return null;
+        }
+        return new TokenBucket(eventsPerSecond, burstSize);
+    }
+
+    /**
+     * Check if an event occurrence can be sent and count it.
+     *
+     * @return true if the event can be sent, false if it must be dropped.
+     */
+    boolean sample() {
+        return sample(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Check if an event occurrence can be sent and count it.
+     *
+     * @param now current time in milliseconds, from a monotonic clock.
+     * @return true if the event can be sent, false if it must be dropped.
+     */
+    abstract boolean sample(long now);
+
+    /**
+     * Keep each event with a fixed probability.
+     */
+    @VisibleForTesting
+    static class FixedRate extends EventSamplingPolicy {
+
+        private final double mSamplingRate;
+
+        private final Random mRandom;
+
+        FixedRate(double samplingRate, Random random) {
+            mSamplingRate = samplingRate;
+            mRandom = random;
+        }
+
+        @Override
+        boolean sample(long now) {
+
+            /* Random is thread safe. */
+            return mRandom.nextDouble() < mSamplingRate;
+        }
+    }
+
+    /**
+     * Keep the first events of each period.
+     */
+    @VisibleForTesting
+    static class MaxEventsPerPeriod extends EventSamplingPolicy {
+
+        private final int mMaxEvents;
+
+        private final long mPeriod;
+
+        private long mPeriodStart;
+
+        private int mCount;
+
+        private boolean mStarted;
+
+        MaxEventsPerPeriod(int maxEvents, long period) {
+            mMaxEvents = maxEvents;
+            mPeriod = period;
+        }
+
+        @Override
+        synchronized boolean sample(long now) {
+            if (!mStarted || now - mPeriodStart >= mPeriod) {
+                mStarted = true;
+                mPeriodStart = now;
+                mCount = 0;
+            }
+            if (mCount < mMaxEvents) {
+                mCount++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Keep events while tokens are available, tokens are refilled over time.
+     */
+    @VisibleForTesting
+    static class TokenBucket extends EventSamplingPolicy {
+
+        private final double mTokensPerMillisecond;
+
+        private final int mBurstSize;
+
+        private double mTokens;
+
+        private long mLastRefill;
+
+        private boolean mStarted;
+
+        TokenBucket(double eventsPerSecond, int burstSize) {
+            mTokensPerMillisecond = eventsPerSecond / 1000;
+            mBurstSize = burstSize;
+            mTokens = burstSize;
+        }
+
+        @Override
+        synchronized boolean sample(long now) {
+            if (mStarted) {
+                mTokens = Math.min(mBurstSize, mTokens + Math.max(0, now - mLastRefill) * mTokensPerMillisecond);
+            }
+            mStarted = true;
+            mLastRefill = now;
+            if (mTokens >= 1) {
+                mTokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
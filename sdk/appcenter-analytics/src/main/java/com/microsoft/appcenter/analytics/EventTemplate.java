@@ -0,0 +1,463 @@
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_NAME_LENGTH;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_COUNT;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_ITEM_LENGTH;
+
+/**
+ * Reusable event shape: an event name and declared property names and types.
+ * <p>
+ * The name and property names are validated once when the template is built,
+ * events created from the template only hold values, so tracking the same event shape
+ * repeatedly does not validate or copy names again.
+ * <p>
+ * Example:
+ * <pre>
+ * EventTemplate template = new EventTemplate.Builder("VideoPlayed")
+ *         .declareString("title")
+ *         .declareLong("durationMs")
+ *         .build();
+ * Analytics.trackEvent(template.newEvent().set("title", title).set("durationMs", duration));
+ * </pre>
+ */
+public class EventTemplate {
+
+    @VisibleForTesting
+    static final int TYPE_BOOLEAN = 0;
+
+    @VisibleForTesting
+    static final int TYPE_DATE_TIME = 1;
+
+    @VisibleForTesting
+    static final int TYPE_DOUBLE = 2;
+
+    @VisibleForTesting
+    static final int TYPE_LONG = 3;
+
+    @VisibleForTesting
+    static final int TYPE_STRING = 4;
+
+    /**
+     * Validated event name.
+     */
+    private final String mName;
+
+    /**
+     * Validated and interned property names, by slot.
+     */
+    private final String[] mKeys;
+
+    /**
+     * Property types, by slot.
+     */
+    private final int[] mTypes;
+
+    /**
+     * Slot by property name.
+     */
+    private final Map<String, Integer> mSlots;
+
+    private EventTemplate(String name, String[] keys, int[] types, Map<String, Integer> slots) {
+        mName = name;
+        mKeys = keys;
+        mTypes = types;
+        mSlots = slots;
+    }
+
+    /**
+     * Get the validated event name.
+     *
+     * @return event name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Create a new event with no property values set.
+     *
+     * @return new event.
+     */
+    public Event newEvent() {
+        return new Event(this);
+    }
+
+    @VisibleForTesting
+    String[] getKeys() {
+        return mKeys;
+    }
+
+    private int getSlot(String key, int type) {
+        Integer slot = key == null ? null : mSlots.get(key);
+        if (slot == null) {
+            AppCenterLog.error(LOG_TAG, "Property \"" + key + "\" is not declared in event template \"" + mName + "\".");
+            return -1;
+        }
+        if (mTypes[slot] != type) {
+            AppCenterLog.error(LOG_TAG, "Property \"" + key + "\" is declared with another type in event template \"" + mName + "\".");
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Event template builder, validates names as they are declared.
+     */
+    public static class Builder {
+
+        private final String mName;
+
+        private final List<String> mKeys = new ArrayList<>();
+
+        private final List<Integer> mTypes = new ArrayList<>();
+
+        private final Map<String, Integer> mSlots = new HashMap<>();
+
+        /**
+         * Init builder.
+         *
+         * @param name event name, cannot be null or empty and is truncated to 256 characters.
+         */
+        public Builder(String name) {
+            if (name != null && name.length() > MAX_NAME_LENGTH) {
+                AppCenterLog.warn(LOG_TAG, "Event template \"" + name + "\" : name length cannot be longer than " + MAX_NAME_LENGTH + " characters. Name will be truncated.");
+                name = name.substring(0, MAX_NAME_LENGTH);
+            }
+            mName = name;
+        }
+
+        /**
+         * Declare a boolean property.
+         *
+         * @param key property name.
+         * @return this instance.
+         */
+        public Builder declareBoolean(String key) {
+            return declare(key, TYPE_BOOLEAN);
+        }
+
+        /**
+         * Declare a date property.
+         *
+         * @param key property name.
+         * @return this instance.
+         */
+        public Builder declareDate(String key) {
+            return declare(key, TYPE_DATE_TIME);
+        }
+
+        /**
+         * Declare a double property.
+         *
+         * @param key property name.
+         * @return this instance.
+         */
+        public Builder declareDouble(String key) {
+            return declare(key, TYPE_DOUBLE);
+        }
+
+        /**
+         * Declare a long property.
+         *
+         * @param key property name.
+         * @return this instance.
+         */
+        public Builder declareLong(String key) {
+            return declare(key, TYPE_LONG);
+        }
+
+        /**
+         * Declare a string property.
+         *
+         * @param key property name.
+         * @return this instance.
+         */
+        public Builder declareString(String key) {
+            return declare(key, TYPE_STRING);
+        }
+
+        private Builder declare(String key, int type) {
+            if (key == null || key.isEmpty()) {
+                AppCenterLog.error(LOG_TAG, "Event template \"" + mName + "\" : a property key cannot be null or empty. Property will be skipped.");
+                return this;
+            }
+            if (key.length() > MAX_PROPERTY_ITEM_LENGTH) {
+                AppCenterLog.warn(LOG_TAG, "Event template \"" + mName + "\" : property key \"" + key + "\" length cannot be longer than " + MAX_PROPERTY_ITEM_LENGTH + " characters. Property key will be truncated.");
+                key = key.substring(0, MAX_PROPERTY_ITEM_LENGTH);
+            }
+            if (mSlots.containsKey(key)) {
+                AppCenterLog.error(LOG_TAG, "Event template \"" + mName + "\" : property \"" + key + "\" is already declared. Property will be skipped.");
+                return this;
+            }
+            if (mKeys.size() >= MAX_PROPERTY_COUNT) {
+                AppCenterLog.error(LOG_TAG, "Event template \"" + mName + "\" : properties cannot contain more than " + MAX_PROPERTY_COUNT + " items. Property \"" + key + "\" will be skipped.");
+                return this;
+            }
+            key = key.intern();
+            mSlots.put(key, mKeys.size());
+            mKeys.add(key);
+            mTypes.add(type);
+            return this;
+        }
+
+        /**
+         * Build the template.
+         *
+         * @return template or null if the event name is null or empty.
+         */
+        public EventTemplate build() {
+            if (mName == null || mName.isEmpty()) {
+                AppCenterLog.error(LOG_TAG, "Event template name cannot be null or empty.");
+                return null;
+            }
+            int[] types = new int[mTypes.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = mTypes.get(i);
+            }
+            return new EventTemplate(mName.intern(), mKeys.toArray(new String[mKeys.size()]), types, new HashMap<>(mSlots));
+        }
+    }
+
+    /**
+     * Property values of one occurrence of a templated event.
+     * <p>
+     * Values are stored in slots of primitive arrays and copied when the event is tracked,
+     * so the same instance can be updated and tracked again. An event is not thread safe.
+     */
+    public static class Event {
+
+        private final EventTemplate mTemplate;
+
+        /**
+         * Long, boolean (0 or 1) and date (milliseconds) values, by slot.
+         */
+        private final long[] mLongValues;
+
+        /**
+         * Double values, by slot.
+         */
+        private final double[] mDoubleValues;
+
+        /**
+         * String values, by slot.
+         */
+        private final String[] mStringValues;
+
+        /**
+         * Whether a value is set, by slot.
+         */
+        private final boolean[] mValueSet;
+
+        private Event(EventTemplate template) {
+            int slotCount = template.mKeys.length;
+            mTemplate = template;
+            mLongValues = new long[slotCount];
+            mDoubleValues = new double[slotCount];
+            mStringValues = new String[slotCount];
+            mValueSet = new boolean[slotCount];
+        }
+
+        /**
+         * Get the template of this event.
+         *
+         * @return template.
+         */
+        public EventTemplate getTemplate() {
+            return mTemplate;
+        }
+
+        /**
+         * Set a value of a property declared as boolean.
+         *
+         * @param key   property name.
+         * @param value value.
+         * @return this instance.
+         */
+        public Event set(String key, boolean value) {
+            int slot = mTemplate.getSlot(key, TYPE_BOOLEAN);
+            if (slot >= 0) {
+                mLongValues[slot] = value ? 1 : 0;
+                mValueSet[slot] = true;
+            }
+            return this;
+        }
+
+        /**
+         * Set a value of a property declared as date.
+         *
+         * @param key   property name.
+         * @param value value, cannot be null.
+         * @return this instance.
+         */
+        public Event set(String key, Date value) {
+            int slot = mTemplate.getSlot(key, TYPE_DATE_TIME);
+            if (slot >= 0) {
+                if (value == null) {
+                    AppCenterLog.error(LOG_TAG, "Property value cannot be null");
+                } else {
+                    mLongValues[slot] = value.getTime();
+                    mValueSet[slot] = true;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Set a value of a property declared as double.
+         *
+         * @param key   property name.
+         * @param value value, must be finite.
+         * @return this instance.
+         */
+        public Event set(String key, double value) {
+            int slot = mTemplate.getSlot(key, TYPE_DOUBLE);
+            if (slot >= 0) {
+                if (Double.isInfinite(value) || Double.isNaN(value)) {
+                    AppCenterLog.error(LOG_TAG, "Double property value cannot be NaN or infinite.");
+                } else {
+                    mDoubleValues[slot] = value;
+                    mValueSet[slot] = true;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Set a value of a property declared as long.
+         *
+         * @param key   property name.
+         * @param value value.
+         * @return this instance.
+         */
+        public Event set(String key, long value) {
+            int slot = mTemplate.getSlot(key, TYPE_LONG);
+            if (slot >= 0) {
+                mLongValues[slot] = value;
+                mValueSet[slot] = true;
+            }
+            return this;
+        }
+
+        /**
+         * Set a value of a property declared as string.
+         * The value is truncated to 125 characters.
+         *
+         * @param key   property name.
+         * @param value value, cannot be null.
+         * @return this instance.
+         */
+        public Event set(String key, String value) {
+            int slot = mTemplate.getSlot(key, TYPE_STRING);
+            if (slot >= 0) {
+                if (value == null) {
+                    AppCenterLog.error(LOG_TAG, "Property value cannot be null");
+                } else {
+                    if (value.length() > MAX_PROPERTY_ITEM_LENGTH) {
+                        AppCenterLog.warn(LOG_TAG, "Property \"" + key + "\" value cannot be longer than " + MAX_PROPERTY_ITEM_LENGTH + " characters. Property value will be truncated.");
+                        value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
+                    }
+                    mStringValues[slot] = value;
+                    mValueSet[slot] = true;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Unset all property values.
+         *
+         * @return this instance.
+         */
+        public Event clear() {
+            Arrays.fill(mValueSet, false);
+            Arrays.fill(mStringValues, null);
+            return this;
+        }
+
+        /**
+         * Copy the values that are set to typed properties.
+         *
+         * @return properties, in declaration order.
+         */
+        List<TypedProperty> toTypedProperties() {
+            List<TypedProperty> properties = new ArrayList<>(mValueSet.length);
+            for (int slot = 0; slot < mValueSet.length; slot++) {
+                if (mValueSet[slot]) {
+                    properties.add(toTypedProperty(slot));
+                }
+            }
+            return properties;
+        }
+
+        /**
+         * Copy the values that are set to event properties.
+         *
+         * @return event properties.
+         */
+        EventProperties toEventProperties() {
+            EventProperties eventProperties = new EventProperties();
+            Map<String, TypedProperty> properties = eventProperties.getProperties();
+            for (int slot = 0; slot < mValueSet.length; slot++) {
+                if (mValueSet[slot]) {
+                    properties.put(mTemplate.mKeys[slot], toTypedProperty(slot));
+                }
+            }
+            return eventProperties;
+        }
+
+        private TypedProperty toTypedProperty(int slot) {
+            TypedProperty property;
+            switch (mTemplate.mTypes[slot]) {
+
+                case TYPE_BOOLEAN:
+                    BooleanTypedProperty booleanProperty = new BooleanTypedProperty();
+                    booleanProperty.setValue(mLongValues[slot] != 0);
+                    property = booleanProperty;
+                    break;
+
+                case TYPE_DATE_TIME:
+                    DateTimeTypedProperty dateTimeProperty = new DateTimeTypedProperty();
+                    dateTimeProperty.setValue(new Date(mLongValues[slot]));
+                    property = dateTimeProperty;
+                    break;
+
+                case TYPE_DOUBLE:
+                    DoubleTypedProperty doubleProperty = new DoubleTypedProperty();
+                    doubleProperty.setValue(mDoubleValues[slot]);
+                    property = doubleProperty;
+                    break;
+
+                case TYPE_LONG:
+                    LongTypedProperty longProperty = new LongTypedProperty();
+                    longProperty.setValue(mLongValues[slot]);
+                    property = longProperty;
+                    break;
+
+                default:
+                    StringTypedProperty stringProperty = new StringTypedProperty();
+                    stringProperty.setValue(mStringValues[slot]);
+                    property = stringProperty;
+            }
+            property.setName(mTemplate.mKeys[slot]);
+            return property;
+        }
+    }
+}
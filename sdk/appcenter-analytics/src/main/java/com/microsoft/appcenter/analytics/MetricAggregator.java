@@ -0,0 +1,263 @@
+package com.microsoft.appcenter.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+
+/**
+ * Accumulates metric samples by name and dimensions until they are flushed as summaries.
+ * <p>
+ * Each series keeps a count, a sum, a minimum, a maximum and histogram bucket counts in primitive fields
+ * instead of one log per sample.
+ */
+class MetricAggregator {
+
+    /**
+     * Inclusive upper bounds of histogram buckets, the last bucket counts samples above the last bound.
+     * They are meant for durations in milliseconds, up to 10 seconds.
+     */
+    @VisibleForTesting
+    static final double[] HISTOGRAM_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    /**
+     * Maximum number of series (name and dimensions combinations) per flush interval.
+     */
+    @VisibleForTesting
+    static final int MAX_SERIES = 200;
+
+    /**
+     * Maximum number of dimensions per series, so that summaries fit in the event properties limit.
+     */
+    @VisibleForTesting
+    static final int MAX_DIMENSIONS = 15;
+
+    /**
+     * Summary property name for the number of samples.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_COUNT = "count";
+
+    /**
+     * Summary property name for the sum of samples.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_SUM = "sum";
+
+    /**
+     * Summary property name for the minimum sample.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_MIN = "min";
+
+    /**
+     * Summary property name for the maximum sample.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_MAX = "max";
+
+    /**
+     * Summary property name for the comma separated histogram bucket counts.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_HISTOGRAM = "histogram";
+
+    /**
+     * Series by key, in creation order.
+     */
+    private final Map<String, Series> mSeries = new LinkedHashMap<>();
+
+    /**
+     * True if the series limit was reached and logged in the current interval.
+     */
+    private boolean mSeriesLimitReached;
+
+    /**
+     * Record a sample.
+     *
+     * @param name       metric name.
+     * @param dimensions optional dimensions.
+     * @param value      sample value, must be finite.
+     * @return true if the sample was recorded and is the first one since the last flush.
+     */
+    synchronized boolean add(@NonNull String name, Map<String, String> dimensions, double value) {
+        if (dimensions != null) {
+            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                if (dimension.getKey() == null || dimension.getValue() == null) {
+                    AppCenterLog.error(LOG_TAG, "Metric '" + name + "' dimension names and values cannot be null, sample discarded.");
+                    return false;
+                }
+            }
+        }
+        String key = getKey(name, dimensions);
+        Series series = mSeries.get(key);
+        if (series == null) {
+            if (mSeries.size() >= MAX_SERIES) {
+                if (!mSeriesLimitReached) {
+                    mSeriesLimitReached = true;
+                    AppCenterLog.warn(LOG_TAG, "Too many metric series, samples of new series are dropped until the next flush.");
+                }
+                return false;
+            }
+            if (dimensions != null && dimensions.size() > MAX_DIMENSIONS) {
+                AppCenterLog.error(LOG_TAG, "Metric '" + name + "' cannot have more than " + MAX_DIMENSIONS + " dimensions, sample discarded.");
+                return false;
+            }
+            boolean first = mSeries.isEmpty();
+            series = new Series(name, dimensions == null ? Collections.<String, String>emptyMap() : new TreeMap<>(dimensions));
+            mSeries.put(key, series);
+            series.add(value);
+            return first;
+        }
+        series.add(value);
+        return false;
+    }
+
+    /**
+     * Get the series recorded since the last flush and reset them.
+     *
+     * @return series, in creation order.
+     */
+    synchronized List<Series> flush() {
+        List<Series> series = new ArrayList<>(mSeries.values());
+        clear();
+        return series;
+    }
+
+    /**
+     * Discard the series recorded since the last flush.
+     */
+    synchronized void clear() {
+        mSeries.clear();
+        mSeriesLimitReached = false;
+    }
+
+    private static String getKey(String name, Map<String, String> dimensions) {
+        if (dimensions == null || dimensions.isEmpty()) {
+            return name;
+        }
+        StringBuilder key = new StringBuilder(name);
+        for (Map.Entry<String, String> dimension : new TreeMap<>(dimensions).entrySet()) {
+            key.append('\n').append(dimension.getKey()).append('=').append(dimension.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Aggregated samples of a metric name and dimensions.
+     */
+    static class Series {
+
+        /**
+         * Metric name.
+         */
+        final String name;
+
+        /**
+         * Dimensions.
+         */
+        final Map<String, String> dimensions;
+
+        /**
+         * Sample counts by histogram bucket.
+         */
+        final long[] bucketCounts = new long[HISTOGRAM_BOUNDS.length + 1];
+
+        /**
+         * Number of samples.
+         */
+        long count;
+
+        /**
+         * Sum of samples.
+         */
+        double sum;
+
+        /**
+         * Minimum sample.
+         */
+        double min = Double.POSITIVE_INFINITY;
+
+        /**
+         * Maximum sample.
+         */
+        double max = Double.NEGATIVE_INFINITY;
+
+        Series(String name, Map<String, String> dimensions) {
+            this.name = name;
+            this.dimensions = dimensions;
+        }
+
+        void add(double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            int bucket = 0;
+            while (bucket < HISTOGRAM_BOUNDS.length && value > HISTOGRAM_BOUNDS[bucket]) {
+                bucket++;
+            }
+            bucketCounts[bucket]++;
+        }
+
+        /**
+         * Convert to event properties: aggregates first then dimensions.
+         * Dimensions using the name of an aggregate property are overridden.
+         *
+         * @return event properties.
+         */
+        List<TypedProperty> toProperties() {
+            List<TypedProperty> properties = new ArrayList<>(5 + dimensions.size());
+            LongTypedProperty countProperty = new LongTypedProperty();
+            countProperty.setName(PROPERTY_COUNT);
+            countProperty.setValue(count);
+            properties.add(countProperty);
+            properties.add(newDoubleProperty(PROPERTY_SUM, sum));
+            properties.add(newDoubleProperty(PROPERTY_MIN, min));
+            properties.add(newDoubleProperty(PROPERTY_MAX, max));
+            StringBuilder histogram = new StringBuilder();
+            for (long bucketCount : bucketCounts) {
+                if (histogram.length() > 0) {
+                    histogram.append(',');
+                }
+                histogram.append(bucketCount);
+            }
+            properties.add(newStringProperty(PROPERTY_HISTOGRAM, histogram.toString()));
+            for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+                String dimensionName = dimension.getKey();
+                if (!PROPERTY_COUNT.equals(dimensionName) && !PROPERTY_SUM.equals(dimensionName) && !PROPERTY_MIN.equals(dimensionName)
+                        && !PROPERTY_MAX.equals(dimensionName) && !PROPERTY_HISTOGRAM.equals(dimensionName)) {
+                    properties.add(newStringProperty(dimensionName, dimension.getValue()));
+                }
+            }
+            return properties;
+        }
+
+        private static TypedProperty newDoubleProperty(String name, double value) {
+            DoubleTypedProperty property = new DoubleTypedProperty();
+            property.setName(name);
+            property.setValue(value);
+            return property;
+        }
+
+        private static TypedProperty newStringProperty(String name, String value) {
+            StringTypedProperty property = new StringTypedProperty();
+            property.setName(name);
+            property.setValue(value);
+            return property;
+        }
+    }
+}
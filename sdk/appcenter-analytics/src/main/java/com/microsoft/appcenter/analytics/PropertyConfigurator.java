@@ -24,6 +24,12 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     private static final String ANDROID_DEVICE_ID_PREFIX = "a:";
 
+    /**
+     * Incremented when any app property override changes, in any target.
+     * Only accessed from the App Center thread like the overrides.
+     */
+    private static int sOverridesVersion;
+
     /**
      * App name to override common schema part A 'app.name'.
      */
@@ -44,6 +50,31 @@ public class PropertyConfigurator extends AbstractChannelListener {
      */
     private boolean mDeviceIdEnabled;
 
+    /**
+     * Cached common schema 'device.localId'.
+     */
+    private String mDeviceLocalId;
+
+    /**
+     * Version of the overrides used to compute the effective values, -1 if never computed.
+     */
+    private int mEffectiveOverridesVersion = -1;
+
+    /**
+     * App name of this target or inherited from the nearest parent.
+     */
+    private String mEffectiveAppName;
+
+    /**
+     * App version of this target or inherited from the nearest parent.
+     */
+    private String mEffectiveAppVersion;
+
+    /**
+     * App locale of this target or inherited from the nearest parent.
+     */
+    private String mEffectiveAppLocale;
+
     /**
      * The transmission target which this configurator belongs to.
      */
@@ -75,54 +106,66 @@ public class PropertyConfigurator extends AbstractChannelListener {
             AppExtension app = ((CommonSchemaLog) log).getExt().getApp();
             DeviceExtension device = ((CommonSchemaLog) log).getExt().getDevice();
 
-            /* Override app name if not null, else use the name of the nearest parent. */
-            if (mAppName != null) {
-                app.setName(mAppName);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppName = target.getPropertyConfigurator().getAppName();
-                    if (parentAppName != null) {
-                        app.setName(parentAppName);
-                        break;
-                    }
-                }
+            /* Recompute inherited values only if a setter was called since last time. */
+            if (mEffectiveOverridesVersion != sOverridesVersion) {
+                computeEffectiveOverrides();
             }
 
-            /* Override app version if not null, else use the version of the nearest parent. */
-            if (mAppVersion != null) {
-                app.setVer(mAppVersion);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppVersion = target.getPropertyConfigurator().getAppVersion();
-                    if (parentAppVersion != null) {
-                        app.setVer(parentAppVersion);
-                        break;
-                    }
-                }
+            /* Override app properties with the values of this target or the nearest parent. */
+            if (mEffectiveAppName != null) {
+                app.setName(mEffectiveAppName);
             }
-
-            /* Override app locale if not null, else use the locale of the nearest parent. */
-            if (mAppLocale != null) {
-                app.setLocale(mAppLocale);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppLocale = target.getPropertyConfigurator().getAppLocale();
-                    if (parentAppLocale != null) {
-                        app.setLocale(parentAppLocale);
-                        break;
-                    }
-                }
+            if (mEffectiveAppVersion != null) {
+                app.setVer(mEffectiveAppVersion);
+            }
+            if (mEffectiveAppLocale != null) {
+                app.setLocale(mEffectiveAppLocale);
             }
 
             /* Fill out the device id if it has been collected. */
             if (mDeviceIdEnabled) {
+                if (mDeviceLocalId == null) {
+
+                    /* Get device identifier once, it does not change while the application runs. */
+                    @SuppressLint("HardwareIds")
+                    String androidId = Secure.getString(mTransmissionTarget.mContext.getContentResolver(), Secure.ANDROID_ID);
+                    mDeviceLocalId = ANDROID_DEVICE_ID_PREFIX + androidId;
+                }
+                device.setLocalId(mDeviceLocalId);
+            }
+        }
+    }
 
-                /* Get device identifier, Secure class already has an in memory cache. */
-                @SuppressLint("HardwareIds")
-                String androidId = Secure.getString(mTransmissionTarget.mContext.getContentResolver(), Secure.ANDROID_ID);
-                device.setLocalId(ANDROID_DEVICE_ID_PREFIX + androidId);
+    /**
+     * Resolve app properties inherited from parents in a single walk of the hierarchy.
+     */
+    private void computeEffectiveOverrides() {
+        String appName = null;
+        String appVersion = null;
+        String appLocale = null;
+        for (AnalyticsTransmissionTarget target = mTransmissionTarget; target != null; target = target.mParentTarget) {
+            PropertyConfigurator configurator = target.getPropertyConfigurator();
+            if (appName == null) {
+                appName = configurator.getAppName();
+            }
+            if (appVersion == null) {
+                appVersion = configurator.getAppVersion();
+            }
+            if (appLocale == null) {
+                appLocale = configurator.getAppLocale();
             }
         }
+        mEffectiveAppName = appName;
+        mEffectiveAppVersion = appVersion;
+        mEffectiveAppLocale = appLocale;
+        mEffectiveOverridesVersion = sOverridesVersion;
+    }
+
+    /**
+     * Invalidate effective values of all configurators after an override changed.
+     */
+    private static void onOverrideChanged() {
+        sOverridesVersion++;
     }
 
     /**
@@ -156,6 +199,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppName = appName;
+                onOverrideChanged();
             }
         });
     }
@@ -180,6 +224,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppVersion = appVersion;
+                onOverrideChanged();
             }
         });
     }
@@ -204,6 +249,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
             @Override
             public void run() {
                 mAppLocale = appLocale;
+                onOverrideChanged();
             }
         });
     }
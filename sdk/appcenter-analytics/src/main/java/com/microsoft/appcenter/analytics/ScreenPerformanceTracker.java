@@ -0,0 +1,245 @@
+package com.microsoft.appcenter.analytics;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures rendering performance of the resumed activity.
+ * <p>
+ * For each screen visit (from resume to pause), it records the time to first draw, the time in screen
+ * and the frame intervals while the screen is drawing. Frames are timed with {@link Choreographer}
+ * callbacks that are only chained while views draw, so an idle screen does not wake up on every frame.
+ */
+@MainThread
+class ScreenPerformanceTracker implements ViewTreeObserver.OnDrawListener, Choreographer.FrameCallback {
+
+    /**
+     * Name of the event sent for each screen visit.
+     */
+    @VisibleForTesting
+    static final String EVENT_NAME = "ScreenPerformance";
+
+    /**
+     * Property name for the screen name.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_SCREEN = "screen";
+
+    /**
+     * Property name for the time between resume and first draw, only set if the screen was drawn.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_TIME_TO_FIRST_DRAW = "timeToFirstDrawMs";
+
+    /**
+     * Property name for the time between resume and pause.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_TIME_IN_SCREEN = "timeInScreenMs";
+
+    /**
+     * Property name for the number of timed frames.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_FRAMES = "frames";
+
+    /**
+     * Property name for the number of janky frames.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_JANKY_FRAMES = "jankyFrames";
+
+    /**
+     * Property name for the number of frozen frames.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_FROZEN_FRAMES = "frozenFrames";
+
+    /**
+     * Frame interval above which a frame is janky: at least one frame was missed at 60Hz.
+     */
+    @VisibleForTesting
+    static final long JANKY_FRAME_NANOS = 24 * 1000 * 1000;
+
+    /**
+     * Frame interval above which a frame is frozen.
+     */
+    @VisibleForTesting
+    static final long FROZEN_FRAME_NANOS = 700 * 1000 * 1000;
+
+    /**
+     * Decor view of the current activity, null if no screen is being tracked.
+     */
+    private View mDecorView;
+
+    /**
+     * Current screen name.
+     */
+    private String mScreenName;
+
+    /**
+     * Resume time.
+     */
+    private long mResumeTime;
+
+    /**
+     * First draw time, negative if not drawn yet.
+     */
+    private long mFirstDrawTime;
+
+    /**
+     * True if a frame callback is posted.
+     */
+    private boolean mFrameCallbackPosted;
+
+    /**
+     * True if views were drawn since the last frame callback.
+     */
+    private boolean mDrawnSinceLastFrame;
+
+    /**
+     * Time of the last frame callback in the current chain, 0 when the chain starts.
+     */
+    private long mLastFrameTimeNanos;
+
+    /**
+     * Number of timed frames.
+     */
+    private long mFrameCount;
+
+    /**
+     * Number of janky frames, frozen frames included.
+     */
+    private long mJankyFrameCount;
+
+    /**
+     * Number of frozen frames.
+     */
+    private long mFrozenFrameCount;
+
+    /**
+     * Start tracking a screen visit.
+     *
+     * @param activity   resumed activity.
+     * @param screenName screen name.
+     */
+    void onActivityResumed(Activity activity, String screenName) {
+
+        /* A resume without pause discards the previous visit. */
+        stop();
+        Window window = activity.getWindow();
+        if (window == null) {
+            return;
+        }
+        mDecorView = window.getDecorView();
+        mDecorView.getViewTreeObserver().addOnDrawListener(this);
+        mScreenName = screenName;
+        mResumeTime = SystemClock.elapsedRealtime();
+        mFirstDrawTime = -1;
+        mFrameCount = 0;
+        mJankyFrameCount = 0;
+        mFrozenFrameCount = 0;
+    }
+
+    /**
+     * Stop tracking the current screen visit.
+     *
+     * @return summary of the visit as event properties, or null if no screen was tracked.
+     */
+    List<TypedProperty> onActivityPaused() {
+        if (mDecorView == null) {
+            return null;
+        }
+        long now = SystemClock.elapsedRealtime();
+        List<TypedProperty> properties = new ArrayList<>(6);
+        StringTypedProperty screenProperty = new StringTypedProperty();
+        screenProperty.setName(PROPERTY_SCREEN);
+        screenProperty.setValue(mScreenName);
+        properties.add(screenProperty);
+        if (mFirstDrawTime >= 0) {
+            properties.add(newLongProperty(PROPERTY_TIME_TO_FIRST_DRAW, mFirstDrawTime - mResumeTime));
+        }
+        properties.add(newLongProperty(PROPERTY_TIME_IN_SCREEN, now - mResumeTime));
+        properties.add(newLongProperty(PROPERTY_FRAMES, mFrameCount));
+        properties.add(newLongProperty(PROPERTY_JANKY_FRAMES, mJankyFrameCount));
+        properties.add(newLongProperty(PROPERTY_FROZEN_FRAMES, mFrozenFrameCount));
+        stop();
+        return properties;
+    }
+
+    /**
+     * Stop tracking without reporting.
+     */
+    void stop() {
+        if (mDecorView != null) {
+            ViewTreeObserver viewTreeObserver = mDecorView.getViewTreeObserver();
+            if (viewTreeObserver.isAlive()) {
+                viewTreeObserver.removeOnDrawListener(this);
+            }
+            mDecorView = null;
+        }
+        if (mFrameCallbackPosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mFrameCallbackPosted = false;
+            mDrawnSinceLastFrame = false;
+        }
+    }
+
+    @Override
+    public void onDraw() {
+        if (mFirstDrawTime < 0) {
+            mFirstDrawTime = SystemClock.elapsedRealtime();
+        }
+        mDrawnSinceLastFrame = true;
+
+        /* Start timing frames while the screen is drawing. */
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            mLastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos > 0) {
+            long frameInterval = frameTimeNanos - mLastFrameTimeNanos;
+            mFrameCount++;
+            if (frameInterval > JANKY_FRAME_NANOS) {
+                mJankyFrameCount++;
+                if (frameInterval > FROZEN_FRAME_NANOS) {
+                    mFrozenFrameCount++;
+                }
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        /* Keep timing frames only if the screen is still drawing. */
+        if (mDrawnSinceLastFrame) {
+            mDrawnSinceLastFrame = false;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            mFrameCallbackPosted = false;
+        }
+    }
+
+    private static TypedProperty newLongProperty(String name, long value) {
+        LongTypedProperty property = new LongTypedProperty();
+        property.setName(name);
+        property.setValue(value);
+        return property;
+    }
+}
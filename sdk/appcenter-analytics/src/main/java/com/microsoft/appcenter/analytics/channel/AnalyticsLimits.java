@@ -0,0 +1,26 @@
+package com.microsoft.appcenter.analytics.channel;
+
+/**
+ * Limits on event names and properties, shared by {@link AnalyticsValidator} and event templates.
+ * This is an internal class, not meant to be used by applications.
+ */
+public final class AnalyticsLimits {
+
+    /**
+     * Max length of event/page name.
+     */
+    public static final int MAX_NAME_LENGTH = 256;
+
+    /**
+     * Max length of properties.
+     */
+    public static final int MAX_PROPERTY_ITEM_LENGTH = 125;
+
+    /**
+     * Max number of properties.
+     */
+    public static final int MAX_PROPERTY_COUNT = 20;
+
+    private AnalyticsLimits() {
+    }
+}
@@ -1,7 +1,6 @@
 package com.microsoft.appcenter.analytics.channel;
 
 import android.support.annotation.NonNull;
-import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.LogWithNameAndProperties;
@@ -22,27 +21,12 @@ import java.util.ListIterator;
 import java.util.Map;
 
 import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_NAME_LENGTH;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_COUNT;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_ITEM_LENGTH;
 
 public class AnalyticsValidator extends AbstractChannelListener {
 
-    /**
-     * Max length of event/page name.
-     */
-    @VisibleForTesting
-    static final int MAX_NAME_LENGTH = 256;
-
-    /**
-     * Max length of properties.
-     */
-    @VisibleForTesting
-    static final int MAX_PROPERTY_ITEM_LENGTH = 125;
-
-    /**
-     * Max number of properties.
-     */
-    @VisibleForTesting
-    static final int MAX_PROPERTY_COUNT = 20;
-
     /**
      * Validates log.
      *
@@ -97,13 +97,14 @@ public class SessionTracker extends AbstractChannelListener {
         else {
 
             /* Send a new start session log if needed. */
-            sendStartSessionIfNeeded();
+            long now = SystemClock.elapsedRealtime();
+            sendStartSessionIfNeeded(now);
 
             /* Set current session identifier. */
             log.setSid(mSid);
 
             /* Record queued time only if the log is using current session. */
-            mLastQueuedLogTime = SystemClock.elapsedRealtime();
+            mLastQueuedLogTime = now;
         }
     }
 
@@ -115,9 +116,11 @@ public class SessionTracker extends AbstractChannelListener {
      * Indeed the API can be used for events or crashes only for example, we need to renew
      * the session even when no pages are triggered but at the same time we want to keep using
      * the same session as long as the current activity is not paused (long video for example).
+     *
+     * @param now current time from {@link SystemClock#elapsedRealtime()}.
      */
-    private void sendStartSessionIfNeeded() {
-        if (mSid == null || hasSessionTimedOut()) {
+    private void sendStartSessionIfNeeded(long now) {
+        if (mSid == null || hasSessionTimedOut(now)) {
 
             /* New session: generate a new identifier. */
             mSid = UUIDUtils.randomUUID();
@@ -129,7 +132,7 @@ public class SessionTracker extends AbstractChannelListener {
              * Record queued time for the session log itself to avoid double log if resuming
              * from background after timeout and sending a log at same time we resume like a page.
              */
-            mLastQueuedLogTime = SystemClock.elapsedRealtime();
+            mLastQueuedLogTime = now;
 
             /* Enqueue a start session log. */
             StartSessionLog startSessionLog = new StartSessionLog();
@@ -146,7 +149,7 @@ public class SessionTracker extends AbstractChannelListener {
         /* Record resume time for session timeout management. */
         AppCenterLog.debug(Analytics.LOG_TAG, "onActivityResumed");
         mLastResumedTime = SystemClock.elapsedRealtime();
-        sendStartSessionIfNeeded();
+        sendStartSessionIfNeeded(mLastResumedTime);
     }
 
     /**
@@ -169,32 +172,35 @@ public class SessionTracker extends AbstractChannelListener {
     /**
      * Check if current session has timed out.
      *
+     * @param now current time from {@link SystemClock#elapsedRealtime()}.
      * @return true if current session has timed out, false otherwise.
      */
-    private boolean hasSessionTimedOut() {
+    private boolean hasSessionTimedOut(long now) {
 
-        /* Compute how long we have not sent a log. */
-        long now = SystemClock.elapsedRealtime();
+        /* Compute how long we have not sent a log: that check is enough for most logs. */
         boolean noLogSentForLong = now - mLastQueuedLogTime >= SESSION_TIMEOUT;
+        if (!noLogSentForLong) {
+            return false;
+        }
 
         /* Corner case: we have not been paused yet, typically we stayed on the first activity or we are called from background (for example a broadcast intent that wakes up application, new process). */
         if (mLastPausedTime == null) {
 
             /* If we saw a resume in event, we are in foreground, so no expiration. If we are in background, check how long. */
-            return mLastResumedTime == null && noLogSentForLong;
+            return mLastResumedTime == null;
         }
 
         /* Corner case 2: we saw a pause but not a resume event: we are in background, check how long. */
         if (mLastResumedTime == null) {
 
             /* Note that this corner case is likely an integration issue. It's not supposed to happen. Likely the SDK has been configured too late. */
-            return noLogSentForLong;
+            return true;
         }
 
         /* Normal case: we saw both resume and paused events, compare all times. */
         boolean isBackgroundForLong = mLastPausedTime >= mLastResumedTime && now - mLastPausedTime >= SESSION_TIMEOUT;
         boolean wasBackgroundForLong = mLastResumedTime - Math.max(mLastPausedTime, mLastQueuedLogTime) >= SESSION_TIMEOUT;
-        AppCenterLog.debug(Analytics.LOG_TAG, "noLogSentForLong=" + noLogSentForLong + " isBackgroundForLong=" + isBackgroundForLong + " wasBackgroundForLong=" + wasBackgroundForLong);
-        return noLogSentForLong && (isBackgroundForLong || wasBackgroundForLong);
+        AppCenterLog.debug(Analytics.LOG_TAG, "noLogSentForLong=true isBackgroundForLong=" + isBackgroundForLong + " wasBackgroundForLong=" + wasBackgroundForLong);
+        return isBackgroundForLong || wasBackgroundForLong;
     }
 }
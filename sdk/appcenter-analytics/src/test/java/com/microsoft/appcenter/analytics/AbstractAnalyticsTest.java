@@ -1,5 +1,6 @@
 package com.microsoft.appcenter.analytics;
 
+import android.os.Handler;
 import android.os.SystemClock;
 
 import com.microsoft.appcenter.AppCenter;
@@ -23,6 +24,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -60,6 +62,7 @@ abstract class AbstractAnalyticsTest {
         mockStatic(HandlerUtils.class);
         doAnswer(runNow).when(HandlerUtils.class);
         HandlerUtils.runOnUiThread(any(Runnable.class));
+        when(HandlerUtils.getMainHandler()).thenReturn(mock(Handler.class));
 
         /* First call to com.microsoft.appcenter.AppCenter.isEnabled shall return true, initial state. */
         mockStatic(StorageHelper.PreferencesStorage.class);
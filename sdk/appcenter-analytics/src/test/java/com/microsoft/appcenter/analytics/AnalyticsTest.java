@@ -1,8 +1,14 @@
 package com.microsoft.appcenter.analytics;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
 
 import com.microsoft.appcenter.AppCenter;
+import com.microsoft.appcenter.AppCenterHandler;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
@@ -18,6 +24,7 @@ import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
@@ -25,6 +32,7 @@ import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.async.AppCenterConsumer;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
@@ -35,9 +43,11 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -214,6 +224,261 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         assertNull(argumentCaptor.getValue().getTypedProperties());
     }
 
+    @Test
+    public void trackEventStartsSession() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        final List<Channel.Listener> listeners = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                listeners.add((Channel.Listener) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(channel).addListener(any(Channel.Listener.class));
+
+        /* Simulate the channel calling listeners when a log is enqueued. */
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Log log = (Log) invocation.getArguments()[0];
+                String groupName = (String) invocation.getArguments()[1];
+                for (Channel.Listener listener : new ArrayList<>(listeners)) {
+                    listener.onPreparingLog(log, groupName);
+                }
+                return null;
+            }
+        }).when(channel).enqueue(any(Log.class), anyString());
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+
+        /* Tracking an event starts a session and the event is part of it. */
+        Analytics.trackEvent("eventName");
+        ArgumentCaptor<Log> argumentCaptor = ArgumentCaptor.forClass(Log.class);
+        verify(channel, times(2)).enqueue(argumentCaptor.capture(), eq(Analytics.ANALYTICS_GROUP));
+        List<Log> logs = argumentCaptor.getAllValues();
+        assertTrue(logs.get(0) instanceof EventLog);
+        assertTrue(logs.get(1) instanceof StartSessionLog);
+        assertNotNull(logs.get(1).getSid());
+        assertEquals(logs.get(1).getSid(), logs.get(0).getSid());
+    }
+
+    @Test
+    public void trackEventsProcessedTogether() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        AppCenterHandler handler = mock(AppCenterHandler.class);
+        final List<Runnable> commands = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                commands.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(handler).post(any(Runnable.class), any(Runnable.class));
+        analytics.onStarting(handler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        for (Runnable command : commands) {
+            command.run();
+        }
+        commands.clear();
+
+        /* Events tracked before the command runs are processed by the same command. */
+        Analytics.trackEvent("event1");
+        Analytics.trackEvent("event2");
+        Analytics.trackEvent("event3");
+        assertEquals(1, commands.size());
+        commands.get(0).run();
+        ArgumentCaptor<EventLog> argumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(3)).enqueue(argumentCaptor.capture(), anyString());
+        assertEquals("event1", argumentCaptor.getAllValues().get(0).getName());
+        assertEquals("event2", argumentCaptor.getAllValues().get(1).getName());
+        assertEquals("event3", argumentCaptor.getAllValues().get(2).getName());
+
+        /* Timestamp is set by the channel so that the session tracker correlates with the current session. */
+        assertNull(argumentCaptor.getValue().getTimestamp());
+
+        /* Next event posts a new command. */
+        Analytics.trackEvent("event4");
+        assertEquals(2, commands.size());
+    }
+
+    @Test
+    public void trackEventWithSamplingPolicy() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Analytics.setEventSamplingPolicy("dropped", EventSamplingPolicy.fixedRate(0));
+        Analytics.setEventSamplingPolicy("limited", EventSamplingPolicy.tokenBucket(1, 1));
+        Analytics.setEventSamplingPolicy(null, EventSamplingPolicy.fixedRate(0));
+        verifyStatic();
+        AppCenterLog.error(anyString(), eq("Event name may not be null."));
+
+        /* Only the first limited event is sent. */
+        Analytics.trackEvent("dropped");
+        Analytics.trackEvent("dropped", new EventProperties());
+        Analytics.trackEvent("limited");
+        Analytics.trackEvent("limited", new HashMap<String, String>());
+        Analytics.trackEvent("other");
+        verify(channel, times(2)).enqueue(any(EventLog.class), anyString());
+
+        /* Removing the policy sends all events again. */
+        Analytics.setEventSamplingPolicy("dropped", null);
+        Analytics.trackEvent("dropped");
+        verify(channel, times(3)).enqueue(any(EventLog.class), anyString());
+    }
+
+    @Test
+    public void trackTemplatedEvent() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        EventTemplate template = new EventTemplate.Builder("eventName")
+                .declareString("s")
+                .declareLong("l")
+                .build();
+        assertNotNull(template);
+
+        /* Null is ignored. */
+        Analytics.trackEvent((EventTemplate.Event) null);
+        verify(channel, never()).enqueue(any(Log.class), anyString());
+
+        /* Only set values are sent. */
+        EventTemplate.Event event = template.newEvent().set("l", 1L);
+        Analytics.trackEvent(event);
+        ArgumentCaptor<EventLog> argumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel).enqueue(argumentCaptor.capture(), eq(Analytics.ANALYTICS_GROUP));
+        EventLog eventLog = argumentCaptor.getValue();
+        assertEquals("eventName", eventLog.getName());
+        assertEquals(1, eventLog.getTypedProperties().size());
+        assertEquals("l", eventLog.getTypedProperties().get(0).getName());
+        assertEquals(1L, ((LongTypedProperty) eventLog.getTypedProperties().get(0)).getValue());
+
+        /* Values are copied when tracking, the event can be reused. */
+        event.set("l", 2L).set("s", "value");
+        Analytics.trackEvent(event);
+        verify(channel, times(2)).enqueue(argumentCaptor.capture(), eq(Analytics.ANALYTICS_GROUP));
+        assertEquals(1L, ((LongTypedProperty) eventLog.getTypedProperties().get(0)).getValue());
+        eventLog = argumentCaptor.getValue();
+        assertEquals(2, eventLog.getTypedProperties().size());
+        assertEquals("s", eventLog.getTypedProperties().get(0).getName());
+        assertEquals("value", ((StringTypedProperty) eventLog.getTypedProperties().get(0)).getValue());
+        assertEquals(2L, ((LongTypedProperty) eventLog.getTypedProperties().get(1)).getValue());
+
+        /* Sampling policies apply. */
+        Analytics.setEventSamplingPolicy("eventName", EventSamplingPolicy.fixedRate(0));
+        Analytics.trackEvent(event);
+        verify(channel, times(2)).enqueue(any(Log.class), anyString());
+    }
+
+    @Test
+    public void trackMetric() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        Handler mainHandler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mainHandler);
+
+        /* Invalid samples. */
+        Analytics.trackMetric(null, 1);
+        Analytics.trackMetric("", 1);
+        Analytics.trackMetric("latency", Double.NaN);
+        Analytics.trackMetric("latency", Double.POSITIVE_INFINITY);
+        verify(mainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+
+        /* Samples are aggregated, the flush is scheduled once. */
+        Analytics.trackMetric("latency", 10);
+        Analytics.trackMetric("latency", 30);
+        Analytics.trackMetric("latency", 20, Collections.singletonMap("screen", "home"));
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(mainHandler).postDelayed(flush.capture(), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        verify(channel, never()).enqueue(any(Log.class), anyString());
+        flush.getValue().run();
+        ArgumentCaptor<EventLog> argumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel, times(2)).enqueue(argumentCaptor.capture(), eq(Analytics.ANALYTICS_GROUP));
+        EventLog summary = argumentCaptor.getAllValues().get(0);
+        assertEquals("latency", summary.getName());
+        assertEquals(2, ((LongTypedProperty) summary.getTypedProperties().get(0)).getValue());
+        assertEquals(40, ((DoubleTypedProperty) summary.getTypedProperties().get(1)).getValue(), 0);
+        assertEquals(6, argumentCaptor.getAllValues().get(1).getTypedProperties().size());
+
+        /* Next sample schedules another flush, going to background flushes too. */
+        Analytics.trackMetric("latency", 10);
+        verify(mainHandler, times(2)).postDelayed(any(Runnable.class), eq(Analytics.METRICS_FLUSH_INTERVAL));
+        analytics.onActivityPaused(new Activity());
+        verify(channel, times(3)).enqueue(any(EventLog.class), eq(Analytics.ANALYTICS_GROUP));
+        verify(mainHandler, times(2)).removeCallbacks(flush.getValue());
+
+        /* Rejected samples do not schedule a flush. */
+        Analytics.trackMetric("latency", 10, Collections.<String, String>singletonMap("screen", null));
+        verify(mainHandler, times(2)).postDelayed(any(Runnable.class), eq(Analytics.METRICS_FLUSH_INTERVAL));
+
+        /* Disabling discards samples. */
+        Analytics.trackMetric("latency", 10);
+        Analytics.setEnabled(false);
+        verify(mainHandler, times(3)).removeCallbacks(flush.getValue());
+        Analytics.setEnabled(true);
+        flush.getValue().run();
+        verify(channel, times(3)).enqueue(any(EventLog.class), eq(Analytics.ANALYTICS_GROUP));
+    }
+
+    @Test
+    public void trackScreenPerformance() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        android.app.Activity activity = mock(android.app.Activity.class);
+        Window window = mock(Window.class);
+        View decorView = mock(View.class);
+        ViewTreeObserver viewTreeObserver = mock(ViewTreeObserver.class);
+        when(activity.getWindow()).thenReturn(window);
+        when(window.getDecorView()).thenReturn(decorView);
+        when(decorView.getViewTreeObserver()).thenReturn(viewTreeObserver);
+        when(viewTreeObserver.isAlive()).thenReturn(true);
+
+        /* Disabled by default. */
+        assertFalse(Analytics.isScreenPerformanceTrackingEnabled());
+        analytics.onActivityResumed(activity);
+        analytics.onActivityPaused(activity);
+        verify(viewTreeObserver, never()).addOnDrawListener(any(ViewTreeObserver.OnDrawListener.class));
+        verify(channel, never()).enqueue(isA(EventLog.class), anyString());
+
+        /* When enabled, a visit sends one event on pause. */
+        Analytics.setScreenPerformanceTrackingEnabled(true);
+        assertTrue(Analytics.isScreenPerformanceTrackingEnabled());
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        analytics.onActivityResumed(activity);
+        verify(viewTreeObserver).addOnDrawListener(any(ViewTreeObserver.OnDrawListener.class));
+        when(SystemClock.elapsedRealtime()).thenReturn(3000L);
+        analytics.onActivityPaused(activity);
+        verify(viewTreeObserver).removeOnDrawListener(any(ViewTreeObserver.OnDrawListener.class));
+        ArgumentCaptor<EventLog> argumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        verify(channel).enqueue(argumentCaptor.capture(), eq(Analytics.ANALYTICS_GROUP));
+        EventLog eventLog = argumentCaptor.getValue();
+        assertEquals(ScreenPerformanceTracker.EVENT_NAME, eventLog.getName());
+        Map<String, TypedProperty> properties = new HashMap<>();
+        for (TypedProperty property : eventLog.getTypedProperties()) {
+            properties.put(property.getName(), property);
+        }
+        assertNotNull(properties.get(ScreenPerformanceTracker.PROPERTY_SCREEN));
+        assertNull(properties.get(ScreenPerformanceTracker.PROPERTY_TIME_TO_FIRST_DRAW));
+        assertEquals(2000L, ((LongTypedProperty) properties.get(ScreenPerformanceTracker.PROPERTY_TIME_IN_SCREEN)).getValue());
+
+        /* Disabling while in a screen stops tracking without sending. */
+        analytics.onActivityResumed(activity);
+        Analytics.setScreenPerformanceTrackingEnabled(false);
+        verify(viewTreeObserver, times(2)).removeOnDrawListener(any(ViewTreeObserver.OnDrawListener.class));
+        analytics.onActivityPaused(activity);
+        verify(channel).enqueue(isA(EventLog.class), anyString());
+    }
+
     @Test
     public void trackEventFromAppWithNullMapProperty() {
         Analytics analytics = Analytics.getInstance();
@@ -646,6 +911,26 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         verify(analyticsListener, never()).onSendingFailed(any(EventLog.class), any(Exception.class));
     }
 
+    @Test
+    public void checkTokenExpiryBeforeSending() {
+        AuthenticationProvider authenticationProvider = mock(AuthenticationProvider.class);
+        Channel.GroupListener listener = Analytics.getInstance().getChannelListener();
+
+        /* Nothing to check without authentication provider. */
+        listener.onBeforeSending(mock(CommonSchemaLog.class));
+        AnalyticsTransmissionTarget.sAuthenticationProvider = authenticationProvider;
+        try {
+
+            /* Only Common Schema logs use tickets. */
+            listener.onBeforeSending(new EventLog());
+            verify(authenticationProvider, never()).checkTokenExpiry();
+            listener.onBeforeSending(mock(CommonSchemaLog.class));
+            verify(authenticationProvider).checkTokenExpiry();
+        } finally {
+            AnalyticsTransmissionTarget.sAuthenticationProvider = null;
+        }
+    }
+
     @Test
     public void appOnlyFeatures() {
 
@@ -11,9 +11,11 @@ import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.Extensions;
 import com.microsoft.appcenter.ingestion.models.one.ProtocolExtension;
+import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +41,8 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.endsWith;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
@@ -103,6 +107,132 @@ public class AnalyticsTransmissionTargetTest extends AbstractAnalyticsTest {
         testTrackEventWithTransmissionTarget(null, false);
     }
 
+    @Test
+    public void enabledStateReadOnceFromStorage() {
+        AnalyticsTransmissionTarget parent = Analytics.getTransmissionTarget("parent");
+        assertNotNull(parent);
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        child.trackEvent("eventName");
+        child.trackEvent("eventName");
+        parent.trackEvent("eventName");
+        verify(mChannel, times(3)).enqueue(any(EventLog.class), anyString());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.getBoolean(endsWith("/parent"), eq(true));
+        verifyStatic();
+        StorageHelper.PreferencesStorage.getBoolean(endsWith("/child"), eq(true));
+
+        /* Disabling parent updates the cached state of descendants. */
+        parent.setEnabledAsync(false);
+        child.trackEvent("eventName");
+        parent.trackEvent("eventName");
+        verify(mChannel, times(3)).enqueue(any(EventLog.class), anyString());
+        assertFalse(child.isEnabledAsync().get());
+        parent.setEnabledAsync(true);
+        child.trackEvent("eventName");
+        verify(mChannel, times(4)).enqueue(any(EventLog.class), anyString());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.getBoolean(endsWith("/parent"), eq(true));
+        verifyStatic();
+        StorageHelper.PreferencesStorage.getBoolean(endsWith("/child"), eq(true));
+    }
+
+    @Test
+    public void cachedEnabledStateIncludesAncestors() {
+        AnalyticsTransmissionTarget parent = Analytics.getTransmissionTarget("parent");
+        assertNotNull(parent);
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        AnalyticsTransmissionTarget grandChild = child.getTransmissionTarget("grandChild");
+        assertTrue(grandChild.isEnabledAsync().get());
+
+        /* Disabling parent invalidates the cached state of the whole subtree. */
+        parent.setEnabledAsync(false);
+        assertFalse(child.isEnabledAsync().get());
+        assertFalse(grandChild.isEnabledAsync().get());
+
+        /* Children created after disabling are disabled as well, and cannot be enabled. */
+        AnalyticsTransmissionTarget otherChild = parent.getTransmissionTarget("otherChild");
+        assertFalse(otherChild.isEnabledAsync().get());
+        otherChild.setEnabledAsync(true);
+        assertFalse(otherChild.isEnabledAsync().get());
+
+        /* Enabling parent enables the subtree again. */
+        parent.setEnabledAsync(true);
+        assertTrue(grandChild.isEnabledAsync().get());
+        assertTrue(otherChild.isEnabledAsync().get());
+    }
+
+    @Test
+    public void enabledStateSharedByTargetsWithSameToken() {
+        AnalyticsTransmissionTarget child1 = Analytics.getTransmissionTarget("parent1").getTransmissionTarget("child");
+        AnalyticsTransmissionTarget child2 = Analytics.getTransmissionTarget("parent2").getTransmissionTarget("child");
+        assertTrue(child1.isEnabledAsync().get());
+        assertTrue(child2.isEnabledAsync().get());
+
+        /* Both targets use the same preference key, disabling one disables the other. */
+        child1.setEnabledAsync(false);
+        assertFalse(child2.isEnabledAsync().get());
+        child2.trackEvent("eventName");
+        verify(mChannel, never()).enqueue(any(Log.class), anyString());
+        child2.setEnabledAsync(true);
+        assertTrue(child1.isEnabledAsync().get());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.getBoolean(endsWith("/child"), eq(true));
+    }
+
+    @Test
+    public void trackEventWithSamplingPolicy() {
+        AnalyticsTransmissionTarget parent = Analytics.getTransmissionTarget("parent");
+        assertNotNull(parent);
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        AnalyticsTransmissionTarget other = Analytics.getTransmissionTarget("other");
+        assertNotNull(other);
+        parent.setEventSamplingPolicy("sampled", EventSamplingPolicy.maxEventsPerPeriod(1, 1000));
+        child.setEventSamplingPolicy("dropped", EventSamplingPolicy.fixedRate(0));
+
+        /* Child uses the parent policy, the budget is shared. */
+        parent.trackEvent("sampled");
+        child.trackEvent("sampled");
+        child.trackEvent("dropped");
+        parent.trackEvent("dropped");
+
+        /* Other targets and Analytics have their own policies. */
+        other.trackEvent("dropped");
+        verify(mChannel, times(3)).enqueue(any(EventLog.class), anyString());
+
+        /* Removing the policy sends all events again. */
+        parent.setEventSamplingPolicy("sampled", null);
+        child.trackEvent("sampled");
+        verify(mChannel, times(4)).enqueue(any(EventLog.class), anyString());
+    }
+
+    @Test
+    public void trackTemplatedEvent() {
+        AnalyticsTransmissionTarget target = Analytics.getTransmissionTarget("token");
+        assertNotNull(target);
+        target.getPropertyConfigurator().setEventProperty("common", "value");
+        EventTemplate template = new EventTemplate.Builder("eventName").declareBoolean("b").build();
+        assertNotNull(template);
+
+        /* Null is ignored. */
+        target.trackEvent((EventTemplate.Event) null);
+        verify(mChannel, never()).enqueue(any(Log.class), anyString());
+
+        /* Common properties are merged with template values. */
+        target.trackEvent(template.newEvent().set("b", true));
+        ArgumentCaptor<EventLog> argumentCaptor = ArgumentCaptor.forClass(EventLog.class);
+        verify(mChannel).enqueue(argumentCaptor.capture(), anyString());
+        EventLog eventLog = argumentCaptor.getValue();
+        assertEquals("eventName", eventLog.getName());
+        assertEquals(2, eventLog.getTypedProperties().size());
+        for (TypedProperty property : eventLog.getTypedProperties()) {
+            if ("b".equals(property.getName())) {
+                assertTrue(((BooleanTypedProperty) property).getValue());
+            } else {
+                assertEquals("common", property.getName());
+            }
+        }
+    }
+
     private void testTrackEventWithTransmissionTarget(final String defaultToken, boolean startFromApp) {
 
         /* Overwrite setup for this test. */
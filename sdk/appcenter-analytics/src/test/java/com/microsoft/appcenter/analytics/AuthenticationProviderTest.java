@@ -1,5 +1,7 @@
 package com.microsoft.appcenter.analytics;
 
+import android.os.Handler;
+
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.TicketCache;
 
@@ -17,7 +19,9 @@ import static com.microsoft.appcenter.analytics.AuthenticationProvider.Type.MSA_
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
@@ -35,9 +39,14 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 @PrepareForTest({TicketCache.class, HandlerUtils.class})
 public class AuthenticationProviderTest {
 
+    private Handler mMainHandler;
+
     @Before
     public void setUp() {
         mockStatic(TicketCache.class);
+        mockStatic(HandlerUtils.class);
+        mMainHandler = mock(Handler.class);
+        when(HandlerUtils.getMainHandler()).thenReturn(mMainHandler);
     }
 
     @Test
@@ -179,4 +188,45 @@ public class AuthenticationProviderTest {
         verifyStatic(times(3));
         TicketCache.putTicket(eq(authenticationProvider.getTicketKeyHash()), eq("d:test"));
     }
+
+    @Test
+    public void scheduleRefreshBeforeExpiry() {
+        AuthenticationProvider.TokenProvider tokenProvider = mock(AuthenticationProvider.TokenProvider.class);
+        ArgumentCaptor<AuthenticationProvider.AuthenticationCallback> callback = ArgumentCaptor.forClass(AuthenticationProvider.AuthenticationCallback.class);
+        AuthenticationProvider authenticationProvider = new AuthenticationProvider(MSA_COMPACT, "key", tokenProvider);
+
+        /* A failed authentication does not schedule a refresh. */
+        authenticationProvider.acquireTokenAsync();
+        verify(tokenProvider).acquireToken(anyString(), callback.capture());
+        callback.getValue().onAuthenticationResult(null, null);
+        verify(mMainHandler, never()).postDelayed(any(Runnable.class), anyLong());
+
+        /* Refresh is scheduled 10 minutes before expiry. */
+        authenticationProvider.acquireTokenAsync();
+        verify(tokenProvider, times(2)).acquireToken(anyString(), callback.capture());
+        Date expiryDate = mock(Date.class);
+        when(expiryDate.getTime()).thenReturn(System.currentTimeMillis() + 60 * 60 * 1000);
+        callback.getValue().onAuthenticationResult("test", expiryDate);
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(mMainHandler).postDelayed(refresh.capture(), delay.capture());
+        assertTrue(delay.getValue() > 49 * 60 * 1000);
+        assertTrue(delay.getValue() <= 50 * 60 * 1000);
+
+        /* Running the refresh acquires a new token, a short lived token is not refreshed in a loop. */
+        refresh.getValue().run();
+        verify(tokenProvider, times(3)).acquireToken(anyString(), callback.capture());
+        when(expiryDate.getTime()).thenReturn(System.currentTimeMillis() + 60 * 1000);
+        callback.getValue().onAuthenticationResult("test2", expiryDate);
+        verify(mMainHandler).postDelayed(refresh.getValue(), AuthenticationProvider.MIN_REFRESH_DELAY);
+        verify(mMainHandler, times(2)).removeCallbacks(refresh.getValue());
+
+        /* Once replaced, the provider stops refreshing. */
+        authenticationProvider.cancelScheduledRefresh();
+        verify(mMainHandler, times(3)).removeCallbacks(refresh.getValue());
+        refresh.getValue().run();
+        verify(tokenProvider, times(4)).acquireToken(anyString(), callback.capture());
+        callback.getValue().onAuthenticationResult("test3", expiryDate);
+        verify(mMainHandler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
 }
@@ -0,0 +1,102 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class EventSamplingPolicyTest {
+
+    @Rule
+    public final PowerMockRule rule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void invalidParameters() {
+        assertNull(EventSamplingPolicy.fixedRate(-0.1));
+        assertNull(EventSamplingPolicy.fixedRate(1.1));
+        assertNull(EventSamplingPolicy.fixedRate(Double.NaN));
+        assertNotNull(EventSamplingPolicy.fixedRate(0));
+        assertNotNull(EventSamplingPolicy.fixedRate(1));
+        assertNull(EventSamplingPolicy.maxEventsPerPeriod(-1, 1000));
+        assertNull(EventSamplingPolicy.maxEventsPerPeriod(1, 0));
+        assertNotNull(EventSamplingPolicy.maxEventsPerPeriod(0, 1000));
+        assertNull(EventSamplingPolicy.tokenBucket(0, 1));
+        assertNull(EventSamplingPolicy.tokenBucket(Double.POSITIVE_INFINITY, 1));
+        assertNull(EventSamplingPolicy.tokenBucket(Double.NaN, 1));
+        assertNull(EventSamplingPolicy.tokenBucket(1, 0));
+        assertNotNull(EventSamplingPolicy.tokenBucket(0.5, 1));
+    }
+
+    @Test
+    public void fixedRate() {
+        Random random = mock(Random.class);
+        when(random.nextDouble()).thenReturn(0.0, 0.24, 0.25, 0.99);
+        EventSamplingPolicy policy = new EventSamplingPolicy.FixedRate(0.25, random);
+        assertTrue(policy.sample(0));
+        assertTrue(policy.sample(0));
+        assertFalse(policy.sample(0));
+        assertFalse(policy.sample(0));
+    }
+
+    @Test
+    public void maxEventsPerPeriod() {
+        EventSamplingPolicy policy = EventSamplingPolicy.maxEventsPerPeriod(2, 1000);
+        assertNotNull(policy);
+        assertTrue(policy.sample(500));
+        assertTrue(policy.sample(600));
+        assertFalse(policy.sample(1499));
+
+        /* Next period. */
+        assertTrue(policy.sample(1500));
+        assertTrue(policy.sample(1500));
+        assertFalse(policy.sample(1500));
+
+        /* Nothing is sent with 0. */
+        policy = EventSamplingPolicy.maxEventsPerPeriod(0, 1000);
+        assertNotNull(policy);
+        assertFalse(policy.sample(0));
+    }
+
+    @Test
+    public void tokenBucket() {
+        EventSamplingPolicy policy = EventSamplingPolicy.tokenBucket(2, 3);
+        assertNotNull(policy);
+
+        /* Burst. */
+        assertTrue(policy.sample(1000));
+        assertTrue(policy.sample(1000));
+        assertTrue(policy.sample(1000));
+        assertFalse(policy.sample(1000));
+
+        /* 2 events per second. */
+        assertFalse(policy.sample(1499));
+        assertTrue(policy.sample(1500));
+        assertFalse(policy.sample(1500));
+        assertTrue(policy.sample(2000));
+
+        /* Tokens do not go beyond burst size. */
+        assertTrue(policy.sample(100000));
+        assertTrue(policy.sample(100000));
+        assertTrue(policy.sample(100000));
+        assertFalse(policy.sample(100000));
+    }
+}
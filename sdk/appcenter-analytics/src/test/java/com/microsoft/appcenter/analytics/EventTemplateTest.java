@@ -0,0 +1,165 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_NAME_LENGTH;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_COUNT;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_ITEM_LENGTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class EventTemplateTest {
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void invalidName() {
+        assertNull(new EventTemplate.Builder(null).build());
+        assertNull(new EventTemplate.Builder("").build());
+        verifyStatic(times(2));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+
+        /* Long names are truncated once. */
+        EventTemplate template = new EventTemplate.Builder(repeat('a', MAX_NAME_LENGTH + 1)).build();
+        assertNotNull(template);
+        assertEquals(repeat('a', MAX_NAME_LENGTH), template.getName());
+        verifyStatic();
+        AppCenterLog.warn(eq(Analytics.LOG_TAG), anyString());
+    }
+
+    @Test
+    public void declareKeys() {
+        String longKey = repeat('k', MAX_PROPERTY_ITEM_LENGTH + 1);
+        EventTemplate.Builder builder = new EventTemplate.Builder("name")
+                .declareString(null)
+                .declareString("")
+                .declareString("a")
+                .declareLong("a")
+                .declareString(longKey);
+        for (int i = 0; i < MAX_PROPERTY_COUNT; i++) {
+            builder.declareLong("key" + i);
+        }
+        EventTemplate template = builder.build();
+        assertNotNull(template);
+
+        /* Null, empty, duplicate and extra keys are skipped, long keys truncated. */
+        String[] keys = template.getKeys();
+        assertEquals(MAX_PROPERTY_COUNT, keys.length);
+        assertEquals("a", keys[0]);
+        assertEquals(longKey.substring(0, MAX_PROPERTY_ITEM_LENGTH), keys[1]);
+        assertEquals("key17", keys[MAX_PROPERTY_COUNT - 1]);
+        verifyStatic(times(5));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+        verifyStatic();
+        AppCenterLog.warn(eq(Analytics.LOG_TAG), anyString());
+
+        /* Keys are interned. */
+        assertSame(new String(new char[]{'a'}).intern(), keys[0]);
+    }
+
+    @Test
+    public void setValues() {
+        EventTemplate template = new EventTemplate.Builder("name")
+                .declareBoolean("b")
+                .declareDate("d")
+                .declareDouble("f")
+                .declareLong("l")
+                .declareString("s")
+                .build();
+        assertNotNull(template);
+        EventTemplate.Event event = template.newEvent();
+        assertSame(template, event.getTemplate());
+        assertTrue(event.toTypedProperties().isEmpty());
+        event.set("b", true)
+                .set("d", new Date(1))
+                .set("f", 0.5)
+                .set("l", 2L)
+                .set("s", "value");
+        verifyStatic(never());
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+        List<TypedProperty> properties = event.toTypedProperties();
+        assertEquals(5, properties.size());
+        assertEquals("b", properties.get(0).getName());
+        assertTrue(((BooleanTypedProperty) properties.get(0)).getValue());
+        assertEquals(new Date(1), ((DateTimeTypedProperty) properties.get(1)).getValue());
+        assertEquals(0.5, ((DoubleTypedProperty) properties.get(2)).getValue(), 0);
+        assertEquals(2L, ((LongTypedProperty) properties.get(3)).getValue());
+        assertEquals("s", properties.get(4).getName());
+        assertEquals("value", ((StringTypedProperty) properties.get(4)).getValue());
+
+        /* Same values as event properties. */
+        Map<String, TypedProperty> eventProperties = event.toEventProperties().getProperties();
+        assertEquals(5, eventProperties.size());
+        assertEquals("value", ((StringTypedProperty) eventProperties.get("s")).getValue());
+
+        /* Long string values are truncated. */
+        event.set("s", repeat('v', MAX_PROPERTY_ITEM_LENGTH + 1));
+        assertEquals(repeat('v', MAX_PROPERTY_ITEM_LENGTH), ((StringTypedProperty) event.toTypedProperties().get(4)).getValue());
+        verifyStatic();
+        AppCenterLog.warn(eq(Analytics.LOG_TAG), anyString());
+
+        /* Clear. */
+        assertTrue(event.clear().toTypedProperties().isEmpty());
+    }
+
+    @Test
+    public void invalidValues() {
+        EventTemplate template = new EventTemplate.Builder("name")
+                .declareDate("d")
+                .declareDouble("f")
+                .declareString("s")
+                .build();
+        assertNotNull(template);
+        EventTemplate.Event event = template.newEvent()
+                .set(null, "value")
+                .set("unknown", "value")
+                .set("s", 1L)
+                .set("s", (String) null)
+                .set("d", (Date) null)
+                .set("f", Double.NaN)
+                .set("f", Double.NEGATIVE_INFINITY);
+        assertTrue(event.toTypedProperties().isEmpty());
+        verifyStatic(times(7));
+        AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
+    }
+}
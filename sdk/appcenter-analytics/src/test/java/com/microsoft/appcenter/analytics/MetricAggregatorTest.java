@@ -0,0 +1,135 @@
+package com.microsoft.appcenter.analytics;
+
+import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class MetricAggregatorTest {
+
+    @Rule
+    public final PowerMockRule rule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void aggregateByNameAndDimensions() {
+        MetricAggregator aggregator = new MetricAggregator();
+        Map<String, String> dimensions = new HashMap<>();
+        dimensions.put("screen", "home");
+        dimensions.put("network", "wifi");
+        Map<String, String> sameDimensions = new HashMap<>();
+        sameDimensions.put("network", "wifi");
+        sameDimensions.put("screen", "home");
+        assertTrue(aggregator.add("latency", dimensions, 1));
+        assertFalse(aggregator.add("latency", sameDimensions, 15));
+        assertFalse(aggregator.add("latency", dimensions, 20000));
+        assertFalse(aggregator.add("latency", null, 3));
+        assertFalse(aggregator.add("scroll", Collections.<String, String>emptyMap(), 0.5));
+        List<MetricAggregator.Series> series = aggregator.flush();
+        assertEquals(3, series.size());
+
+        /* Check first series. */
+        MetricAggregator.Series latency = series.get(0);
+        assertEquals("latency", latency.name);
+        assertEquals(dimensions, latency.dimensions);
+        assertEquals(3, latency.count);
+        assertEquals(20016, latency.sum, 0);
+        assertEquals(1, latency.min, 0);
+        assertEquals(20000, latency.max, 0);
+        List<TypedProperty> properties = latency.toProperties();
+        assertEquals(7, properties.size());
+        assertEquals(MetricAggregator.PROPERTY_COUNT, properties.get(0).getName());
+        assertEquals(3, ((LongTypedProperty) properties.get(0)).getValue());
+        assertEquals(MetricAggregator.PROPERTY_SUM, properties.get(1).getName());
+        assertEquals(20016, ((DoubleTypedProperty) properties.get(1)).getValue(), 0);
+        assertEquals(MetricAggregator.PROPERTY_MIN, properties.get(2).getName());
+        assertEquals(MetricAggregator.PROPERTY_MAX, properties.get(3).getName());
+        assertEquals(MetricAggregator.PROPERTY_HISTOGRAM, properties.get(4).getName());
+        assertEquals("1,0,0,0,1,0,0,0,0,0,0,0,0,1", ((StringTypedProperty) properties.get(4)).getValue());
+        assertEquals("network", properties.get(5).getName());
+        assertEquals("wifi", ((StringTypedProperty) properties.get(5)).getValue());
+        assertEquals("screen", properties.get(6).getName());
+
+        /* Other series. */
+        assertEquals("latency", series.get(1).name);
+        assertEquals(1, series.get(1).count);
+        assertEquals("scroll", series.get(2).name);
+        assertEquals(5, series.get(2).toProperties().size());
+
+        /* Flush resets. */
+        assertTrue(aggregator.flush().isEmpty());
+        assertTrue(aggregator.add("latency", null, 1));
+        aggregator.clear();
+        assertTrue(aggregator.flush().isEmpty());
+    }
+
+    @Test
+    public void dimensionsOverriddenByAggregates() {
+        MetricAggregator aggregator = new MetricAggregator();
+        aggregator.add("metric", Collections.singletonMap(MetricAggregator.PROPERTY_COUNT, "a"), 1);
+        List<TypedProperty> properties = aggregator.flush().get(0).toProperties();
+        assertEquals(5, properties.size());
+        assertTrue(properties.get(0) instanceof LongTypedProperty);
+    }
+
+    @Test
+    public void invalidDimensions() {
+        MetricAggregator aggregator = new MetricAggregator();
+
+        /* Rejected samples do not start an interval. */
+        assertFalse(aggregator.add("metric", Collections.<String, String>singletonMap(null, "a"), 1));
+        assertFalse(aggregator.add("metric", Collections.<String, String>singletonMap("a", null), 1));
+        Map<String, String> dimensions = new HashMap<>();
+        for (int i = 0; i <= MetricAggregator.MAX_DIMENSIONS; i++) {
+            dimensions.put("d" + i, "v");
+        }
+        assertFalse(aggregator.add("metric", dimensions, 1));
+        assertTrue(aggregator.flush().isEmpty());
+        verifyStatic(times(3));
+        AppCenterLog.error(anyString(), anyString());
+    }
+
+    @Test
+    public void seriesLimit() {
+        MetricAggregator aggregator = new MetricAggregator();
+        for (int i = 0; i < MetricAggregator.MAX_SERIES; i++) {
+            aggregator.add("metric" + i, null, 1);
+        }
+        aggregator.add("other", null, 1);
+        aggregator.add("another", null, 1);
+
+        /* Existing series are still updated. */
+        aggregator.add("metric0", null, 1);
+        List<MetricAggregator.Series> series = aggregator.flush();
+        assertEquals(MetricAggregator.MAX_SERIES, series.size());
+        assertEquals(2, series.get(0).count);
+        verifyStatic();
+        AppCenterLog.warn(eq(Analytics.LOG_TAG), anyString());
+    }
+}
@@ -47,10 +47,12 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @PrepareForTest(Secure.class)
 public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
@@ -158,6 +160,30 @@ public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
         assertEquals("a:mockDeviceId", log.getExt().getDevice().getLocalId());
     }
 
+    @Test
+    public void deviceIdReadOnce() {
+
+        /* Mock context. */
+        mockStatic(Secure.class);
+        when(Secure.getString(any(ContentResolver.class), anyString())).thenReturn("mockDeviceId");
+        AnalyticsTransmissionTarget target = Analytics.getTransmissionTarget("test");
+        PropertyConfigurator pc = target.getPropertyConfigurator();
+        pc.collectDeviceId();
+
+        /* Prepare 2 logs. */
+        for (int i = 0; i < 2; i++) {
+            CommonSchemaLog log = new CommonSchemaEventLog();
+            log.setExt(new Extensions());
+            log.getExt().setDevice(new DeviceExtension());
+            log.getExt().setApp(new AppExtension());
+            log.setTag(target);
+            pc.onPreparingLog(log, "groupName");
+            assertEquals("a:mockDeviceId", log.getExt().getDevice().getLocalId());
+        }
+        verifyStatic(times(1));
+        Secure.getString(any(ContentResolver.class), anyString());
+    }
+
     @Test
     public void collectDeviceIdSavedWhenDisabled() {
         CommonSchemaLog log = new CommonSchemaEventLog();
@@ -247,6 +273,34 @@ public class PropertyConfiguratorTest extends AbstractAnalyticsTest {
         assertEquals("appLocale", log.getExt().getApp().getLocale());
     }
 
+    @Test
+    public void inheritedPropertiesUpdatedWhenParentChanges() {
+        AnalyticsTransmissionTarget parent = Analytics.getTransmissionTarget("parent");
+        AnalyticsTransmissionTarget child = parent.getTransmissionTarget("child");
+        parent.getPropertyConfigurator().setAppName("appName1");
+        child.getPropertyConfigurator().setAppVersion("appVersion");
+        CommonSchemaLog log = new CommonSchemaEventLog();
+        log.setExt(new Extensions());
+        log.getExt().setApp(new AppExtension());
+        log.setTag(child);
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("appName1", log.getExt().getApp().getName());
+        assertEquals("appVersion", log.getExt().getApp().getVer());
+        assertNull(log.getExt().getApp().getLocale());
+
+        /* Change parent after the child computed its values. */
+        parent.getPropertyConfigurator().setAppName("appName2");
+        parent.getPropertyConfigurator().setAppLocale("appLocale");
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("appName2", log.getExt().getApp().getName());
+        assertEquals("appLocale", log.getExt().getApp().getLocale());
+
+        /* Child override wins. */
+        child.getPropertyConfigurator().setAppName("childName");
+        child.getPropertyConfigurator().onPreparingLog(log, "groupName");
+        assertEquals("childName", log.getExt().getApp().getName());
+    }
+
     @Test
     public void checkGrandParentNotOverriddenByDescendants() {
         CommonSchemaLog log = new CommonSchemaEventLog();
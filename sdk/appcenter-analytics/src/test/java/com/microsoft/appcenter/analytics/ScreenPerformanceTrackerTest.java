@@ -0,0 +1,179 @@
+package com.microsoft.appcenter.analytics;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest({SystemClock.class, Choreographer.class})
+public class ScreenPerformanceTrackerTest {
+
+    private static final long FRAME_NANOS = 16 * 1000 * 1000;
+
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
+    private Activity mActivity;
+
+    private ViewTreeObserver mViewTreeObserver;
+
+    private Choreographer mChoreographer;
+
+    private static Map<String, TypedProperty> toMap(List<TypedProperty> properties) {
+        Map<String, TypedProperty> map = new HashMap<>();
+        for (TypedProperty property : properties) {
+            map.put(property.getName(), property);
+        }
+        return map;
+    }
+
+    private static long getLong(Map<String, TypedProperty> properties, String name) {
+        return ((LongTypedProperty) properties.get(name)).getValue();
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        mockStatic(Choreographer.class);
+        mChoreographer = mock(Choreographer.class);
+        when(Choreographer.getInstance()).thenReturn(mChoreographer);
+        mActivity = mock(Activity.class);
+        Window window = mock(Window.class);
+        View decorView = mock(View.class);
+        mViewTreeObserver = mock(ViewTreeObserver.class);
+        when(mActivity.getWindow()).thenReturn(window);
+        when(window.getDecorView()).thenReturn(decorView);
+        when(decorView.getViewTreeObserver()).thenReturn(mViewTreeObserver);
+        when(mViewTreeObserver.isAlive()).thenReturn(true);
+    }
+
+    @Test
+    public void pauseWithoutResume() {
+        ScreenPerformanceTracker tracker = new ScreenPerformanceTracker();
+        assertNull(tracker.onActivityPaused());
+
+        /* Activity without window is not tracked. */
+        tracker.onActivityResumed(mock(Activity.class), "Main");
+        assertNull(tracker.onActivityPaused());
+    }
+
+    @Test
+    public void screenNotDrawn() {
+        ScreenPerformanceTracker tracker = new ScreenPerformanceTracker();
+        when(SystemClock.elapsedRealtime()).thenReturn(100L);
+        tracker.onActivityResumed(mActivity, "Main");
+        verify(mViewTreeObserver).addOnDrawListener(tracker);
+        when(SystemClock.elapsedRealtime()).thenReturn(600L);
+        List<TypedProperty> properties = tracker.onActivityPaused();
+        assertNotNull(properties);
+        verify(mViewTreeObserver).removeOnDrawListener(tracker);
+        verify(mChoreographer, never()).postFrameCallback(tracker);
+        Map<String, TypedProperty> propertyMap = toMap(properties);
+        assertEquals(5, propertyMap.size());
+        assertEquals("Main", ((StringTypedProperty) propertyMap.get(ScreenPerformanceTracker.PROPERTY_SCREEN)).getValue());
+        assertFalse(propertyMap.containsKey(ScreenPerformanceTracker.PROPERTY_TIME_TO_FIRST_DRAW));
+        assertEquals(500, getLong(propertyMap, ScreenPerformanceTracker.PROPERTY_TIME_IN_SCREEN));
+        assertEquals(0, getLong(propertyMap, ScreenPerformanceTracker.PROPERTY_FRAMES));
+
+        /* Tracking stopped. */
+        assertNull(tracker.onActivityPaused());
+    }
+
+    @Test
+    public void frameTimings() {
+        ScreenPerformanceTracker tracker = new ScreenPerformanceTracker();
+        when(SystemClock.elapsedRealtime()).thenReturn(100L);
+        tracker.onActivityResumed(mActivity, "Main");
+
+        /* First draw starts the frame chain, drawing again does not post another callback. */
+        when(SystemClock.elapsedRealtime()).thenReturn(250L);
+        tracker.onDraw();
+        when(SystemClock.elapsedRealtime()).thenReturn(260L);
+        tracker.onDraw();
+        verify(mChoreographer).postFrameCallback(tracker);
+
+        /* First frame of the chain is the reference, the chain continues while drawing. */
+        long frameTime = FRAME_NANOS;
+        tracker.doFrame(frameTime);
+        verify(mChoreographer, times(2)).postFrameCallback(tracker);
+        tracker.onDraw();
+        frameTime += FRAME_NANOS;
+        tracker.doFrame(frameTime);
+        tracker.onDraw();
+        frameTime += 3 * FRAME_NANOS;
+        tracker.doFrame(frameTime);
+        tracker.onDraw();
+        frameTime += ScreenPerformanceTracker.FROZEN_FRAME_NANOS + 1;
+        tracker.doFrame(frameTime);
+        verify(mChoreographer, times(5)).postFrameCallback(tracker);
+
+        /* No draw since last frame: the chain stops. */
+        tracker.doFrame(frameTime + FRAME_NANOS);
+        verify(mChoreographer, times(5)).postFrameCallback(tracker);
+
+        /* Drawing again starts a new chain, an idle period is not counted as a frame. */
+        tracker.onDraw();
+        verify(mChoreographer, times(6)).postFrameCallback(tracker);
+        tracker.doFrame(frameTime + 100 * FRAME_NANOS);
+
+        /* Pause removes the pending callback. */
+        when(SystemClock.elapsedRealtime()).thenReturn(1100L);
+        tracker.onDraw();
+        Map<String, TypedProperty> properties = toMap(tracker.onActivityPaused());
+        verify(mChoreographer).removeFrameCallback(tracker);
+        assertEquals(150, getLong(properties, ScreenPerformanceTracker.PROPERTY_TIME_TO_FIRST_DRAW));
+        assertEquals(1000, getLong(properties, ScreenPerformanceTracker.PROPERTY_TIME_IN_SCREEN));
+        assertEquals(4, getLong(properties, ScreenPerformanceTracker.PROPERTY_FRAMES));
+        assertEquals(2, getLong(properties, ScreenPerformanceTracker.PROPERTY_JANKY_FRAMES));
+        assertEquals(1, getLong(properties, ScreenPerformanceTracker.PROPERTY_FROZEN_FRAMES));
+
+        /* Counters are reset on next visit. */
+        tracker.onActivityResumed(mActivity, "Other");
+        properties = toMap(tracker.onActivityPaused());
+        assertEquals(0, getLong(properties, ScreenPerformanceTracker.PROPERTY_FRAMES));
+        assertEquals(0, getLong(properties, ScreenPerformanceTracker.PROPERTY_JANKY_FRAMES));
+        assertEquals("Other", ((StringTypedProperty) properties.get(ScreenPerformanceTracker.PROPERTY_SCREEN)).getValue());
+    }
+
+    @Test
+    public void resumeWithoutPauseAndDeadObserver() {
+        ScreenPerformanceTracker tracker = new ScreenPerformanceTracker();
+        tracker.onActivityResumed(mActivity, "Main");
+        tracker.onActivityResumed(mActivity, "Main");
+        verify(mViewTreeObserver, times(2)).addOnDrawListener(tracker);
+        verify(mViewTreeObserver).removeOnDrawListener(tracker);
+
+        /* A dead observer cannot be used anymore. */
+        when(mViewTreeObserver.isAlive()).thenReturn(false);
+        tracker.stop();
+        verify(mViewTreeObserver).removeOnDrawListener(tracker);
+        assertNull(tracker.onActivityPaused());
+    }
+}
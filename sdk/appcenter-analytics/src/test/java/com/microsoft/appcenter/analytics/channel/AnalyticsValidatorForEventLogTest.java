@@ -16,9 +16,9 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
-import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_NAME_LENGTH;
-import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_PROPERTY_COUNT;
-import static com.microsoft.appcenter.analytics.channel.AnalyticsValidator.MAX_PROPERTY_ITEM_LENGTH;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_NAME_LENGTH;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_COUNT;
+import static com.microsoft.appcenter.analytics.channel.AnalyticsLimits.MAX_PROPERTY_ITEM_LENGTH;
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
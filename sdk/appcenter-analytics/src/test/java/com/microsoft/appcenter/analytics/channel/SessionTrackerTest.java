@@ -2,6 +2,7 @@ package com.microsoft.appcenter.analytics.channel;
 
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.util.Base64;
 
 import com.microsoft.appcenter.SessionContext;
 import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
@@ -21,6 +22,8 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -34,7 +37,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
@@ -50,11 +53,13 @@ import static org.powermock.api.mockito.PowerMockito.spy;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 @SuppressWarnings("unused")
-@PrepareForTest({SessionTracker.class, SessionContext.class, StorageHelper.PreferencesStorage.class, SystemClock.class})
+@PrepareForTest({SessionTracker.class, SessionContext.class, StorageHelper.PreferencesStorage.class, SystemClock.class, Base64.class})
 public class SessionTrackerTest {
 
     private final static String TEST_GROUP = "group_test";
 
+    private final static Charset BINARY_CHARSET = Charset.forName("ISO-8859-1");
+
     @Rule
     public PowerMockRule mPowerMockRule = new PowerMockRule();
 
@@ -70,6 +75,28 @@ public class SessionTrackerTest {
         return eventLog;
     }
 
+    /**
+     * Decode stored sessions to the legacy string format to check them.
+     */
+    private static Set<String> getStoredSessions() {
+        String storedSessions = StorageHelper.PreferencesStorage.getString(SessionContext.STORAGE_KEY);
+        if (storedSessions == null) {
+            return null;
+        }
+        Set<String> sessions = new LinkedHashSet<>();
+        ByteBuffer buffer = ByteBuffer.wrap(storedSessions.getBytes(BINARY_CHARSET));
+        assertEquals(1, buffer.get());
+        while (buffer.hasRemaining()) {
+            String session = buffer.getLong() + "/";
+            if (buffer.get() != 0) {
+                session += new UUID(buffer.getLong(), buffer.getLong());
+            }
+            session += "/" + buffer.getLong();
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
     private void spendTime(long time) {
         mMockTime += time;
         when(SystemClock.elapsedRealtime()).thenReturn(mMockTime);
@@ -84,18 +111,36 @@ public class SessionTrackerTest {
         PowerMockito.doAnswer(new Answer<Void>() {
 
             @Override
-            @SuppressWarnings("unchecked")
             public Void answer(InvocationOnMock invocation) {
 
                 /* Whenever the new state is persisted, make further calls return the new state. */
                 String key = (String) invocation.getArguments()[0];
-                Set<String> value = (Set<String>) invocation.getArguments()[1];
-                when(StorageHelper.PreferencesStorage.getStringSet(key)).thenReturn(value);
+                String value = (String) invocation.getArguments()[1];
+                when(StorageHelper.PreferencesStorage.getString(key)).thenReturn(value);
                 return null;
             }
         }).when(StorageHelper.PreferencesStorage.class);
-        StorageHelper.PreferencesStorage.putStringSet(anyString(), anySetOf(String.class));
+        StorageHelper.PreferencesStorage.putString(anyString(), anyString());
+        when(StorageHelper.PreferencesStorage.getString(anyString())).thenReturn(null);
         when(StorageHelper.PreferencesStorage.getStringSet(anyString())).thenReturn(null);
+
+        /* Use a lossless mock of base 64 encoding. */
+        mockStatic(Base64.class);
+        when(Base64.encodeToString(any(byte[].class), anyInt(), anyInt(), anyInt())).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                Object[] arguments = invocation.getArguments();
+                return new String((byte[]) arguments[0], (Integer) arguments[1], (Integer) arguments[2], BINARY_CHARSET);
+            }
+        });
+        when(Base64.decode(anyString(), anyInt())).thenAnswer(new Answer<byte[]>() {
+
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                return invocation.getArguments()[0].toString().getBytes(BINARY_CHARSET);
+            }
+        });
         SessionContext.unsetInstance();
         spendTime(1000);
         mChannel = mock(Channel.class);
@@ -415,24 +460,24 @@ public class SessionTrackerTest {
     public void maxOutStoredSessions() {
         SessionContext.getInstance();
         spendTime(1000);
-        Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        Set<String> sessions = getStoredSessions();
         assertNotNull(sessions);
         assertEquals(1, sessions.size());
         String firstSession = sessions.iterator().next();
         mSessionTracker.onPreparingLog(newEvent(), TEST_GROUP);
-        sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        sessions = getStoredSessions();
         assertNotNull(sessions);
         assertEquals(2, sessions.size());
         spendTime(30000);
         for (int i = 3; i <= 10; i++) {
             mSessionTracker.onPreparingLog(newEvent(), TEST_GROUP);
-            Set<String> intermediateSessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> intermediateSessions = getStoredSessions();
             assertNotNull(intermediateSessions);
             assertEquals(i, intermediateSessions.size());
             spendTime(30000);
         }
         mSessionTracker.onPreparingLog(newEvent(), TEST_GROUP);
-        Set<String> finalSessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        Set<String> finalSessions = getStoredSessions();
         assertNotNull(finalSessions);
         assertEquals(10, finalSessions.size());
         assertFalse(finalSessions.contains(firstSession));
@@ -473,7 +518,7 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(firstSessionTime + 1));
             mSessionTracker.onPreparingLog(log, TEST_GROUP);
             assertEquals(currentSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
             assertEquals(1, sessions.size());
         }
@@ -483,7 +528,7 @@ public class SessionTrackerTest {
             Log log = newEvent();
             mSessionTracker.onPreparingLog(log, TEST_GROUP);
             assertNotEquals(currentSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
             assertEquals(2, sessions.size());
         }
@@ -495,7 +540,7 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(firstSessionTime + 1));
             mSessionTracker.onPreparingLog(log, TEST_GROUP);
             assertEquals(firstSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
             assertEquals(2, sessions.size());
         }
@@ -507,7 +552,7 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(firstSessionTime + 1));
             mSessionTracker.onPreparingLog(log, TEST_GROUP);
             assertEquals(firstSid, log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
             assertEquals(2, sessions.size());
         }
@@ -518,7 +563,7 @@ public class SessionTrackerTest {
             log.setTimestamp(new Date(1));
             mSessionTracker.onPreparingLog(log, TEST_GROUP);
             assertNull(log.getSid());
-            Set<String> sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+            Set<String> sessions = getStoredSessions();
             assertNotNull(sessions);
             assertEquals(2, sessions.size());
         }
@@ -526,7 +571,7 @@ public class SessionTrackerTest {
         /* Clear sessions. */
         mSessionTracker.clearSessions();
         verifyStatic();
-        StorageHelper.PreferencesStorage.remove("sessions");
+        StorageHelper.PreferencesStorage.remove(SessionContext.STORAGE_KEY);
     }
 
     @Test
@@ -548,8 +593,10 @@ public class SessionTrackerTest {
         /* Generate a current session. */
         mSessionTracker.onPreparingLog(newEvent(), TEST_GROUP);
 
-        /* Check sessions in store. */
-        sessions = StorageHelper.PreferencesStorage.getStringSet("sessions");
+        /* Check sessions were migrated to the new format. */
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove("sessions");
+        sessions = getStoredSessions();
         assertNotNull(sessions);
         assertEquals(6, sessions.size());
         assertTrue(sessions.contains("100/10abd355-40a5-4b51-8071-cb5a4c338531/99"));
@@ -580,6 +627,56 @@ public class SessionTrackerTest {
         assertFalse(sessions.contains("999//"));
     }
 
+    @Test
+    public void invalidBinaryStorage() {
+
+        /* Unknown version. */
+        when(StorageHelper.PreferencesStorage.getString(SessionContext.STORAGE_KEY)).thenReturn(new String(new byte[]{2, 0, 0}, BINARY_CHARSET));
+        SessionContext.getInstance();
+        Set<String> sessions = getStoredSessions();
+        assertNotNull(sessions);
+        assertEquals(1, sessions.size());
+
+        /* Truncated record: keep the valid records. */
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 17 + 8);
+        buffer.put((byte) 1).putLong(100).put((byte) 0).putLong(99).putLong(200);
+        when(StorageHelper.PreferencesStorage.getString(SessionContext.STORAGE_KEY)).thenReturn(new String(buffer.array(), BINARY_CHARSET));
+        SessionContext.unsetInstance();
+        SessionContext.getInstance();
+        sessions = getStoredSessions();
+        assertNotNull(sessions);
+        assertEquals(2, sessions.size());
+        assertTrue(sessions.contains("100//99"));
+
+        /* Legacy storage is not read when there is storage in the new format. */
+        verifyStatic(never());
+        StorageHelper.PreferencesStorage.getStringSet(anyString());
+    }
+
+    @Test
+    public void sessionPersistedBeforeCrash() {
+
+        /* Start a session after launch, the history is written before returning. */
+        SessionContext.getInstance();
+        spendTime(1000);
+        Log log = newEvent();
+        mSessionTracker.onPreparingLog(log, TEST_GROUP);
+        long sessionTime = mMockTime;
+        Set<String> sessions = getStoredSessions();
+        assertNotNull(sessions);
+        assertEquals(2, sessions.size());
+
+        /* Crash right after then restart: the crash time is correlated with that session. */
+        spendTime(10);
+        long crashTime = mMockTime;
+        SessionContext.unsetInstance();
+        spendTime(1000);
+        SessionContext.SessionInfo session = SessionContext.getInstance().getSessionAt(crashTime);
+        assertNotNull(session);
+        assertEquals(log.getSid(), session.getSessionId());
+        assertEquals(sessionTime, session.getTimestamp());
+    }
+
     @Test
     public void ignoreStartService() {
         Log startServiceLog = spy(new StartServiceLog());
@@ -137,6 +137,9 @@ public class CrashesAndroidTest {
 
         /* Wait for start. */
         assertTrue(Crashes.isEnabled().get());
+
+        /* Wait for pending crashes to be processed in background. */
+        Crashes.getInstance().getUnprocessedErrorReports().get();
     }
 
     @Test
@@ -273,6 +276,7 @@ public class CrashesAndroidTest {
         File invalidFile2 = new File(ErrorLogHelper.getErrorStorageDirectory(), UUIDUtils.randomUUID() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
         assertTrue(invalidFile1.createNewFile());
         new FileWriter(invalidFile2).append("fake_data").close();
+        ErrorLogHelper.clearStoredFileIndex();
         assertEquals(2, ErrorLogHelper.getStoredErrorLogFiles().length);
 
         /* Invalid files should be cleared. */
@@ -39,6 +39,7 @@ public class ErrorLogHelperAndroidTest {
                 file.delete();
             }
         }
+        ErrorLogHelper.clearStoredFileIndex();
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -82,10 +83,13 @@ public class ErrorLogHelperAndroidTest {
             Thread.sleep(1000);
         }
 
+        /* Files were written directly, list the directory again. */
+        ErrorLogHelper.clearStoredFileIndex();
         assertEquals(testFiles[2], ErrorLogHelper.getLastErrorLogFile());
 
         testFiles[3] = new File(mErrorDirectory, new UUID(0, 3).toString() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
         StorageHelper.InternalStorage.write(testFiles[3], "contents");
+        ErrorLogHelper.indexStoredFile(testFiles[3]);
 
         /* Get all error logs stored in the file system when logs exist. */
         files = ErrorLogHelper.getStoredErrorLogFiles();
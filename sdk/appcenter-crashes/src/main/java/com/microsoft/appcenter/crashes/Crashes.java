@@ -2,6 +2,7 @@ package com.microsoft.appcenter.crashes;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -20,7 +21,10 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFact
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.CrashDumpReader;
+import com.microsoft.appcenter.crashes.utils.CrashDumpWriter;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableSnapshot;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
@@ -43,8 +47,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * Crashes service.
@@ -94,6 +100,36 @@ public class Crashes extends AbstractAppCenterService {
      */
     private static final int MAX_ATTACHMENT_PER_CRASH = 2;
 
+    /**
+     * Maximum size of a minidump that is attached to its report, larger attachments are rejected by the backend.
+     * This bounds the memory used to send a minidump as it's read fully in memory.
+     */
+    @VisibleForTesting
+    static final long MAX_MINIDUMP_ATTACHMENT_SIZE = 7 * 1024 * 1024;
+
+    /**
+     * Number of crashes within {@link #CRASH_LOOP_PERIOD} before a launch to consider the application in a crash loop.
+     */
+    @VisibleForTesting
+    static final int CRASH_LOOP_CRASH_COUNT = 3;
+
+    /**
+     * Period in milliseconds before a launch to look for crashes to detect a crash loop.
+     */
+    @VisibleForTesting
+    static final long CRASH_LOOP_PERIOD = 60 * 1000;
+
+    /**
+     * Executor running tasks right away on the calling thread.
+     */
+    private static final Executor CURRENT_THREAD_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
     /**
      * Default crashes listener.
      */
@@ -140,6 +176,16 @@ public class Crashes extends AbstractAppCenterService {
      */
     private UncaughtExceptionHandler mUncaughtExceptionHandler;
 
+    /**
+     * Writer for the next uncaught Java exception, set only when enabled.
+     */
+    private volatile CrashDumpWriter mCrashDumpWriter;
+
+    /**
+     * Limits applied to thread states in crash reports.
+     */
+    private ThreadDumpPolicy mThreadDumpPolicy = new ThreadDumpPolicy();
+
     /**
      * Custom crashes listener.
      */
@@ -160,6 +206,31 @@ public class Crashes extends AbstractAppCenterService {
      */
     private boolean mAutomaticProcessing = true;
 
+    /**
+     * Executor used to read pending error files, {@link AsyncTask#THREAD_POOL_EXECUTOR} if null.
+     */
+    private Executor mPendingErrorsExecutor;
+
+    /**
+     * True if the application crashed too many times recently, only the last crash is processed then.
+     */
+    private boolean mCrashLoopDetected;
+
+    /**
+     * Pending error files being processed.
+     */
+    private PendingErrorLogLoader mPendingErrorLogLoader;
+
+    /**
+     * Tasks waiting for pending error files to be processed.
+     */
+    private final List<Runnable> mPendingErrorsCallbacks = new ArrayList<>();
+
+    /**
+     * Limits handled errors sent in a loop.
+     */
+    private final HandledErrorRateLimiter mHandledErrorRateLimiter = new HandledErrorRateLimiter();
+
     /**
      * Init.
      */
@@ -257,6 +328,15 @@ public class Crashes extends AbstractAppCenterService {
         getInstance().setInstanceListener(listener);
     }
 
+    /**
+     * Sets the limits applied to the thread states captured in crash reports.
+     *
+     * @param threadDumpPolicy thread dump policy, null to capture all threads with their full stack.
+     */
+    public static void setThreadDumpPolicy(ThreadDumpPolicy threadDumpPolicy) {
+        getInstance().setInstanceThreadDumpPolicy(threadDumpPolicy);
+    }
+
     /**
      * Get the path where NDK minidump files should be created.
      * <p>
@@ -355,10 +435,21 @@ public class Crashes extends AbstractAppCenterService {
                     AppCenterLog.warn(LOG_TAG, "Failed to delete file " + file);
                 }
             }
+            ErrorLogHelper.clearStoredFileIndex();
+            ErrorLogHelper.removeStoredErrorAttachmentFiles();
+            mHandledErrorRateLimiter.clear();
             AppCenterLog.info(LOG_TAG, "Deleted crashes local files");
         }
     }
 
+    /**
+     * Keep the startup minimal in a crash loop: the last crash is sent before the other services start.
+     */
+    @Override
+    public synchronized boolean isDeferringOtherServices() {
+        return isInstanceEnabled() && isCrashLoop(System.currentTimeMillis());
+    }
+
     @Override
     public synchronized void onStarted(@NonNull Context context, @NonNull Channel channel, String appSecret, String transmissionTargetToken, boolean startedFromApp) {
         mContext = context;
@@ -450,6 +541,9 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void onSuccess(Log log) {
+                if (log instanceof ErrorAttachmentLog) {
+                    ErrorLogHelper.removeStoredErrorAttachmentFile((ErrorAttachmentLog) log);
+                }
                 processCallback(log, new CallbackProcessor() {
 
                     @Override
@@ -466,6 +560,9 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void onFailure(Log log, final java.lang.Exception e) {
+                if (log instanceof ErrorAttachmentLog) {
+                    ErrorLogHelper.removeStoredErrorAttachmentFile((ErrorAttachmentLog) log);
+                }
                 processCallback(log, new CallbackProcessor() {
 
                     @Override
@@ -501,6 +598,11 @@ public class Crashes extends AbstractAppCenterService {
     private synchronized void queueException(@NonNull final Throwable throwable, Map<String, String> properties) {
         queueException(new ExceptionModelBuilder() {
 
+            @Override
+            public String getFingerprint() {
+                return HandledErrorRateLimiter.getFingerprint(throwable);
+            }
+
             @Override
             public com.microsoft.appcenter.crashes.ingestion.models.Exception buildExceptionModel() {
                 return ErrorLogHelper.getModelExceptionFromThrowable(throwable);
@@ -517,6 +619,11 @@ public class Crashes extends AbstractAppCenterService {
     synchronized void queueException(@NonNull final com.microsoft.appcenter.crashes.ingestion.models.Exception modelException, Map<String, String> properties) {
         queueException(new ExceptionModelBuilder() {
 
+            @Override
+            public String getFingerprint() {
+                return HandledErrorRateLimiter.getFingerprint(modelException);
+            }
+
             @Override
             public com.microsoft.appcenter.crashes.ingestion.models.Exception buildExceptionModel() {
                 return modelException;
@@ -525,22 +632,34 @@ public class Crashes extends AbstractAppCenterService {
     }
 
     private synchronized void queueException(@NonNull final ExceptionModelBuilder exceptionModelBuilder, final Map<String, String> properties) {
+        final long timestamp = System.currentTimeMillis();
         post(new Runnable() {
 
             @Override
             public void run() {
+
+                /* Limit the same error only once enabled checks have been done, errors of a disabled service are not counted. */
+                String fingerprint = exceptionModelBuilder.getFingerprint();
+                if (!mHandledErrorRateLimiter.tryAcquire(fingerprint, timestamp)) {
+                    return;
+                }
                 HandledErrorLog errorLog = new HandledErrorLog();
                 errorLog.setId(UUID.randomUUID());
                 errorLog.setException(exceptionModelBuilder.buildExceptionModel());
-                errorLog.setProperties(properties);
+                errorLog.setProperties(mHandledErrorRateLimiter.addDroppedErrorProperties(fingerprint, properties));
                 mChannel.enqueue(errorLog, ERROR_GROUP);
             }
         });
     }
 
     private void initialize() {
+        cancelPendingErrors();
         boolean enabled = isInstanceEnabled();
         mInitializeTimestamp = enabled ? System.currentTimeMillis() : -1;
+        if (mCrashDumpWriter != null) {
+            mCrashDumpWriter.close();
+            mCrashDumpWriter = null;
+        }
         if (!enabled) {
             if (mUncaughtExceptionHandler != null) {
                 mUncaughtExceptionHandler.unregister();
@@ -552,6 +671,14 @@ public class Crashes extends AbstractAppCenterService {
             mUncaughtExceptionHandler = new UncaughtExceptionHandler();
             mUncaughtExceptionHandler.register();
 
+            /* Index stored error files once, other processes may have saved crashes since last time. */
+            ErrorLogHelper.clearStoredFileIndex();
+
+            /* Convert Java crash dumps to App Center crash files. */
+            for (File dumpFile : ErrorLogHelper.getStoredCrashDumpFiles()) {
+                processCrashDumpFile(dumpFile);
+            }
+
             /* Convert minidump files to App Center crash files. */
             for (File logFile : ErrorLogHelper.getNewMinidumpFiles()) {
 
@@ -559,7 +686,6 @@ public class Crashes extends AbstractAppCenterService {
                 AppCenterLog.debug(LOG_TAG, "Process pending minidump file: " + logFile);
                 long minidumpDate = logFile.lastModified();
                 File dest = new File(ErrorLogHelper.getPendingMinidumpDirectory(), logFile.getName());
-                NativeException nativeException = new NativeException();
                 Exception modelException = new Exception();
                 modelException.setType("minidump");
                 modelException.setWrapperSdkName(Constants.WRAPPER_SDK_NAME_NDK);
@@ -602,7 +728,14 @@ public class Crashes extends AbstractAppCenterService {
                 try {
                     errorLog.setDevice(DeviceInfoHelper.getDeviceInfo(mContext));
                     errorLog.getDevice().setWrapperSdkName(Constants.WRAPPER_SDK_NAME_NDK);
-                    saveErrorLogFiles(nativeException, errorLog);
+                    saveErrorLogFiles(ThrowableSnapshot.fromThrowable(new NativeException()), errorLog);
+
+                    /* Keep crash time as last modified date like for Java crashes. */
+                    File errorLogFile = new File(ErrorLogHelper.getErrorStorageDirectory(), errorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+
+                    //noinspection ResultOfMethodCallIgnored
+                    errorLogFile.setLastModified(minidumpDate);
+                    ErrorLogHelper.indexStoredFile(errorLogFile);
                     if (!logFile.renameTo(dest)) {
                         throw new IOException("Failed to move file");
                     }
@@ -615,6 +748,12 @@ public class Crashes extends AbstractAppCenterService {
                 }
             }
 
+            /* Check if the application keeps crashing soon after being launched. */
+            mCrashLoopDetected = isCrashLoop(mInitializeTimestamp);
+            if (mCrashLoopDetected) {
+                AppCenterLog.warn(LOG_TAG, "Crash loop detected, only the last crash will be processed until the application stops crashing.");
+            }
+
             /* Check last session crash. */
             File logFile = ErrorLogHelper.getLastErrorLogFile();
             while (logFile != null && logFile.length() == 0) {
@@ -622,6 +761,7 @@ public class Crashes extends AbstractAppCenterService {
 
                 //noinspection ResultOfMethodCallIgnored
                 logFile.delete();
+                ErrorLogHelper.unindexStoredFile(logFile);
                 logFile = ErrorLogHelper.getLastErrorLogFile();
             }
             if (logFile != null) {
@@ -639,43 +779,185 @@ public class Crashes extends AbstractAppCenterService {
                     }
                 }
             }
+
+            /* Reserve file and memory to save the next crash. */
+            mCrashDumpWriter = ErrorLogHelper.createCrashDumpWriter(mContext, mInitializeTimestamp, mThreadDumpPolicy);
+        }
+    }
+
+    private void processCrashDumpFile(File dumpFile) {
+        CrashDumpReader reader;
+        try {
+            reader = CrashDumpReader.open(dumpFile);
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to open crash dump file: " + dumpFile, e);
+
+            //noinspection ResultOfMethodCallIgnored
+            dumpFile.delete();
+            return;
+        }
+        if (reader == null) {
+            AppCenterLog.debug(LOG_TAG, "Crash dump file reserved by another process: " + dumpFile);
+            return;
+        }
+        ManagedErrorLog errorLog = null;
+        try {
+            if (reader.isEmpty()) {
+                AppCenterLog.debug(LOG_TAG, "Deleting unused crash dump file: " + dumpFile);
+            } else {
+
+                /* Build the error log we skipped at crash time. */
+                AppCenterLog.debug(LOG_TAG, "Process pending crash dump file: " + dumpFile);
+                errorLog = reader.read();
+                saveErrorLogFiles(reader.getThrowableSnapshot(), errorLog);
+
+                /* Keep crash time as last modified date to find the last session crash. */
+                File errorLogFile = new File(ErrorLogHelper.getErrorStorageDirectory(), errorLog.getId() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+
+                //noinspection ResultOfMethodCallIgnored
+                errorLogFile.setLastModified(errorLog.getTimestamp().getTime());
+                ErrorLogHelper.indexStoredFile(errorLogFile);
+            }
+        } catch (java.lang.Exception e) {
+            AppCenterLog.error(LOG_TAG, "Failed to process crash dump file: " + dumpFile, e);
+            if (errorLog != null) {
+                removeAllStoredErrorLogFiles(errorLog.getId());
+            }
+        } finally {
+
+            /* Delete before releasing the lock so that no other process sees a partial state. */
+            //noinspection ResultOfMethodCallIgnored
+            dumpFile.delete();
+            reader.close();
+        }
+    }
+
+    /**
+     * Check if the application keeps crashing soon after being launched.
+     * Crash dumps and minidumps are counted too as they are converted to error logs only on start.
+     *
+     * @param launchTimestamp application launch time.
+     * @return true if the application crashed too many times before this launch.
+     */
+    private static boolean isCrashLoop(long launchTimestamp) {
+        long since = launchTimestamp - CRASH_LOOP_PERIOD;
+        int crashCount = ErrorLogHelper.getErrorLogCountSince(since);
+        for (File dumpFile : ErrorLogHelper.getStoredCrashDumpFiles()) {
+
+            /* Files reserved for the next crash are empty. */
+            if (dumpFile.length() > 0 && dumpFile.lastModified() >= since) {
+                crashCount++;
+            }
+        }
+        for (File minidumpFile : ErrorLogHelper.getNewMinidumpFiles()) {
+            if (minidumpFile.lastModified() >= since) {
+                crashCount++;
+            }
         }
+        return crashCount >= CRASH_LOOP_CRASH_COUNT;
     }
 
     private void processPendingErrors() {
-        for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
-            AppCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-            String logfileContents = StorageHelper.InternalStorage.read(logFile);
-            if (logfileContents != null) {
-                try {
-                    ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
-                    UUID id = log.getId();
-                    ErrorReport report = buildErrorReport(log);
-                    if (report == null) {
-                        removeAllStoredErrorLogFiles(id);
-                    } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
-                        if (!mAutomaticProcessing) {
-                            AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
-                        }
-                        mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
-                    } else {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
-                        removeAllStoredErrorLogFiles(id);
-                    }
-                } catch (JSONException e) {
-                    AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + logFile, e);
+        File[] files;
+        Executor executor;
+        Executor callbackExecutor;
+        if (mCrashLoopDetected) {
+
+            /* Send the last crash as soon as possible, others are processed once the application stops crashing. */
+            File lastErrorLogFile = ErrorLogHelper.getLastErrorLogFile();
+            files = lastErrorLogFile != null ? new File[]{lastErrorLogFile} : new File[0];
+            executor = CURRENT_THREAD_EXECUTOR;
+            callbackExecutor = CURRENT_THREAD_EXECUTOR;
+        } else {
 
-                    //noinspection ResultOfMethodCallIgnored
-                    logFile.delete();
+            /* Read and parse files in background, process them in order on this thread as they come. */
+            files = ErrorLogHelper.getStoredErrorLogFiles();
+            executor = mPendingErrorsExecutor != null ? mPendingErrorsExecutor : AsyncTask.THREAD_POOL_EXECUTOR;
+            callbackExecutor = new Executor() {
+
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    post(command);
+                }
+            };
+        }
+        mPendingErrorLogLoader = new PendingErrorLogLoader(files, mLogSerializer, executor, callbackExecutor, new PendingErrorLogLoader.Listener() {
+
+            @Override
+            public void onErrorLogLoaded(@NonNull PendingErrorLogLoader.LoadedErrorLog loadedErrorLog) {
+                processPendingErrorLog(loadedErrorLog);
+            }
+
+            @Override
+            public void onFinished() {
+                mPendingErrorLogLoader = null;
+
+                /* If automatic processing is enabled. */
+                if (mAutomaticProcessing) {
+
+                    /* Proceed to check if user confirmation is needed. */
+                    sendCrashReportsOrAwaitUserConfirmation();
+                }
+                runPendingErrorsCallbacks();
+            }
+        });
+        mPendingErrorLogLoader.start();
+    }
+
+    private void processPendingErrorLog(PendingErrorLogLoader.LoadedErrorLog loadedErrorLog) {
+        ManagedErrorLog log = loadedErrorLog.errorLog;
+        if (loadedErrorLog.invalid) {
+
+            //noinspection ResultOfMethodCallIgnored
+            loadedErrorLog.file.delete();
+            ErrorLogHelper.unindexStoredFile(loadedErrorLog.file);
+        } else if (log != null) {
+            UUID id = log.getId();
+            ErrorReport report = getCachedErrorReport(log);
+            if (report == null && loadedErrorLog.throwableFile != null) {
+                report = cacheErrorReport(log, loadedErrorLog.throwableSnapshot);
+            }
+            if (report == null) {
+                removeAllStoredErrorLogFiles(id);
+            } else if (!mAutomaticProcessing || mCrashesListener.shouldProcess(report)) {
+                if (!mAutomaticProcessing) {
+                    AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
                 }
+                mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
+            } else {
+                AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
+                removeAllStoredErrorLogFiles(id);
             }
         }
+    }
+
+    /**
+     * Run a task once pending error files are processed, or now if they already are.
+     */
+    private void runAfterPendingErrors(Runnable runnable) {
+        if (mPendingErrorLogLoader == null) {
+            runnable.run();
+        } else {
+            mPendingErrorsCallbacks.add(runnable);
+        }
+    }
 
-        /* If automatic processing is enabled. */
-        if (mAutomaticProcessing) {
+    private void runPendingErrorsCallbacks() {
+        List<Runnable> callbacks = new ArrayList<>(mPendingErrorsCallbacks);
+        mPendingErrorsCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
 
-            /* Proceed to check if user confirmation is needed. */
-            sendCrashReportsOrAwaitUserConfirmation();
+    /**
+     * Stop processing pending error files, tasks waiting for it are run with what was processed so far.
+     */
+    private void cancelPendingErrors() {
+        if (mPendingErrorLogLoader != null) {
+            mPendingErrorLogLoader.cancel();
+            mPendingErrorLogLoader = null;
+            runPendingErrorsCallbacks();
         }
     }
 
@@ -743,33 +1025,40 @@ public class Crashes extends AbstractAppCenterService {
         mUncaughtExceptionHandler = handler;
     }
 
+    @VisibleForTesting
+    void setPendingErrorsExecutor(Executor executor) {
+        mPendingErrorsExecutor = executor;
+    }
+
     @VisibleForTesting
     @Nullable
     ErrorReport buildErrorReport(ManagedErrorLog log) {
-        UUID id = log.getId();
-        if (mErrorReportCache.containsKey(id)) {
-            ErrorReport report = mErrorReportCache.get(id).report;
-            report.setDevice(log.getDevice());
-            return report;
-        } else {
-            File file = ErrorLogHelper.getStoredThrowableFile(id);
+        ErrorReport report = getCachedErrorReport(log);
+        if (report == null) {
+            File file = ErrorLogHelper.getStoredThrowableFile(log.getId());
             if (file != null) {
-                Throwable throwable = null;
-                if (file.length() > 0) {
-                    try {
-                        throwable = StorageHelper.InternalStorage.readObject(file);
-                    } catch (IOException | ClassNotFoundException | StackOverflowError e) {
-                        AppCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), e);
-                    }
-                }
-                ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, throwable);
-                mErrorReportCache.put(id, new ErrorLogReport(log, report));
-                return report;
+                report = cacheErrorReport(log, PendingErrorLogLoader.readThrowableSnapshot(file));
             }
         }
+        return report;
+    }
+
+    private ErrorReport getCachedErrorReport(ManagedErrorLog log) {
+        ErrorLogReport errorLogReport = mErrorReportCache.get(log.getId());
+        if (errorLogReport != null) {
+            ErrorReport report = errorLogReport.report;
+            report.setDevice(log.getDevice());
+            return report;
+        }
         return null;
     }
 
+    private ErrorReport cacheErrorReport(ManagedErrorLog log, ThrowableSnapshot throwableSnapshot) {
+        ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, throwableSnapshot);
+        mErrorReportCache.put(log.getId(), new ErrorLogReport(log, report));
+        return report;
+    }
+
     @VisibleForTesting
     CrashesListener getInstanceListener() {
         return mCrashesListener;
@@ -783,6 +1072,15 @@ public class Crashes extends AbstractAppCenterService {
         mCrashesListener = listener;
     }
 
+    private synchronized void setInstanceThreadDumpPolicy(ThreadDumpPolicy threadDumpPolicy) {
+
+        /* Copy the policy so that later changes on the caller side do not apply at crash time. */
+        mThreadDumpPolicy = threadDumpPolicy == null ? new ThreadDumpPolicy() : new ThreadDumpPolicy(threadDumpPolicy);
+        if (mCrashDumpWriter != null) {
+            mCrashDumpWriter.setThreadDumpPolicy(mThreadDumpPolicy);
+        }
+    }
+
     @VisibleForTesting
     private synchronized void handleUserConfirmation(@UserConfirmationDef final int userConfirmation) {
         post(new Runnable() {
@@ -818,20 +1116,29 @@ public class Crashes extends AbstractAppCenterService {
                         ErrorAttachmentLog dumpAttachment = null;
                         Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
                         ErrorLogReport errorLogReport = unprocessedEntry.getValue();
-                        if (errorLogReport.report.getThrowable() instanceof NativeException) {
-                            Exception exception = errorLogReport.log.getException();
+                        Exception exception = errorLogReport.log.getException();
+                        if (exception != null && Constants.WRAPPER_SDK_NAME_NDK.equals(exception.getWrapperSdkName())) {
                             dumpFile = new File(exception.getStackTrace());
                             exception.setStackTrace(null);
-                            byte[] logfileContents = StorageHelper.InternalStorage.readBytes(dumpFile);
-                            dumpAttachment = ErrorAttachmentLog.attachmentWithBinary(logfileContents, "minidump.dmp", "application/octet-stream");
+
+                            /* The dump is loaded in memory to be attached, unless the backend would reject it anyway. */
+                            long dumpSize = dumpFile.length();
+                            if (dumpSize > MAX_MINIDUMP_ATTACHMENT_SIZE) {
+                                AppCenterLog.error(LOG_TAG, "Minidump size " + dumpSize + " is larger than " + MAX_MINIDUMP_ATTACHMENT_SIZE + " bytes, sending native crash report without it.");
+                            } else {
+                                byte[] logfileContents = StorageHelper.InternalStorage.readBytes(dumpFile);
+                                dumpAttachment = ErrorAttachmentLog.attachmentWithBinary(logfileContents, "minidump.dmp", "application/octet-stream");
+                            }
                         }
 
                         /* Send report. */
                         mChannel.enqueue(errorLogReport.log, ERROR_GROUP);
 
                         /* Send dump attachment and remove file. */
-                        if (dumpAttachment != null) {
-                            sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(dumpAttachment));
+                        if (dumpFile != null) {
+                            if (dumpAttachment != null) {
+                                sendErrorAttachment(errorLogReport.log.getId(), Collections.singleton(dumpAttachment));
+                            }
 
                             //noinspection ResultOfMethodCallIgnored
                             dumpFile.delete();
@@ -865,6 +1172,16 @@ public class Crashes extends AbstractAppCenterService {
                     attachment.setId(UUID.randomUUID());
                     attachment.setErrorId(errorId);
                     if (attachment.isValid()) {
+                        if (attachment.getFile() != null) {
+
+                            /* Attached files are copied to be streamed when sent. */
+                            try {
+                                ErrorLogHelper.storeErrorAttachmentFile(attachment);
+                            } catch (IOException e) {
+                                AppCenterLog.error(LOG_TAG, "Cannot copy the file of ErrorAttachmentLog, skipping it.", e);
+                                continue;
+                            }
+                        }
                         ++totalErrorAttachments;
                         mChannel.enqueue(attachment, ERROR_GROUP);
                     } else {
@@ -892,6 +1209,24 @@ public class Crashes extends AbstractAppCenterService {
      * @param throwable uncaught exception or error.
      */
     void saveUncaughtException(Thread thread, Throwable throwable) {
+
+        /*
+         * Stream the crash to the file reserved at initialization: this does not need
+         * to check the enabled state nor to build the error log now.
+         */
+        CrashDumpWriter crashDumpWriter = mCrashDumpWriter;
+        if (crashDumpWriter != null && !mSavedUncaughtException) {
+            mSavedUncaughtException = true;
+            try {
+                crashDumpWriter.write(thread, throwable);
+                AppCenterLog.debug(LOG_TAG, "Saved uncaught exception to crash dump file.");
+                return;
+            } catch (IOException | RuntimeException e) {
+                AppCenterLog.error(LOG_TAG, "Error writing crash dump file, saving error log instead", e);
+                crashDumpWriter.close();
+                mSavedUncaughtException = false;
+            }
+        }
         try {
             saveUncaughtException(thread, throwable, ErrorLogHelper.getModelExceptionFromThrowable(throwable));
         } catch (JSONException e) {
@@ -928,12 +1263,12 @@ public class Crashes extends AbstractAppCenterService {
         mSavedUncaughtException = true;
 
         /* Save error log. */
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true);
-        return saveErrorLogFiles(throwable, errorLog);
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, modelException, Thread.getAllStackTraces(), mInitializeTimestamp, true, mThreadDumpPolicy);
+        return saveErrorLogFiles(throwable != null ? ThrowableSnapshot.fromThrowable(throwable) : null, errorLog);
     }
 
     @NonNull
-    private UUID saveErrorLogFiles(Throwable throwable, ManagedErrorLog errorLog) throws JSONException, IOException {
+    private UUID saveErrorLogFiles(ThrowableSnapshot throwableSnapshot, ManagedErrorLog errorLog) throws JSONException, IOException {
         File errorStorageDirectory = ErrorLogHelper.getErrorStorageDirectory();
         UUID errorLogId = errorLog.getId();
         String filename = errorLogId.toString();
@@ -943,19 +1278,10 @@ public class Crashes extends AbstractAppCenterService {
         StorageHelper.InternalStorage.write(errorLogFile, errorLogString);
         AppCenterLog.debug(Crashes.LOG_TAG, "Saved JSON content for ingestion into " + errorLogFile);
         File throwableFile = new File(errorStorageDirectory, filename + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
-        if (throwable != null) {
-            try {
-                StorageHelper.InternalStorage.writeObject(throwableFile, throwable);
-                AppCenterLog.debug(Crashes.LOG_TAG, "Saved Throwable as is for client side inspection in " + throwableFile + " throwable:", throwable);
-            } catch (StackOverflowError e) {
-                AppCenterLog.error(Crashes.LOG_TAG, "Failed to store throwable", e);
-                throwable = null;
-
-                //noinspection ResultOfMethodCallIgnored
-                throwableFile.delete();
-            }
-        }
-        if (throwable == null) {
+        if (throwableSnapshot != null) {
+            ErrorLogHelper.writeThrowableSnapshot(throwableFile, throwableSnapshot);
+            AppCenterLog.debug(Crashes.LOG_TAG, "Saved throwable snapshot for client side inspection in " + throwableFile);
+        } else {
 
             /*
              * If there is no Java Throwable to save as is (typical in wrapper SDKs),
@@ -966,6 +1292,8 @@ public class Crashes extends AbstractAppCenterService {
             }
             AppCenterLog.debug(Crashes.LOG_TAG, "Saved empty Throwable file in " + throwableFile);
         }
+        ErrorLogHelper.indexStoredFile(errorLogFile);
+        ErrorLogHelper.indexStoredFile(throwableFile);
         return errorLogId;
     }
 
@@ -985,11 +1313,17 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void run() {
-                Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
-                for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
-                    reports.add(entry.report);
-                }
-                future.complete(reports);
+                runAfterPendingErrors(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Collection<ErrorReport> reports = new ArrayList<>(mUnprocessedErrorReports.size());
+                        for (ErrorLogReport entry : mUnprocessedErrorReports.values()) {
+                            reports.add(entry.report);
+                        }
+                        future.complete(reports);
+                    }
+                });
             }
         }, future, Collections.<ErrorReport>emptyList());
         return future;
@@ -1004,24 +1338,30 @@ public class Crashes extends AbstractAppCenterService {
 
             @Override
             public void run() {
+                runAfterPendingErrors(new Runnable() {
 
-                /* Apply the filtering. */
-                Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
-                    UUID id = entry.getKey();
-                    String idString = entry.getValue().report.getId();
-                    if (filteredReportIds != null && filteredReportIds.contains(idString)) {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
-                    } else {
-                        AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + idString);
-                        removeAllStoredErrorLogFiles(id);
-                        iterator.remove();
-                    }
-                }
+                    @Override
+                    public void run() {
+
+                        /* Apply the filtering. */
+                        Iterator<Map.Entry<UUID, ErrorLogReport>> iterator = mUnprocessedErrorReports.entrySet().iterator();
+                        while (iterator.hasNext()) {
+                            Map.Entry<UUID, ErrorLogReport> entry = iterator.next();
+                            UUID id = entry.getKey();
+                            String idString = entry.getValue().report.getId();
+                            if (filteredReportIds != null && filteredReportIds.contains(idString)) {
+                                AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + idString);
+                            } else {
+                                AppCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + idString);
+                                removeAllStoredErrorLogFiles(id);
+                                iterator.remove();
+                            }
+                        }
 
-                /* Proceed to check if user confirmation is needed. */
-                future.complete(sendCrashReportsOrAwaitUserConfirmation());
+                        /* Proceed to check if user confirmation is needed. */
+                        future.complete(sendCrashReportsOrAwaitUserConfirmation());
+                    }
+                });
             }
         }, future, false);
         return future;
@@ -1057,6 +1397,13 @@ public class Crashes extends AbstractAppCenterService {
      */
     private interface ExceptionModelBuilder {
 
+        /**
+         * Get the fingerprint used to limit how many times the same error is sent.
+         *
+         * @return fingerprint.
+         */
+        String getFingerprint();
+
         /**
          * Get model exception.
          *
@@ -0,0 +1,273 @@
+package com.microsoft.appcenter.crashes;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Limits how many handled errors with the same fingerprint are sent in a time window.
+ * <p>
+ * The fingerprint is made of the exception types and top frames of the cause chain, messages are ignored
+ * so that errors thrown from the same place with variable messages are grouped.
+ * It's computed before building the error log so that dropped errors cost as little as possible.
+ * Errors dropped in a window are aggregated, logged when the next window starts and added as properties
+ * to the next error sent with the same fingerprint.
+ */
+class HandledErrorRateLimiter {
+
+    /**
+     * Window duration in milliseconds.
+     */
+    @VisibleForTesting
+    static final long WINDOW_DURATION = 60 * 1000;
+
+    /**
+     * Maximum number of errors sent per fingerprint in a window.
+     */
+    @VisibleForTesting
+    static final int MAX_ERRORS_PER_WINDOW = 10;
+
+    /**
+     * Maximum number of fingerprints to remember, least recently seen are forgotten first.
+     */
+    @VisibleForTesting
+    static final int MAX_FINGERPRINTS = 100;
+
+    /**
+     * Number of frames per cause used in fingerprints.
+     */
+    @VisibleForTesting
+    static final int FINGERPRINT_FRAME_COUNT = 5;
+
+    /**
+     * Number of causes used in fingerprints.
+     */
+    private static final int FINGERPRINT_CAUSE_COUNT = 5;
+
+    /**
+     * Property name for the number of errors dropped since the last error sent with the same fingerprint.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_DROPPED_COUNT = "droppedErrorCount";
+
+    /**
+     * Property name for the time of the first dropped error.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_FIRST_DROPPED_TIME = "firstDroppedErrorTime";
+
+    /**
+     * Property name for the time of the last dropped error.
+     */
+    @VisibleForTesting
+    static final String PROPERTY_LAST_DROPPED_TIME = "lastDroppedErrorTime";
+
+    /**
+     * Aggregates by fingerprint, in access order.
+     */
+    private final Map<String, Aggregate> mAggregates = new LinkedHashMap<String, Aggregate>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Aggregate> eldest) {
+            return size() > MAX_FINGERPRINTS;
+        }
+    };
+
+    /**
+     * Compute the fingerprint of a throwable.
+     *
+     * @param throwable throwable.
+     * @return fingerprint.
+     */
+    @NonNull
+    static String getFingerprint(@NonNull Throwable throwable) {
+        StringBuilder fingerprint = new StringBuilder();
+        int causeCount = 0;
+        for (Throwable cause = throwable; cause != null && causeCount < FINGERPRINT_CAUSE_COUNT; cause = cause.getCause(), causeCount++) {
+            fingerprint.append(cause.getClass().getName()).append('\n');
+            StackTraceElement[] stackTrace = cause.getStackTrace();
+            for (int i = 0; i < stackTrace.length && i < FINGERPRINT_FRAME_COUNT; i++) {
+                StackTraceElement frame = stackTrace[i];
+                appendFrame(fingerprint, frame.getClassName(), frame.getMethodName(), frame.getLineNumber());
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Compute the fingerprint of an exception model (from wrapper SDKs).
+     *
+     * @param exception exception model.
+     * @return fingerprint.
+     */
+    @NonNull
+    static String getFingerprint(@NonNull Exception exception) {
+        StringBuilder fingerprint = new StringBuilder();
+        int causeCount = 0;
+        for (Exception cause = exception; cause != null && causeCount < FINGERPRINT_CAUSE_COUNT; causeCount++) {
+            fingerprint.append(cause.getType()).append('\n');
+
+            /* Wrapper SDKs may only provide a raw stack trace. */
+            List<StackFrame> frames = cause.getFrames();
+            if (frames != null) {
+                for (int i = 0; i < frames.size() && i < FINGERPRINT_FRAME_COUNT; i++) {
+                    StackFrame frame = frames.get(i);
+                    appendFrame(fingerprint, frame.getClassName(), frame.getMethodName(), frame.getLineNumber());
+                }
+            } else if (cause.getStackTrace() != null) {
+                fingerprint.append(cause.getStackTrace()).append('\n');
+            }
+            List<Exception> innerExceptions = cause.getInnerExceptions();
+            cause = innerExceptions != null && !innerExceptions.isEmpty() ? innerExceptions.get(0) : null;
+        }
+        return fingerprint.toString();
+    }
+
+    private static void appendFrame(StringBuilder fingerprint, String className, String methodName, Integer lineNumber) {
+        fingerprint.append(className).append('.').append(methodName).append(':').append(lineNumber).append('\n');
+    }
+
+    /**
+     * Check if an error can be sent and count it.
+     *
+     * @param fingerprint error fingerprint.
+     * @param timestamp   error time in milliseconds.
+     * @return true if the error can be sent, false if it must be dropped.
+     */
+    synchronized boolean tryAcquire(@NonNull String fingerprint, long timestamp) {
+        Aggregate aggregate = mAggregates.get(fingerprint);
+        if (aggregate == null) {
+            aggregate = new Aggregate(timestamp);
+            mAggregates.put(fingerprint, aggregate);
+        } else if (timestamp - aggregate.windowStart >= WINDOW_DURATION || timestamp < aggregate.windowStart) {
+            logDropped(aggregate);
+            aggregate.reset(timestamp);
+        }
+        if (aggregate.sentCount < MAX_ERRORS_PER_WINDOW) {
+            aggregate.sentCount++;
+            return true;
+        }
+        if (aggregate.droppedCount == 0) {
+            aggregate.firstDroppedTimestamp = timestamp;
+            AppCenterLog.warn(LOG_TAG, "Handled error sent " + MAX_ERRORS_PER_WINDOW + " times in less than " + WINDOW_DURATION / 1000 + " seconds, dropping the same error until the end of the period.");
+        }
+        aggregate.droppedCount++;
+        aggregate.lastDroppedTimestamp = timestamp;
+        return false;
+    }
+
+    /**
+     * Add the errors dropped in previous windows to the properties of an error being sent, once per dropped errors.
+     *
+     * @param fingerprint error fingerprint, {@link #tryAcquire} must have returned true for it.
+     * @param properties  error properties, can be null. It is not modified.
+     * @return properties to send.
+     */
+    synchronized Map<String, String> addDroppedErrorProperties(@NonNull String fingerprint, Map<String, String> properties) {
+        Aggregate aggregate = mAggregates.get(fingerprint);
+        if (aggregate == null || aggregate.pendingDroppedCount == 0) {
+            return properties;
+        }
+        Map<String, String> result = properties != null ? new HashMap<>(properties) : new HashMap<String, String>();
+        try {
+            result.put(PROPERTY_FIRST_DROPPED_TIME, JSONDateUtils.toString(new Date(aggregate.pendingFirstDroppedTimestamp)));
+            result.put(PROPERTY_LAST_DROPPED_TIME, JSONDateUtils.toString(new Date(aggregate.pendingLastDroppedTimestamp)));
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot format dropped errors times.", e);
+        }
+        result.put(PROPERTY_DROPPED_COUNT, String.valueOf(aggregate.pendingDroppedCount));
+        aggregate.pendingDroppedCount = 0;
+        return result;
+    }
+
+    /**
+     * Forget all fingerprints.
+     */
+    synchronized void clear() {
+        mAggregates.clear();
+    }
+
+    private static void logDropped(Aggregate aggregate) {
+        if (aggregate.droppedCount > 0) {
+            AppCenterLog.info(LOG_TAG, "Dropped " + aggregate.droppedCount + " occurrences of a handled error between " +
+                    new Date(aggregate.firstDroppedTimestamp) + " and " + new Date(aggregate.lastDroppedTimestamp) + ".");
+        }
+    }
+
+    /**
+     * Errors seen for a fingerprint in the current window.
+     */
+    private static class Aggregate {
+
+        /**
+         * Window start time.
+         */
+        long windowStart;
+
+        /**
+         * Errors sent in window.
+         */
+        int sentCount;
+
+        /**
+         * Errors dropped in window.
+         */
+        int droppedCount;
+
+        /**
+         * Time of the first dropped error in window.
+         */
+        long firstDroppedTimestamp;
+
+        /**
+         * Time of the last dropped error in window.
+         */
+        long lastDroppedTimestamp;
+
+        /**
+         * Errors dropped in previous windows and not yet added to a sent error.
+         */
+        int pendingDroppedCount;
+
+        /**
+         * Time of the first error counted in {@link #pendingDroppedCount}.
+         */
+        long pendingFirstDroppedTimestamp;
+
+        /**
+         * Time of the last error counted in {@link #pendingDroppedCount}.
+         */
+        long pendingLastDroppedTimestamp;
+
+        Aggregate(long windowStart) {
+            this.windowStart = windowStart;
+        }
+
+        void reset(long windowStart) {
+            if (droppedCount > 0) {
+                if (pendingDroppedCount == 0) {
+                    pendingFirstDroppedTimestamp = firstDroppedTimestamp;
+                }
+                pendingDroppedCount += droppedCount;
+                pendingLastDroppedTimestamp = lastDroppedTimestamp;
+            }
+            this.windowStart = windowStart;
+            sentCount = 0;
+            droppedCount = 0;
+        }
+    }
+}
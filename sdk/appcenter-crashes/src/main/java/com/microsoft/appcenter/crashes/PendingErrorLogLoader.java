@@ -0,0 +1,258 @@
+package com.microsoft.appcenter.crashes;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableSnapshot;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.microsoft.appcenter.crashes.Crashes.LOG_TAG;
+
+/**
+ * Reads and parses pending error log files in background, a few files at a time,
+ * and delivers them in the order of the files through the callback executor.
+ * <p>
+ * All methods except the background reads must be called from the callback executor thread.
+ */
+class PendingErrorLogLoader {
+
+    /**
+     * Maximum number of files being read or waiting to be delivered at the same time.
+     */
+    @VisibleForTesting
+    static final int MAX_PARALLEL_READS = 2;
+
+    /**
+     * Files to load.
+     */
+    private final File[] mFiles;
+
+    /**
+     * Loaded files waiting for previous files to be delivered, indexed like files.
+     */
+    private final LoadedErrorLog[] mLoadedErrorLogs;
+
+    /**
+     * Serializer used to parse error logs.
+     */
+    private final LogSerializer mLogSerializer;
+
+    /**
+     * Executor used to read and parse files.
+     */
+    private final Executor mBackgroundExecutor;
+
+    /**
+     * Executor used to deliver results.
+     */
+    private final Executor mCallbackExecutor;
+
+    /**
+     * Listener.
+     */
+    private final Listener mListener;
+
+    /**
+     * Index of the next file to read.
+     */
+    private int mNextReadIndex;
+
+    /**
+     * Index of the next file to deliver.
+     */
+    private int mNextDeliveryIndex;
+
+    /**
+     * True when the listener has been notified that all files were delivered.
+     */
+    private boolean mFinished;
+
+    /**
+     * Cancellation flag, also checked by background reads.
+     */
+    private volatile boolean mCancelled;
+
+    PendingErrorLogLoader(@NonNull File[] files, @NonNull LogSerializer logSerializer, @NonNull Executor backgroundExecutor, @NonNull Executor callbackExecutor, @NonNull Listener listener) {
+        mFiles = files;
+        mLoadedErrorLogs = new LoadedErrorLog[files.length];
+        mLogSerializer = logSerializer;
+        mBackgroundExecutor = backgroundExecutor;
+        mCallbackExecutor = callbackExecutor;
+        mListener = listener;
+    }
+
+    /**
+     * Start reading files.
+     */
+    void start() {
+        readNextFiles();
+        finishIfDone();
+    }
+
+    /**
+     * Stop reading files and delivering results. The listener won't be called anymore.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    private void readNextFiles() {
+        while (!mCancelled && mNextReadIndex < mFiles.length && mNextReadIndex - mNextDeliveryIndex < MAX_PARALLEL_READS) {
+            final int index = mNextReadIndex++;
+            final File file = mFiles[index];
+            Runnable read = new Runnable() {
+
+                @Override
+                public void run() {
+                    if (mCancelled) {
+                        return;
+                    }
+                    final LoadedErrorLog loadedErrorLog = load(file);
+                    mCallbackExecutor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            onLoaded(index, loadedErrorLog);
+                        }
+                    });
+                }
+            };
+            try {
+                mBackgroundExecutor.execute(read);
+            } catch (RejectedExecutionException e) {
+                AppCenterLog.warn(LOG_TAG, "Background executor saturated, read pending error file on current thread.", e);
+                read.run();
+            }
+        }
+    }
+
+    private void onLoaded(int index, LoadedErrorLog loadedErrorLog) {
+        if (mCancelled) {
+            return;
+        }
+
+        /* Deliver in order everything that is ready. */
+        mLoadedErrorLogs[index] = loadedErrorLog;
+        while (!mCancelled && mNextDeliveryIndex < mFiles.length && mLoadedErrorLogs[mNextDeliveryIndex] != null) {
+            LoadedErrorLog next = mLoadedErrorLogs[mNextDeliveryIndex];
+            mLoadedErrorLogs[mNextDeliveryIndex++] = null;
+            mListener.onErrorLogLoaded(next);
+        }
+        readNextFiles();
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        if (!mCancelled && !mFinished && mNextDeliveryIndex == mFiles.length) {
+            mFinished = true;
+            mListener.onFinished();
+        }
+    }
+
+    /**
+     * Read and parse an error log file and its throwable file, called in background.
+     * It never throws: any failure marks the file as invalid so that it is still delivered
+     * and loading goes on with the next files.
+     */
+    @NonNull
+    private LoadedErrorLog load(File file) {
+        AppCenterLog.debug(LOG_TAG, "Process pending error file: " + file);
+        LoadedErrorLog loadedErrorLog = new LoadedErrorLog(file);
+        try {
+            String logfileContents = StorageHelper.InternalStorage.read(file);
+            if (logfileContents != null) {
+                loadedErrorLog.errorLog = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents, null);
+                loadedErrorLog.throwableFile = ErrorLogHelper.getStoredThrowableFile(loadedErrorLog.errorLog.getId());
+                if (loadedErrorLog.throwableFile != null) {
+                    loadedErrorLog.throwableSnapshot = readThrowableSnapshot(loadedErrorLog.throwableFile);
+                }
+            }
+        } catch (JSONException | RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Error parsing error log. Deleting invalid file: " + file, e);
+            loadedErrorLog.errorLog = null;
+            loadedErrorLog.throwableFile = null;
+            loadedErrorLog.throwableSnapshot = null;
+            loadedErrorLog.invalid = true;
+        }
+        return loadedErrorLog;
+    }
+
+    /**
+     * Read a throwable file, logging and returning null if it fails.
+     *
+     * @param file throwable file.
+     * @return throwable snapshot or null.
+     */
+    static ThrowableSnapshot readThrowableSnapshot(@NonNull File file) {
+        try {
+            return ErrorLogHelper.readThrowableSnapshot(file);
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Listener called from the callback executor.
+     */
+    interface Listener {
+
+        /**
+         * Called for each file, in order.
+         *
+         * @param loadedErrorLog loaded file.
+         */
+        void onErrorLogLoaded(@NonNull LoadedErrorLog loadedErrorLog);
+
+        /**
+         * Called once all files have been delivered.
+         */
+        void onFinished();
+    }
+
+    /**
+     * Result of loading a pending error log file.
+     */
+    static class LoadedErrorLog {
+
+        /**
+         * Error log file.
+         */
+        final File file;
+
+        /**
+         * Parsed error log, null if the file could not be read or parsed.
+         */
+        ManagedErrorLog errorLog;
+
+        /**
+         * True if the file could be read but not parsed.
+         */
+        boolean invalid;
+
+        /**
+         * Throwable file of the error log, null if missing.
+         */
+        File throwableFile;
+
+        /**
+         * Throwable snapshot, null if missing or unreadable.
+         */
+        ThrowableSnapshot throwableSnapshot;
+
+        LoadedErrorLog(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.microsoft.appcenter.crashes;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+/**
+ * Limits applied to the thread states captured in crash reports.
+ * By default all threads are captured with their full stack.
+ */
+public class ThreadDumpPolicy {
+
+    /**
+     * Maximum number of threads, including the crashed one which is always captured.
+     */
+    private int mMaxThreads = Integer.MAX_VALUE;
+
+    /**
+     * Maximum number of frames per thread, counted from the top of the stack.
+     */
+    private int mMaxFramesPerThread = Integer.MAX_VALUE;
+
+    /**
+     * Whether threads with identical stacks are reported once.
+     */
+    private boolean mGroupIdenticalStacks;
+
+    /**
+     * Create a policy capturing all threads with their full stack.
+     */
+    public ThreadDumpPolicy() {
+    }
+
+    /**
+     * Copy a policy.
+     *
+     * @param policy policy to copy.
+     */
+    ThreadDumpPolicy(ThreadDumpPolicy policy) {
+        mMaxThreads = policy.mMaxThreads;
+        mMaxFramesPerThread = policy.mMaxFramesPerThread;
+        mGroupIdenticalStacks = policy.mGroupIdenticalStacks;
+    }
+
+    /**
+     * Set the maximum number of threads captured. The thread that crashed is always captured.
+     * Threads grouped with a captured thread because they have an identical stack do not count.
+     *
+     * @param maxThreads maximum number of threads, must be at least 1.
+     * @return this instance.
+     */
+    public ThreadDumpPolicy setMaxThreads(int maxThreads) {
+        if (maxThreads < 1) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Maximum number of threads must be at least 1.");
+        } else {
+            mMaxThreads = maxThreads;
+        }
+        return this;
+    }
+
+    /**
+     * Get the maximum number of threads captured.
+     *
+     * @return maximum number of threads.
+     */
+    public int getMaxThreads() {
+        return mMaxThreads;
+    }
+
+    /**
+     * Set the maximum number of frames captured per thread.
+     * Frames beyond that limit are dropped from the bottom of the stack.
+     *
+     * @param maxFramesPerThread maximum number of frames, must be at least 1.
+     * @return this instance.
+     */
+    public ThreadDumpPolicy setMaxFramesPerThread(int maxFramesPerThread) {
+        if (maxFramesPerThread < 1) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Maximum number of frames per thread must be at least 1.");
+        } else {
+            mMaxFramesPerThread = maxFramesPerThread;
+        }
+        return this;
+    }
+
+    /**
+     * Get the maximum number of frames captured per thread.
+     *
+     * @return maximum number of frames.
+     */
+    public int getMaxFramesPerThread() {
+        return mMaxFramesPerThread;
+    }
+
+    /**
+     * Report threads with identical stacks only once, like idle workers of a thread pool.
+     * The reported thread name mentions how many threads were grouped.
+     *
+     * @param groupIdenticalStacks true to group threads with identical stacks.
+     * @return this instance.
+     */
+    public ThreadDumpPolicy setGroupIdenticalStacks(boolean groupIdenticalStacks) {
+        mGroupIdenticalStacks = groupIdenticalStacks;
+        return this;
+    }
+
+    /**
+     * Check if threads with identical stacks are reported once.
+     *
+     * @return true if threads with identical stacks are grouped.
+     */
+    public boolean isGroupIdenticalStacks() {
+        return mGroupIdenticalStacks;
+    }
+}
@@ -10,10 +10,16 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.async.AppCenterFuture;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -22,16 +28,39 @@ import java.util.UUID;
 public class WrapperSdkExceptionManager {
 
     /**
-     * Contains wrapper SDK data that has been loaded into memory
+     * Maximum total size in bytes of wrapper exception data kept in memory.
      */
     @VisibleForTesting
-    static final Map<String, byte[]> sWrapperExceptionDataContainer = new HashMap<>();
+    static final int MAX_CACHED_DATA_SIZE = 256 * 1024;
+
+    /**
+     * Contains wrapper SDK data that has been recently saved or loaded, bounded by {@link #MAX_CACHED_DATA_SIZE}.
+     */
+    @VisibleForTesting
+    static final DataCache sWrapperExceptionDataContainer = new DataCache(MAX_CACHED_DATA_SIZE);
 
     /**
      * File extension for data files created by this class.
      */
     private static final String DATA_FILE_EXTENSION = ".dat";
 
+    /**
+     * File extension for data files deleted in this process but kept for loading until next process.
+     */
+    @VisibleForTesting
+    static final String DELETED_DATA_FILE_EXTENSION = ".dat.deleted";
+
+    /**
+     * Header of data files containing raw bytes.
+     * Files saved by older versions contain a serialized byte array and start with the serialization magic instead.
+     */
+    private static final byte[] DATA_FILE_HEADER = {'A', 'C', 'W', '1'};
+
+    /**
+     * Flag to delete data files retained by previous processes only once.
+     */
+    private static boolean sDeletedDataFilesCleaned;
+
     @VisibleForTesting
     WrapperSdkExceptionManager() {
     }
@@ -51,7 +80,7 @@ public class WrapperSdkExceptionManager {
             if (errorId != null && rawSerializedException != null) {
                 sWrapperExceptionDataContainer.put(errorId.toString(), rawSerializedException);
                 File dataFile = getFile(errorId);
-                StorageHelper.InternalStorage.writeObject(dataFile, rawSerializedException);
+                writeData(dataFile, rawSerializedException);
                 AppCenterLog.debug(Crashes.LOG_TAG, "Saved raw wrapper exception data into " + dataFile);
             }
             return errorId;
@@ -62,22 +91,24 @@ public class WrapperSdkExceptionManager {
     }
 
     /**
-     * Delete wrapper exception data from disk and store it in memory
+     * Delete wrapper exception data. It can still be loaded until the next process:
+     * the file is renamed and deleted in the next process instead of loading the data into memory.
      *
      * @param errorId The associated error UUID
      */
-    public static void deleteWrapperExceptionData(UUID errorId) {
+    public static synchronized void deleteWrapperExceptionData(UUID errorId) {
         if (errorId == null) {
             AppCenterLog.error(Crashes.LOG_TAG, "Failed to delete wrapper exception data: null errorId");
             return;
         }
         File dataFile = getFile(errorId);
         if (dataFile.exists()) {
-            byte[] loadResult = loadWrapperExceptionData(errorId);
-            if (loadResult == null) {
-                AppCenterLog.error(Crashes.LOG_TAG, "Failed to delete wrapper exception data: data not found");
+            deleteDeletedDataFilesOnce();
+            File deletedDataFile = getDeletedFile(errorId);
+            if (!dataFile.renameTo(deletedDataFile)) {
+                AppCenterLog.error(Crashes.LOG_TAG, "Failed to keep deleted wrapper exception data until next launch, deleting it now.");
+                StorageHelper.InternalStorage.delete(dataFile);
             }
-            StorageHelper.InternalStorage.delete(dataFile);
         }
     }
 
@@ -87,7 +118,7 @@ public class WrapperSdkExceptionManager {
      * @param errorId The associated error UUID
      * @return The data loaded into memory
      */
-    public static byte[] loadWrapperExceptionData(UUID errorId) {
+    public static synchronized byte[] loadWrapperExceptionData(UUID errorId) {
         if (errorId == null) {
             AppCenterLog.error(Crashes.LOG_TAG, "Failed to load wrapper exception data: null errorId");
             return null;
@@ -97,9 +128,12 @@ public class WrapperSdkExceptionManager {
             return dataBytes;
         }
         File dataFile = getFile(errorId);
+        if (!dataFile.exists()) {
+            dataFile = getDeletedFile(errorId);
+        }
         if (dataFile.exists()) {
             try {
-                dataBytes = StorageHelper.InternalStorage.readObject(dataFile);
+                dataBytes = readData(dataFile);
                 if (dataBytes != null) {
                     sWrapperExceptionDataContainer.put(errorId.toString(), dataBytes);
                 }
@@ -123,6 +157,89 @@ public class WrapperSdkExceptionManager {
         return new File(errorStorageDirectory, filename);
     }
 
+    /**
+     * Get a file object for deleted wrapper exception data
+     *
+     * @param errorId The associated error UUID
+     * @return The corresponding file object
+     */
+    private static File getDeletedFile(@NonNull UUID errorId) {
+        File errorStorageDirectory = ErrorLogHelper.getErrorStorageDirectory();
+        String filename = errorId.toString() + DELETED_DATA_FILE_EXTENSION;
+        return new File(errorStorageDirectory, filename);
+    }
+
+    /**
+     * Delete the data files that were deleted in previous processes, the first time data is deleted in this process.
+     */
+    private static void deleteDeletedDataFilesOnce() {
+        if (sDeletedDataFilesCleaned) {
+            return;
+        }
+        sDeletedDataFilesCleaned = true;
+        File[] files = ErrorLogHelper.getErrorStorageDirectory().listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(DELETED_DATA_FILE_EXTENSION);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                StorageHelper.InternalStorage.delete(file);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static synchronized void resetDeletedDataFilesCleaned() {
+        sDeletedDataFilesCleaned = false;
+    }
+
+    /**
+     * Write raw data with the data file header.
+     */
+    private static void writeData(File file, byte[] data) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            outputStream.write(DATA_FILE_HEADER);
+            outputStream.write(data);
+        } finally {
+
+            //noinspection ThrowFromFinallyBlock
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Read data in one pass into an array sized from the file length,
+     * falling back to deserialization for files saved by older versions.
+     */
+    private static byte[] readData(File file) throws IOException, ClassNotFoundException {
+        long length = file.length();
+        if (length >= DATA_FILE_HEADER.length) {
+            DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
+
+            //noinspection TryFinallyCanBeTryWithResources
+            try {
+                byte[] header = new byte[DATA_FILE_HEADER.length];
+                inputStream.readFully(header);
+                if (Arrays.equals(header, DATA_FILE_HEADER)) {
+                    byte[] data = new byte[(int) length - DATA_FILE_HEADER.length];
+                    inputStream.readFully(data);
+                    return data;
+                }
+            } finally {
+
+                //noinspection ThrowFromFinallyBlock
+                inputStream.close();
+            }
+        }
+        return StorageHelper.InternalStorage.readObject(file);
+    }
+
     /**
      * Send an handled exception (used by wrapper SDKs).
      *
@@ -182,5 +299,63 @@ public class WrapperSdkExceptionManager {
     public static void sendErrorAttachments(String errorReportId, Iterable<ErrorAttachmentLog> attachments) {
         Crashes.getInstance().sendErrorAttachments(errorReportId, attachments);
     }
-}
 
+    /**
+     * Data cache evicting least recently used entries when the total size exceeds its limit.
+     */
+    @VisibleForTesting
+    static class DataCache {
+
+        /**
+         * Data by error identifier, in access order.
+         */
+        private final Map<String, byte[]> mData = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * Maximum total size in bytes.
+         */
+        private final int mMaxSize;
+
+        /**
+         * Current total size in bytes.
+         */
+        private int mSize;
+
+        DataCache(int maxSize) {
+            mMaxSize = maxSize;
+        }
+
+        synchronized byte[] get(String key) {
+            return mData.get(key);
+        }
+
+        /**
+         * Add data, data bigger than the cache limit is not kept.
+         */
+        synchronized void put(String key, byte[] data) {
+            byte[] previous = mData.remove(key);
+            if (previous != null) {
+                mSize -= previous.length;
+            }
+            if (data.length > mMaxSize) {
+                return;
+            }
+            mData.put(key, data);
+            mSize += data.length;
+            Iterator<byte[]> iterator = mData.values().iterator();
+            while (mSize > mMaxSize) {
+                mSize -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+
+        synchronized int size() {
+            return mSize;
+        }
+
+        synchronized void clear() {
+            mData.clear();
+            mSize = 0;
+        }
+    }
+}
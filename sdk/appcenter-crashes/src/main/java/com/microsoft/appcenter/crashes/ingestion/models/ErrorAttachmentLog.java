@@ -4,12 +4,14 @@ import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
 
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
+import com.microsoft.appcenter.ingestion.models.json.Base64FileReferences;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.UUID;
@@ -66,6 +68,11 @@ public class ErrorAttachmentLog extends AbstractLog {
      */
     private byte[] data;
 
+    /**
+     * File containing the data, used instead of {@link #data} to avoid loading the data in memory.
+     */
+    private File file;
+
     /**
      * Build an error attachment log with text suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
      *
@@ -93,6 +100,23 @@ public class ErrorAttachmentLog extends AbstractLog {
         return attachmentLog;
     }
 
+    /**
+     * Build an error attachment log with the content of a file suitable for using in {link CrashesListener#getErrorAttachments(ErrorReport)}.
+     * The file is copied when the attachment is sent and is never fully loaded in memory, which is preferred for large attachments.
+     *
+     * @param file        file to attach.
+     * @param fileName    file name to use in error attachment log.
+     * @param contentType file content MIME type.
+     * @return ErrorAttachmentLog built attachment.
+     */
+    public static ErrorAttachmentLog attachmentWithFile(File file, String fileName, String contentType) {
+        ErrorAttachmentLog attachmentLog = new ErrorAttachmentLog();
+        attachmentLog.setFile(file);
+        attachmentLog.setFileName(fileName);
+        attachmentLog.setContentType(contentType);
+        return attachmentLog;
+    }
+
     @Override
     public String getType() {
         return TYPE;
@@ -190,13 +214,31 @@ public class ErrorAttachmentLog extends AbstractLog {
         this.data = data;
     }
 
+    /**
+     * Get the file value.
+     *
+     * @return the file value
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Set the file value.
+     *
+     * @param file the file value to set
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
     /**
      * Checks if the log's values are valid.
      *
      * @return true if validation succeeded, otherwise false.
      */
     public boolean isValid() {
-        return getId() != null && getErrorId() != null && getContentType() != null && getData() != null;
+        return getId() != null && getErrorId() != null && getContentType() != null && (getData() != null || getFile() != null);
     }
 
     @Override
@@ -206,10 +248,16 @@ public class ErrorAttachmentLog extends AbstractLog {
         setErrorId(UUID.fromString(object.getString(ERROR_ID)));
         setContentType(object.getString(CONTENT_TYPE));
         setFileName(object.optString(FILE_NAME, null));
-        try {
-            setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
-        } catch (IllegalArgumentException e) {
-            throw new JSONException(e.getMessage());
+        String data = object.getString(DATA);
+        File file = Base64FileReferences.getFile(data);
+        if (file != null) {
+            setFile(file);
+        } else {
+            try {
+                setData(Base64.decode(data, Base64.DEFAULT));
+            } catch (IllegalArgumentException e) {
+                throw new JSONException(e.getMessage());
+            }
         }
     }
 
@@ -220,7 +268,13 @@ public class ErrorAttachmentLog extends AbstractLog {
         JSONUtils.write(writer, ERROR_ID, getErrorId());
         JSONUtils.write(writer, CONTENT_TYPE, getContentType());
         JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+
+        /* A file is encoded only when sent, the stored log only references it. */
+        if (getFile() != null) {
+            JSONUtils.write(writer, DATA, Base64FileReferences.getReference(getFile()));
+        } else {
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        }
     }
 
     @SuppressWarnings("SimplifiableIfStatement")
@@ -248,6 +302,9 @@ public class ErrorAttachmentLog extends AbstractLog {
         if (fileName != null ? !fileName.equals(that.fileName) : that.fileName != null) {
             return false;
         }
+        if (file != null ? !file.equals(that.file) : that.file != null) {
+            return false;
+        }
         return Arrays.equals(data, that.data);
 
     }
@@ -260,6 +317,7 @@ public class ErrorAttachmentLog extends AbstractLog {
         result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
         result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
         result = 31 * result + Arrays.hashCode(data);
+        result = 31 * result + (file != null ? file.hashCode() : 0);
         return result;
     }
 }
@@ -0,0 +1,225 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads a crash dump written by {@link CrashDumpWriter} and converts it to an error log.
+ */
+public class CrashDumpReader implements Closeable {
+
+    /**
+     * Minimum size of a thread in a crash dump: identifier, name, grouped count and frame count.
+     */
+    private static final int MIN_THREAD_SIZE = 8 + ThrowableSnapshot.MIN_STRING_SIZE + 4 + 4;
+
+    /**
+     * Minimum size of an exception in a crash dump: type, message and frame count.
+     */
+    private static final int MIN_EXCEPTION_SIZE = 2 * ThrowableSnapshot.MIN_STRING_SIZE + 4;
+
+    /**
+     * Crash dump file.
+     */
+    private final File mFile;
+
+    /**
+     * Crash dump file opened for writing so that we can lock it.
+     */
+    private final RandomAccessFile mRandomAccessFile;
+
+    /**
+     * Snapshot of the throwable read from the dump.
+     */
+    private ThrowableSnapshot mThrowableSnapshot;
+
+    private CrashDumpReader(File file, RandomAccessFile randomAccessFile) {
+        mFile = file;
+        mRandomAccessFile = randomAccessFile;
+    }
+
+    /**
+     * Open a crash dump file.
+     *
+     * @param file crash dump file.
+     * @return reader or null if the file is still reserved by a running process.
+     * @throws IOException if the file cannot be opened.
+     */
+    @Nullable
+    public static CrashDumpReader open(@NonNull File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileLock lock;
+        try {
+            lock = randomAccessFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+        if (lock == null) {
+            randomAccessFile.close();
+            return null;
+        }
+        return new CrashDumpReader(file, randomAccessFile);
+    }
+
+    /**
+     * Check if a crash was written in the file.
+     *
+     * @return true if the file was reserved but no crash occurred.
+     * @throws IOException if an error occurred while accessing the file.
+     */
+    public boolean isEmpty() throws IOException {
+        return mRandomAccessFile.length() == 0;
+    }
+
+    /**
+     * Read the crash dump.
+     *
+     * @return error log.
+     * @throws IOException   if the file is invalid or cannot be read.
+     * @throws JSONException if device properties cannot be parsed.
+     */
+    @NonNull
+    public ManagedErrorLog read() throws IOException, JSONException {
+        FileDataInputStream input = new FileDataInputStream(new FileInputStream(mRandomAccessFile.getFD()), mRandomAccessFile.length());
+        if (input.readInt() != CrashDumpWriter.MAGIC) {
+            throw new IOException("Not a crash dump: " + mFile);
+        }
+        int version = input.readInt();
+        if (version != CrashDumpWriter.VERSION) {
+            throw new IOException("Unsupported crash dump version: " + version);
+        }
+
+        /* Header prepared when the file was reserved. */
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(new UUID(input.readLong(), input.readLong()));
+        errorLog.setAppLaunchTimestamp(new Date(input.readLong()));
+        errorLog.setProcessId(input.readInt());
+        errorLog.setProcessName(ThrowableSnapshot.readString(input));
+        errorLog.setArchitecture(ThrowableSnapshot.readString(input));
+        String device = ThrowableSnapshot.readString(input);
+        if (device != null) {
+            errorLog.setDevice(new Device());
+            errorLog.getDevice().read(new JSONObject(device));
+        }
+
+        /* Crash. */
+        errorLog.setTimestamp(new Date(input.readLong()));
+        errorLog.setErrorThreadId(input.readLong());
+        errorLog.setErrorThreadName(ThrowableSnapshot.readString(input));
+        errorLog.setFatal(true);
+        errorLog.setException(readException(input));
+
+        /* Thread states. */
+        int threadCount = input.readLength(MIN_THREAD_SIZE);
+        if (threadCount < 0) {
+            throw new IOException("Invalid thread count in crash dump: " + mFile);
+        }
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread();
+            thread.setId(input.readLong());
+            String name = ThrowableSnapshot.readString(input);
+            int groupedCount = input.readInt();
+            if (groupedCount < 0) {
+                throw new IOException("Invalid thread group in crash dump: " + mFile);
+            }
+            thread.setName(groupedCount > 0 ? ErrorLogHelper.getGroupedThreadName(name, groupedCount) : name);
+
+            /* Thread frames are limited by the thread dump policy instead of the exception frame limit. */
+            thread.setFrames(ErrorLogHelper.getModelFramesFromStackTrace(readFrames(input, Integer.MAX_VALUE)));
+            threads.add(thread);
+        }
+        errorLog.setThreads(threads);
+        if (input.readInt() != CrashDumpWriter.END_MARKER) {
+            throw new IOException("Incomplete crash dump: " + mFile);
+        }
+        return errorLog;
+    }
+
+    /**
+     * Get the snapshot of the throwable read from the crash dump by {@link #read()}.
+     *
+     * @return throwable snapshot.
+     */
+    public ThrowableSnapshot getThrowableSnapshot() {
+        return mThrowableSnapshot;
+    }
+
+    @Override
+    public void close() {
+        try {
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Failed to close crash dump file " + mFile, e);
+        }
+    }
+
+    private Exception readException(FileDataInputStream input) throws IOException {
+        int causeCount = input.readLength(MIN_EXCEPTION_SIZE);
+        if (causeCount <= 0) {
+            throw new IOException("No exception in crash dump: " + mFile);
+        }
+        if (causeCount > ErrorLogHelper.CAUSE_LIMIT) {
+            throw new IOException("Too many causes in crash dump: " + mFile);
+        }
+        Exception[] exceptions = new Exception[causeCount];
+        ThrowableSnapshot[] snapshots = new ThrowableSnapshot[causeCount];
+        for (int i = 0; i < causeCount; i++) {
+            String type = ThrowableSnapshot.readString(input);
+            String message = ThrowableSnapshot.readString(input);
+            StackTraceElement[] frames = readFrames(input, ErrorLogHelper.FRAME_LIMIT);
+            Exception exception = new Exception();
+            exception.setType(type);
+            exception.setMessage(message);
+            exception.setFrames(ErrorLogHelper.getModelFramesFromStackTrace(frames));
+            exceptions[i] = exception;
+            snapshots[i] = new ThrowableSnapshot(type, message, frames);
+        }
+
+        /* Chain causes. */
+        for (int i = 0; i < causeCount - 1; i++) {
+            exceptions[i].setInnerExceptions(Collections.singletonList(exceptions[i + 1]));
+            snapshots[i].setCause(snapshots[i + 1]);
+        }
+        mThrowableSnapshot = snapshots[0];
+        return exceptions[0];
+    }
+
+    private static StackTraceElement[] readFrames(FileDataInputStream input, int maxFrameCount) throws IOException {
+        int frameCount = input.readLength(ThrowableSnapshot.MIN_FRAME_SIZE);
+        if (frameCount < 0 || frameCount > maxFrameCount) {
+            throw new IOException("Invalid frame count in crash dump: " + frameCount);
+        }
+        StackTraceElement[] frames = new StackTraceElement[frameCount];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = ThrowableSnapshot.readStackTraceElement(input);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,402 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ThreadDumpPolicy;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Writes an uncaught Java exception and the thread states to a file reserved in advance.
+ * <p>
+ * The file, the write buffer and the header describing the process are all prepared when
+ * the writer is created so that capturing a crash does not need to build any model object
+ * or JSON string, which often fails when the process is out of memory.
+ * The raw dump is converted to an error log on next launch by {@link CrashDumpReader}.
+ */
+public class CrashDumpWriter {
+
+    /**
+     * Crash dump file extension.
+     */
+    public static final String CRASH_DUMP_FILE_EXTENSION = ".crash";
+
+    /**
+     * Magic number at the beginning of a crash dump.
+     */
+    static final int MAGIC = 0x41434344;
+
+    /**
+     * Crash dump format version.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * Marker at the end of a complete crash dump.
+     */
+    static final int END_MARKER = 0x454E4421;
+
+    /**
+     * Size of the write buffer, the buffer is flushed to the file every time it's full.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Number of threads the enumeration arrays can hold without allocating at crash time.
+     */
+    private static final int RESERVED_THREAD_COUNT = 256;
+
+    /**
+     * Value written in place of the stack index for threads that are not reported.
+     */
+    private static final int NOT_REPORTED = -1;
+
+    /**
+     * Error log identifier.
+     */
+    private final UUID mId;
+
+    /**
+     * Reserved file.
+     */
+    private final File mFile;
+
+    /**
+     * Stream to the reserved file, it holds a lock on the file until the dump is complete.
+     */
+    private final FileOutputStream mOutputStream;
+
+    /**
+     * Write buffer, it starts with the header.
+     */
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Threads array used to enumerate threads at crash time.
+     */
+    private Thread[] mThreads = new Thread[RESERVED_THREAD_COUNT];
+
+    /**
+     * Stacks of the enumerated threads, used to group identical stacks.
+     */
+    private StackTraceElement[][] mStacks = new StackTraceElement[RESERVED_THREAD_COUNT][];
+
+    /**
+     * Number of other threads grouped with each enumerated thread, {@link #NOT_REPORTED} for threads not reported.
+     */
+    private int[] mGroupedCounts = new int[RESERVED_THREAD_COUNT];
+
+    /**
+     * Thread dump policy.
+     */
+    private ThreadDumpPolicy mThreadDumpPolicy;
+
+    /**
+     * Position in the write buffer.
+     */
+    private int mPosition;
+
+    /**
+     * True once the dump has been completely written.
+     */
+    private boolean mWritten;
+
+    /**
+     * Reserve a crash dump file and prepare the header.
+     *
+     * @param directory           directory where to create the file.
+     * @param appLaunchTimestamp  application launch timestamp.
+     * @param processId           process identifier.
+     * @param processName         process name.
+     * @param architecture        CPU architecture.
+     * @param device              device properties as JSON, can be null.
+     * @param threadDumpPolicy    thread dump policy.
+     * @throws IOException if the file cannot be reserved.
+     */
+    CrashDumpWriter(@NonNull File directory, long appLaunchTimestamp, int processId, @NonNull String processName, @NonNull String architecture, @Nullable String device, @NonNull ThreadDumpPolicy threadDumpPolicy) throws IOException {
+        mThreadDumpPolicy = threadDumpPolicy;
+        mId = UUID.randomUUID();
+        mFile = new File(directory, mId + CRASH_DUMP_FILE_EXTENSION);
+        mOutputStream = new FileOutputStream(mFile);
+        try {
+
+            /* Let other processes know this file is not abandoned. */
+            mOutputStream.getChannel().lock();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        writeInt(MAGIC);
+        writeInt(VERSION);
+        writeLong(mId.getMostSignificantBits());
+        writeLong(mId.getLeastSignificantBits());
+        writeLong(appLaunchTimestamp);
+        writeInt(processId);
+        writeString(processName);
+        writeString(architecture);
+        writeString(device);
+    }
+
+    /**
+     * Get the identifier the error log will have.
+     *
+     * @return error log identifier.
+     */
+    public UUID getId() {
+        return mId;
+    }
+
+    /**
+     * Apply a new thread dump policy.
+     *
+     * @param threadDumpPolicy thread dump policy.
+     */
+    public synchronized void setThreadDumpPolicy(@NonNull ThreadDumpPolicy threadDumpPolicy) {
+        mThreadDumpPolicy = threadDumpPolicy;
+    }
+
+    /**
+     * Write the crash to the reserved file. This can be called only once.
+     *
+     * @param thread    thread where the crash occurred.
+     * @param throwable uncaught exception or error.
+     * @throws IOException if an error occurred while writing the file.
+     */
+    public synchronized void write(@NonNull Thread thread, @NonNull Throwable throwable) throws IOException {
+        writeLong(System.currentTimeMillis());
+        writeLong(thread.getId());
+        writeString(thread.getName());
+        writeThrowable(throwable);
+        writeThreads(thread);
+        writeInt(END_MARKER);
+        flush();
+        mOutputStream.getFD().sync();
+        mOutputStream.close();
+        mWritten = true;
+    }
+
+    /**
+     * Release the reserved file, deleting it if no crash has been written.
+     */
+    public synchronized void close() {
+        try {
+            mOutputStream.close();
+        } catch (IOException e) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Failed to close crash dump file " + mFile, e);
+        }
+        if (!mWritten && !mFile.delete()) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Failed to delete crash dump file " + mFile);
+        }
+    }
+
+    private void writeThrowable(Throwable throwable) throws IOException {
+
+        /* Count causes first, we keep only beginning and end of huge chains. */
+        int causeCount = 0;
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            causeCount++;
+        }
+        boolean truncated = causeCount > ErrorLogHelper.CAUSE_LIMIT;
+        writeInt(truncated ? ErrorLogHelper.CAUSE_LIMIT : causeCount);
+        int index = 0;
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause(), index++) {
+            if (truncated && index >= ErrorLogHelper.CAUSE_LIMIT_HALF && index < causeCount - ErrorLogHelper.CAUSE_LIMIT_HALF) {
+                continue;
+            }
+            writeString(cause.getClass().getName());
+            writeString(cause.getMessage());
+            writeFrames(cause.getStackTrace());
+        }
+    }
+
+    private void writeThreads(Thread errorThread) throws IOException {
+        ThreadGroup group = Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null) {
+            group = group.getParent();
+        }
+
+        /* Grow the reserved arrays if there are more threads, the reserved ones are used if memory is exhausted. */
+        int activeCount = group.activeCount();
+        if (activeCount >= mThreads.length) {
+            try {
+                int size = activeCount + activeCount / 2;
+                Thread[] threads = new Thread[size];
+                StackTraceElement[][] stacks = new StackTraceElement[size][];
+                int[] groupedCounts = new int[size];
+                mThreads = threads;
+                mStacks = stacks;
+                mGroupedCounts = groupedCounts;
+            } catch (OutOfMemoryError ignore) {
+
+                /* Only the reserved number of threads is captured. */
+            }
+        }
+        int count = group.enumerate(mThreads, true);
+
+        /* The thread that crashed goes first so that it's never dropped by the limit. */
+        int errorThreadIndex = -1;
+        for (int i = 0; i < count; i++) {
+            if (mThreads[i] == errorThread) {
+                errorThreadIndex = i;
+            }
+        }
+        if (errorThreadIndex < 0) {
+            if (count < mThreads.length) {
+                errorThreadIndex = count++;
+            } else {
+                errorThreadIndex = count - 1;
+            }
+        }
+        mThreads[errorThreadIndex] = mThreads[0];
+        mThreads[0] = errorThread;
+
+        /* Group identical stacks first, only the reported threads count against the limit. */
+        int reportedCount = 0;
+        for (int i = 0; i < count; i++) {
+            StackTraceElement[] frames = mThreads[i].getStackTrace();
+            mStacks[i] = frames;
+            mGroupedCounts[i] = NOT_REPORTED;
+            if (mThreadDumpPolicy.isGroupIdenticalStacks()) {
+                int groupedWith = indexOfStack(i, frames);
+                if (groupedWith >= 0) {
+                    mGroupedCounts[groupedWith]++;
+                    continue;
+                }
+            }
+            if (reportedCount < mThreadDumpPolicy.getMaxThreads()) {
+                mGroupedCounts[i] = 0;
+                reportedCount++;
+            }
+        }
+        writeInt(reportedCount);
+        for (int i = 0; i < count; i++) {
+            if (mGroupedCounts[i] != NOT_REPORTED) {
+                writeThread(mThreads[i], mStacks[i], mGroupedCounts[i]);
+            }
+            mThreads[i] = null;
+            mStacks[i] = null;
+        }
+    }
+
+    private int indexOfStack(int count, StackTraceElement[] frames) {
+        for (int i = 0; i < count; i++) {
+            if (mGroupedCounts[i] != NOT_REPORTED && Arrays.equals(mStacks[i], frames)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeThread(Thread thread, StackTraceElement[] frames, int groupedCount) throws IOException {
+        writeLong(thread.getId());
+        writeString(thread.getName());
+        writeInt(groupedCount);
+        int frameCount = Math.min(frames.length, mThreadDumpPolicy.getMaxFramesPerThread());
+        writeInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            writeFrame(frames[i]);
+        }
+    }
+
+    private void writeFrames(StackTraceElement[] frames) throws IOException {
+        if (frames.length > ErrorLogHelper.FRAME_LIMIT) {
+            writeInt(ErrorLogHelper.FRAME_LIMIT);
+            for (int i = 0; i < ErrorLogHelper.FRAME_LIMIT_HALF; i++) {
+                writeFrame(frames[i]);
+            }
+            for (int i = frames.length - ErrorLogHelper.FRAME_LIMIT_HALF; i < frames.length; i++) {
+                writeFrame(frames[i]);
+            }
+        } else {
+            writeInt(frames.length);
+            for (StackTraceElement frame : frames) {
+                writeFrame(frame);
+            }
+        }
+    }
+
+    private void writeFrame(StackTraceElement frame) throws IOException {
+        writeString(frame.getClassName());
+        writeString(frame.getMethodName());
+        writeString(frame.getFileName());
+        writeInt(frame.getLineNumber());
+    }
+
+    /**
+     * Write a string as its UTF-8 length followed by its UTF-8 bytes, or -1 for null.
+     */
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeInt(-1);
+            return;
+        }
+
+        /* Compute encoded length first to avoid allocating the encoded bytes. */
+        int length = value.length();
+        int encodedLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                encodedLength++;
+            } else if (c < 0x800) {
+                encodedLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                encodedLength += 4;
+                i++;
+            } else {
+                encodedLength += 3;
+            }
+        }
+        writeInt(encodedLength);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (mPosition == mBuffer.length) {
+            flush();
+        }
+        mBuffer[mPosition++] = (byte) value;
+    }
+
+    private void flush() throws IOException {
+        mOutputStream.write(mBuffer, 0, mPosition);
+        mPosition = 0;
+    }
+}
@@ -11,23 +11,37 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.crashes.ThreadDumpPolicy;
+import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
 import com.microsoft.appcenter.crashes.ingestion.models.Thread;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
+import com.microsoft.appcenter.ingestion.models.json.Base64FileReferences;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.UUIDUtils;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
+import org.json.JSONException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -47,6 +61,17 @@ public class ErrorLogHelper {
      */
     public static final String THROWABLE_FILE_EXTENSION = ".throwable";
 
+    /**
+     * Error attachment file extension for the copies of attached files.
+     */
+    @VisibleForTesting
+    static final String ERROR_ATTACHMENT_FILE_EXTENSION = ".attachment";
+
+    /**
+     * Buffer size to copy attached files.
+     */
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+
     /**
      * Directory under the FILES_PATH containing minidump files.
      */
@@ -71,7 +96,7 @@ public class ErrorLogHelper {
     /**
      * We keep the first half of the limit of frames from the beginning and the second half from end.
      */
-    private static final int FRAME_LIMIT_HALF = FRAME_LIMIT / 2;
+    static final int FRAME_LIMIT_HALF = FRAME_LIMIT / 2;
 
     /**
      * For huge exception cause chains, we keep only beginning and end of causes according to this limit.
@@ -82,7 +107,7 @@ public class ErrorLogHelper {
     /**
      * We keep the first half of the limit of causes from the beginning and the second half from end.
      */
-    private static final int CAUSE_LIMIT_HALF = CAUSE_LIMIT / 2;
+    static final int CAUSE_LIMIT_HALF = CAUSE_LIMIT / 2;
 
     /**
      * Error log directory within application files.
@@ -115,6 +140,12 @@ public class ErrorLogHelper {
      */
     private static File sPendingMinidumpDirectory;
 
+    /**
+     * Error log and throwable files of the error storage directory by error identifier.
+     * The directory is listed once when needed then the index is maintained as files are saved or removed.
+     */
+    private static Map<UUID, StoredErrorFiles> sStoredErrorFiles;
+
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Throwable throwable, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp) {
         return createErrorLog(context, thread, getModelExceptionFromThrowable(throwable), allStackTraces, initializeTimestamp, true);
@@ -122,6 +153,11 @@ public class ErrorLogHelper {
 
     @NonNull
     public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal) {
+        return createErrorLog(context, thread, exception, allStackTraces, initializeTimestamp, fatal, new ThreadDumpPolicy());
+    }
+
+    @NonNull
+    public static ManagedErrorLog createErrorLog(@NonNull Context context, @NonNull final java.lang.Thread thread, @NonNull final Exception exception, @NonNull final Map<java.lang.Thread, StackTraceElement[]> allStackTraces, final long initializeTimestamp, boolean fatal, @NonNull ThreadDumpPolicy threadDumpPolicy) {
 
         /* Build error log with a unique identifier. */
         ManagedErrorLog errorLog = new ManagedErrorLog();
@@ -139,25 +175,7 @@ public class ErrorLogHelper {
 
         /* Process information. Parent one is not available on Android. */
         errorLog.setProcessId(Process.myPid());
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager != null) {
-            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
-            if (runningAppProcesses != null) {
-                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
-                    if (info.pid == Process.myPid()) {
-                        errorLog.setProcessName(info.processName);
-                    }
-                }
-            }
-        }
-
-        /*
-         * Process name is required field for crash processing but cannot always be available,
-         * make sure we send a default value if not found.
-         */
-        if (errorLog.getProcessName() == null) {
-            errorLog.setProcessName("");
-        }
+        errorLog.setProcessName(getProcessName(context));
 
         /* CPU architecture. */
         errorLog.setArchitecture(getArchitecture());
@@ -176,16 +194,123 @@ public class ErrorLogHelper {
         errorLog.setException(exception);
 
         /* Attach thread states. */
-        List<Thread> threads = new ArrayList<>(allStackTraces.size());
-        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+        errorLog.setThreads(getModelThreads(thread, allStackTraces, threadDumpPolicy));
+        return errorLog;
+    }
+
+    @NonNull
+    private static List<Thread> getModelThreads(@NonNull java.lang.Thread errorThread, @NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces, @NonNull ThreadDumpPolicy threadDumpPolicy) {
+
+        /* The thread in error goes first so that it's never dropped by the limit. */
+        Map<java.lang.Thread, StackTraceElement[]> orderedStackTraces = allStackTraces;
+        StackTraceElement[] errorThreadStackTrace = allStackTraces.get(errorThread);
+        if (errorThreadStackTrace != null) {
+            orderedStackTraces = new LinkedHashMap<>();
+            orderedStackTraces.put(errorThread, errorThreadStackTrace);
+            orderedStackTraces.putAll(allStackTraces);
+        }
+
+        /* Only reported threads count against the limit, grouped ones are counted on the thread they are grouped with. */
+        int maxThreads = Math.min(allStackTraces.size(), threadDumpPolicy.getMaxThreads());
+        List<Thread> threads = new ArrayList<>(maxThreads);
+        List<StackTraceElement[]> stackTraces = new ArrayList<>(maxThreads);
+        int[] groupedCounts = new int[maxThreads];
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : orderedStackTraces.entrySet()) {
+            StackTraceElement[] stackTrace = entry.getValue();
+            int groupedWith = threadDumpPolicy.isGroupIdenticalStacks() ? indexOfStackTrace(stackTraces, stackTrace) : -1;
+            if (groupedWith >= 0) {
+                groupedCounts[groupedWith]++;
+                continue;
+            }
+            if (threads.size() == maxThreads) {
+                continue;
+            }
+            if (stackTrace.length > threadDumpPolicy.getMaxFramesPerThread()) {
+                stackTrace = Arrays.copyOf(stackTrace, threadDumpPolicy.getMaxFramesPerThread());
+            }
             Thread javaThread = new Thread();
             javaThread.setId(entry.getKey().getId());
             javaThread.setName(entry.getKey().getName());
-            javaThread.setFrames(getModelFramesFromStackTrace(entry.getValue()));
+            javaThread.setFrames(getModelFramesFromStackTrace(stackTrace));
             threads.add(javaThread);
+            stackTraces.add(entry.getValue());
         }
-        errorLog.setThreads(threads);
-        return errorLog;
+
+        /* The ingestion schema has no field for grouped threads, the count is kept in the thread name. */
+        for (int i = 0; i < threads.size(); i++) {
+            if (groupedCounts[i] > 0) {
+                threads.get(i).setName(getGroupedThreadName(threads.get(i).getName(), groupedCounts[i]));
+            }
+        }
+        return threads;
+    }
+
+    private static int indexOfStackTrace(List<StackTraceElement[]> stackTraces, StackTraceElement[] stackTrace) {
+        for (int i = 0; i < stackTraces.size(); i++) {
+            if (Arrays.equals(stackTraces.get(i), stackTrace)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the name reported for a thread whose stack is shared by other threads.
+     *
+     * @param name         thread name.
+     * @param groupedCount number of other threads with the same stack.
+     * @return reported thread name.
+     */
+    @NonNull
+    static String getGroupedThreadName(String name, int groupedCount) {
+        return name + " (+" + groupedCount + " threads with identical stack)";
+    }
+
+    /**
+     * Reserve a file and a buffer to save the next uncaught Java exception.
+     *
+     * @param context             context.
+     * @param initializeTimestamp application launch timestamp.
+     * @param threadDumpPolicy    thread dump policy.
+     * @return crash dump writer or null if the file could not be reserved.
+     */
+    @Nullable
+    public static CrashDumpWriter createCrashDumpWriter(@NonNull Context context, long initializeTimestamp, @NonNull ThreadDumpPolicy threadDumpPolicy) {
+
+        /* Snapshot device properties. */
+        String device = null;
+        try {
+            device = JSONUtils.toJsonObject(DeviceInfoHelper.getDeviceInfo(context));
+        } catch (DeviceInfoHelper.DeviceInfoException | JSONException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Could not attach device properties snapshot to crash dump, will attach at sending time", e);
+        }
+        try {
+            return new CrashDumpWriter(getErrorStorageDirectory(), initializeTimestamp, Process.myPid(), getProcessName(context), getArchitecture(), device, threadDumpPolicy);
+        } catch (IOException e) {
+            AppCenterLog.error(Crashes.LOG_TAG, "Could not reserve crash dump file, crash will be saved as is", e);
+            return null;
+        }
+    }
+
+    @NonNull
+    private static String getProcessName(@NonNull Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            List<ActivityManager.RunningAppProcessInfo> runningAppProcesses = activityManager.getRunningAppProcesses();
+            if (runningAppProcesses != null) {
+                for (ActivityManager.RunningAppProcessInfo info : runningAppProcesses) {
+                    if (info.pid == Process.myPid()) {
+                        return info.processName;
+                    }
+                }
+            }
+        }
+
+        /*
+         * Process name is required field for crash processing but cannot always be available,
+         * make sure we send a default value if not found.
+         */
+        return "";
     }
 
     @SuppressWarnings("deprecation")
@@ -230,11 +355,22 @@ public class ErrorLogHelper {
     }
 
     @NonNull
-    public static File[] getStoredErrorLogFiles() {
+    public static synchronized File[] getStoredErrorLogFiles() {
+        List<File> files = new ArrayList<>();
+        for (StoredErrorFiles storedErrorFiles : getStoredErrorFilesIndex().values()) {
+            if (storedErrorFiles.errorLogFile != null) {
+                files.add(storedErrorFiles.errorLogFile);
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    @NonNull
+    public static File[] getStoredCrashDumpFiles() {
         File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
             @Override
             public boolean accept(File dir, String filename) {
-                return filename.endsWith(ERROR_LOG_FILE_EXTENSION);
+                return filename.endsWith(CrashDumpWriter.CRASH_DUMP_FILE_EXTENSION);
             }
         });
         return files != null ? files : new File[0];
@@ -247,18 +383,38 @@ public class ErrorLogHelper {
     }
 
     @Nullable
-    public static File getLastErrorLogFile() {
-        return StorageHelper.InternalStorage.lastModifiedFile(getErrorStorageDirectory(), new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.endsWith(ERROR_LOG_FILE_EXTENSION);
+    public static synchronized File getLastErrorLogFile() {
+        File lastErrorLogFile = null;
+        long lastModified = 0;
+        for (StoredErrorFiles storedErrorFiles : getStoredErrorFilesIndex().values()) {
+            if (storedErrorFiles.errorLogFile != null && storedErrorFiles.errorLogLastModified > lastModified) {
+                lastErrorLogFile = storedErrorFiles.errorLogFile;
+                lastModified = storedErrorFiles.errorLogLastModified;
             }
-        });
+        }
+        return lastErrorLogFile;
+    }
+
+    /**
+     * Count stored error logs that were saved, or that crashed for crash dumps, since a given time.
+     *
+     * @param timestamp time in milliseconds.
+     * @return number of error logs.
+     */
+    public static synchronized int getErrorLogCountSince(long timestamp) {
+        int count = 0;
+        for (StoredErrorFiles storedErrorFiles : getStoredErrorFilesIndex().values()) {
+            if (storedErrorFiles.errorLogFile != null && storedErrorFiles.errorLogLastModified >= timestamp) {
+                count++;
+            }
+        }
+        return count;
     }
 
     @Nullable
-    public static File getStoredThrowableFile(@NonNull UUID id) {
-        return getStoredFile(id, THROWABLE_FILE_EXTENSION);
+    public static synchronized File getStoredThrowableFile(@NonNull UUID id) {
+        StoredErrorFiles storedErrorFiles = getStoredErrorFilesIndex().get(id);
+        return storedErrorFiles != null ? storedErrorFiles.throwableFile : null;
     }
 
     public static void removeStoredThrowableFile(@NonNull UUID id) {
@@ -266,12 +422,14 @@ public class ErrorLogHelper {
         if (file != null) {
             AppCenterLog.info(Crashes.LOG_TAG, "Deleting throwable file " + file.getName());
             StorageHelper.InternalStorage.delete(file);
+            unindexStoredFile(file);
         }
     }
 
     @Nullable
-    static File getStoredErrorLogFile(@NonNull UUID id) {
-        return getStoredFile(id, ERROR_LOG_FILE_EXTENSION);
+    static synchronized File getStoredErrorLogFile(@NonNull UUID id) {
+        StoredErrorFiles storedErrorFiles = getStoredErrorFilesIndex().get(id);
+        return storedErrorFiles != null ? storedErrorFiles.errorLogFile : null;
     }
 
     public static void removeStoredErrorLogFile(@NonNull UUID id) {
@@ -279,51 +437,259 @@ public class ErrorLogHelper {
         if (file != null) {
             AppCenterLog.info(Crashes.LOG_TAG, "Deleting error log file " + file.getName());
             StorageHelper.InternalStorage.delete(file);
+            unindexStoredFile(file);
         }
     }
 
+    /**
+     * Copy the file of an error attachment to the SDK storage, where it can be streamed from when the attachment is sent
+     * even if the application changes or deletes its file in the meantime.
+     *
+     * @param attachment error attachment with an identifier and a file, updated to use the copy.
+     * @throws IOException if the file cannot be copied.
+     */
+    public static void storeErrorAttachmentFile(@NonNull ErrorAttachmentLog attachment) throws IOException {
+        File directory = Base64FileReferences.getDirectory();
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File file = new File(directory, attachment.getId() + ERROR_ATTACHMENT_FILE_EXTENSION);
+        InputStream inputStream = new FileInputStream(attachment.getFile());
+        try {
+            OutputStream outputStream = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int length;
+                while ((length = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, length);
+                }
+            } finally {
+
+                //noinspection ThrowFromFinallyBlock
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            StorageHelper.InternalStorage.delete(file);
+            throw e;
+        } finally {
+
+            //noinspection ThrowFromFinallyBlock
+            inputStream.close();
+        }
+        attachment.setFile(file);
+    }
+
+    /**
+     * Delete the copy of an attached file once the attachment has been sent or discarded.
+     * The file of the application is never deleted.
+     *
+     * @param attachment error attachment.
+     */
+    public static void removeStoredErrorAttachmentFile(@NonNull ErrorAttachmentLog attachment) {
+        File file = attachment.getFile();
+        if (file != null && Base64FileReferences.getDirectory().equals(file.getParentFile())) {
+            AppCenterLog.debug(Crashes.LOG_TAG, "Deleting error attachment file " + file.getName());
+            StorageHelper.InternalStorage.delete(file);
+        }
+    }
+
+    /**
+     * Delete the copies of all attached files.
+     */
+    public static void removeStoredErrorAttachmentFiles() {
+        File[] files = Base64FileReferences.getDirectory().listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(ERROR_ATTACHMENT_FILE_EXTENSION);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                StorageHelper.InternalStorage.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Add or update an error log or throwable file in the index after it has been written.
+     *
+     * @param file file in the error storage directory.
+     */
+    public static synchronized void indexStoredFile(@NonNull File file) {
+        if (sStoredErrorFiles != null) {
+            indexStoredFile(sStoredErrorFiles, file);
+        }
+    }
+
+    /**
+     * Remove an error log or throwable file from the index after it has been deleted.
+     *
+     * @param file file in the error storage directory.
+     */
+    public static synchronized void unindexStoredFile(@NonNull File file) {
+        UUID id = getStoredFileId(file.getName());
+        if (sStoredErrorFiles == null || id == null) {
+            return;
+        }
+        StoredErrorFiles storedErrorFiles = sStoredErrorFiles.get(id);
+        if (storedErrorFiles != null) {
+            if (file.equals(storedErrorFiles.errorLogFile)) {
+                storedErrorFiles.errorLogFile = null;
+            } else if (file.equals(storedErrorFiles.throwableFile)) {
+                storedErrorFiles.throwableFile = null;
+            }
+            if (storedErrorFiles.errorLogFile == null && storedErrorFiles.throwableFile == null) {
+                sStoredErrorFiles.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Forget the index so that the error storage directory is listed again when needed.
+     * This is needed when files are added or deleted without using this class.
+     */
+    public static synchronized void clearStoredFileIndex() {
+        sStoredErrorFiles = null;
+    }
+
+    @NonNull
+    private static Map<UUID, StoredErrorFiles> getStoredErrorFilesIndex() {
+        if (sStoredErrorFiles == null) {
+            sStoredErrorFiles = new LinkedHashMap<>();
+            File[] files = getErrorStorageDirectory().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    indexStoredFile(sStoredErrorFiles, file);
+                }
+            }
+        }
+        return sStoredErrorFiles;
+    }
+
+    private static void indexStoredFile(Map<UUID, StoredErrorFiles> index, File file) {
+        String filename = file.getName();
+        boolean errorLogFile = filename.endsWith(ERROR_LOG_FILE_EXTENSION);
+        if (!errorLogFile && !filename.endsWith(THROWABLE_FILE_EXTENSION)) {
+            return;
+        }
+        UUID id = getStoredFileId(filename);
+        if (id == null) {
+            return;
+        }
+        StoredErrorFiles storedErrorFiles = index.get(id);
+        if (storedErrorFiles == null) {
+            storedErrorFiles = new StoredErrorFiles();
+            index.put(id, storedErrorFiles);
+        }
+        if (errorLogFile) {
+            storedErrorFiles.errorLogFile = file;
+            storedErrorFiles.errorLogLastModified = file.lastModified();
+        } else {
+            storedErrorFiles.throwableFile = file;
+        }
+    }
+
+    @Nullable
+    private static UUID getStoredFileId(String filename) {
+        int extensionIndex = filename.lastIndexOf('.');
+        if (extensionIndex > 0) {
+            try {
+                return UUID.fromString(filename.substring(0, extensionIndex));
+            } catch (IllegalArgumentException ignore) {
+            }
+        }
+        return null;
+    }
+
     @NonNull
     public static ErrorReport getErrorReportFromErrorLog(@NonNull ManagedErrorLog log, Throwable throwable) {
         ErrorReport report = new ErrorReport();
+        report.setThrowable(throwable);
+        return fillErrorReport(report, log);
+    }
+
+    @NonNull
+    public static ErrorReport getErrorReportFromErrorLog(@NonNull ManagedErrorLog log, ThrowableSnapshot throwableSnapshot) {
+        ErrorReport report = throwableSnapshot != null ? new SnapshotErrorReport(throwableSnapshot) : new ErrorReport();
+        return fillErrorReport(report, log);
+    }
+
+    @NonNull
+    private static ErrorReport fillErrorReport(@NonNull ErrorReport report, @NonNull ManagedErrorLog log) {
         report.setId(log.getId().toString());
         report.setThreadName(log.getErrorThreadName());
-        report.setThrowable(throwable);
         report.setAppStartTime(log.getAppLaunchTimestamp());
         report.setAppErrorTime(log.getTimestamp());
         report.setDevice(log.getDevice());
         return report;
     }
 
-    @VisibleForTesting
-    static void setErrorLogDirectory(File file) {
-        sErrorLogDirectory = file;
+    /**
+     * Write a throwable snapshot file.
+     *
+     * @param file              file to write.
+     * @param throwableSnapshot snapshot to write.
+     * @throws IOException if an error occurred while writing.
+     */
+    public static void writeThrowableSnapshot(@NonNull File file, @NonNull ThrowableSnapshot throwableSnapshot) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(ThrowableSnapshot.MAGIC);
+            output.writeInt(ThrowableSnapshot.VERSION);
+            throwableSnapshot.write(output);
+        } finally {
+            output.close();
+        }
     }
 
+    /**
+     * Read a throwable snapshot file. Files written with Java serialization
+     * by previous SDK versions are still supported.
+     *
+     * @param file file to read.
+     * @return snapshot or null if the file is empty.
+     * @throws IOException if the file is invalid or cannot be read.
+     */
     @Nullable
-    private static File getStoredFile(@NonNull final UUID id, @NonNull final String extension) {
-        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.startsWith(id.toString()) && filename.endsWith(extension);
+    public static ThrowableSnapshot readThrowableSnapshot(@NonNull File file) throws IOException {
+        if (file.length() == 0) {
+            return null;
+        }
+        FileDataInputStream input = new FileDataInputStream(new FileInputStream(file), file.length());
+        try {
+            if (input.readInt() == ThrowableSnapshot.MAGIC) {
+                int version = input.readInt();
+                if (version != ThrowableSnapshot.VERSION) {
+                    throw new IOException("Unsupported throwable snapshot version: " + version);
+                }
+                return ThrowableSnapshot.read(input);
             }
-        });
+        } finally {
+            input.close();
+        }
+
+        /* Legacy serialized throwable. */
+        Throwable throwable;
+        try {
+            throwable = StorageHelper.InternalStorage.readObject(file);
+        } catch (ClassNotFoundException | StackOverflowError e) {
+            throw new IOException("Cannot deserialize throwable file " + file.getName(), e);
+        }
+        return throwable == null ? null : ThrowableSnapshot.fromThrowable(throwable);
+    }
 
-        return files != null && files.length > 0 ? files[0] : null;
+    @VisibleForTesting
+    static synchronized void setErrorLogDirectory(File file) {
+        sErrorLogDirectory = file;
+        sStoredErrorFiles = null;
     }
 
     @NonNull
     public static Exception getModelExceptionFromThrowable(@NonNull Throwable t) {
         Exception topException = null;
         Exception parentException = null;
-        List<Throwable> causeChain = new LinkedList<>();
-        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
-            causeChain.add(cause);
-        }
-        if (causeChain.size() > CAUSE_LIMIT) {
-            AppCenterLog.warn(Crashes.LOG_TAG, "Crash causes truncated from " + causeChain.size() + " to " + CAUSE_LIMIT + " causes.");
-            causeChain.subList(CAUSE_LIMIT_HALF, causeChain.size() - CAUSE_LIMIT_HALF).clear();
-        }
-        for (Throwable cause: causeChain) {
+        for (Throwable cause : ThrowableSnapshot.getCauseChain(t)) {
             Exception exception = new Exception();
             exception.setType(cause.getClass().getName());
             exception.setMessage(cause.getMessage());
@@ -343,19 +709,15 @@ public class ErrorLogHelper {
     @NonNull
     private static List<StackFrame> getModelFramesFromStackTrace(@NonNull Throwable throwable) {
         StackTraceElement[] stackTrace = throwable.getStackTrace();
-        if (stackTrace.length > FRAME_LIMIT) {
-            StackTraceElement[] stackTraceTruncated = new StackTraceElement[FRAME_LIMIT];
-            System.arraycopy(stackTrace, 0, stackTraceTruncated, 0, FRAME_LIMIT_HALF);
-            System.arraycopy(stackTrace, stackTrace.length - FRAME_LIMIT_HALF, stackTraceTruncated, FRAME_LIMIT_HALF, FRAME_LIMIT_HALF);
+        StackTraceElement[] stackTraceTruncated = ThrowableSnapshot.truncateStackTrace(stackTrace);
+        if (stackTraceTruncated != stackTrace) {
             throwable.setStackTrace(stackTraceTruncated);
-            AppCenterLog.warn(Crashes.LOG_TAG, "Crash frames truncated from " + stackTrace.length + " to " + stackTraceTruncated.length + " frames.");
-            stackTrace = stackTraceTruncated;
         }
-        return getModelFramesFromStackTrace(stackTrace);
+        return getModelFramesFromStackTrace(stackTraceTruncated);
     }
 
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
+    static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
         List<StackFrame> stackFrames = new ArrayList<>();
         for (StackTraceElement stackTraceElement : stackTrace) {
             stackFrames.add(getModelStackFrame(stackTraceElement));
@@ -418,4 +780,25 @@ public class ErrorLogHelper {
         }
         return result;
     }
+
+    /**
+     * Files stored for an error.
+     */
+    private static class StoredErrorFiles {
+
+        /**
+         * Error log file.
+         */
+        File errorLogFile;
+
+        /**
+         * Last modification time of the error log file when indexed.
+         */
+        long errorLogLastModified;
+
+        /**
+         * Throwable file.
+         */
+        File throwableFile;
+    }
 }
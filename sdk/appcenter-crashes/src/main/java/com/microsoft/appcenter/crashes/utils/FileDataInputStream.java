@@ -0,0 +1,88 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Data input stream over a file of known size.
+ * <p>
+ * Lengths and counts read from a crash file are checked against the bytes left in the file
+ * before allocating memory for them, so that a corrupted file fails with an {@link IOException}
+ * instead of an {@link OutOfMemoryError}.
+ */
+class FileDataInputStream extends DataInputStream {
+
+    /**
+     * Init.
+     *
+     * @param in     file input stream.
+     * @param length number of bytes left in the file from the current position of the input stream.
+     */
+    FileDataInputStream(InputStream in, long length) {
+        super(new RemainingInputStream(new BufferedInputStream(in), length));
+    }
+
+    /**
+     * Read a length or a count and check that many items still fit in the file.
+     *
+     * @param minItemSize minimum number of bytes each item takes in the file.
+     * @return the length, may be negative as a marker for the caller to interpret.
+     * @throws IOException if the length does not fit in the bytes left in the file or cannot be read.
+     */
+    int readLength(int minItemSize) throws IOException {
+        int length = readInt();
+        if (length > ((RemainingInputStream) in).mRemaining / minItemSize) {
+            throw new IOException("Invalid length in file: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Keeps track of the number of bytes left to read.
+     */
+    private static class RemainingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes left in the file.
+         */
+        private long mRemaining;
+
+        RemainingInputStream(InputStream in, long remaining) {
+            super(in);
+            mRemaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                mRemaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                mRemaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            mRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
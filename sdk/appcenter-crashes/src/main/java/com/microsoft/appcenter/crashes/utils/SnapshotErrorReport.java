@@ -0,0 +1,35 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.crashes.model.ErrorReport;
+
+/**
+ * Error report that rebuilds its throwable from a snapshot only when the application asks for it.
+ */
+class SnapshotErrorReport extends ErrorReport {
+
+    /**
+     * Snapshot the throwable is rebuilt from on first access, <code>null</code> once rebuilt.
+     */
+    private ThrowableSnapshot mThrowableSnapshot;
+
+    SnapshotErrorReport(@NonNull ThrowableSnapshot throwableSnapshot) {
+        mThrowableSnapshot = throwableSnapshot;
+    }
+
+    @Override
+    public synchronized Throwable getThrowable() {
+        if (mThrowableSnapshot != null) {
+            super.setThrowable(mThrowableSnapshot.toThrowable());
+            mThrowableSnapshot = null;
+        }
+        return super.getThrowable();
+    }
+
+    @Override
+    public synchronized void setThrowable(Throwable throwable) {
+        super.setThrowable(throwable);
+        mThrowableSnapshot = null;
+    }
+}
@@ -0,0 +1,358 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.crashes.Crashes;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Snapshot of a throwable with class names, messages, frames, causes and suppressed exceptions.
+ * <p>
+ * It's stored in a compact versioned binary format instead of using Java serialization,
+ * and turned back into a throwable only when the application asks for it.
+ */
+public class ThrowableSnapshot {
+
+    /**
+     * Minimum size of a string in the binary format: its length.
+     */
+    static final int MIN_STRING_SIZE = 4;
+
+    /**
+     * Minimum size of a stack frame in the binary format: 3 strings and a line number.
+     */
+    static final int MIN_FRAME_SIZE = 3 * MIN_STRING_SIZE + 4;
+
+    /**
+     * Minimum size of a snapshot in the binary format: 2 strings, frame and suppressed counts and cause flag.
+     */
+    private static final int MIN_SNAPSHOT_SIZE = 2 * MIN_STRING_SIZE + 4 + 4 + 1;
+
+    /**
+     * Magic number at the beginning of a throwable snapshot file.
+     */
+    static final int MAGIC = 0x41435453;
+
+    /**
+     * Throwable snapshot format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Throwable class name.
+     */
+    private final String mType;
+
+    /**
+     * Throwable message.
+     */
+    private final String mMessage;
+
+    /**
+     * Stack trace.
+     */
+    private final StackTraceElement[] mStackTrace;
+
+    /**
+     * Suppressed exceptions.
+     */
+    private final List<ThrowableSnapshot> mSuppressed = new ArrayList<>();
+
+    /**
+     * Cause.
+     */
+    private ThrowableSnapshot mCause;
+
+    ThrowableSnapshot(String type, String message, @NonNull StackTraceElement[] stackTrace) {
+        mType = type;
+        mMessage = message;
+        mStackTrace = stackTrace;
+    }
+
+    /**
+     * Take a snapshot of a throwable. Huge stack traces and cause chains are truncated
+     * the same way as in error logs.
+     *
+     * @param throwable throwable.
+     * @return snapshot.
+     */
+    @NonNull
+    public static ThrowableSnapshot fromThrowable(@NonNull Throwable throwable) {
+        return fromThrowable(throwable, true);
+    }
+
+    private static ThrowableSnapshot fromThrowable(Throwable throwable, boolean withSuppressed) {
+        ThrowableSnapshot topSnapshot = null;
+        ThrowableSnapshot parentSnapshot = null;
+        for (Throwable cause : getCauseChain(throwable)) {
+            ThrowableSnapshot snapshot = new ThrowableSnapshot(cause.getClass().getName(), cause.getMessage(), truncateStackTrace(cause.getStackTrace()));
+
+            /* Suppressed exceptions of suppressed exceptions are not kept. */
+            if (withSuppressed && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                addSuppressedSnapshots(snapshot, cause);
+            }
+            if (topSnapshot == null) {
+                topSnapshot = snapshot;
+            } else {
+                parentSnapshot.mCause = snapshot;
+            }
+            parentSnapshot = snapshot;
+        }
+        return topSnapshot;
+    }
+
+    /**
+     * Get the causes of a throwable starting with itself, truncated in the middle if there are too many.
+     */
+    @NonNull
+    static List<Throwable> getCauseChain(@NonNull Throwable t) {
+        List<Throwable> causeChain = new LinkedList<>();
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            causeChain.add(cause);
+        }
+        if (causeChain.size() > ErrorLogHelper.CAUSE_LIMIT) {
+            AppCenterLog.warn(Crashes.LOG_TAG, "Crash causes truncated from " + causeChain.size() + " to " + ErrorLogHelper.CAUSE_LIMIT + " causes.");
+            causeChain.subList(ErrorLogHelper.CAUSE_LIMIT_HALF, causeChain.size() - ErrorLogHelper.CAUSE_LIMIT_HALF).clear();
+        }
+        return causeChain;
+    }
+
+    /**
+     * Keep the top and bottom of a stack trace if it's too long.
+     */
+    @NonNull
+    static StackTraceElement[] truncateStackTrace(@NonNull StackTraceElement[] stackTrace) {
+        if (stackTrace.length > ErrorLogHelper.FRAME_LIMIT) {
+            StackTraceElement[] stackTraceTruncated = new StackTraceElement[ErrorLogHelper.FRAME_LIMIT];
+            System.arraycopy(stackTrace, 0, stackTraceTruncated, 0, ErrorLogHelper.FRAME_LIMIT_HALF);
+            System.arraycopy(stackTrace, stackTrace.length - ErrorLogHelper.FRAME_LIMIT_HALF, stackTraceTruncated, ErrorLogHelper.FRAME_LIMIT_HALF, ErrorLogHelper.FRAME_LIMIT_HALF);
+            AppCenterLog.warn(Crashes.LOG_TAG, "Crash frames truncated from " + stackTrace.length + " to " + stackTraceTruncated.length + " frames.");
+            return stackTraceTruncated;
+        }
+        return stackTrace;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void addSuppressedSnapshots(ThrowableSnapshot snapshot, Throwable throwable) {
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            snapshot.mSuppressed.add(fromThrowable(suppressed, false));
+        }
+    }
+
+    /**
+     * Rebuild a throwable from this snapshot.
+     * Classes that cannot be instantiated with a message are replaced by a {@link Throwable}
+     * with the same string representation.
+     *
+     * @return a new throwable.
+     */
+    @NonNull
+    public Throwable toThrowable() {
+
+        /* Rebuild the cause chain in a loop, a crash can have a deep chain. */
+        List<Throwable> causeChain = new ArrayList<>();
+        for (ThrowableSnapshot snapshot = this; snapshot != null; snapshot = snapshot.mCause) {
+            Throwable throwable = newThrowable(snapshot.mType, snapshot.mMessage);
+            throwable.setStackTrace(snapshot.mStackTrace);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                snapshot.addSuppressedThrowables(throwable);
+            }
+            causeChain.add(throwable);
+        }
+        for (int i = 1; i < causeChain.size(); i++) {
+            try {
+                causeChain.get(i - 1).initCause(causeChain.get(i));
+            } catch (IllegalStateException ignore) {
+
+                /* Cause already set by the constructor. */
+            }
+        }
+        return causeChain.get(0);
+    }
+
+    /**
+     * Add the suppressed exceptions, they have no suppressed exceptions of their own
+     * so this does not go deeper than one level.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void addSuppressedThrowables(Throwable throwable) {
+        for (ThrowableSnapshot suppressed : mSuppressed) {
+            throwable.addSuppressed(suppressed.toThrowable());
+        }
+    }
+
+    @NonNull
+    private static Throwable newThrowable(String type, String message) {
+        try {
+            Class<?> throwableClass = Class.forName(type);
+            if (Throwable.class.isAssignableFrom(throwableClass)) {
+                try {
+                    return (Throwable) throwableClass.getConstructor(String.class).newInstance(message);
+                } catch (NoSuchMethodException e) {
+
+                    /* Classes with a fixed message like NativeException only have a default constructor. */
+                    Throwable throwable = (Throwable) throwableClass.getConstructor().newInstance();
+                    String defaultMessage = throwable.getMessage();
+                    if (message == null ? defaultMessage == null : message.equals(defaultMessage)) {
+                        return throwable;
+                    }
+                }
+            }
+        } catch (Exception | LinkageError e) {
+            AppCenterLog.debug(Crashes.LOG_TAG, "Cannot instantiate " + type + ", using a generic throwable.");
+        }
+        return new Throwable(message == null ? type : type + ": " + message);
+    }
+
+    String getType() {
+        return mType;
+    }
+
+    String getMessage() {
+        return mMessage;
+    }
+
+    StackTraceElement[] getStackTrace() {
+        return mStackTrace;
+    }
+
+    ThrowableSnapshot getCause() {
+        return mCause;
+    }
+
+    void setCause(ThrowableSnapshot cause) {
+        mCause = cause;
+    }
+
+    List<ThrowableSnapshot> getSuppressed() {
+        return mSuppressed;
+    }
+
+    /**
+     * Write this snapshot, its suppressed exceptions and its causes.
+     * Causes are written in a loop, suppressed exceptions have no suppressed exceptions of their own.
+     *
+     * @param output output stream.
+     * @throws IOException if an error occurred while writing.
+     */
+    void write(DataOutputStream output) throws IOException {
+        for (ThrowableSnapshot snapshot = this; snapshot != null; snapshot = snapshot.mCause) {
+            writeString(output, snapshot.mType);
+            writeString(output, snapshot.mMessage);
+            output.writeInt(snapshot.mStackTrace.length);
+            for (StackTraceElement frame : snapshot.mStackTrace) {
+                writeString(output, frame.getClassName());
+                writeString(output, frame.getMethodName());
+                writeString(output, frame.getFileName());
+                output.writeInt(frame.getLineNumber());
+            }
+            output.writeInt(snapshot.mSuppressed.size());
+            for (ThrowableSnapshot suppressed : snapshot.mSuppressed) {
+                suppressed.write(output);
+            }
+            output.writeBoolean(snapshot.mCause != null);
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(DataOutputStream)}.
+     *
+     * @param input input stream.
+     * @return snapshot.
+     * @throws IOException if the data is invalid or cannot be read.
+     */
+    @NonNull
+    static ThrowableSnapshot read(FileDataInputStream input) throws IOException {
+        return read(input, true);
+    }
+
+    private static ThrowableSnapshot read(FileDataInputStream input, boolean withSuppressed) throws IOException {
+        ThrowableSnapshot topSnapshot = null;
+        ThrowableSnapshot parentSnapshot = null;
+        int causeCount = 0;
+        boolean hasCause;
+        do {
+
+            /* Causes are truncated and suppressed exceptions are not nested when taking the snapshot. */
+            if (++causeCount > ErrorLogHelper.CAUSE_LIMIT) {
+                throw new IOException("Throwable snapshot has too many causes.");
+            }
+            String type = readString(input);
+            String message = readString(input);
+            int frameCount = input.readLength(MIN_FRAME_SIZE);
+            if (type == null || frameCount < 0 || frameCount > ErrorLogHelper.FRAME_LIMIT) {
+                throw new IOException("Invalid throwable snapshot.");
+            }
+            StackTraceElement[] stackTrace = new StackTraceElement[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                stackTrace[i] = readStackTraceElement(input);
+            }
+            ThrowableSnapshot snapshot = new ThrowableSnapshot(type, message, stackTrace);
+            int suppressedCount = input.readLength(MIN_SNAPSHOT_SIZE);
+            if (suppressedCount > 0 && !withSuppressed) {
+                throw new IOException("Nested suppressed exceptions in throwable snapshot.");
+            }
+            for (int i = 0; i < suppressedCount; i++) {
+                snapshot.mSuppressed.add(read(input, false));
+            }
+            if (topSnapshot == null) {
+                topSnapshot = snapshot;
+            } else {
+                parentSnapshot.mCause = snapshot;
+            }
+            parentSnapshot = snapshot;
+            hasCause = input.readBoolean();
+        } while (hasCause);
+        return topSnapshot;
+    }
+
+    @NonNull
+    static StackTraceElement readStackTraceElement(FileDataInputStream input) throws IOException {
+        String className = readString(input);
+        String methodName = readString(input);
+        String fileName = readString(input);
+        int lineNumber = input.readInt();
+        if (className == null || methodName == null) {
+            throw new IOException("Invalid stack frame.");
+        }
+        return new StackTraceElement(className, methodName, fileName, lineNumber);
+    }
+
+    /**
+     * Write a string as its UTF-8 length followed by its UTF-8 bytes, or -1 for null.
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param input input stream.
+     * @return string or null.
+     * @throws IOException if the length does not fit in the file or the data cannot be read.
+     */
+    static String readString(FileDataInputStream input) throws IOException {
+        int length = input.readLength(1);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -17,9 +17,10 @@ import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogF
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
-import com.microsoft.appcenter.crashes.model.NativeException;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
+import com.microsoft.appcenter.crashes.utils.CrashDumpWriter;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableSnapshot;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -42,7 +43,6 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
-import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -55,7 +55,7 @@ import org.powermock.reflect.Whitebox;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -66,13 +66,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -84,7 +87,7 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
-import static org.mockito.Mockito.inOrder;
+import static org.mockito.Matchers.longThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -106,6 +109,17 @@ public class CrashesTest {
     @SuppressWarnings("ThrowableInstanceNeverThrown")
     private static final Exception EXCEPTION = new Exception("This is a test exception.");
 
+    /**
+     * Executor used to process pending errors synchronously.
+     */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     private static final String CRASHES_ENABLED_KEY = PrefStorageConstants.KEY_ENABLED + "_" + Crashes.getInstance().getServiceName();
 
     @Rule
@@ -134,6 +148,7 @@ public class CrashesTest {
     public void setUp() {
         Thread.setDefaultUncaughtExceptionHandler(null);
         Crashes.unsetInstance();
+        Crashes.getInstance().setPendingErrorsExecutor(DIRECT_EXECUTOR);
         mockStatic(SystemClock.class);
         mockStatic(StorageHelper.InternalStorage.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
@@ -198,6 +213,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
         crashes.setUncaughtExceptionHandler(mockHandler);
         when(StorageHelper.PreferencesStorage.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
@@ -250,6 +266,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
 
         /* Before start it's disabled. */
@@ -315,10 +332,11 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(report)).thenReturn(true);
         when(mockListener.shouldAwaitUserConfirmation()).thenReturn(false);
@@ -354,6 +372,126 @@ public class CrashesTest {
         verify(mockChannel, times(errorAttachmentLogList.size() - skipAttachmentLogsCount)).enqueue(mockAttachment, crashes.getGroupName());
     }
 
+    @Test
+    public void queuePendingCrashesWithFileAttachments() throws IOException, ClassNotFoundException, JSONException {
+
+        /* Setup mock. */
+        Context mockContext = mock(Context.class);
+        Channel mockChannel = mock(Channel.class);
+        ErrorReport report = new ErrorReport();
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(report)).thenReturn(true);
+        when(mockListener.shouldAwaitUserConfirmation()).thenReturn(false);
+        ErrorAttachmentLog fileAttachment = ErrorAttachmentLog.attachmentWithFile(mock(File.class), "file.bin", "application/octet-stream");
+        ErrorAttachmentLog failingFileAttachment = ErrorAttachmentLog.attachmentWithFile(mock(File.class), "failing.bin", "application/octet-stream");
+        doThrow(new IOException()).when(ErrorLogHelper.class);
+        ErrorLogHelper.storeErrorAttachmentFile(failingFileAttachment);
+        when(mockListener.getErrorAttachments(report)).thenReturn(Arrays.asList(fileAttachment, failingFileAttachment));
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(mErrorLog);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mockContext, mockChannel, "", null, true);
+
+        /* Files are copied before enqueuing, attachments that cannot be copied are skipped. */
+        verifyStatic();
+        ErrorLogHelper.storeErrorAttachmentFile(fileAttachment);
+        verifyStatic();
+        ErrorLogHelper.storeErrorAttachmentFile(failingFileAttachment);
+        verify(mockChannel).enqueue(fileAttachment, crashes.getGroupName());
+        verify(mockChannel, never()).enqueue(failingFileAttachment, crashes.getGroupName());
+
+        /* Copies are deleted once sent or discarded. */
+        crashes.getChannelListener().onSuccess(fileAttachment);
+        crashes.getChannelListener().onFailure(fileAttachment, EXCEPTION);
+        verifyStatic(times(2));
+        ErrorLogHelper.removeStoredErrorAttachmentFile(fileAttachment);
+    }
+
+    @Test
+    public void crashLoopProcessesLastCrashOnly() throws JSONException {
+        Context mockContext = mock(Context.class);
+        Channel mockChannel = mock(Channel.class);
+        ErrorReport report = new ErrorReport();
+        mockStatic(ErrorLogHelper.class);
+        File lastErrorLogFile = mock(File.class);
+        when(lastErrorLogFile.length()).thenReturn(1L);
+        File olderErrorLogFile = mock(File.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{olderErrorLogFile, lastErrorLogFile});
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(ErrorLogHelper.getErrorLogCountSince(anyLong())).thenReturn(Crashes.CRASH_LOOP_CRASH_COUNT);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(lastErrorLogFile)).thenReturn("last");
+        when(StorageHelper.InternalStorage.read(olderErrorLogFile)).thenReturn("older");
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(report)).thenReturn(true);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(mErrorLog);
+        Crashes crashes = Crashes.getInstance();
+
+        /* Even with a background executor, the last crash is processed right away. */
+        crashes.setPendingErrorsExecutor(mock(Executor.class));
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mockContext, mockChannel, "", null, true);
+
+        /* Check crash loop was detected for the current launch. */
+        verifyStatic();
+        ErrorLogHelper.getErrorLogCountSince(longThat(new ArgumentMatcher<Long>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                return (Long) argument <= System.currentTimeMillis() - Crashes.CRASH_LOOP_PERIOD;
+            }
+        }));
+
+        /* Only the last crash is processed and sent. */
+        verifyStatic(never());
+        StorageHelper.InternalStorage.read(olderErrorLogFile);
+        verify(mockListener).shouldProcess(report);
+        verify(mockChannel).enqueue(mErrorLog, crashes.getGroupName());
+    }
+
+    @Test
+    public void crashLoopDefersOtherServices() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorLogCountSince(anyLong())).thenReturn(Crashes.CRASH_LOOP_CRASH_COUNT - 2);
+        File dumpFile = mock(File.class);
+        when(dumpFile.length()).thenReturn(1L);
+        when(dumpFile.lastModified()).thenReturn(System.currentTimeMillis());
+        File reservedDumpFile = mock(File.class);
+        when(reservedDumpFile.lastModified()).thenReturn(System.currentTimeMillis());
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[]{dumpFile, reservedDumpFile});
+        File oldMinidumpFile = mock(File.class);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{oldMinidumpFile});
+        Crashes crashes = Crashes.getInstance();
+
+        /* Reserved crash dump file and old minidump are not counted. */
+        assertFalse(crashes.isDeferringOtherServices());
+
+        /* Minidump of a recent crash is counted. */
+        when(oldMinidumpFile.lastModified()).thenReturn(System.currentTimeMillis());
+        assertTrue(crashes.isDeferringOtherServices());
+
+        /* Not when disabled. */
+        when(StorageHelper.PreferencesStorage.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
+        assertFalse(crashes.isDeferringOtherServices());
+    }
+
     @Test
     public void queuePendingCrashesShouldNotProcess() throws IOException, ClassNotFoundException, JSONException {
         Context mockContext = mock(Context.class);
@@ -364,10 +502,12 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException()).thenReturn(new byte[]{});
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
+        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new byte[]{});
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(report)).thenReturn(false);
@@ -407,10 +547,11 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
         when(StorageHelper.PreferencesStorage.getBoolean(eq(Crashes.PREF_KEY_ALWAYS_SEND), anyBoolean())).thenReturn(true);
 
         CrashesListener mockListener = mock(CrashesListener.class);
@@ -449,6 +590,7 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
 
         Crashes crashes = Crashes.getInstance();
@@ -487,6 +629,7 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
 
         Crashes crashes = Crashes.getInstance();
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -508,6 +651,7 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
         Crashes crashes = Crashes.getInstance();
         LogSerializer logSerializer = mock(LogSerializer.class);
@@ -624,6 +768,38 @@ public class CrashesTest {
         verify(mockListener, never()).onSendingFailed(any(ErrorReport.class), eq(EXCEPTION));
     }
 
+    @Test
+    public void trackExceptionRateLimited() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
+
+        /* Same error in a loop is limited. */
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW + 5; i++) {
+            Crashes.trackException(EXCEPTION);
+        }
+        verify(mockChannel, times(HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW)).enqueue(any(HandledErrorLog.class), eq(crashes.getGroupName()));
+
+        /* Other errors are still sent. */
+        Crashes.trackException(new IllegalStateException());
+        verify(mockChannel, times(HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW + 1)).enqueue(any(HandledErrorLog.class), eq(crashes.getGroupName()));
+
+        /* Disabling resets limits, errors tracked while disabled are not counted. */
+        Crashes.setEnabled(false);
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW + 5; i++) {
+            Crashes.trackException(EXCEPTION);
+        }
+        Crashes.setEnabled(true);
+        Crashes.trackException(EXCEPTION);
+        verify(mockChannel, times(HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW + 2)).enqueue(any(HandledErrorLog.class), eq(crashes.getGroupName()));
+    }
+
     @Test
     public void trackExceptionForWrapperSdk() {
         StackFrame frame = new StackFrame();
@@ -714,12 +890,13 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(errorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class))).thenReturn(errorReport);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
 
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(mErrorLog);
@@ -733,7 +910,7 @@ public class CrashesTest {
 
         /* The error report was created and cached but device is null here. */
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+        ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class));
         assertNull(errorReport.getDevice());
 
         /* The channel sets a device. */
@@ -754,7 +931,7 @@ public class CrashesTest {
 
         /* No more error reports should be produced at the point. */
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+        ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class));
 
         /* Simulate onFailure event. */
         channelListener.onFailure(mErrorLog, EXCEPTION);
@@ -763,7 +940,7 @@ public class CrashesTest {
 
         /* onSuccess and onFailure invalidate the cache, so one more call is expected. */
         verifyStatic(times(2));
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+        ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class));
     }
 
     @Test
@@ -771,8 +948,8 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         Crashes crashes = Crashes.getInstance();
@@ -798,10 +975,10 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(new ErrorReport());
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
@@ -837,8 +1014,8 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
@@ -867,19 +1044,19 @@ public class CrashesTest {
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile).thenReturn(null);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class))).thenReturn(errorReport);
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
 
         Crashes crashes = Crashes.getInstance();
         ErrorReport report = crashes.buildErrorReport(mErrorLog);
         assertErrorEquals(mErrorLog, report);
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+        ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class));
 
         /* Verify the caching. */
         assertEquals(report, crashes.buildErrorReport(mErrorLog));
         verifyStatic();
-        ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION);
+        ErrorLogHelper.getErrorReportFromErrorLog(eq(mErrorLog), any(ThrowableSnapshot.class));
 
         mErrorLog.setId(UUIDUtils.randomUUID());
         report = crashes.buildErrorReport(mErrorLog);
@@ -891,40 +1068,21 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         File throwableFile = mock(File.class);
         when(throwableFile.length()).thenReturn(1L);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(mock(ErrorReport.class));
-
-        /* Mock exceptions. */
-        Throwable classNotFoundException = mock(ClassNotFoundException.class);
-        Throwable ioException = mock(IOException.class);
-        Throwable stackOverflowError = mock(StackOverflowError.class);
-        when(StorageHelper.InternalStorage.readObject(any(File.class)))
-                .thenThrow(classNotFoundException)
-                .thenThrow(ioException)
-                .thenThrow(stackOverflowError);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(mock(ErrorReport.class));
+
+        IOException ioException = mock(IOException.class);
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenThrow(ioException);
         Crashes crashes = Crashes.getInstance();
 
-        /* Test ClassNotFoundException. */
+        /* Report is still built without the throwable. */
         ErrorReport report = crashes.buildErrorReport(mErrorLog);
         assertNotNull(report);
         verifyStatic();
-        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(classNotFoundException));
-
-        /* Test IOException. */
-        mErrorLog.setId(UUIDUtils.randomUUID());
-        report = crashes.buildErrorReport(mErrorLog);
-        assertNotNull(report);
-        verifyStatic();
         AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(ioException));
-
-        /* Test StackOverflowError. */
-        mErrorLog.setId(UUIDUtils.randomUUID());
-        report = crashes.buildErrorReport(mErrorLog);
-        assertNotNull(report);
-        verifyStatic();
-        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(stackOverflowError));
     }
 
     @Test
@@ -982,6 +1140,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         assertNull(Crashes.getLastSessionCrashReport().get());
         Crashes.getInstance().onStarted(mock(Context.class), mock(Channel.class), "", null, true);
         assertFalse(Crashes.hasCrashedInLastSession().get());
@@ -1016,11 +1175,12 @@ public class CrashesTest {
         File throwableFile = errorStorageDirectory.newFile();
         new FileWriter(throwableFile).append("fake_data").close();
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(throwableFile);
-        when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, throwable)).thenReturn(errorReport);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(eq(errorLog), any(ThrowableSnapshot.class))).thenReturn(errorReport);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("fake_data");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(throwable);
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
 
         Crashes crashes = Crashes.getInstance();
         crashes.setLogSerializer(logSerializer);
@@ -1088,6 +1248,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{lastErrorLogFile});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("fake_data");
 
         Crashes crashes = Crashes.getInstance();
@@ -1125,6 +1286,7 @@ public class CrashesTest {
         new FileWriter(file).append("fake_data").close();
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{file});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(file);
         Crashes.getInstance().onStarted(mock(Context.class), mock(Channel.class), "", null, true);
         assertFalse(Crashes.hasCrashedInLastSession().get());
@@ -1137,6 +1299,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(null);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
 
         @SuppressWarnings("unchecked")
         AppCenterConsumer<ErrorReport> callback = (AppCenterConsumer<ErrorReport>) mock(AppCenterConsumer.class);
@@ -1174,11 +1337,12 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(new ErrorReport());
 
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(mock(Throwable.class));
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
 
         Crashes crashes = Crashes.getInstance();
         crashes.setInstanceListener(listener);
@@ -1204,10 +1368,11 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report1).thenReturn(report2);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report1).thenReturn(report2);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
 
@@ -1286,7 +1451,8 @@ public class CrashesTest {
         /* Reset instance to test another tine with always send. */
         Crashes.unsetInstance();
         crashes = Crashes.getInstance();
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report1).thenReturn(report2);
+        crashes.setPendingErrorsExecutor(DIRECT_EXECUTOR);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report1).thenReturn(report2);
         WrapperSdkExceptionManager.setAutomaticProcessing(false);
         crashes.setLogSerializer(logSerializer);
         crashes.onStarting(mAppCenterHandler);
@@ -1312,10 +1478,11 @@ public class CrashesTest {
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class), mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report1).thenReturn(report2);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report1).thenReturn(report2);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
         LogSerializer logSerializer = mock(LogSerializer.class);
         when(logSerializer.deserializeLog(anyString(), anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
 
@@ -1377,13 +1544,14 @@ public class CrashesTest {
         when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(errorLogFile);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{minidumpFile});
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         File pendingDir = mock(File.class);
         Whitebox.setInternalState(pendingDir, "path", "");
         when(ErrorLogHelper.getPendingMinidumpDirectory()).thenReturn(pendingDir);
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
-        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new NativeException());
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
         LogSerializer logSerializer = mock(LogSerializer.class);
         ArgumentCaptor<Log> log = ArgumentCaptor.forClass(Log.class);
         when(logSerializer.serializeLog(log.capture())).thenReturn("{}");
@@ -1409,6 +1577,71 @@ public class CrashesTest {
         return (ManagedErrorLog) log.getValue();
     }
 
+    private Channel startCrashesWithMinidump(File minidumpFile) throws Exception {
+
+        /* Setup mock for a native crash report referencing a minidump. */
+        mErrorLog.getException().setWrapperSdkName(Constants.WRAPPER_SDK_NAME_NDK);
+        mErrorLog.getException().setStackTrace(minidumpFile.getPath());
+        ErrorReport report = new ErrorReport();
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{mock(File.class)});
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(ThrowableSnapshot.class))).thenReturn(report);
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
+        when(ErrorLogHelper.readThrowableSnapshot(any(File.class))).thenReturn(mock(ThrowableSnapshot.class));
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(report)).thenReturn(true);
+        when(mockListener.shouldAwaitUserConfirmation()).thenReturn(false);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString(), anyString())).thenReturn(mErrorLog);
+
+        /* Start crashes. */
+        Channel mockChannel = mock(Channel.class);
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mockChannel, "", null, true);
+        return mockChannel;
+    }
+
+    @Test
+    public void sendMinidumpAttachment() throws Exception {
+        File minidumpFile = errorStorageDirectory.newFile("minidump.dmp");
+        byte[] minidumpContent = new byte[]{1, 2, 3};
+        when(StorageHelper.InternalStorage.readBytes(minidumpFile)).thenReturn(minidumpContent);
+        Channel mockChannel = startCrashesWithMinidump(minidumpFile);
+
+        /* Report is sent without the dump path, followed by the dump. */
+        ArgumentCaptor<Log> logs = ArgumentCaptor.forClass(Log.class);
+        verify(mockChannel, times(2)).enqueue(logs.capture(), eq(Crashes.ERROR_GROUP));
+        assertSame(mErrorLog, logs.getAllValues().get(0));
+        assertNull(mErrorLog.getException().getStackTrace());
+        ErrorAttachmentLog attachment = (ErrorAttachmentLog) logs.getAllValues().get(1);
+        assertEquals(mErrorLog.getId(), attachment.getErrorId());
+        assertEquals("minidump.dmp", attachment.getFileName());
+        assertArrayEquals(minidumpContent, attachment.getData());
+        assertFalse(minidumpFile.exists());
+    }
+
+    @Test
+    public void largeMinidumpNotAttached() throws Exception {
+        File minidumpFile = errorStorageDirectory.newFile("minidump.dmp");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(minidumpFile, "rw");
+        randomAccessFile.setLength(Crashes.MAX_MINIDUMP_ATTACHMENT_SIZE + 1);
+        randomAccessFile.close();
+        Channel mockChannel = startCrashesWithMinidump(minidumpFile);
+
+        /* Report is sent without reading the dump, which is deleted anyway. */
+        verify(mockChannel).enqueue(any(Log.class), anyString());
+        verify(mockChannel).enqueue(mErrorLog, Crashes.ERROR_GROUP);
+        verifyStatic(never());
+        StorageHelper.InternalStorage.readBytes(any(File.class));
+        assertFalse(minidumpFile.exists());
+    }
+
     @Test
     @PrepareForTest({SessionContext.class, DeviceInfoHelper.class})
     public void minidumpAppLaunchTimestampFromSessionContext() throws Exception {
@@ -1444,14 +1677,15 @@ public class CrashesTest {
     }
 
     @Test
-    public void stackOverflowOnSavingThrowable() throws Exception {
+    public void saveThrowableSnapshotWithDeepCauseChain() throws Exception {
 
         /* Mock error log utils. */
         mockStatic(ErrorLogHelper.class);
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mock(File.class));
         when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[]{});
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[]{});
-        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenReturn(mErrorLog);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class))).thenReturn(mErrorLog);
         File throwableFile = mock(File.class);
         whenNew(File.class).withParameterTypes(File.class, String.class).withArguments(any(File.class), argThat(new ArgumentMatcher<String>() {
 
@@ -1464,34 +1698,104 @@ public class CrashesTest {
         String jsonCrash = "{}";
         when(logSerializer.serializeLog(any(Log.class))).thenReturn(jsonCrash);
 
-        /* Mock storage to fail on stack overflow when saving a Throwable as binary. */
-        doThrow(new StackOverflowError()).when(StorageHelper.InternalStorage.class);
-        StorageHelper.InternalStorage.writeObject(any(File.class), any(Serializable.class));
-
         /* Simulate start SDK. */
         Crashes crashes = Crashes.getInstance();
         crashes.setLogSerializer(logSerializer);
         crashes.onStarting(mAppCenterHandler);
         crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
 
-        /* Simulate crash. */
+        /* Simulate crash with a cause chain deep enough to overflow the stack with Java serialization. */
         Throwable throwable = new Throwable();
+        for (int i = 0; i < 10000; i++) {
+            throwable = new Throwable(Integer.toString(i), throwable);
+        }
         Crashes.getInstance().saveUncaughtException(Thread.currentThread(), throwable);
 
-        /* Verify we gracefully abort saving throwable (no exception) and we created an empty file instead. */
+        /* Verify we saved a truncated snapshot instead of an empty file. */
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(throwableFile, throwable);
-        assertNotNull(throwableFile);
-        InOrder inOrder = inOrder(throwableFile);
+        ErrorLogHelper.writeThrowableSnapshot(eq(throwableFile), argThat(new ArgumentMatcher<ThrowableSnapshot>() {
 
-        //noinspection ResultOfMethodCallIgnored
-        inOrder.verify(throwableFile).delete();
+            @Override
+            public boolean matches(Object argument) {
+                int causes = 0;
+                for (Throwable cause = ((ThrowableSnapshot) argument).toThrowable(); cause != null; cause = cause.getCause()) {
+                    causes++;
+                }
+                return causes == ErrorLogHelper.CAUSE_LIMIT;
+            }
+        }));
 
         //noinspection ResultOfMethodCallIgnored
-        inOrder.verify(throwableFile).createNewFile();
+        verify(throwableFile, never()).createNewFile();
 
         /* Verify it didn't prevent saving the JSON file. */
         verifyStatic();
         StorageHelper.InternalStorage.write(any(File.class), eq(jsonCrash));
     }
+
+    @Test
+    public void saveUncaughtExceptionWithCrashDumpWriter() throws Exception {
+
+        /* Mock error log utils. */
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        CrashDumpWriter crashDumpWriter = mock(CrashDumpWriter.class);
+        when(ErrorLogHelper.createCrashDumpWriter(any(Context.class), anyLong(), any(ThreadDumpPolicy.class))).thenReturn(crashDumpWriter);
+
+        /* Simulate start SDK. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+
+        /* Simulate crash, saved only once. */
+        Throwable throwable = new Throwable();
+        crashes.saveUncaughtException(Thread.currentThread(), throwable);
+        crashes.saveUncaughtException(Thread.currentThread(), throwable);
+
+        /* Verify the error log is not built at crash time. */
+        verify(crashDumpWriter).write(Thread.currentThread(), throwable);
+        verifyStatic(never());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class));
+        verifyStatic(never());
+        StorageHelper.InternalStorage.write(any(File.class), anyString());
+
+        /* Disabling releases the reserved file. */
+        Crashes.setEnabled(false);
+        verify(crashDumpWriter).close();
+    }
+
+    @Test
+    public void saveUncaughtExceptionWhenCrashDumpWriterFails() throws Exception {
+
+        /* Mock error log utils. */
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.getNewMinidumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredCrashDumpFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(com.microsoft.appcenter.crashes.ingestion.models.Exception.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class))).thenReturn(mErrorLog);
+        CrashDumpWriter crashDumpWriter = mock(CrashDumpWriter.class);
+        when(ErrorLogHelper.createCrashDumpWriter(any(Context.class), anyLong(), any(ThreadDumpPolicy.class))).thenReturn(crashDumpWriter);
+        Throwable throwable = new Throwable();
+        doThrow(new IOException()).when(crashDumpWriter).write(Thread.currentThread(), throwable);
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("{}");
+
+        /* Simulate start SDK. */
+        Crashes crashes = Crashes.getInstance();
+        crashes.setLogSerializer(logSerializer);
+        crashes.onStarting(mAppCenterHandler);
+        crashes.onStarted(mock(Context.class), mock(Channel.class), "", null, true);
+
+        /* Simulate crash. */
+        crashes.saveUncaughtException(Thread.currentThread(), throwable);
+
+        /* Verify we released the dump file and saved the error log as is. */
+        verify(crashDumpWriter).close();
+        verifyStatic();
+        StorageHelper.InternalStorage.write(any(File.class), eq("{}"));
+    }
 }
@@ -0,0 +1,194 @@
+package com.microsoft.appcenter.crashes;
+
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
+import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class HandledErrorRateLimiterTest {
+
+    @Rule
+    public final PowerMockRule rule = new PowerMockRule();
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    private static Throwable newThrowable(String message, int line) {
+        Throwable throwable = new IllegalStateException(message);
+        throwable.setStackTrace(new StackTraceElement[]{new StackTraceElement("Class", "method", "File.java", line)});
+        return throwable;
+    }
+
+    @Test
+    public void throwableFingerprint() {
+
+        /* Messages are ignored. */
+        assertEquals(HandledErrorRateLimiter.getFingerprint(newThrowable("a", 1)), HandledErrorRateLimiter.getFingerprint(newThrowable("b", 1)));
+
+        /* Location, type and causes are used. */
+        assertNotEquals(HandledErrorRateLimiter.getFingerprint(newThrowable("a", 1)), HandledErrorRateLimiter.getFingerprint(newThrowable("a", 2)));
+        Throwable throwable = newThrowable("a", 1);
+        Throwable otherType = new IllegalArgumentException("a");
+        otherType.setStackTrace(throwable.getStackTrace());
+        assertNotEquals(HandledErrorRateLimiter.getFingerprint(throwable), HandledErrorRateLimiter.getFingerprint(otherType));
+        Throwable withCause = newThrowable("a", 1);
+        withCause.initCause(new RuntimeException());
+        assertNotEquals(HandledErrorRateLimiter.getFingerprint(throwable), HandledErrorRateLimiter.getFingerprint(withCause));
+
+        /* Deep frames are ignored. */
+        StackTraceElement[] frames = new StackTraceElement[HandledErrorRateLimiter.FINGERPRINT_FRAME_COUNT + 1];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new StackTraceElement("Class", "method", "File.java", i);
+        }
+        Throwable deep1 = new RuntimeException();
+        deep1.setStackTrace(frames);
+        Throwable deep2 = new RuntimeException();
+        frames[frames.length - 1] = new StackTraceElement("Other", "method", "File.java", 0);
+        deep2.setStackTrace(frames);
+        assertEquals(HandledErrorRateLimiter.getFingerprint(deep1), HandledErrorRateLimiter.getFingerprint(deep2));
+    }
+
+    @Test
+    public void exceptionModelFingerprint() {
+        StackFrame frame = new StackFrame();
+        frame.setClassName("Class");
+        frame.setMethodName("method");
+        frame.setLineNumber(1);
+        Exception exception1 = new Exception();
+        exception1.setType("Type");
+        exception1.setMessage("a");
+        exception1.setFrames(singletonList(frame));
+        Exception exception2 = new Exception();
+        exception2.setType("Type");
+        exception2.setMessage("b");
+        exception2.setFrames(singletonList(frame));
+        assertEquals(HandledErrorRateLimiter.getFingerprint(exception1), HandledErrorRateLimiter.getFingerprint(exception2));
+        exception2.setInnerExceptions(singletonList(new Exception()));
+        assertNotEquals(HandledErrorRateLimiter.getFingerprint(exception1), HandledErrorRateLimiter.getFingerprint(exception2));
+
+        /* Raw stack traces are used when there are no frames. */
+        Exception raw1 = new Exception();
+        raw1.setType("Type");
+        raw1.setStackTrace("at 1");
+        Exception raw2 = new Exception();
+        raw2.setType("Type");
+        raw2.setStackTrace("at 2");
+        assertNotEquals(HandledErrorRateLimiter.getFingerprint(raw1), HandledErrorRateLimiter.getFingerprint(raw2));
+    }
+
+    @Test
+    public void limitPerWindow() {
+        HandledErrorRateLimiter limiter = new HandledErrorRateLimiter();
+        long time = 1000;
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW; i++) {
+            assertTrue(limiter.tryAcquire("a", time++));
+        }
+        assertFalse(limiter.tryAcquire("a", time++));
+        assertFalse(limiter.tryAcquire("a", time));
+
+        /* Other fingerprints have their own limit. */
+        assertTrue(limiter.tryAcquire("b", time));
+
+        /* Next window, dropped errors are reported. */
+        time = 1000 + HandledErrorRateLimiter.WINDOW_DURATION;
+        assertTrue(limiter.tryAcquire("a", time));
+        verifyStatic();
+        AppCenterLog.info(eq(Crashes.LOG_TAG), eq("Dropped 2 occurrences of a handled error between " + new Date(1010) + " and " + new Date(1011) + "."));
+
+        /* Clearing resets the limit. */
+        for (int i = 1; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW; i++) {
+            assertTrue(limiter.tryAcquire("a", time));
+        }
+        assertFalse(limiter.tryAcquire("a", time));
+        limiter.clear();
+        assertTrue(limiter.tryAcquire("a", time));
+    }
+
+    @Test
+    public void droppedErrorProperties() throws JSONException {
+        HandledErrorRateLimiter limiter = new HandledErrorRateLimiter();
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", "value");
+        assertSame(properties, limiter.addDroppedErrorProperties("a", properties));
+        long time = 1000;
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW; i++) {
+            assertTrue(limiter.tryAcquire("a", time));
+            assertSame(properties, limiter.addDroppedErrorProperties("a", properties));
+        }
+        assertFalse(limiter.tryAcquire("a", 1010));
+        assertFalse(limiter.tryAcquire("a", 1020));
+
+        /* Next error sent gets the dropped errors, without modifying the original properties. */
+        time += HandledErrorRateLimiter.WINDOW_DURATION;
+        assertTrue(limiter.tryAcquire("a", time));
+        Map<String, String> result = limiter.addDroppedErrorProperties("a", properties);
+        assertEquals(4, result.size());
+        assertEquals("value", result.get("key"));
+        assertEquals("2", result.get(HandledErrorRateLimiter.PROPERTY_DROPPED_COUNT));
+        assertEquals(JSONDateUtils.toString(new Date(1010)), result.get(HandledErrorRateLimiter.PROPERTY_FIRST_DROPPED_TIME));
+        assertEquals(JSONDateUtils.toString(new Date(1020)), result.get(HandledErrorRateLimiter.PROPERTY_LAST_DROPPED_TIME));
+        assertEquals(1, properties.size());
+
+        /* Dropped errors are added only once. */
+        assertNull(limiter.addDroppedErrorProperties("a", null));
+
+        /* Dropped errors of several windows are added together. */
+        for (int i = 1; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW; i++) {
+            assertTrue(limiter.tryAcquire("a", time));
+        }
+        assertFalse(limiter.tryAcquire("a", time + 1));
+        time += HandledErrorRateLimiter.WINDOW_DURATION;
+        assertTrue(limiter.tryAcquire("a", time));
+        for (int i = 1; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW; i++) {
+            assertTrue(limiter.tryAcquire("a", time));
+        }
+        assertFalse(limiter.tryAcquire("a", time + 2));
+        assertTrue(limiter.tryAcquire("a", time + HandledErrorRateLimiter.WINDOW_DURATION));
+        result = limiter.addDroppedErrorProperties("a", null);
+        assertEquals(3, result.size());
+        assertEquals("2", result.get(HandledErrorRateLimiter.PROPERTY_DROPPED_COUNT));
+        assertEquals(JSONDateUtils.toString(new Date(time - HandledErrorRateLimiter.WINDOW_DURATION + 1)), result.get(HandledErrorRateLimiter.PROPERTY_FIRST_DROPPED_TIME));
+        assertEquals(JSONDateUtils.toString(new Date(time + 2)), result.get(HandledErrorRateLimiter.PROPERTY_LAST_DROPPED_TIME));
+    }
+
+    @Test
+    public void forgetLeastRecentFingerprints() {
+        HandledErrorRateLimiter limiter = new HandledErrorRateLimiter();
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_ERRORS_PER_WINDOW; i++) {
+            assertTrue(limiter.tryAcquire("a", 0));
+        }
+        assertFalse(limiter.tryAcquire("a", 0));
+        for (int i = 0; i < HandledErrorRateLimiter.MAX_FINGERPRINTS; i++) {
+            assertTrue(limiter.tryAcquire(Integer.toString(i), 0));
+        }
+        assertTrue(limiter.tryAcquire("a", 0));
+        verifyStatic();
+        AppCenterLog.warn(eq(Crashes.LOG_TAG), anyString());
+    }
+}
@@ -0,0 +1,229 @@
+package com.microsoft.appcenter.crashes;
+
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableSnapshot;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@PrepareForTest({AppCenterLog.class, StorageHelper.InternalStorage.class, ErrorLogHelper.class})
+public class PendingErrorLogLoaderTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public final PowerMockRule rule = new PowerMockRule();
+
+    /**
+     * Background tasks, run manually by tests.
+     */
+    private final List<Runnable> mBackgroundTasks = new ArrayList<>();
+
+    private final Executor mBackgroundExecutor = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            mBackgroundTasks.add(command);
+        }
+    };
+
+    private LogSerializer mLogSerializer;
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+        mockStatic(StorageHelper.InternalStorage.class);
+        mockStatic(ErrorLogHelper.class);
+        mLogSerializer = mock(LogSerializer.class);
+    }
+
+    private File mockErrorLogFile(String contents, ManagedErrorLog errorLog) throws JSONException {
+        File file = mock(File.class);
+        when(StorageHelper.InternalStorage.read(file)).thenReturn(contents);
+        when(mLogSerializer.deserializeLog(contents, null)).thenReturn(errorLog);
+        return file;
+    }
+
+    private ManagedErrorLog mockErrorLog() {
+        ManagedErrorLog errorLog = mock(ManagedErrorLog.class);
+        when(errorLog.getId()).thenReturn(UUID.randomUUID());
+        return errorLog;
+    }
+
+    @Test
+    public void deliverInOrderWithBoundedParallelism() throws Exception {
+        ManagedErrorLog[] errorLogs = new ManagedErrorLog[PendingErrorLogLoader.MAX_PARALLEL_READS + 1];
+        File[] files = new File[errorLogs.length];
+        for (int i = 0; i < files.length; i++) {
+            errorLogs[i] = mockErrorLog();
+            files[i] = mockErrorLogFile(Integer.toString(i), errorLogs[i]);
+        }
+
+        /* Only the first one has a throwable. */
+        File throwableFile = mock(File.class);
+        ThrowableSnapshot throwableSnapshot = mock(ThrowableSnapshot.class);
+        when(ErrorLogHelper.getStoredThrowableFile(errorLogs[0].getId())).thenReturn(throwableFile);
+        when(ErrorLogHelper.readThrowableSnapshot(throwableFile)).thenReturn(throwableSnapshot);
+        PendingErrorLogLoader.Listener listener = mock(PendingErrorLogLoader.Listener.class);
+        PendingErrorLogLoader loader = new PendingErrorLogLoader(files, mLogSerializer, mBackgroundExecutor, DIRECT_EXECUTOR, listener);
+        loader.start();
+
+        /* Reading is bounded. */
+        assertEquals(PendingErrorLogLoader.MAX_PARALLEL_READS, mBackgroundTasks.size());
+
+        /* Nothing is delivered until the first file is read. */
+        mBackgroundTasks.get(1).run();
+        verify(listener, never()).onErrorLogLoaded(any(PendingErrorLogLoader.LoadedErrorLog.class));
+        mBackgroundTasks.get(0).run();
+        assertEquals(files.length, mBackgroundTasks.size());
+        verify(listener, never()).onFinished();
+        mBackgroundTasks.get(2).run();
+
+        /* Check results. */
+        ArgumentCaptor<PendingErrorLogLoader.LoadedErrorLog> captor = ArgumentCaptor.forClass(PendingErrorLogLoader.LoadedErrorLog.class);
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener, times(files.length)).onErrorLogLoaded(captor.capture());
+        inOrder.verify(listener).onFinished();
+        List<PendingErrorLogLoader.LoadedErrorLog> loadedErrorLogs = captor.getAllValues();
+        for (int i = 0; i < files.length; i++) {
+            assertSame(files[i], loadedErrorLogs.get(i).file);
+            assertSame(errorLogs[i], loadedErrorLogs.get(i).errorLog);
+            assertFalse(loadedErrorLogs.get(i).invalid);
+        }
+        assertSame(throwableFile, loadedErrorLogs.get(0).throwableFile);
+        assertSame(throwableSnapshot, loadedErrorLogs.get(0).throwableSnapshot);
+        assertNull(loadedErrorLogs.get(1).throwableFile);
+        assertNull(loadedErrorLogs.get(1).throwableSnapshot);
+    }
+
+    @Test
+    public void invalidAndUnreadableFiles() throws Exception {
+        File invalidFile = mockErrorLogFile("invalid", null);
+        JSONException exception = new JSONException("mock");
+        when(mLogSerializer.deserializeLog("invalid", null)).thenThrow(exception);
+        File unreadableFile = mockErrorLogFile(null, null);
+        File throwableFile = mock(File.class);
+        ManagedErrorLog errorLog = mockErrorLog();
+        File validFile = mockErrorLogFile("valid", errorLog);
+        when(ErrorLogHelper.getStoredThrowableFile(errorLog.getId())).thenReturn(throwableFile);
+        when(ErrorLogHelper.readThrowableSnapshot(throwableFile)).thenThrow(new IOException());
+        PendingErrorLogLoader.Listener listener = mock(PendingErrorLogLoader.Listener.class);
+        new PendingErrorLogLoader(new File[]{invalidFile, unreadableFile, validFile}, mLogSerializer, DIRECT_EXECUTOR, DIRECT_EXECUTOR, listener).start();
+        ArgumentCaptor<PendingErrorLogLoader.LoadedErrorLog> captor = ArgumentCaptor.forClass(PendingErrorLogLoader.LoadedErrorLog.class);
+        verify(listener, times(3)).onErrorLogLoaded(captor.capture());
+        verify(listener).onFinished();
+        List<PendingErrorLogLoader.LoadedErrorLog> loadedErrorLogs = captor.getAllValues();
+        assertTrue(loadedErrorLogs.get(0).invalid);
+        assertNull(loadedErrorLogs.get(0).errorLog);
+        assertFalse(loadedErrorLogs.get(1).invalid);
+        assertNull(loadedErrorLogs.get(1).errorLog);
+        assertSame(errorLog, loadedErrorLogs.get(2).errorLog);
+        assertSame(throwableFile, loadedErrorLogs.get(2).throwableFile);
+        assertNull(loadedErrorLogs.get(2).throwableSnapshot);
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(exception));
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), any(IOException.class));
+    }
+
+    @Test
+    public void serializerThrows() throws Exception {
+        File failingFile = mockErrorLogFile("failing", null);
+        RuntimeException exception = new IllegalStateException("mock");
+        when(mLogSerializer.deserializeLog("failing", null)).thenThrow(exception);
+        File otherTypeFile = mock(File.class);
+        when(StorageHelper.InternalStorage.read(otherTypeFile)).thenReturn("otherType");
+        when(mLogSerializer.deserializeLog("otherType", null)).thenReturn(mock(Log.class));
+        ManagedErrorLog errorLog = mockErrorLog();
+        File validFile = mockErrorLogFile("valid", errorLog);
+        PendingErrorLogLoader.Listener listener = mock(PendingErrorLogLoader.Listener.class);
+        PendingErrorLogLoader loader = new PendingErrorLogLoader(new File[]{failingFile, otherTypeFile, validFile}, mLogSerializer, mBackgroundExecutor, DIRECT_EXECUTOR, listener);
+        loader.start();
+        for (int i = 0; i < mBackgroundTasks.size(); i++) {
+            mBackgroundTasks.get(i).run();
+        }
+
+        /* Files that make the serializer fail are delivered as invalid and loading goes on. */
+        ArgumentCaptor<PendingErrorLogLoader.LoadedErrorLog> captor = ArgumentCaptor.forClass(PendingErrorLogLoader.LoadedErrorLog.class);
+        verify(listener, times(3)).onErrorLogLoaded(captor.capture());
+        verify(listener).onFinished();
+        List<PendingErrorLogLoader.LoadedErrorLog> loadedErrorLogs = captor.getAllValues();
+        assertTrue(loadedErrorLogs.get(0).invalid);
+        assertNull(loadedErrorLogs.get(0).errorLog);
+        assertTrue(loadedErrorLogs.get(1).invalid);
+        assertNull(loadedErrorLogs.get(1).errorLog);
+        assertFalse(loadedErrorLogs.get(2).invalid);
+        assertSame(errorLog, loadedErrorLogs.get(2).errorLog);
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(exception));
+        verifyStatic();
+        AppCenterLog.error(eq(Crashes.LOG_TAG), anyString(), any(ClassCastException.class));
+    }
+
+    @Test
+    public void noFiles() {
+        PendingErrorLogLoader.Listener listener = mock(PendingErrorLogLoader.Listener.class);
+        new PendingErrorLogLoader(new File[0], mLogSerializer, mBackgroundExecutor, DIRECT_EXECUTOR, listener).start();
+        verify(listener).onFinished();
+        assertTrue(mBackgroundTasks.isEmpty());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        File[] files = new File[]{mockErrorLogFile("0", mockErrorLog()), mockErrorLogFile("1", mockErrorLog())};
+        PendingErrorLogLoader.Listener listener = mock(PendingErrorLogLoader.Listener.class);
+        PendingErrorLogLoader loader = new PendingErrorLogLoader(files, mLogSerializer, mBackgroundExecutor, DIRECT_EXECUTOR, listener);
+        loader.start();
+        mBackgroundTasks.get(0).run();
+        verify(listener).onErrorLogLoaded(any(PendingErrorLogLoader.LoadedErrorLog.class));
+        loader.cancel();
+        mBackgroundTasks.get(1).run();
+
+        /* Cancelled reads do not even read the file. */
+        verify(listener).onErrorLogLoaded(any(PendingErrorLogLoader.LoadedErrorLog.class));
+        verify(listener, never()).onFinished();
+        verify(mLogSerializer, never()).deserializeLog(eq("1"), isNull(String.class));
+    }
+}
@@ -99,7 +99,7 @@ public class UncaughtExceptionHandlerTest {
         ManagedErrorLog errorLogMock = mock(ManagedErrorLog.class);
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(new File("."));
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
-        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean()))
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class)))
                 .thenReturn(errorLogMock);
 
         when(errorLogMock.getId()).thenReturn(UUID.randomUUID());
@@ -156,7 +156,7 @@ public class UncaughtExceptionHandlerTest {
         verify(mDefaultExceptionHandler).uncaughtException(thread, exception);
 
         verifyStatic();
-        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class));
     }
 
     @Test
@@ -179,7 +179,7 @@ public class UncaughtExceptionHandlerTest {
         verifyNoMoreInteractions(mDefaultExceptionHandler);
 
         verifyStatic();
-        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class));
         verifyStatic();
         System.exit(10);
     }
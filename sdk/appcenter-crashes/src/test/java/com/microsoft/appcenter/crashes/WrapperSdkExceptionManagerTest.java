@@ -7,6 +7,7 @@ import com.microsoft.appcenter.AppCenterHandler;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.utils.ErrorLogHelper;
+import com.microsoft.appcenter.crashes.utils.ThrowableSnapshot;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
@@ -28,19 +29,25 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.utils.PrefStorageConstants.KEY_ENABLED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
-import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
@@ -66,6 +73,8 @@ public class WrapperSdkExceptionManagerTest {
     @Before
     public void setUp() {
         Crashes.unsetInstance();
+        WrapperSdkExceptionManager.sWrapperExceptionDataContainer.clear();
+        WrapperSdkExceptionManager.resetDeletedDataFilesCleaned();
         mockStatic(AppCenter.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
         mockStatic(StorageHelper.InternalStorage.class);
@@ -74,7 +83,7 @@ public class WrapperSdkExceptionManagerTest {
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
         ManagedErrorLog errorLogMock = mock(ManagedErrorLog.class);
         when(errorLogMock.getId()).thenReturn(UUID.randomUUID());
-        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean()))
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class)))
                 .thenReturn(errorLogMock);
 
         @SuppressWarnings("unchecked")
@@ -105,18 +114,122 @@ public class WrapperSdkExceptionManagerTest {
         new WrapperSdkExceptionManager();
     }
 
+    private UUID saveWrapperException(byte[] data) throws JSONException {
+        LogSerializer logSerializer = Mockito.mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(ManagedErrorLog.class))).thenReturn("mock");
+        Crashes.getInstance().setLogSerializer(logSerializer);
+        return WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
+    }
+
+    private void assertStoredData(UUID errorId, byte[] data) {
+
+        /* Bypass the cache. */
+        WrapperSdkExceptionManager.sWrapperExceptionDataContainer.clear();
+        assertArrayEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
+    }
+
+    private File[] getDataFiles(final String extension) {
+        return errorStorageDirectory.getRoot().listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(extension);
+            }
+        });
+    }
+
     @Test
     public void loadWrapperExceptionData() throws java.lang.Exception {
-        File file = mock(File.class);
-        whenNew(File.class).withAnyArguments().thenReturn(file);
-        when(file.exists()).thenReturn(true);
+        UUID errorId = UUID.randomUUID();
+        File dataFile = new File(errorStorageDirectory.getRoot(), errorId + ".dat");
+        assertTrue(dataFile.createNewFile());
         doThrow(new IOException()).when(StorageHelper.InternalStorage.class);
         StorageHelper.InternalStorage.readObject(any(File.class));
-        assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(UUID.randomUUID()));
+        assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
         doThrow(new ClassNotFoundException()).when(StorageHelper.InternalStorage.class);
         StorageHelper.InternalStorage.readObject(any(File.class));
-        assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(UUID.randomUUID()));
+        assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
         assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(null));
+        assertNull(WrapperSdkExceptionManager.loadWrapperExceptionData(UUID.randomUUID()));
+    }
+
+    @Test
+    public void loadLegacyWrapperExceptionData() throws java.lang.Exception {
+
+        /* Files saved by older versions are serialized byte arrays. */
+        UUID errorId = UUID.randomUUID();
+        File dataFile = new File(errorStorageDirectory.getRoot(), errorId + ".dat");
+        FileOutputStream outputStream = new FileOutputStream(dataFile);
+        outputStream.write(new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5});
+        outputStream.close();
+        byte[] data = {'d'};
+        when(StorageHelper.InternalStorage.readObject(dataFile)).thenReturn(data);
+        assertArrayEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
+    }
+
+    @Test
+    public void cacheIsBounded() throws java.lang.Exception {
+        byte[] data = new byte[WrapperSdkExceptionManager.MAX_CACHED_DATA_SIZE / 2];
+        WrapperSdkExceptionManager.DataCache cache = WrapperSdkExceptionManager.sWrapperExceptionDataContainer;
+        cache.put("a", data);
+        cache.put("b", data);
+        assertEquals(WrapperSdkExceptionManager.MAX_CACHED_DATA_SIZE, cache.size());
+
+        /* Least recently used is evicted first. */
+        assertSame(data, cache.get("a"));
+        cache.put("c", data);
+        assertSame(data, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(data, cache.get("c"));
+        assertEquals(WrapperSdkExceptionManager.MAX_CACHED_DATA_SIZE, cache.size());
+
+        /* Replacing updates the size. */
+        cache.put("c", new byte[1]);
+        assertEquals(data.length + 1, cache.size());
+
+        /* Too big data is not kept. */
+        cache.put("a", new byte[WrapperSdkExceptionManager.MAX_CACHED_DATA_SIZE + 1]);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void loadBigWrapperExceptionDataFromFile() throws java.lang.Exception {
+        byte[] data = new byte[WrapperSdkExceptionManager.MAX_CACHED_DATA_SIZE + 1];
+        data[data.length - 1] = 'd';
+        UUID errorId = saveWrapperException(data);
+        assertNotNull(errorId);
+        assertEquals(0, WrapperSdkExceptionManager.sWrapperExceptionDataContainer.size());
+        assertArrayEquals(data, WrapperSdkExceptionManager.loadWrapperExceptionData(errorId));
+        assertEquals(0, WrapperSdkExceptionManager.sWrapperExceptionDataContainer.size());
+    }
+
+    @Test
+    public void deleteWrapperExceptionData() throws java.lang.Exception {
+
+        /* Simulate data deleted by a previous process. */
+        File previousFile = new File(errorStorageDirectory.getRoot(), UUID.randomUUID() + WrapperSdkExceptionManager.DELETED_DATA_FILE_EXTENSION);
+        assertTrue(previousFile.createNewFile());
+
+        /* Deleted data can still be loaded in this process. */
+        byte[] data = {'d'};
+        UUID errorId = saveWrapperException(data);
+        WrapperSdkExceptionManager.deleteWrapperExceptionData(errorId);
+        assertEquals(0, getDataFiles(".dat").length);
+        assertTrue(new File(errorStorageDirectory.getRoot(), errorId + WrapperSdkExceptionManager.DELETED_DATA_FILE_EXTENSION).exists());
+        assertStoredData(errorId, data);
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(previousFile);
+
+        /* Files deleted by previous processes are cleaned only once. */
+        UUID otherErrorId = UUID.randomUUID();
+        assertTrue(new File(errorStorageDirectory.getRoot(), otherErrorId + ".dat").createNewFile());
+        WrapperSdkExceptionManager.deleteWrapperExceptionData(otherErrorId);
+        assertEquals(0, getDataFiles(".dat").length);
+        verifyStatic();
+        StorageHelper.InternalStorage.delete(previousFile);
     }
 
     @Test
@@ -142,9 +255,9 @@ public class WrapperSdkExceptionManagerTest {
     }
 
     @Test
-    public void deleteWrapperExceptionDataWithLoadingError() throws java.lang.Exception {
+    public void deleteWrapperExceptionDataWithRenameError() throws java.lang.Exception {
 
-        /* Delete with file that cannot be loaded because invalid content should just log an error. */
+        /* Delete with file that cannot be kept until next launch should delete it now and log an error. */
         File file = mock(File.class);
         whenNew(File.class).withAnyArguments().thenReturn(file);
         when(file.exists()).thenReturn(true);
@@ -161,15 +274,12 @@ public class WrapperSdkExceptionManagerTest {
         when(logSerializer.serializeLog(any(ManagedErrorLog.class))).thenReturn("mock");
         Crashes.getInstance().setLogSerializer(logSerializer);
         byte[] data = new byte[]{'d'};
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
-        verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
+        UUID errorId = WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
+        assertStoredData(errorId, data);
 
         /* We can't do it twice in the same process. */
-        data = new byte[]{'e'};
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), data);
-        verifyStatic(never());
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
+        assertNull(WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), null, new Exception(), new byte[]{'e'}));
+        assertEquals(1, getDataFiles(".dat").length);
     }
 
     @Test
@@ -179,19 +289,16 @@ public class WrapperSdkExceptionManagerTest {
         Crashes.getInstance().setLogSerializer(logSerializer);
         byte[] data = new byte[]{'d'};
         Throwable throwable = new Throwable();
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data);
-        verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
+        UUID errorId = WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data);
+        assertStoredData(errorId, data);
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ErrorLogHelper.writeThrowableSnapshot(any(File.class), any(ThrowableSnapshot.class));
 
         /* We can't do it twice in the same process. */
-        data = new byte[]{'e'};
-        WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), data);
-        verifyStatic(never());
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
+        assertNull(WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), new byte[]{'e'}));
+        assertEquals(1, getDataFiles(".dat").length);
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ErrorLogHelper.writeThrowableSnapshot(any(File.class), any(ThrowableSnapshot.class));
     }
 
     @Test
@@ -201,15 +308,14 @@ public class WrapperSdkExceptionManagerTest {
         Crashes.getInstance().setLogSerializer(logSerializer);
         Throwable throwable = new Throwable();
         WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), null);
-        verifyStatic(never());
-        StorageHelper.InternalStorage.writeObject(any(File.class), isNull(byte[].class));
+        assertEquals(0, getDataFiles(".dat").length);
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ErrorLogHelper.writeThrowableSnapshot(any(File.class), any(ThrowableSnapshot.class));
 
         /* We can't do it twice in the same process. */
         WrapperSdkExceptionManager.saveWrapperException(Thread.currentThread(), throwable, new Exception(), null);
         verifyStatic();
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(throwable));
+        ErrorLogHelper.writeThrowableSnapshot(any(File.class), any(ThrowableSnapshot.class));
     }
 
     @Test
@@ -315,8 +421,14 @@ public class WrapperSdkExceptionManagerTest {
     @Test
     public void saveWrapperSdkCrashFailsWithIOExceptionAfterLog() throws IOException, JSONException {
         byte[] data = {'d'};
-        doThrow(new IOException()).when(StorageHelper.InternalStorage.class);
-        StorageHelper.InternalStorage.writeObject(any(File.class), eq(data));
+        UUID errorId = UUID.randomUUID();
+        ManagedErrorLog errorLog = mock(ManagedErrorLog.class);
+        when(errorLog.getId()).thenReturn(errorId);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Exception.class), Matchers.<Map<Thread, StackTraceElement[]>>any(), anyLong(), anyBoolean(), any(ThreadDumpPolicy.class)))
+                .thenReturn(errorLog);
+
+        /* A directory in place of the data file makes writing fail. */
+        assertTrue(new File(errorStorageDirectory.getRoot(), errorId + ".dat").mkdir());
         LogSerializer logSerializer = Mockito.mock(LogSerializer.class);
         when(logSerializer.serializeLog(any(ManagedErrorLog.class))).thenReturn("mock");
         Crashes.getInstance().setLogSerializer(logSerializer);
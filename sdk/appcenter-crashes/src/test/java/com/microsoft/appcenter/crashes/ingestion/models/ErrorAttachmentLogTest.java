@@ -2,6 +2,7 @@ package com.microsoft.appcenter.crashes.ingestion.models;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog.CHARSET;
@@ -37,6 +38,19 @@ public class ErrorAttachmentLogTest {
         assertEquals(contentType, attachment.getContentType());
     }
 
+    @Test
+    public void attachmentWithFile() {
+        File file = new File("binary.bin");
+        String fileName = "binary.txt";
+        String contentType = "image/jpeg";
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithFile(file, fileName, contentType);
+        assertNotNull(attachment);
+        assertNull(attachment.getData());
+        assertEquals(file, attachment.getFile());
+        assertEquals(fileName, attachment.getFileName());
+        assertEquals(contentType, attachment.getContentType());
+    }
+
     @Test
     public void attachmentWithoutFilename() {
         String text = "Hello World!";
@@ -74,5 +88,13 @@ public class ErrorAttachmentLogTest {
             log.setFileName(null);
             assertTrue(log.isValid());
         }
+        {
+            log.setData(null);
+            assertFalse(log.isValid());
+        }
+        {
+            log.setFile(new File("3"));
+            assertTrue(log.isValid());
+        }
     }
 }
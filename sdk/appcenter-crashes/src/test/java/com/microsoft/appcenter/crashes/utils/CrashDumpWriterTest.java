@@ -0,0 +1,289 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import com.microsoft.appcenter.crashes.ThreadDumpPolicy;
+import com.microsoft.appcenter.crashes.ingestion.models.Exception;
+import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.appcenter.crashes.ingestion.models.Thread;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CrashDumpWriterTest {
+
+    @Rule
+    public final TemporaryFolder mDirectory = new TemporaryFolder();
+
+    private File getDumpFile(CrashDumpWriter writer) {
+        return new File(mDirectory.getRoot(), writer.getId() + CrashDumpWriter.CRASH_DUMP_FILE_EXTENSION);
+    }
+
+    @Test
+    public void writeAndRead() throws java.lang.Exception {
+        CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 2000, 123, "process", "armeabi-v7a", null, new ThreadDumpPolicy());
+        File file = getDumpFile(writer);
+        assertTrue(file.exists());
+        assertEquals(0, file.length());
+
+        /* File is reserved by the writer. */
+        assertNull(CrashDumpReader.open(file));
+
+        /* Write a crash with a cause and unicode message. */
+        Throwable cause = new IllegalStateException("caf\u00e9 \ud83d\ude00");
+        Throwable throwable = new IllegalArgumentException("top", cause);
+        java.lang.Thread thread = java.lang.Thread.currentThread();
+        writer.write(thread, throwable);
+
+        /* Close does not delete written crash. */
+        writer.close();
+        assertTrue(file.length() > 0);
+
+        /* Read it back. */
+        CrashDumpReader reader = CrashDumpReader.open(file);
+        assertNotNull(reader);
+        assertFalse(reader.isEmpty());
+        ManagedErrorLog errorLog = reader.read();
+        reader.close();
+        assertEquals(writer.getId(), errorLog.getId());
+        assertEquals(2000, errorLog.getAppLaunchTimestamp().getTime());
+        assertEquals(Integer.valueOf(123), errorLog.getProcessId());
+        assertEquals("process", errorLog.getProcessName());
+        assertEquals("armeabi-v7a", errorLog.getArchitecture());
+        assertNull(errorLog.getDevice());
+        assertNotNull(errorLog.getTimestamp());
+        assertEquals((Long) thread.getId(), errorLog.getErrorThreadId());
+        assertEquals(thread.getName(), errorLog.getErrorThreadName());
+        assertEquals(Boolean.TRUE, errorLog.getFatal());
+
+        /* Check exception model. */
+        Exception exception = errorLog.getException();
+        assertEquals(IllegalArgumentException.class.getName(), exception.getType());
+        assertEquals("top", exception.getMessage());
+        assertEquals(throwable.getStackTrace().length, exception.getFrames().size());
+        assertEquals(1, exception.getInnerExceptions().size());
+        Exception innerException = exception.getInnerExceptions().get(0);
+        assertEquals(IllegalStateException.class.getName(), innerException.getType());
+        assertEquals(cause.getMessage(), innerException.getMessage());
+        assertNull(innerException.getInnerExceptions());
+
+        /* Check threads. */
+        boolean found = false;
+        for (Thread modelThread : errorLog.getThreads()) {
+            if (modelThread.getId() == thread.getId()) {
+                found = true;
+                assertEquals(thread.getName(), modelThread.getName());
+            }
+        }
+        assertTrue(found);
+
+        /* Check rebuilt throwable. */
+        Throwable rebuilt = reader.getThrowableSnapshot().toThrowable();
+        assertTrue(rebuilt instanceof IllegalArgumentException);
+        assertEquals("top", rebuilt.getMessage());
+        assertEquals(throwable.getStackTrace().length, rebuilt.getStackTrace().length);
+        for (int i = 0; i < rebuilt.getStackTrace().length; i++) {
+            StackTraceElement expected = throwable.getStackTrace()[i];
+            StackTraceElement actual = rebuilt.getStackTrace()[i];
+            assertEquals(expected.getClassName(), actual.getClassName());
+            assertEquals(expected.getMethodName(), actual.getMethodName());
+            assertEquals(expected.getFileName(), actual.getFileName());
+            assertEquals(expected.getLineNumber(), actual.getLineNumber());
+        }
+        assertTrue(rebuilt.getCause() instanceof IllegalStateException);
+        assertEquals(cause.getMessage(), rebuilt.getCause().getMessage());
+    }
+
+    @Test
+    public void truncateHugeFramesAndCauses() throws java.lang.Exception {
+        CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, new ThreadDumpPolicy());
+        Throwable throwable = new RuntimeException();
+        StackTraceElement[] frames = new StackTraceElement[ErrorLogHelper.FRAME_LIMIT * 2];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new StackTraceElement("Class", "method" + i, null, i);
+        }
+        throwable.setStackTrace(frames);
+        Throwable top = throwable;
+        for (int i = 0; i < ErrorLogHelper.CAUSE_LIMIT * 2; i++) {
+            top = new RuntimeException(Integer.toString(i), top);
+        }
+        writer.write(java.lang.Thread.currentThread(), top);
+        CrashDumpReader reader = CrashDumpReader.open(getDumpFile(writer));
+        assertNotNull(reader);
+        ManagedErrorLog errorLog = reader.read();
+        reader.close();
+        int causes = 0;
+        Exception exception = errorLog.getException();
+        while (true) {
+            causes++;
+            if (exception.getInnerExceptions() == null) {
+                break;
+            }
+            exception = exception.getInnerExceptions().get(0);
+        }
+        assertEquals(ErrorLogHelper.CAUSE_LIMIT, causes);
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, exception.getFrames().size());
+        assertEquals("method0", exception.getFrames().get(0).getMethodName());
+        assertEquals("method" + (frames.length - 1), exception.getFrames().get(ErrorLogHelper.FRAME_LIMIT - 1).getMethodName());
+    }
+
+    @Test
+    public void unknownThrowableClass() throws java.lang.Exception {
+        CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, new ThreadDumpPolicy());
+        writer.write(java.lang.Thread.currentThread(), new Error("message") {
+        });
+        CrashDumpReader reader = CrashDumpReader.open(getDumpFile(writer));
+        assertNotNull(reader);
+        reader.read();
+        reader.close();
+        Throwable rebuilt = reader.getThrowableSnapshot().toThrowable();
+        assertEquals(Throwable.class, rebuilt.getClass());
+        assertTrue(rebuilt.getMessage().endsWith(": message"));
+    }
+
+    @Test
+    public void closeDeletesUnusedFile() throws IOException {
+        CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, new ThreadDumpPolicy());
+        File file = getDumpFile(writer);
+        assertTrue(file.exists());
+        writer.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void readEmptyFile() throws IOException {
+        File file = mDirectory.newFile("empty" + CrashDumpWriter.CRASH_DUMP_FILE_EXTENSION);
+        CrashDumpReader reader = CrashDumpReader.open(file);
+        assertNotNull(reader);
+        assertTrue(reader.isEmpty());
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidFile() throws java.lang.Exception {
+        File file = mDirectory.newFile("invalid" + CrashDumpWriter.CRASH_DUMP_FILE_EXTENSION);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(new byte[]{1, 2, 3, 4, 5});
+        outputStream.close();
+        CrashDumpReader reader = CrashDumpReader.open(file);
+        assertNotNull(reader);
+        try {
+            reader.read();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncatedFile() throws java.lang.Exception {
+        CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, new ThreadDumpPolicy());
+        writer.write(java.lang.Thread.currentThread(), new RuntimeException());
+        File file = getDumpFile(writer);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 1);
+        randomAccessFile.close();
+        CrashDumpReader reader = CrashDumpReader.open(file);
+        assertNotNull(reader);
+        try {
+            reader.read();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readCorruptedStringLength() throws java.lang.Exception {
+        CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, new ThreadDumpPolicy());
+        writer.write(java.lang.Thread.currentThread(), new RuntimeException());
+        File file = getDumpFile(writer);
+
+        /* Replace the process name length, after magic, version, identifier, launch time and process identifier. */
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(4 + 4 + 16 + 8 + 4);
+        randomAccessFile.writeInt(Integer.MAX_VALUE);
+        randomAccessFile.close();
+        CrashDumpReader reader = CrashDumpReader.open(file);
+        assertNotNull(reader);
+        try {
+            reader.read();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void threadDumpPolicy() throws java.lang.Exception {
+
+        /* Start idle threads sharing the same stack. */
+        final CountDownLatch latch = new CountDownLatch(1);
+        java.lang.Thread[] idleThreads = new java.lang.Thread[3];
+        for (int i = 0; i < idleThreads.length; i++) {
+            idleThreads[i] = new java.lang.Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }, "idle" + i);
+            idleThreads[i].start();
+        }
+        for (java.lang.Thread idleThread : idleThreads) {
+            while (idleThread.getState() != java.lang.Thread.State.WAITING) {
+                java.lang.Thread.sleep(10);
+            }
+        }
+        try {
+
+            /* Capture as many threads as possible with short stacks and grouping. */
+            ThreadDumpPolicy policy = new ThreadDumpPolicy().setMaxFramesPerThread(2).setGroupIdenticalStacks(true);
+            CrashDumpWriter writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, policy);
+            java.lang.Thread thread = java.lang.Thread.currentThread();
+            writer.write(thread, new RuntimeException());
+            CrashDumpReader reader = CrashDumpReader.open(getDumpFile(writer));
+            assertNotNull(reader);
+            ManagedErrorLog errorLog = reader.read();
+            reader.close();
+
+            /* Thread in error is first. */
+            assertEquals(thread.getId(), errorLog.getThreads().get(0).getId());
+
+            /* Idle threads are grouped. */
+            int idleThreadCount = 0;
+            for (Thread modelThread : errorLog.getThreads()) {
+                assertTrue(modelThread.getFrames().size() <= 2);
+                if (modelThread.getName().startsWith("idle")) {
+                    idleThreadCount++;
+                    assertEquals(ErrorLogHelper.getGroupedThreadName(idleThreads[0].getName(), 2), modelThread.getName());
+                }
+            }
+            assertEquals(1, idleThreadCount);
+
+            /* Limit thread count. */
+            policy = new ThreadDumpPolicy().setMaxThreads(2);
+            writer = new CrashDumpWriter(mDirectory.getRoot(), 0, 0, "", "", null, policy);
+            writer.write(thread, new RuntimeException());
+            reader = CrashDumpReader.open(getDumpFile(writer));
+            assertNotNull(reader);
+            errorLog = reader.read();
+            reader.close();
+            assertEquals(2, errorLog.getThreads().size());
+            assertEquals(thread.getId(), errorLog.getThreads().get(0).getId());
+        } finally {
+            latch.countDown();
+        }
+    }
+}
@@ -7,6 +7,9 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Process;
 
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.crashes.ThreadDumpPolicy;
+import com.microsoft.appcenter.crashes.ingestion.models.ErrorAttachmentLog;
 import com.microsoft.appcenter.crashes.ingestion.models.Exception;
 import com.microsoft.appcenter.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.appcenter.crashes.ingestion.models.StackFrame;
@@ -14,6 +17,7 @@ import com.microsoft.appcenter.crashes.ingestion.models.Thread;
 import com.microsoft.appcenter.crashes.model.ErrorReport;
 import com.microsoft.appcenter.crashes.model.TestCrashException;
 import com.microsoft.appcenter.ingestion.models.Device;
+import com.microsoft.appcenter.ingestion.models.json.Base64FileReferences;
 import com.microsoft.appcenter.test.TestUtils;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.UUIDUtils;
@@ -22,25 +26,31 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
@@ -55,6 +65,9 @@ public class ErrorLogHelperTest {
     @Rule
     public PowerMockRule mRule = new PowerMockRule();
 
+    @Rule
+    public TemporaryFolder mErrorDirectory = new TemporaryFolder();
+
     @Before
     public void setUp() {
         mockStatic(DeviceInfoHelper.class);
@@ -66,6 +79,7 @@ public class ErrorLogHelperTest {
         TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
         TestUtils.setInternalState(Build.class, "SUPPORTED_ABIS", null);
         TestUtils.setInternalState(Build.class, "CPU_ABI", null);
+        Constants.FILES_PATH = null;
     }
 
     @Test
@@ -257,6 +271,55 @@ public class ErrorLogHelperTest {
         assertEquals(launchTimeStamp, errorLog.getAppLaunchTimestamp().getTime());
     }
 
+    @Test
+    public void createErrorLogWithThreadDumpPolicy() {
+
+        /* Build thread states: 3 idle threads sharing a stack, then another thread and the thread in error. */
+        StackTraceElement[] idleStackTrace = new StackTraceElement[]{
+                new StackTraceElement("Pool", "await", "Pool.java", 1),
+                new StackTraceElement("Pool", "run", "Pool.java", 2),
+                new StackTraceElement("Thread", "run", "Thread.java", 3)
+        };
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            allStackTraces.put(new java.lang.Thread("idle" + i), idleStackTrace.clone());
+        }
+        allStackTraces.put(new java.lang.Thread("other"), new StackTraceElement[]{new StackTraceElement("Other", "run", "Other.java", 1)});
+        java.lang.Thread errorThread = new java.lang.Thread("error");
+        allStackTraces.put(errorThread, new StackTraceElement[]{
+                new StackTraceElement("Error", "crash", "Error.java", 1),
+                new StackTraceElement("Error", "call", "Error.java", 2),
+                new StackTraceElement("Thread", "run", "Thread.java", 3)
+        });
+
+        /* Test. */
+        ThreadDumpPolicy policy = new ThreadDumpPolicy().setMaxThreads(4).setMaxFramesPerThread(2).setGroupIdenticalStacks(true);
+        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mock(Context.class), errorThread, new Exception(), allStackTraces, 0, true, policy);
+
+        /* Thread in error first, then idle threads grouped, grouped threads don't count against the limit. */
+        assertEquals(3, errorLog.getThreads().size());
+        Thread thread = errorLog.getThreads().get(0);
+        assertEquals("error", thread.getName());
+        assertEquals(2, thread.getFrames().size());
+        assertEquals("crash", thread.getFrames().get(0).getMethodName());
+        thread = errorLog.getThreads().get(1);
+        assertEquals("idle0 (+2 threads with identical stack)", thread.getName());
+        assertEquals(2, thread.getFrames().size());
+        assertEquals("other", errorLog.getThreads().get(2).getName());
+
+        /* The limit drops threads that are not grouped. */
+        policy.setMaxThreads(2);
+        errorLog = ErrorLogHelper.createErrorLog(mock(Context.class), errorThread, new Exception(), allStackTraces, 0, true, policy);
+        assertEquals(2, errorLog.getThreads().size());
+        assertEquals("error", errorLog.getThreads().get(0).getName());
+        assertEquals("idle0 (+2 threads with identical stack)", errorLog.getThreads().get(1).getName());
+
+        /* Invalid limits are ignored. */
+        policy.setMaxThreads(0).setMaxFramesPerThread(-1);
+        assertEquals(2, policy.getMaxThreads());
+        assertEquals(2, policy.getMaxFramesPerThread());
+    }
+
     @Test
     public void getErrorReportFromErrorLog() throws java.lang.Exception {
 
@@ -294,6 +357,12 @@ public class ErrorLogHelperTest {
         assertEquals(errorLog.getAppLaunchTimestamp(), report.getAppStartTime());
         assertEquals(errorLog.getTimestamp(), report.getAppErrorTime());
         assertEquals(errorLog.getDevice(), report.getDevice());
+
+        /* Throwable is rebuilt from a snapshot only once, when requested. */
+        report = ErrorLogHelper.getErrorReportFromErrorLog(errorLog, ThrowableSnapshot.fromThrowable(throwable));
+        Throwable rebuilt = report.getThrowable();
+        assertTrue(rebuilt instanceof RuntimeException);
+        assertSame(rebuilt, report.getThrowable());
     }
 
     @Test
@@ -317,6 +386,61 @@ public class ErrorLogHelperTest {
         ErrorLogHelper.setErrorLogDirectory(null);
     }
 
+    @Test
+    public void storedFileIndex() throws IOException {
+        ErrorLogHelper.setErrorLogDirectory(mErrorDirectory.getRoot());
+        UUID id1 = UUIDUtils.randomUUID();
+        UUID id2 = UUIDUtils.randomUUID();
+        File errorLogFile1 = mErrorDirectory.newFile(id1 + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        File throwableFile1 = mErrorDirectory.newFile(id1 + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+        assertTrue(errorLogFile1.setLastModified(1000));
+        mErrorDirectory.newFile("other.json");
+        mErrorDirectory.newFile(id2 + ".dat");
+
+        /* Directory is listed once. */
+        assertEquals(1, ErrorLogHelper.getStoredErrorLogFiles().length);
+        assertEquals(errorLogFile1, ErrorLogHelper.getStoredErrorLogFile(id1));
+        assertEquals(throwableFile1, ErrorLogHelper.getStoredThrowableFile(id1));
+        assertNull(ErrorLogHelper.getStoredThrowableFile(id2));
+        assertEquals(errorLogFile1, ErrorLogHelper.getLastErrorLogFile());
+
+        /* Files created without notifying the index are not seen. */
+        File errorLogFile2 = mErrorDirectory.newFile(id2 + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+        assertTrue(errorLogFile2.setLastModified(2000));
+        assertNull(ErrorLogHelper.getStoredErrorLogFile(id2));
+
+        /* Until they are indexed. */
+        ErrorLogHelper.indexStoredFile(errorLogFile2);
+        assertEquals(errorLogFile2, ErrorLogHelper.getStoredErrorLogFile(id2));
+        assertEquals(2, ErrorLogHelper.getStoredErrorLogFiles().length);
+        assertEquals(errorLogFile2, ErrorLogHelper.getLastErrorLogFile());
+        assertEquals(2, ErrorLogHelper.getErrorLogCountSince(1000));
+        assertEquals(1, ErrorLogHelper.getErrorLogCountSince(1001));
+        assertEquals(0, ErrorLogHelper.getErrorLogCountSince(2001));
+
+        /* Removing files updates the index. */
+        ErrorLogHelper.removeStoredErrorLogFile(id2);
+        assertFalse(errorLogFile2.exists());
+        assertNull(ErrorLogHelper.getStoredErrorLogFile(id2));
+        assertEquals(errorLogFile1, ErrorLogHelper.getLastErrorLogFile());
+        ErrorLogHelper.removeStoredThrowableFile(id1);
+        assertFalse(throwableFile1.exists());
+        assertNull(ErrorLogHelper.getStoredThrowableFile(id1));
+        assertEquals(errorLogFile1, ErrorLogHelper.getStoredErrorLogFile(id1));
+        assertTrue(errorLogFile1.delete());
+        ErrorLogHelper.unindexStoredFile(errorLogFile1);
+        assertEquals(0, ErrorLogHelper.getStoredErrorLogFiles().length);
+        assertNull(ErrorLogHelper.getLastErrorLogFile());
+
+        /* Clearing the index lists the directory again. */
+        assertTrue(mErrorDirectory.newFile(id2 + ErrorLogHelper.THROWABLE_FILE_EXTENSION).exists());
+        ErrorLogHelper.clearStoredFileIndex();
+        assertNotNull(ErrorLogHelper.getStoredThrowableFile(id2));
+
+        /* Clean up. */
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
     @Test
     public void validateProperties() {
         String logType = "HandledError";
@@ -358,4 +482,67 @@ public class ErrorLogHelperTest {
         }
         assertEquals(ErrorLogHelper.CAUSE_LIMIT, depth);
     }
+
+    @Test
+    public void storeErrorAttachmentFile() throws java.lang.Exception {
+        Constants.FILES_PATH = mErrorDirectory.getRoot().getAbsolutePath();
+        File applicationFile = mErrorDirectory.newFile("application.bin");
+        byte[] content = generateString(20 * 1024, '*').getBytes("UTF-8");
+        FileOutputStream outputStream = new FileOutputStream(applicationFile);
+        outputStream.write(content);
+        outputStream.close();
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithFile(applicationFile, "application.bin", "application/octet-stream");
+        attachment.setId(UUID.randomUUID());
+
+        /* The copy is in the referenced files directory. */
+        ErrorLogHelper.storeErrorAttachmentFile(attachment);
+        File file = attachment.getFile();
+        assertEquals(new File(Base64FileReferences.getDirectory(), attachment.getId() + ErrorLogHelper.ERROR_ATTACHMENT_FILE_EXTENSION), file);
+        assertEquals(content.length, file.length());
+        assertEquals(file, Base64FileReferences.getFile(Base64FileReferences.getReference(file)));
+
+        /* Only the copy is deleted. */
+        ErrorLogHelper.removeStoredErrorAttachmentFile(attachment);
+        assertFalse(file.exists());
+        assertTrue(applicationFile.exists());
+        ErrorLogHelper.removeStoredErrorAttachmentFile(ErrorAttachmentLog.attachmentWithFile(applicationFile, null, "application/octet-stream"));
+        ErrorLogHelper.removeStoredErrorAttachmentFile(ErrorAttachmentLog.attachmentWithBinary(content, null, "application/octet-stream"));
+        assertTrue(applicationFile.exists());
+    }
+
+    @Test
+    public void storeMissingErrorAttachmentFile() throws java.lang.Exception {
+        Constants.FILES_PATH = mErrorDirectory.getRoot().getAbsolutePath();
+        File missingFile = new File(mErrorDirectory.getRoot(), "missing.bin");
+        ErrorAttachmentLog attachment = ErrorAttachmentLog.attachmentWithFile(missingFile, null, "application/octet-stream");
+        attachment.setId(UUID.randomUUID());
+        try {
+            ErrorLogHelper.storeErrorAttachmentFile(attachment);
+            fail();
+        } catch (IOException ignored) {
+        }
+        assertEquals(missingFile, attachment.getFile());
+        String[] files = Base64FileReferences.getDirectory().list();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+    @Test
+    public void removeStoredErrorAttachmentFiles() throws java.lang.Exception {
+        Constants.FILES_PATH = mErrorDirectory.getRoot().getAbsolutePath();
+
+        /* No directory yet. */
+        ErrorLogHelper.removeStoredErrorAttachmentFiles();
+
+        /* Only the attachment copies are deleted. */
+        File directory = Base64FileReferences.getDirectory();
+        assertTrue(directory.mkdirs());
+        File file = new File(directory, UUID.randomUUID() + ErrorLogHelper.ERROR_ATTACHMENT_FILE_EXTENSION);
+        File otherFile = new File(directory, "other.bin");
+        assertTrue(file.createNewFile());
+        assertTrue(otherFile.createNewFile());
+        ErrorLogHelper.removeStoredErrorAttachmentFiles();
+        assertFalse(file.exists());
+        assertTrue(otherFile.exists());
+    }
 }
@@ -0,0 +1,168 @@
+package com.microsoft.appcenter.crashes.utils;
+
+import android.os.Build;
+
+import com.microsoft.appcenter.crashes.model.NativeException;
+import com.microsoft.appcenter.test.TestUtils;
+import com.microsoft.appcenter.utils.storage.StorageHelper;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThrowableSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder mDirectory = new TemporaryFolder();
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+    }
+
+    private static void assertStackTraceEquals(StackTraceElement[] expected, StackTraceElement[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getClassName(), actual[i].getClassName());
+            assertEquals(expected[i].getMethodName(), actual[i].getMethodName());
+            assertEquals(expected[i].getFileName(), actual[i].getFileName());
+            assertEquals(expected[i].getLineNumber(), actual[i].getLineNumber());
+        }
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        Throwable cause = new IllegalStateException("caf\u00e9 \ud83d\ude00");
+        Throwable throwable = new IllegalArgumentException("top", cause);
+        File file = mDirectory.newFile();
+        ErrorLogHelper.writeThrowableSnapshot(file, ThrowableSnapshot.fromThrowable(throwable));
+        Throwable rebuilt = ErrorLogHelper.readThrowableSnapshot(file).toThrowable();
+        assertTrue(rebuilt instanceof IllegalArgumentException);
+        assertEquals("top", rebuilt.getMessage());
+        assertStackTraceEquals(throwable.getStackTrace(), rebuilt.getStackTrace());
+        assertTrue(rebuilt.getCause() instanceof IllegalStateException);
+        assertEquals(cause.getMessage(), rebuilt.getCause().getMessage());
+        assertStackTraceEquals(cause.getStackTrace(), rebuilt.getCause().getStackTrace());
+        assertNull(rebuilt.getCause().getCause());
+    }
+
+    @Test
+    public void suppressed() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.KITKAT);
+        Throwable throwable = new RuntimeException("top");
+        throwable.addSuppressed(new IOException("suppressed"));
+        File file = mDirectory.newFile();
+        ErrorLogHelper.writeThrowableSnapshot(file, ThrowableSnapshot.fromThrowable(throwable));
+        Throwable rebuilt = ErrorLogHelper.readThrowableSnapshot(file).toThrowable();
+        assertEquals(1, rebuilt.getSuppressed().length);
+        assertTrue(rebuilt.getSuppressed()[0] instanceof IOException);
+        assertEquals("suppressed", rebuilt.getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void truncateHugeFramesAndCauses() {
+        Throwable throwable = new RuntimeException();
+        StackTraceElement[] frames = new StackTraceElement[ErrorLogHelper.FRAME_LIMIT * 2];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new StackTraceElement("Class", "method" + i, null, i);
+        }
+        throwable.setStackTrace(frames);
+        Throwable top = throwable;
+        for (int i = 0; i < ErrorLogHelper.CAUSE_LIMIT * 2; i++) {
+            top = new RuntimeException(Integer.toString(i), top);
+        }
+        int causes = 0;
+        Throwable rebuilt = ThrowableSnapshot.fromThrowable(top).toThrowable();
+        while (true) {
+            causes++;
+            if (rebuilt.getCause() == null) {
+                break;
+            }
+            rebuilt = rebuilt.getCause();
+        }
+        assertEquals(ErrorLogHelper.CAUSE_LIMIT, causes);
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, rebuilt.getStackTrace().length);
+        assertEquals("method" + (frames.length - 1), rebuilt.getStackTrace()[ErrorLogHelper.FRAME_LIMIT - 1].getMethodName());
+    }
+
+    @Test
+    public void rebuildThrowableWithoutMessageConstructor() {
+        assertTrue(ThrowableSnapshot.fromThrowable(new NativeException()).toThrowable() instanceof NativeException);
+        Throwable rebuilt = ThrowableSnapshot.fromThrowable(new Error("message") {
+        }).toThrowable();
+        assertEquals(Throwable.class, rebuilt.getClass());
+        assertTrue(rebuilt.getMessage().endsWith(": message"));
+    }
+
+    @Test
+    public void readLegacySerializedThrowable() throws Exception {
+        File file = mDirectory.newFile();
+        StorageHelper.InternalStorage.writeObject(file, new IllegalArgumentException("legacy"));
+        Throwable rebuilt = ErrorLogHelper.readThrowableSnapshot(file).toThrowable();
+        assertTrue(rebuilt instanceof IllegalArgumentException);
+        assertEquals("legacy", rebuilt.getMessage());
+    }
+
+    @Test
+    public void readEmptyFile() throws Exception {
+        assertNull(ErrorLogHelper.readThrowableSnapshot(mDirectory.newFile()));
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncatedFile() throws Exception {
+        File file = mDirectory.newFile();
+        ErrorLogHelper.writeThrowableSnapshot(file, ThrowableSnapshot.fromThrowable(new RuntimeException()));
+        File truncatedFile = mDirectory.newFile();
+        FileOutputStream outputStream = new FileOutputStream(truncatedFile);
+        outputStream.write(StorageHelper.InternalStorage.readBytes(file), 0, (int) file.length() - 1);
+        outputStream.close();
+        ErrorLogHelper.readThrowableSnapshot(truncatedFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readTooManyCauses() throws Exception {
+        ThrowableSnapshot snapshot = new ThrowableSnapshot("java.lang.RuntimeException", null, new StackTraceElement[0]);
+        for (int i = 0; i < ErrorLogHelper.CAUSE_LIMIT; i++) {
+            ThrowableSnapshot parent = new ThrowableSnapshot("java.lang.RuntimeException", Integer.toString(i), new StackTraceElement[0]);
+            parent.setCause(snapshot);
+            snapshot = parent;
+        }
+        File file = mDirectory.newFile();
+        ErrorLogHelper.writeThrowableSnapshot(file, snapshot);
+        ErrorLogHelper.readThrowableSnapshot(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readCorruptedStringLength() throws Exception {
+        File file = mDirectory.newFile();
+        DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(file));
+        outputStream.writeInt(ThrowableSnapshot.MAGIC);
+        outputStream.writeInt(ThrowableSnapshot.VERSION);
+        outputStream.writeInt(Integer.MAX_VALUE);
+        outputStream.close();
+        ErrorLogHelper.readThrowableSnapshot(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readCorruptedFrameCount() throws Exception {
+        File file = mDirectory.newFile();
+        DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(file));
+        outputStream.writeInt(ThrowableSnapshot.MAGIC);
+        outputStream.writeInt(ThrowableSnapshot.VERSION);
+        outputStream.writeInt(0);
+        outputStream.writeInt(-1);
+        outputStream.writeInt(Integer.MAX_VALUE);
+        outputStream.close();
+        ErrorLogHelper.readThrowableSnapshot(file);
+    }
+}
@@ -0,0 +1,109 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.test.InstrumentationRegistry;
+import android.util.Base64;
+
+import com.microsoft.appcenter.Constants;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class Base64FileReferencesAndroidTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        Constants.loadFromContext(InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = Base64FileReferences.getDirectory().listFiles();
+        if (files != null) {
+            for (File file : files) {
+
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static File createFile(String name, byte[] content) throws Exception {
+        File directory = Base64FileReferences.getDirectory();
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File file = new File(directory, name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(content);
+        outputStream.close();
+        return file;
+    }
+
+    private static String write(String json) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Base64FileReferences.write(json, outputStream);
+        return outputStream.toString("UTF-8");
+    }
+
+    @Test
+    public void utilsCoverage() {
+        new Base64FileReferences();
+    }
+
+    @Test
+    public void getFile() {
+        File file = new File(Base64FileReferences.getDirectory(), "file.bin");
+        assertEquals(file, Base64FileReferences.getFile(Base64FileReferences.getReference(file)));
+        assertNull(Base64FileReferences.getFile(null));
+        assertNull(Base64FileReferences.getFile("file.bin"));
+
+        /* Only files of the SDK directory can be referenced. */
+        assertNull(Base64FileReferences.getFile(Base64FileReferences.REFERENCE_PREFIX));
+        assertNull(Base64FileReferences.getFile(Base64FileReferences.REFERENCE_PREFIX + "../file.bin"));
+        assertNull(Base64FileReferences.getFile(Base64FileReferences.REFERENCE_PREFIX + "/data/file.bin"));
+        assertNull(Base64FileReferences.getFile(Base64FileReferences.REFERENCE_PREFIX + ".."));
+    }
+
+    @Test
+    public void writeWithoutReferences() throws Exception {
+        String json = "{\"logs\":[{\"data\":\"café\"}]}";
+        assertFalse(Base64FileReferences.containsReferences(json));
+        assertEquals(json, write(json));
+    }
+
+    @Test
+    public void writeEncodedFiles() throws Exception {
+
+        /* Content spanning several chunks, not a multiple of 3 bytes. */
+        byte[] content = new byte[Base64FileReferences.CHUNK_SIZE * 2 + 1];
+        new Random().nextBytes(content);
+        File file = createFile("file.bin", content);
+        File emptyFile = createFile("empty.bin", new byte[0]);
+        String reference = Base64FileReferences.getReference(file);
+        String json = "{\"logs\":[{\"data\":\"" + reference + "\"},{\"data\":\"" + Base64FileReferences.getReference(emptyFile) + "\"},{\"name\":\"" + reference + "\"}]}";
+        assertTrue(Base64FileReferences.containsReferences(json));
+        String encodedContent = Base64.encodeToString(content, Base64.NO_WRAP);
+        assertEquals("{\"logs\":[{\"data\":\"" + encodedContent + "\"},{\"data\":\"\"},{\"name\":\"" + encodedContent + "\"}]}", write(json));
+    }
+
+    @Test
+    public void writeInvalidReferences() throws Exception {
+
+        /* Missing files are sent empty, invalid references and unterminated strings as is. */
+        String invalidReference = Base64FileReferences.REFERENCE_PREFIX + "../file.bin";
+        String json = "{\"a\":\"" + Base64FileReferences.REFERENCE_PREFIX + "missing\",\"b\":\"" + invalidReference + "\",\"c\":\"" + Base64FileReferences.REFERENCE_PREFIX;
+        assertEquals("{\"a\":\"\",\"b\":\"" + invalidReference + "\",\"c\":\"" + Base64FileReferences.REFERENCE_PREFIX, write(json));
+    }
+}
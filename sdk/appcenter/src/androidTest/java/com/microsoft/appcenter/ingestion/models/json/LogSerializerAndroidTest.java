@@ -50,6 +50,34 @@ public class LogSerializerAndroidTest {
         Assert.assertEquals(expectedContainer.hashCode(), actualContainer.hashCode());
     }
 
+    @Test
+    public void deviceJsonUpdatedAfterSetter() throws JSONException {
+        MockLog log = AndroidTestUtils.generateMockLog();
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        serializer.serializeLog(log);
+
+        /* Change device after it was cached. */
+        log.getDevice().setModel("Pixel");
+        Log actualLog = serializer.deserializeLog(serializer.serializeLog(log), null);
+        Assert.assertEquals("Pixel", actualLog.getDevice().getModel());
+        Assert.assertEquals(log, actualLog);
+    }
+
+    @Test
+    public void deserializedLogsDoNotShareDevice() throws JSONException {
+        MockLog log1 = AndroidTestUtils.generateMockLog();
+        MockLog log2 = AndroidTestUtils.generateMockLog();
+        log2.setDevice(log1.getDevice());
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        Log actualLog1 = serializer.deserializeLog(serializer.serializeLog(log1), null);
+        Log actualLog2 = serializer.deserializeLog(serializer.serializeLog(log2), null);
+        Assert.assertEquals(log1, actualLog1);
+        Assert.assertEquals(log2, actualLog2);
+        Assert.assertNotSame(actualLog1.getDevice(), actualLog2.getDevice());
+    }
+
     @Test(expected = JSONException.class)
     public void deserializeUnknownType() throws JSONException {
         MockLog log = AndroidTestUtils.generateMockLog();
@@ -89,6 +89,15 @@ public class DatabasePersistenceAndroidTest {
         sContext.deleteDatabase(DatabasePersistence.DATABASE);
     }
 
+    private static String getStoredTargetToken(DatabasePersistence persistence, long targetTokenId) {
+        for (ContentValues values : persistence.mDatabaseStorage.getAll(DatabasePersistence.TARGET_TOKEN_TABLE, DatabasePersistence.TARGET_TOKEN_SCHEMA)) {
+            if (values.getAsLong(DatabaseManager.PRIMARY_KEY) == targetTokenId) {
+                return values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            }
+        }
+        return null;
+    }
+
     private static int getIteratorSize(Iterator iterator) {
         int count = 0;
         for (; iterator.hasNext(); iterator.next())
@@ -761,11 +770,11 @@ public class DatabasePersistenceAndroidTest {
     }
 
     @Test
-    public void upgradeFromVersion1to3() throws PersistenceException, JSONException {
+    public void upgradeFromVersion1to4() throws PersistenceException, JSONException {
 
         /* Initialize database persistence with old schema. */
         ContentValues oldSchema = new ContentValues(DatabasePersistence.SCHEMA);
-        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
         oldSchema.remove(DatabasePersistence.COLUMN_DATA_TYPE);
         oldSchema.remove(DatabasePersistence.COLUMN_TARGET_KEY);
         StorageHelper.DatabaseStorage databaseStorage = StorageHelper.DatabaseStorage.getDatabaseStorage(DatabasePersistence.DATABASE, DatabasePersistence.TABLE, 1, oldSchema, new DatabaseManager.Listener() {
@@ -837,9 +846,12 @@ public class DatabasePersistenceAndroidTest {
             assertEquals(1, outputLogs.size());
             assertEquals(commonSchemaLog, outputLogs.get(0));
 
-            /* Verify target token is encrypted. */
+            /* Verify target token is encrypted in the token table. */
             ContentValues values = persistence.mDatabaseStorage.get(DatabasePersistence.COLUMN_GROUP, "test/one");
-            String token = values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN));
+            Long targetTokenId = values.getAsLong(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+            assertNotNull(targetTokenId);
+            String token = getStoredTargetToken(persistence, targetTokenId);
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
@@ -853,11 +865,13 @@ public class DatabasePersistenceAndroidTest {
     }
 
     @Test
-    public void upgradeFromVersion2to3() throws PersistenceException, JSONException {
+    public void upgradeFromVersion2to4() throws PersistenceException, JSONException {
 
         /* Initialize database persistence with old schema. */
         ContentValues oldSchema = new ContentValues(DatabasePersistence.SCHEMA);
         oldSchema.remove(DatabasePersistence.COLUMN_TARGET_KEY);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.put(DatabasePersistence.COLUMN_TARGET_TOKEN, "");
         StorageHelper.DatabaseStorage databaseStorage = StorageHelper.DatabaseStorage.getDatabaseStorage(DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_TYPE_API_KEY, oldSchema, new DatabaseManager.Listener() {
 
             @Override
@@ -928,9 +942,12 @@ public class DatabasePersistenceAndroidTest {
             assertEquals(1, outputLogs.size());
             assertEquals(commonSchemaLog, outputLogs.get(0));
 
-            /* Verify target token is encrypted. */
+            /* Verify target token is encrypted in the token table. */
             ContentValues values = persistence.mDatabaseStorage.get(DatabasePersistence.COLUMN_GROUP, "test/one");
-            String token = values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN);
+            assertNull(values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN));
+            Long targetTokenId = values.getAsLong(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+            assertNotNull(targetTokenId);
+            String token = getStoredTargetToken(persistence, targetTokenId);
             assertNotNull(token);
             assertNotEquals("test-guid", token);
             assertEquals("test-guid", CryptoUtils.getInstance(sContext).decrypt(token, false).getDecryptedData());
@@ -942,4 +959,117 @@ public class DatabasePersistenceAndroidTest {
             persistence.close();
         }
     }
+
+    @Test
+    public void upgradeFromVersion3to4() throws PersistenceException, JSONException {
+
+        /* Initialize database persistence with old schema. */
+        ContentValues oldSchema = new ContentValues(DatabasePersistence.SCHEMA);
+        oldSchema.remove(DatabasePersistence.COLUMN_TARGET_TOKEN_ID);
+        oldSchema.put(DatabasePersistence.COLUMN_TARGET_TOKEN, "");
+        StorageHelper.DatabaseStorage databaseStorage = StorageHelper.DatabaseStorage.getDatabaseStorage(DatabasePersistence.DATABASE, DatabasePersistence.TABLE, DatabasePersistence.VERSION_TARGET_KEY, oldSchema, new DatabaseManager.Listener() {
+
+            @Override
+            public boolean onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                return false;
+            }
+
+            @Override
+            public void onError(String operation, RuntimeException e) {
+                throw e;
+            }
+        });
+
+        /* Init log serializer. */
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+
+        /* Insert 2 common schema logs with the same token, each encrypted in its row. */
+        List<MockCommonSchemaLog> oldLogs = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                MockCommonSchemaLog commonSchemaLog = new MockCommonSchemaLog();
+                commonSchemaLog.setName("test" + i);
+                commonSchemaLog.setIKey("o:test");
+                commonSchemaLog.setTimestamp(new Date());
+                commonSchemaLog.setVer("3.0");
+                commonSchemaLog.addTransmissionTarget("test-guid");
+                oldLogs.add(commonSchemaLog);
+                ContentValues contentValues = new ContentValues();
+                contentValues.put(DatabasePersistence.COLUMN_GROUP, "test/one");
+                contentValues.put(DatabasePersistence.COLUMN_LOG, logSerializer.serializeLog(commonSchemaLog));
+                contentValues.put(DatabasePersistence.COLUMN_TARGET_TOKEN, CryptoUtils.getInstance(sContext).encrypt("test-guid"));
+                contentValues.put(DatabasePersistence.COLUMN_DATA_TYPE, MockCommonSchemaLog.TYPE);
+                contentValues.put(DatabasePersistence.COLUMN_TARGET_KEY, "test");
+                databaseStorage.put(contentValues);
+            }
+        } finally {
+            databaseStorage.close();
+        }
+
+        /* Upgrade. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Get old data with their token restored. */
+            List<Log> outputLogs = new ArrayList<>();
+            persistence.getLogs("test/one", Collections.<String>emptyList(), 2, outputLogs);
+            assertEquals(oldLogs, outputLogs);
+
+            /* Verify token has been moved to the token table only once. */
+            assertEquals(1, persistence.mDatabaseStorage.getAll(DatabasePersistence.TARGET_TOKEN_TABLE, DatabasePersistence.TARGET_TOKEN_SCHEMA).size());
+            for (ContentValues values : persistence.mDatabaseStorage.getScanner()) {
+                assertNull(values.getAsString(DatabasePersistence.COLUMN_TARGET_TOKEN));
+                assertNotNull(values.getAsLong(DatabasePersistence.COLUMN_TARGET_TOKEN_ID));
+            }
+        } finally {
+            persistence.close();
+        }
+    }
+
+    @Test
+    public void getLogsWithMissingTargetToken() throws PersistenceException {
+
+        /* Initialize database persistence. */
+        DatabasePersistence persistence = new DatabasePersistence(sContext);
+        LogSerializer logSerializer = new DefaultLogSerializer();
+        logSerializer.addLogFactory(MockCommonSchemaLog.TYPE, new MockCommonSchemaLogFactory());
+        persistence.setLogSerializer(logSerializer);
+        try {
+
+            /* Store 2 logs with different tokens. */
+            MockCommonSchemaLog commonSchemaLog = new MockCommonSchemaLog();
+            commonSchemaLog.setName("test");
+            commonSchemaLog.setIKey("o:test");
+            commonSchemaLog.setTimestamp(new Date());
+            commonSchemaLog.setVer("3.0");
+            commonSchemaLog.addTransmissionTarget("test-guid");
+            persistence.putLog("test/one", commonSchemaLog);
+            MockCommonSchemaLog otherLog = new MockCommonSchemaLog();
+            otherLog.setName("test");
+            otherLog.setIKey("o:other");
+            otherLog.setTimestamp(new Date());
+            otherLog.setVer("3.0");
+            otherLog.addTransmissionTarget("other-guid");
+            persistence.putLog("test/one", otherLog);
+            assertEquals(2, persistence.mDatabaseStorage.getAll(DatabasePersistence.TARGET_TOKEN_TABLE, DatabasePersistence.TARGET_TOKEN_SCHEMA).size());
+        } finally {
+            persistence.close();
+        }
+
+        /* Lose the token table content, logs referencing missing tokens are deleted. */
+        SQLiteDatabase db = sContext.openOrCreateDatabase(DatabasePersistence.DATABASE, Context.MODE_PRIVATE, null);
+        db.delete(DatabasePersistence.TARGET_TOKEN_TABLE, null, null);
+        db.close();
+        persistence = new DatabasePersistence(sContext);
+        persistence.setLogSerializer(logSerializer);
+        try {
+            List<Log> outputLogs = new ArrayList<>();
+            assertNull(persistence.getLogs("test/one", Collections.<String>emptyList(), 2, outputLogs));
+            assertEquals(0, persistence.countLogs("test/one"));
+        } finally {
+            persistence.close();
+        }
+    }
 }
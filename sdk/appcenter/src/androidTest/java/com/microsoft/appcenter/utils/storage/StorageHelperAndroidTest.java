@@ -137,6 +137,7 @@ public class StorageHelperAndroidTest {
         sContext.deleteDatabase("test-databaseStorageUpgrade");
         sContext.deleteDatabase("test-databaseStorageScannerRemove");
         sContext.deleteDatabase("test-databaseStorageScannerNext");
+        sContext.deleteDatabase("test-databaseStorageOtherTable");
         sContext.deleteDatabase("test-databaseStorageInMemoryDB");
         sContext.deleteDatabase("test-setMaximumSize");
     }
@@ -752,6 +753,56 @@ public class StorageHelperAndroidTest {
         }
     }
 
+    @Test
+    public void databaseStorageOtherTable() {
+        Log.i(TAG, "Testing Database Storage for another table of the same database");
+
+        /* Get instance to access database. */
+        DatabaseStorage databaseStorage = DatabaseStorage.getDatabaseStorage("test-databaseStorageOtherTable", "databaseStorageOtherTable", 1, mSchema, new DatabaseManager.Listener() {
+
+            @Override
+            public boolean onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                return false;
+            }
+
+            @Override
+            public void onError(String operation, RuntimeException e) {
+                throw e;
+            }
+        });
+
+        //noinspection TryFinallyCanBeTryWithResources (try with resources statement is API >= 19)
+        try {
+
+            /* The other table is created on first access. */
+            ContentValues otherSchema = new ContentValues();
+            otherSchema.put("name", "");
+            assertTrue(databaseStorage.getAll("other", otherSchema).isEmpty());
+
+            /* Put entries in both tables, they do not interfere. */
+            ContentValues value = new ContentValues();
+            value.put("name", "first");
+            long firstId = databaseStorage.put("other", value);
+            assertTrue(firstId >= 0);
+            databaseStorage.put(generateContentValues());
+            value = new ContentValues();
+            value.put("name", "second");
+            long secondId = databaseStorage.put("other", value);
+            assertTrue(secondId > firstId);
+            assertEquals(1, databaseStorage.size());
+            List<ContentValues> values = databaseStorage.getAll("other", otherSchema);
+            assertEquals(2, values.size());
+            assertEquals(Long.valueOf(firstId), values.get(0).getAsLong(DatabaseManager.PRIMARY_KEY));
+            assertEquals("first", values.get(0).getAsString("name"));
+            assertEquals("second", values.get(1).getAsString("name"));
+        } finally {
+
+            /* Close. */
+            //noinspection ThrowFromFinallyBlock
+            databaseStorage.close();
+        }
+    }
+
     /* This is a hack to test database failure by passing a weird table name which is actually valid.
        SQLite database allows to create a table that contains period (.) but it doesn't actually create the table and doesn't raise any exceptions.
        This test method will then be able to test in-memory database by accessing a table which is not created.
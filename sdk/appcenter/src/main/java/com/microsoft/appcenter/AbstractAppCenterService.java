@@ -201,6 +201,11 @@ public abstract class AbstractAppCenterService implements AppCenterService {
         applyEnabledState(enabled);
     }
 
+    @Override
+    public boolean isDeferringOtherServices() {
+        return false;
+    }
+
     @Override
     public void onConfigurationUpdated(String appSecret, String transmissionTargetToken) {
 
@@ -33,6 +33,7 @@ import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -96,6 +97,12 @@ public class AppCenter {
     @VisibleForTesting
     static final String TRANSMISSION_TARGET_TOKEN_KEY = "target";
 
+    /**
+     * Delay in milliseconds before starting services deferred by a service keeping the startup minimal.
+     */
+    @VisibleForTesting
+    static final long DEFERRED_SERVICES_START_DELAY = 10 * 1000;
+
     /**
      * Shared instance.
      */
@@ -179,6 +186,11 @@ public class AppCenter {
      */
     private AppCenterHandler mAppCenterHandler;
 
+    /**
+     * Commands posted by services whose start is deferred, by service. Only accessed from the background thread.
+     */
+    private final Map<AppCenterService, List<Runnable>> mDeferredServiceCommands = new HashMap<>();
+
     /**
      * Max storage size in bytes.
      */
@@ -669,11 +681,18 @@ public class AppCenter {
     }
 
     private synchronized void handlerAppCenterOperation(final Runnable runnable, final Runnable disabledRunnable) {
+        handlerAppCenterOperation(null, runnable, disabledRunnable);
+    }
+
+    private synchronized void handlerAppCenterOperation(final AppCenterService service, final Runnable runnable, final Runnable disabledRunnable) {
         if (checkPrecondition()) {
             Runnable wrapperRunnable = new Runnable() {
 
                 @Override
                 public void run() {
+                    if (deferServiceCommand(service, this)) {
+                        return;
+                    }
                     if (isInstanceEnabled()) {
                         runnable.run();
                     } else {
@@ -691,13 +710,32 @@ public class AppCenter {
              * run now to avoid dead locks with getters.
              */
             if (Thread.currentThread() == mHandlerThread) {
-                runnable.run();
+                if (!deferServiceCommand(service, runnable)) {
+                    runnable.run();
+                }
             } else {
                 mHandler.post(wrapperRunnable);
             }
         }
     }
 
+    /**
+     * Keep a command of a service whose start is deferred, to run it once the service is started.
+     *
+     * @param service service posting the command, can be null for App Center commands.
+     * @param command command.
+     * @return true if the command was kept, false if it can run now.
+     */
+    @WorkerThread
+    private boolean deferServiceCommand(AppCenterService service, Runnable command) {
+        List<Runnable> commands = service != null ? mDeferredServiceCommands.get(service) : null;
+        if (commands == null) {
+            return false;
+        }
+        commands.add(command);
+        return true;
+    }
+
     @WorkerThread
     private void finishConfiguration(boolean configureFromApp) {
 
@@ -838,7 +876,7 @@ public class AppCenter {
             AppCenterLog.debug(LOG_TAG, "Instrumentation variable to disable service has been set; not starting service " + serviceName + ".");
             return false;
         } else {
-            serviceInstance.onStarting(mAppCenterHandler);
+            serviceInstance.onStarting(getServiceHandler(serviceInstance));
             mApplication.registerActivityLifecycleCallbacks(serviceInstance);
             mServices.add(serviceInstance);
             startedServices.add(serviceInstance);
@@ -846,17 +884,43 @@ public class AppCenter {
         }
     }
 
+    /**
+     * Get the background thread handler for a service, it keeps the commands of the service while its start is deferred.
+     *
+     * @param service service.
+     * @return service handler.
+     */
+    private AppCenterHandler getServiceHandler(final AppCenterService service) {
+        return new AppCenterHandler() {
+
+            @Override
+            public void post(@NonNull Runnable runnable, Runnable disabledRunnable) {
+                handlerAppCenterOperation(service, runnable, disabledRunnable);
+            }
+        };
+    }
+
     @WorkerThread
-    private void finishStartServices(Iterable<AppCenterService> updatedServices, Iterable<AppCenterService> startedServices, boolean startFromApp) {
+    private void finishStartServices(Iterable<AppCenterService> updatedServices, Iterable<AppCenterService> startedServices, final boolean startFromApp) {
 
         /* Update existing services with app secret and/or transmission target. */
-        for (AppCenterService service : updatedServices) {
-            service.onConfigurationUpdated(mAppSecret, mTransmissionTargetToken);
-            AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service configuration updated.");
+        for (final AppCenterService service : updatedServices) {
+            Runnable updateConfiguration = new Runnable() {
+
+                @Override
+                public void run() {
+                    service.onConfigurationUpdated(mAppSecret, mTransmissionTargetToken);
+                    AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service configuration updated.");
+                }
+            };
+
+            /* A service whose start is deferred is updated once started. */
+            if (!deferServiceCommand(service, updateConfiguration)) {
+                updateConfiguration.run();
+            }
         }
 
-        /* Start new services. */
-        boolean enabled = isInstanceEnabled();
+        /* Register log factories of all new services, logs of deferred services can already be in storage. */
         for (AppCenterService service : startedServices) {
             Map<String, LogFactory> logFactories = service.getLogFactories();
             if (logFactories != null) {
@@ -864,18 +928,48 @@ public class AppCenter {
                     mLogSerializer.addLogFactory(logFactory.getKey(), logFactory.getValue());
                 }
             }
-            if (!enabled && service.isInstanceEnabled()) {
-                service.setInstanceEnabled(false);
+        }
+
+        /* A service can keep the startup minimal, for example in a crash loop: only such services start now. */
+        boolean enabled = isInstanceEnabled();
+        Collection<AppCenterService> prioritizedServices = new ArrayList<>();
+        if (enabled) {
+            for (AppCenterService service : startedServices) {
+                if (service.isDeferringOtherServices()) {
+                    prioritizedServices.add(service);
+                }
             }
-            if (startFromApp) {
-                service.onStarted(mApplication, mChannel, mAppSecret, mTransmissionTargetToken, true);
-                AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from application.");
+        }
+
+        /* Start new services. */
+        final Collection<AppCenterService> deferredServices = new ArrayList<>();
+        for (AppCenterService service : startedServices) {
+            if (prioritizedServices.isEmpty() || prioritizedServices.contains(service)) {
+                finishStartService(service, enabled, startFromApp);
             } else {
-                service.onStarted(mApplication, mChannel, null, null, false);
-                AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
+                mDeferredServiceCommands.put(service, new ArrayList<Runnable>());
+                deferredServices.add(service);
             }
         }
 
+        /* Start the other services later, then run the commands they received in the meantime. */
+        if (!deferredServices.isEmpty()) {
+            AppCenterLog.info(LOG_TAG, "Startup is kept minimal, other services will start in " + DEFERRED_SERVICES_START_DELAY + "ms.");
+            mHandler.postDelayed(new Runnable() {
+
+                @Override
+                public void run() {
+                    boolean enabled = isInstanceEnabled();
+                    for (AppCenterService service : deferredServices) {
+                        finishStartService(service, enabled, startFromApp);
+                        for (Runnable command : mDeferredServiceCommands.remove(service)) {
+                            command.run();
+                        }
+                    }
+                }
+            }, DEFERRED_SERVICES_START_DELAY);
+        }
+
         /* If starting from a library, we will send start service log later when app starts with an app secret. */
         if (startFromApp) {
             for (AppCenterService service : updatedServices) {
@@ -888,6 +982,20 @@ public class AppCenter {
         }
     }
 
+    @WorkerThread
+    private void finishStartService(AppCenterService service, boolean enabled, boolean startFromApp) {
+        if (!enabled && service.isInstanceEnabled()) {
+            service.setInstanceEnabled(false);
+        }
+        if (startFromApp) {
+            service.onStarted(mApplication, mChannel, mAppSecret, mTransmissionTargetToken, true);
+            AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from application.");
+        } else {
+            service.onStarted(mApplication, mChannel, null, null, false);
+            AppCenterLog.info(LOG_TAG, service.getClass().getSimpleName() + " service started from library.");
+        }
+    }
+
     /**
      * Queue start service log.
      */
@@ -53,6 +53,17 @@ public interface AppCenterService extends Application.ActivityLifecycleCallbacks
     @Nullable
     Map<String, LogFactory> getLogFactories();
 
+    /**
+     * Check whether this service keeps the application startup minimal by deferring the start of the other services,
+     * for example while the application keeps crashing right after being launched.
+     * This is called before {@link #onStarted} on the services started together: the services returning
+     * <code>true</code> are started right away, the other services are started later and their commands are kept until then.
+     *
+     * @return <code>true</code> to defer the start of the other services.
+     */
+    @WorkerThread
+    boolean isDeferringOtherServices();
+
     /**
      * Called when this service is starting. Storage is not accessible until {@link #onStarted} is called.
      * This is called from the same thread as the caller of {@link AppCenter#start(Class[])}).
@@ -2,11 +2,12 @@ package com.microsoft.appcenter;
 
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
+import android.util.Base64;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
-import java.util.LinkedHashSet;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
@@ -23,7 +24,21 @@ public class SessionContext {
     /**
      * Key used in storage to persist sessions.
      */
-    private static final String STORAGE_KEY = "sessions";
+    @VisibleForTesting
+    public static final String STORAGE_KEY = "sessionHistory";
+
+    /**
+     * Key used in storage to persist sessions by older SDK versions, as a string set.
+     */
+    private static final String LEGACY_STORAGE_KEY = "sessions";
+
+    /**
+     * Version of the binary storage format.
+     * The format is a version byte followed by records of session timestamp (long),
+     * session identifier presence (byte), session identifier bits (2 longs, only if present)
+     * and app launch timestamp (long), encoded in base 64.
+     */
+    private static final byte STORAGE_FORMAT_VERSION = 1;
 
     /**
      * Maximum number of sessions to persist the state.
@@ -31,7 +46,7 @@ public class SessionContext {
     private static final int STORAGE_MAX_SESSIONS = 10;
 
     /**
-     * Separator used for persistent storage format.
+     * Separator used for legacy persistent storage format.
      * We store session timestamp, then session uuid (can be empty for the special launch session),
      * then the app launch timestamp. Each field just is separated by this character.
      */
@@ -56,6 +71,11 @@ public class SessionContext {
      */
     private final long mAppLaunchTimestamp;
 
+    /**
+     * True if sessions were loaded from the legacy storage key, which has to be removed once migrated.
+     */
+    private boolean mLegacyStorageLoaded;
+
     /**
      * Init.
      */
@@ -64,27 +84,8 @@ public class SessionContext {
 
         /* Try loading past sessions from storage. */
         mAppLaunchTimestamp = System.currentTimeMillis();
-        Set<String> storedSessions = StorageHelper.PreferencesStorage.getStringSet(STORAGE_KEY);
-        if (storedSessions != null) {
-            for (String session : storedSessions) {
-                String[] split = session.split(STORAGE_KEY_VALUE_SEPARATOR, -1);
-                try {
-                    long time = Long.parseLong(split[0]);
-                    String rawSid = split[1];
-                    UUID sid = rawSid.isEmpty() ? null : UUID.fromString(rawSid);
-                    long appLaunchTimestamp;
-                    if (split.length > 2) {
-                        appLaunchTimestamp = Long.parseLong(split[2]);
-                    } else {
-
-                        /* Backward compatibility with older SDK storage. Use placeholder. */
-                        appLaunchTimestamp = time;
-                    }
-                    mSessions.put(time, new SessionInfo(time, sid, appLaunchTimestamp));
-                } catch (RuntimeException e) {
-                    AppCenterLog.warn(LOG_TAG, "Ignore invalid session in store: " + session, e);
-                }
-            }
+        if (!loadSessions()) {
+            loadLegacySessions();
         }
         AppCenterLog.debug(LOG_TAG, "Loaded stored sessions: " + mSessions);
 
@@ -109,11 +110,77 @@ public class SessionContext {
     }
 
     /**
-     * Record a new session in storage.
+     * Load sessions from the binary storage format.
+     *
+     * @return true if the sessions were stored in that format, even if invalid.
+     */
+    private boolean loadSessions() {
+        String storedSessions = StorageHelper.PreferencesStorage.getString(STORAGE_KEY);
+        if (storedSessions == null) {
+            return false;
+        }
+        try {
+            byte[] data = Base64.decode(storedSessions, Base64.NO_WRAP);
+            if (data == null) {
+                return false;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            byte version = buffer.get();
+            if (version != STORAGE_FORMAT_VERSION) {
+                AppCenterLog.warn(LOG_TAG, "Ignore stored sessions with unknown format version " + version);
+                return true;
+            }
+            while (buffer.hasRemaining()) {
+                long time = buffer.getLong();
+                UUID sid = buffer.get() != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+                long appLaunchTimestamp = buffer.getLong();
+                mSessions.put(time, new SessionInfo(time, sid, appLaunchTimestamp));
+            }
+        } catch (RuntimeException e) {
+            AppCenterLog.warn(LOG_TAG, "Ignore invalid sessions in store.", e);
+        }
+        return true;
+    }
+
+    /**
+     * Load sessions from the string set used by older SDK versions.
+     */
+    private void loadLegacySessions() {
+        Set<String> storedSessions = StorageHelper.PreferencesStorage.getStringSet(LEGACY_STORAGE_KEY);
+        if (storedSessions != null) {
+            mLegacyStorageLoaded = true;
+            for (String session : storedSessions) {
+                String[] split = session.split(STORAGE_KEY_VALUE_SEPARATOR, -1);
+                try {
+                    long time = Long.parseLong(split[0]);
+                    String rawSid = split[1];
+                    UUID sid = rawSid.isEmpty() ? null : UUID.fromString(rawSid);
+                    long appLaunchTimestamp;
+                    if (split.length > 2) {
+                        appLaunchTimestamp = Long.parseLong(split[2]);
+                    } else {
+
+                        /* Backward compatibility with older SDK storage. Use placeholder. */
+                        appLaunchTimestamp = time;
+                    }
+                    mSessions.put(time, new SessionInfo(time, sid, appLaunchTimestamp));
+                } catch (RuntimeException e) {
+                    AppCenterLog.warn(LOG_TAG, "Ignore invalid session in store: " + session, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a new session.
      * If maximum capacity of storage has been reached, the oldest session is discarded.
+     * <p>
+     * The session history is persisted right away so that a crash happening just after
+     * is correlated with this session on next launch.
      *
      * @param sessionId session identifier.
      */
+    @WorkerThread
     public synchronized void addSession(UUID sessionId) {
 
         /* Update session map. */
@@ -126,11 +193,38 @@ public class SessionContext {
         }
 
         /* Persist sessions. */
-        Set<String> sessionStorage = new LinkedHashSet<>();
-        for (SessionInfo session : mSessions.values()) {
-            sessionStorage.add(session.toString());
+        persistSessions();
+    }
+
+    /**
+     * Persist the current session history in the binary storage format.
+     */
+    private void persistSessions() {
+        if (mSessions.isEmpty()) {
+            StorageHelper.PreferencesStorage.remove(STORAGE_KEY);
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + mSessions.size() * (8 + 1 + 16 + 8));
+            buffer.put(STORAGE_FORMAT_VERSION);
+            for (SessionInfo session : mSessions.values()) {
+                buffer.putLong(session.getTimestamp());
+                UUID sid = session.getSessionId();
+                if (sid != null) {
+                    buffer.put((byte) 1);
+                    buffer.putLong(sid.getMostSignificantBits());
+                    buffer.putLong(sid.getLeastSignificantBits());
+                } else {
+                    buffer.put((byte) 0);
+                }
+                buffer.putLong(session.getAppLaunchTimestamp());
+            }
+            StorageHelper.PreferencesStorage.putString(STORAGE_KEY, Base64.encodeToString(buffer.array(), 0, buffer.position(), Base64.NO_WRAP));
+        }
+
+        /* Remove the legacy storage once migrated. */
+        if (mLegacyStorageLoaded) {
+            mLegacyStorageLoaded = false;
+            StorageHelper.PreferencesStorage.remove(LEGACY_STORAGE_KEY);
         }
-        StorageHelper.PreferencesStorage.putStringSet(STORAGE_KEY, sessionStorage);
     }
 
     /**
@@ -152,7 +246,9 @@ public class SessionContext {
      */
     public synchronized void clearSessions() {
         mSessions.clear();
+        mLegacyStorageLoaded = false;
         StorageHelper.PreferencesStorage.remove(STORAGE_KEY);
+        StorageHelper.PreferencesStorage.remove(LEGACY_STORAGE_KEY);
     }
 
     /**
@@ -37,6 +37,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
+import static android.util.Log.DEBUG;
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
 
 public class DefaultChannel implements Channel {
@@ -47,6 +48,12 @@ public class DefaultChannel implements Channel {
     @VisibleForTesting
     static final int CLEAR_BATCH_SIZE = 100;
 
+    /**
+     * Number of enqueued logs between two logs of the listener timings.
+     */
+    @VisibleForTesting
+    static final int LISTENER_TIMINGS_LOG_INTERVAL = 1000;
+
     /**
      * Application context.
      */
@@ -72,6 +79,16 @@ public class DefaultChannel implements Channel {
      */
     private final Collection<Listener> mListeners;
 
+    /**
+     * Listener callbacks called for every enqueued log, compiled from {@link #mListeners}.
+     */
+    private final ListenerPipeline mListenerPipeline;
+
+    /**
+     * Number of logs that went through the listener pipeline since the last timings log.
+     */
+    private int mLogsSinceListenerTimings;
+
     /**
      * The Persistence instance used to store events in the local storage.
      */
@@ -142,6 +159,7 @@ public class DefaultChannel implements Channel {
         mInstallId = IdHelper.getInstallId();
         mGroupStates = new HashMap<>();
         mListeners = new LinkedHashSet<>();
+        mListenerPipeline = new ListenerPipeline();
         mPersistence = persistence;
         mIngestion = ingestion;
         mIngestions = new HashSet<>();
@@ -638,9 +656,7 @@ public class DefaultChannel implements Channel {
         }
 
         /* Call listeners so that they can decorate the log. */
-        for (Listener listener : mListeners) {
-            listener.onPreparingLog(log, groupName);
-        }
+        mListenerPipeline.onPreparingLog(log, groupName);
 
         /* Attach device properties to every log if its not already attached by a service. */
         if (log.getDevice() == null) {
@@ -665,15 +681,11 @@ public class DefaultChannel implements Channel {
         }
 
         /* Notify listeners that log is prepared and is in a final state. */
-        for (Listener listener : mListeners) {
-            listener.onPreparedLog(log, groupName);
-        }
+        mListenerPipeline.onPreparedLog(log, groupName);
 
         /* Call listeners so that they can filter the log. */
-        boolean filteredOut = false;
-        for (Listener listener : mListeners) {
-            filteredOut = filteredOut || listener.shouldFilter(log);
-        }
+        boolean filteredOut = mListenerPipeline.shouldFilter(log);
+        logListenerTimingsIfNeeded();
 
         /* If filtered out, nothing more to do. */
         if (filteredOut) {
@@ -734,19 +746,38 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Log the time spent in listeners periodically, if debug logs are enabled.
+     */
+    private void logListenerTimingsIfNeeded() {
+        if (++mLogsSinceListenerTimings >= LISTENER_TIMINGS_LOG_INTERVAL) {
+            mLogsSinceListenerTimings = 0;
+            if (AppCenterLog.getLogLevel() <= DEBUG) {
+                AppCenterLog.debug(LOG_TAG, mListenerPipeline.getTimingsSummary());
+            }
+        }
+    }
+
     @VisibleForTesting
     GroupState getGroupState(String groupName) {
         return mGroupStates.get(groupName);
     }
 
+    @VisibleForTesting
+    ListenerPipeline getListenerPipeline() {
+        return mListenerPipeline;
+    }
+
     @Override
     public synchronized void addListener(Listener listener) {
         mListeners.add(listener);
+        mListenerPipeline.compile(mListeners);
     }
 
     @Override
     public synchronized void removeListener(Listener listener) {
         mListeners.remove(listener);
+        mListenerPipeline.compile(mListeners);
     }
 
     @Override
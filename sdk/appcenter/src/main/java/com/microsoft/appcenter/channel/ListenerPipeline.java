@@ -0,0 +1,274 @@
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Ordered pipeline of the channel listener callbacks called for every enqueued log.
+ * <p>
+ * The pipeline is compiled when listeners change: a listener extending {@link AbstractChannelListener}
+ * is only part of the stages it overrides, so empty callbacks are not called.
+ * Each stage of each listener counts calls and time spent to find which listener dominates enqueue latency.
+ * A listener can enqueue another log from a callback: the time spent in the callbacks of that nested log
+ * is counted in their own stages only, not in the stage that enqueued it.
+ * <p>
+ * This class is not thread safe, the channel calls it while holding its lock.
+ */
+class ListenerPipeline {
+
+    /**
+     * Stage name for {@link Channel.Listener#onPreparingLog(Log, String)}.
+     */
+    @VisibleForTesting
+    static final String STAGE_PREPARING_LOG = "onPreparingLog";
+
+    /**
+     * Stage name for {@link Channel.Listener#onPreparedLog(Log, String)}.
+     */
+    @VisibleForTesting
+    static final String STAGE_PREPARED_LOG = "onPreparedLog";
+
+    /**
+     * Stage name for {@link Channel.Listener#shouldFilter(Log)}.
+     */
+    @VisibleForTesting
+    static final String STAGE_SHOULD_FILTER = "shouldFilter";
+
+    /**
+     * Listeners implementing {@link Channel.Listener#onPreparingLog(Log, String)}, in order.
+     */
+    private Stage[] mPreparingLogStages = new Stage[0];
+
+    /**
+     * Listeners implementing {@link Channel.Listener#onPreparedLog(Log, String)}, in order.
+     */
+    private Stage[] mPreparedLogStages = new Stage[0];
+
+    /**
+     * Listeners implementing {@link Channel.Listener#shouldFilter(Log)}, in order.
+     */
+    private Stage[] mShouldFilterStages = new Stage[0];
+
+    /**
+     * Time spent in stages called from the current stage call, in nanoseconds.
+     */
+    private long mNestedNanos;
+
+    /**
+     * Check if a listener overrides a callback of {@link AbstractChannelListener}.
+     *
+     * @param listener       listener.
+     * @param methodName     callback name.
+     * @param parameterTypes callback parameter types.
+     * @return true if the listener implements the callback with its own code.
+     */
+    private static boolean implementsStage(Channel.Listener listener, String methodName, Class<?>... parameterTypes) {
+        if (!(listener instanceof AbstractChannelListener)) {
+            return true;
+        }
+        try {
+            return listener.getClass().getMethod(methodName, parameterTypes).getDeclaringClass() != AbstractChannelListener.class;
+        } catch (NoSuchMethodException e) {
+
+            /* Can happen if the callbacks were renamed by code shrinking, call the listener anyway. */
+            return true;
+        }
+    }
+
+    /**
+     * Rebuild stages of a callback, keeping the counters of the listeners that were already in the pipeline.
+     */
+    private static Stage[] compileStages(Stage[] previousStages, Collection<Channel.Listener> listeners, String methodName, Class<?>... parameterTypes) {
+        List<Stage> stages = new ArrayList<>(listeners.size());
+        for (Channel.Listener listener : listeners) {
+            if (implementsStage(listener, methodName, parameterTypes)) {
+                Stage stage = null;
+                for (Stage previousStage : previousStages) {
+                    if (previousStage.listener == listener) {
+                        stage = previousStage;
+                        break;
+                    }
+                }
+                stages.add(stage != null ? stage : new Stage(listener, methodName));
+            }
+        }
+        return stages.toArray(new Stage[stages.size()]);
+    }
+
+    /**
+     * Compile the pipeline for the current listeners, to call after any change to the listeners.
+     *
+     * @param listeners listeners, in call order.
+     */
+    void compile(Collection<Channel.Listener> listeners) {
+        mPreparingLogStages = compileStages(mPreparingLogStages, listeners, STAGE_PREPARING_LOG, Log.class, String.class);
+        mPreparedLogStages = compileStages(mPreparedLogStages, listeners, STAGE_PREPARED_LOG, Log.class, String.class);
+        mShouldFilterStages = compileStages(mShouldFilterStages, listeners, STAGE_SHOULD_FILTER, Log.class);
+    }
+
+    /**
+     * Call {@link Channel.Listener#onPreparingLog(Log, String)} on listeners.
+     *
+     * @param log       log.
+     * @param groupName group name.
+     */
+    void onPreparingLog(@NonNull Log log, @NonNull String groupName) {
+        for (Stage stage : mPreparingLogStages) {
+            long outerNestedNanos = mNestedNanos;
+            long startTime = startStage();
+            stage.listener.onPreparingLog(log, groupName);
+            endStage(stage, startTime, outerNestedNanos);
+        }
+    }
+
+    /**
+     * Call {@link Channel.Listener#onPreparedLog(Log, String)} on listeners.
+     *
+     * @param log       log.
+     * @param groupName group name.
+     */
+    void onPreparedLog(@NonNull Log log, @NonNull String groupName) {
+        for (Stage stage : mPreparedLogStages) {
+            long outerNestedNanos = mNestedNanos;
+            long startTime = startStage();
+            stage.listener.onPreparedLog(log, groupName);
+            endStage(stage, startTime, outerNestedNanos);
+        }
+    }
+
+    /**
+     * Call {@link Channel.Listener#shouldFilter(Log)} on listeners until one filters the log out.
+     *
+     * @param log log.
+     * @return true if the log is filtered out.
+     */
+    boolean shouldFilter(@NonNull Log log) {
+        for (Stage stage : mShouldFilterStages) {
+            long outerNestedNanos = mNestedNanos;
+            long startTime = startStage();
+            boolean filteredOut = stage.listener.shouldFilter(log);
+            endStage(stage, startTime, outerNestedNanos);
+            if (filteredOut) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start timing a stage call.
+     *
+     * @return start time.
+     */
+    private long startStage() {
+        mNestedNanos = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Record a stage call without the time spent in the stages it called, and count the whole call
+     * as nested time of the stage it was called from, if any.
+     *
+     * @param stage            stage.
+     * @param startTime        start time.
+     * @param outerNestedNanos nested time of the outer stage call before this call.
+     */
+    private void endStage(Stage stage, long startTime, long outerNestedNanos) {
+        long duration = System.nanoTime() - startTime;
+        stage.record(duration - mNestedNanos);
+        mNestedNanos = outerNestedNanos + duration;
+    }
+
+    /**
+     * Get all stages in call order.
+     *
+     * @return stages.
+     */
+    List<Stage> getStages() {
+        List<Stage> stages = new ArrayList<>(mPreparingLogStages.length + mPreparedLogStages.length + mShouldFilterStages.length);
+        addStages(stages, mPreparingLogStages);
+        addStages(stages, mPreparedLogStages);
+        addStages(stages, mShouldFilterStages);
+        return stages;
+    }
+
+    private static void addStages(List<Stage> stages, Stage[] stageArray) {
+        for (Stage stage : stageArray) {
+            stages.add(stage);
+        }
+    }
+
+    /**
+     * Get a summary of the time spent in each stage, slowest stages first.
+     *
+     * @return summary, one stage per line.
+     */
+    String getTimingsSummary() {
+        List<Stage> stages = getStages();
+        StringBuilder summary = new StringBuilder("Channel listener timings:");
+        while (!stages.isEmpty()) {
+            Stage slowestStage = stages.get(0);
+            for (Stage stage : stages) {
+                if (stage.totalNanos > slowestStage.totalNanos) {
+                    slowestStage = stage;
+                }
+            }
+            stages.remove(slowestStage);
+            summary.append('\n').append(slowestStage);
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Counters of a callback of a listener.
+     */
+    static class Stage {
+
+        /**
+         * Listener.
+         */
+        final Channel.Listener listener;
+
+        /**
+         * Callback name.
+         */
+        final String name;
+
+        /**
+         * Number of calls.
+         */
+        long callCount;
+
+        /**
+         * Total time spent in calls, in nanoseconds.
+         */
+        long totalNanos;
+
+        /**
+         * Longest call, in nanoseconds.
+         */
+        long maxNanos;
+
+        Stage(Channel.Listener listener, String name) {
+            this.listener = listener;
+            this.name = name;
+        }
+
+        void record(long duration) {
+            callCount++;
+            totalNanos += duration;
+            maxNanos = Math.max(maxNanos, duration);
+        }
+
+        @Override
+        public String toString() {
+            return listener.getClass().getName() + "." + name + " calls=" + callCount + " totalMs=" + totalNanos / 1000000 + " maxUs=" + maxNanos / 1000;
+        }
+    }
+}
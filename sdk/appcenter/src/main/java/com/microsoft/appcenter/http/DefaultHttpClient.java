@@ -188,13 +188,21 @@ public class DefaultHttpClient implements HttpClient {
             String payload = null;
             byte[] binaryPayload = null;
             boolean shouldCompress = false;
+            boolean shouldStream = false;
             boolean isPost = method.equals(METHOD_POST);
             if (isPost && callTemplate != null) {
-
-                /* Get bytes, check if large enough to compress. */
                 payload = callTemplate.buildRequestBody();
-                binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = binaryPayload.length >= MIN_GZIP_LENGTH;
+                shouldStream = callTemplate instanceof StreamingCallTemplate && ((StreamingCallTemplate) callTemplate).shouldStreamRequestBody(payload);
+
+                /* A streamed payload is large, always compress it. */
+                if (shouldStream) {
+                    shouldCompress = true;
+                } else {
+
+                    /* Get bytes, check if large enough to compress. */
+                    binaryPayload = payload.getBytes(CHARSET_NAME);
+                    shouldCompress = binaryPayload.length >= MIN_GZIP_LENGTH;
+                }
 
                 /* If no content type specified, assume json. */
                 if (!headers.containsKey(CONTENT_TYPE_KEY)) {
@@ -218,34 +226,47 @@ public class DefaultHttpClient implements HttpClient {
             }
 
             /* Send payload. */
-            if (binaryPayload != null) {
+            if (payload != null) {
 
-                /* Log payload. */
+                /* Log payload, streamed content is not logged. */
                 if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
-                    if (payload.length() < MAX_PRETTIFY_LOG_LENGTH) {
-                        payload = TOKEN_REGEX_URL_ENCODED.matcher(payload).replaceAll("token=***");
+                    String requestPayload = payload;
+                    if (requestPayload.length() < MAX_PRETTIFY_LOG_LENGTH) {
+                        requestPayload = TOKEN_REGEX_URL_ENCODED.matcher(requestPayload).replaceAll("token=***");
                         if (CONTENT_TYPE_VALUE.equals(headers.get(CONTENT_TYPE_KEY))) {
-                            payload = new JSONObject(payload).toString(2);
+                            requestPayload = new JSONObject(requestPayload).toString(2);
                         }
                     }
-                    AppCenterLog.verbose(LOG_TAG, payload);
+                    AppCenterLog.verbose(LOG_TAG, requestPayload);
                 }
+                urlConnection.setDoOutput(true);
 
-                /* Compress payload if large enough to be worth it. */
-                if (shouldCompress) {
-                    ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
-                    GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-                    gzipStream.write(binaryPayload);
-                    gzipStream.close();
-                    binaryPayload = gzipBuffer.toByteArray();
-                }
+                /* Send streamed payload by chunks as its length is not known in advance. */
+                if (shouldStream) {
+                    urlConnection.setChunkedStreamingMode(0);
+                    OutputStream out = new GZIPOutputStream(urlConnection.getOutputStream());
+                    try {
+                        ((StreamingCallTemplate) callTemplate).writeRequestBody(payload, out);
+                    } finally {
+                        out.close();
+                    }
+                } else {
+
+                    /* Compress payload if large enough to be worth it. */
+                    if (shouldCompress) {
+                        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
+                        GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
+                        gzipStream.write(binaryPayload);
+                        gzipStream.close();
+                        binaryPayload = gzipBuffer.toByteArray();
+                    }
 
-                /* Send payload on the wire. */
-                urlConnection.setDoOutput(true);
-                urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
-                OutputStream out = urlConnection.getOutputStream();
-                out.write(binaryPayload);
-                out.close();
+                    /* Send payload on the wire. */
+                    urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                    OutputStream out = urlConnection.getOutputStream();
+                    out.write(binaryPayload);
+                    out.close();
+                }
             }
 
             /* Read response. */
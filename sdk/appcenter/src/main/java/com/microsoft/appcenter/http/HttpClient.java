@@ -3,6 +3,8 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.Map;
 
@@ -45,6 +47,29 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call callbacks for a request body that can be too large to be sent from memory.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Called after {@link #buildRequestBody()} to know how to send the request body.
+         *
+         * @param requestBody request body.
+         * @return true to send the request body with {@link #writeRequestBody(String, OutputStream)}.
+         */
+        boolean shouldStreamRequestBody(String requestBody);
+
+        /**
+         * Called to write a request body that has to be streamed.
+         *
+         * @param requestBody  request body.
+         * @param outputStream stream to write to, compressed.
+         * @throws IOException if the request body cannot be written.
+         */
+        void writeRequestBody(String requestBody, OutputStream outputStream) throws IOException;
+    }
+
     /**
      * Make this client active again after closing.
      */
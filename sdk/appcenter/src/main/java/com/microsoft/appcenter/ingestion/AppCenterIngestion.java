@@ -12,6 +12,7 @@ import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.ingestion.models.json.Base64FileReferences;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
@@ -19,6 +20,7 @@ import com.microsoft.appcenter.utils.NetworkStateHelper;
 import org.json.JSONException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -116,7 +118,7 @@ public class AppCenterIngestion implements Ingestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.StreamingCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
@@ -134,6 +136,18 @@ public class AppCenterIngestion implements Ingestion {
             return mLogSerializer.serializeContainer(mLogContainer);
         }
 
+        @Override
+        public boolean shouldStreamRequestBody(String requestBody) {
+
+            /* Stream payloads referencing files, like error attachments, to encode them on the fly. */
+            return Base64FileReferences.containsReferences(requestBody);
+        }
+
+        @Override
+        public void writeRequestBody(String requestBody, OutputStream outputStream) throws IOException {
+            Base64FileReferences.write(requestBody, outputStream);
+        }
+
         @Override
         public void onBeforeCalling(URL url, Map<String, String> headers) {
             if (AppCenterLog.getLogLevel() <= VERBOSE) {
@@ -21,7 +21,6 @@ import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.TicketCache;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.URL;
@@ -133,28 +132,19 @@ public class OneCollectorIngestion implements Ingestion {
         }
         headers.put(API_KEY, apiKey.toString());
 
-        /* Gather tokens from logs. */
-        JSONObject tickets = new JSONObject();
+        /* Gather ticket keys from logs, the header for these keys is prepared by the cache. */
+        Set<String> ticketKeys = new LinkedHashSet<>();
         for (Log log : logContainer.getLogs()) {
-            List<String> ticketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
-            if (ticketKeys != null) {
-                for (String ticketKey : ticketKeys) {
-                    String token = TicketCache.getTicket(ticketKey);
-                    if (token != null) {
-                        try {
-                            tickets.put(ticketKey, token);
-                        } catch (JSONException e) {
-                            AppCenterLog.error(LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
-                            break;
-                        }
-                    }
-                }
+            List<String> logTicketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
+            if (logTicketKeys != null) {
+                ticketKeys.addAll(logTicketKeys);
             }
         }
+        String tickets = TicketCache.getTicketsHeader(ticketKeys);
 
         /* Pass ticket header if we have at least 1 token. */
-        if (tickets.length() > 0) {
-            headers.put(TICKETS, tickets.toString());
+        if (tickets != null) {
+            headers.put(TICKETS, tickets);
 
             /* Enable 400 errors on invalid tickets on debug builds. */
             if (Constants.APPLICATION_DEBUGGABLE) {
@@ -177,11 +177,7 @@ public abstract class AbstractLog implements Log {
         writer.key(TIMESTAMP).value(JSONDateUtils.toString(getTimestamp()));
         JSONUtils.write(writer, SID, getSid());
         JSONUtils.write(writer, DISTRIBUTION_GROUP_ID, getDistributionGroupId());
-        if (getDevice() != null) {
-            writer.key(DEVICE).object();
-            getDevice().write(writer);
-            writer.endObject();
-        }
+        JSONUtils.writeCachedObject(writer, DEVICE, getDevice());
     }
 
     @Override
@@ -0,0 +1,18 @@
+package com.microsoft.appcenter.ingestion.models;
+
+import org.json.JSONException;
+
+/**
+ * Model that keeps its JSON serialization in memory until one of its properties changes.
+ */
+public interface CachedModel extends Model {
+
+    /**
+     * Get the JSON object serialization of this model.
+     * The result is computed once then reused until a setter is called.
+     *
+     * @return JSON object as a string.
+     * @throws JSONException if serialization fails.
+     */
+    String getCachedJson() throws JSONException;
+}
@@ -142,6 +142,7 @@ public class Device extends WrapperSdk {
      */
     public void setSdkName(String sdkName) {
         this.sdkName = sdkName;
+        invalidateCachedJson();
     }
 
     /**
@@ -161,6 +162,7 @@ public class Device extends WrapperSdk {
      */
     public void setSdkVersion(String sdkVersion) {
         this.sdkVersion = sdkVersion;
+        invalidateCachedJson();
     }
 
     /**
@@ -179,6 +181,7 @@ public class Device extends WrapperSdk {
      */
     public void setModel(String model) {
         this.model = model;
+        invalidateCachedJson();
     }
 
     /**
@@ -197,6 +200,7 @@ public class Device extends WrapperSdk {
      */
     public void setOemName(String oemName) {
         this.oemName = oemName;
+        invalidateCachedJson();
     }
 
     /**
@@ -215,6 +219,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsName(String osName) {
         this.osName = osName;
+        invalidateCachedJson();
     }
 
     /**
@@ -233,6 +238,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsVersion(String osVersion) {
         this.osVersion = osVersion;
+        invalidateCachedJson();
     }
 
     /**
@@ -251,6 +257,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsBuild(String osBuild) {
         this.osBuild = osBuild;
+        invalidateCachedJson();
     }
 
     /**
@@ -269,6 +276,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsApiLevel(Integer osApiLevel) {
         this.osApiLevel = osApiLevel;
+        invalidateCachedJson();
     }
 
     /**
@@ -287,6 +295,7 @@ public class Device extends WrapperSdk {
      */
     public void setLocale(String locale) {
         this.locale = locale;
+        invalidateCachedJson();
     }
 
     /**
@@ -305,6 +314,7 @@ public class Device extends WrapperSdk {
      */
     public void setTimeZoneOffset(Integer timeZoneOffset) {
         this.timeZoneOffset = timeZoneOffset;
+        invalidateCachedJson();
     }
 
     /**
@@ -323,6 +333,7 @@ public class Device extends WrapperSdk {
      */
     public void setScreenSize(String screenSize) {
         this.screenSize = screenSize;
+        invalidateCachedJson();
     }
 
     /**
@@ -341,6 +352,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppVersion(String appVersion) {
         this.appVersion = appVersion;
+        invalidateCachedJson();
     }
 
     /**
@@ -359,6 +371,7 @@ public class Device extends WrapperSdk {
      */
     public void setCarrierName(String carrierName) {
         this.carrierName = carrierName;
+        invalidateCachedJson();
     }
 
     /**
@@ -377,6 +390,7 @@ public class Device extends WrapperSdk {
      */
     public void setCarrierCountry(String carrierCountry) {
         this.carrierCountry = carrierCountry;
+        invalidateCachedJson();
     }
 
     /**
@@ -395,6 +409,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppBuild(String appBuild) {
         this.appBuild = appBuild;
+        invalidateCachedJson();
     }
 
     /**
@@ -413,6 +428,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppNamespace(String appNamespace) {
         this.appNamespace = appNamespace;
+        invalidateCachedJson();
     }
 
     @Override
@@ -6,7 +6,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-public class WrapperSdk implements Model {
+public class WrapperSdk implements CachedModel {
 
     private static final String WRAPPER_SDK_VERSION = "wrapperSdkVersion";
 
@@ -55,6 +55,11 @@ public class WrapperSdk implements Model {
      */
     private String liveUpdatePackageHash;
 
+    /**
+     * Serialized form of this object, reset when any property changes.
+     */
+    private String cachedJson;
+
     /**
      * Get the wrapperSdkVersion value.
      *
@@ -71,6 +76,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperSdkVersion(String wrapperSdkVersion) {
         this.wrapperSdkVersion = wrapperSdkVersion;
+        invalidateCachedJson();
     }
 
     /**
@@ -89,6 +95,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperSdkName(String wrapperSdkName) {
         this.wrapperSdkName = wrapperSdkName;
+        invalidateCachedJson();
     }
 
     /**
@@ -107,6 +114,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperRuntimeVersion(String wrapperRuntimeVersion) {
         this.wrapperRuntimeVersion = wrapperRuntimeVersion;
+        invalidateCachedJson();
     }
 
     /**
@@ -125,6 +133,7 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdateReleaseLabel(String liveUpdateReleaseLabel) {
         this.liveUpdateReleaseLabel = liveUpdateReleaseLabel;
+        invalidateCachedJson();
     }
 
     /**
@@ -143,6 +152,7 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdateDeploymentKey(String liveUpdateDeploymentKey) {
         this.liveUpdateDeploymentKey = liveUpdateDeploymentKey;
+        invalidateCachedJson();
     }
 
     /**
@@ -161,6 +171,24 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdatePackageHash(String liveUpdatePackageHash) {
         this.liveUpdatePackageHash = liveUpdatePackageHash;
+        invalidateCachedJson();
+    }
+
+    @Override
+    public String getCachedJson() throws JSONException {
+        String json = cachedJson;
+        if (json == null) {
+            json = JSONUtils.toJsonObject(this);
+            cachedJson = json;
+        }
+        return json;
+    }
+
+    /**
+     * Reset the cached serialization, must be called when any property changes.
+     */
+    void invalidateCachedJson() {
+        cachedJson = null;
     }
 
     @Override
@@ -0,0 +1,173 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Base64;
+
+import com.microsoft.appcenter.Constants;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * References to files used as JSON string values, replaced by the base64 encoded content of the file
+ * only when the payload is written to the network.
+ * <p>
+ * Logs with large binary content are stored and serialized with a short reference,
+ * the file is then encoded chunk by chunk while uploading and never fully loaded in memory.
+ * Only files of the SDK directory returned by {@link #getDirectory()} can be referenced.
+ */
+public class Base64FileReferences {
+
+    /**
+     * Prefix of a string value referencing a file.
+     */
+    @VisibleForTesting
+    static final String REFERENCE_PREFIX = "appcenter-base64-file:";
+
+    /**
+     * Referenced files directory under the files path.
+     */
+    private static final String DIRECTORY = "/appcenter/base64_files";
+
+    /**
+     * Size of the file chunks to encode. It's a multiple of 3 so that only the last chunk can have base64 padding.
+     */
+    @VisibleForTesting
+    static final int CHUNK_SIZE = 3 * 8 * 1024;
+
+    /**
+     * Allowed referenced file names, without path separators.
+     */
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    /**
+     * Character encoding.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    /**
+     * Get the directory of the files that can be referenced.
+     *
+     * @return directory, may not exist yet.
+     */
+    @NonNull
+    public static File getDirectory() {
+        return new File(Constants.FILES_PATH + DIRECTORY);
+    }
+
+    /**
+     * Get the reference to use as a JSON string value for a file of {@link #getDirectory()}.
+     *
+     * @param file file.
+     * @return reference.
+     */
+    @NonNull
+    public static String getReference(@NonNull File file) {
+        return REFERENCE_PREFIX + file.getName();
+    }
+
+    /**
+     * Get the file referenced by a JSON string value.
+     *
+     * @param value string value.
+     * @return file or null if the value is not a reference.
+     */
+    @Nullable
+    public static File getFile(String value) {
+        if (value != null && value.startsWith(REFERENCE_PREFIX)) {
+            String fileName = value.substring(REFERENCE_PREFIX.length());
+            if (FILE_NAME_PATTERN.matcher(fileName).matches()) {
+                return new File(getDirectory(), fileName);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if a JSON payload contains file references.
+     *
+     * @param json JSON payload.
+     * @return true if {@link #write(String, OutputStream)} must be used to send the payload.
+     */
+    public static boolean containsReferences(@NonNull String json) {
+        return json.contains("\"" + REFERENCE_PREFIX);
+    }
+
+    /**
+     * Write a JSON payload as UTF-8, replacing file references by the base64 encoded content of the files.
+     * A missing file is written as empty content.
+     *
+     * @param json         JSON payload.
+     * @param outputStream stream to write to.
+     * @throws IOException if a file cannot be read or the stream cannot be written.
+     */
+    public static void write(@NonNull String json, @NonNull OutputStream outputStream) throws IOException {
+        String quotedPrefix = "\"" + REFERENCE_PREFIX;
+        int start = 0;
+        int index;
+        while ((index = json.indexOf(quotedPrefix, start)) >= 0) {
+            int valueStart = index + 1;
+            int valueEnd = json.indexOf('"', valueStart);
+            if (valueEnd < 0) {
+                break;
+            }
+            File file = getFile(json.substring(valueStart, valueEnd));
+            if (file == null) {
+                outputStream.write(json.substring(start, valueEnd).getBytes(CHARSET_NAME));
+            } else {
+                outputStream.write(json.substring(start, valueStart).getBytes(CHARSET_NAME));
+                writeBase64(file, outputStream);
+            }
+            start = valueEnd;
+        }
+        outputStream.write(json.substring(start).getBytes(CHARSET_NAME));
+    }
+
+    /**
+     * Encode a file chunk by chunk.
+     */
+    private static void writeBase64(File file, OutputStream outputStream) throws IOException {
+        InputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            AppCenterLog.error(LOG_TAG, "Referenced file is missing: " + file.getName());
+            return;
+        }
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int length;
+            while ((length = read(inputStream, buffer)) > 0) {
+                outputStream.write(Base64.encode(buffer, 0, length, Base64.NO_WRAP));
+            }
+        } finally {
+
+            //noinspection ThrowFromFinallyBlock
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Fill the buffer unless the end of the stream is reached, so that chunks are padded only at the end.
+     */
+    private static int read(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        int count;
+        while (length < buffer.length && (count = inputStream.read(buffer, length, buffer.length - length)) > 0) {
+            length += count;
+        }
+        return length;
+    }
+}
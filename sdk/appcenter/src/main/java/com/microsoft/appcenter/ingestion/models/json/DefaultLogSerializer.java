@@ -19,20 +19,19 @@ import java.util.Map;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 
+/**
+ * Log serializer using the log factories registered for each log type.
+ * <p>
+ * Once log factories are registered, a serializer can be used concurrently from several threads:
+ * Crashes parses pending error logs in background while its other logs are serialized on the App Center thread.
+ * {@link #addLogFactory(String, LogFactory)} must not be called concurrently with other methods.
+ */
 public class DefaultLogSerializer implements LogSerializer {
 
     private static final String LOGS = "logs";
 
     private final Map<String, LogFactory> mLogFactories = new HashMap<>();
 
-    @NonNull
-    private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
-        writer.object();
-        log.write(writer);
-        writer.endObject();
-        return writer;
-    }
-
     @NonNull
     private Log readLog(JSONObject object, String type) throws JSONException {
         if (type == null) {
@@ -50,7 +49,11 @@ public class DefaultLogSerializer implements LogSerializer {
     @NonNull
     @Override
     public String serializeLog(@NonNull Log log) throws JSONException {
-        return writeLog(new JSONStringer(), log).toString();
+        JSONStringer writer = new LogJSONStringer();
+        writer.object();
+        log.write(writer);
+        writer.endObject();
+        return writer.toString();
     }
 
     @NonNull
@@ -68,18 +71,19 @@ public class DefaultLogSerializer implements LogSerializer {
     @Override
     public String serializeContainer(@NonNull LogContainer logContainer) throws JSONException {
 
-        /* Init JSON serializer. */
-        JSONStringer writer = new JSONStringer();
-
-        /* Start writing JSON. */
-        writer.object();
-        writer.key(LOGS).array();
+        /* Serialize logs one by one so that cached properties can be spliced in each log. */
+        StringBuilder builder = new StringBuilder();
+        builder.append('{').append(JSONObject.quote(LOGS)).append(":[");
+        boolean first = true;
         for (Log log : logContainer.getLogs()) {
-            writeLog(writer, log);
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append(serializeLog(log));
+            first = false;
         }
-        writer.endArray();
-        writer.endObject();
-        return writer.toString();
+        builder.append("]}");
+        return builder.toString();
     }
 
     @NonNull
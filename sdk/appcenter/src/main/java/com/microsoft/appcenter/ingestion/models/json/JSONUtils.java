@@ -2,6 +2,7 @@ package com.microsoft.appcenter.ingestion.models.json;
 
 import android.support.annotation.VisibleForTesting;
 
+import com.microsoft.appcenter.ingestion.models.CachedModel;
 import com.microsoft.appcenter.ingestion.models.Model;
 
 import org.json.JSONArray;
@@ -120,4 +121,40 @@ public final class JSONUtils {
             writer.endArray();
         }
     }
+
+    /**
+     * Serialize a model as a standalone JSON object.
+     *
+     * @param model model to serialize.
+     * @return JSON object as a string.
+     * @throws JSONException if serialization fails.
+     */
+    public static String toJsonObject(Model model) throws JSONException {
+        JSONStringer writer = new JSONStringer();
+        writer.object();
+        model.write(writer);
+        writer.endObject();
+        return writer.toString();
+    }
+
+    /**
+     * Write a top level property of a log whose value is a cached model.
+     * When writing with a {@link LogJSONStringer}, the cached serialization is spliced as is.
+     *
+     * @param writer writer of the log.
+     * @param key    property name.
+     * @param value  model to write, skipped if null.
+     * @throws JSONException if serialization fails.
+     */
+    public static void writeCachedObject(JSONStringer writer, String key, CachedModel value) throws JSONException {
+        if (value != null) {
+            if (writer instanceof LogJSONStringer) {
+                ((LogJSONStringer) writer).splice(key, value.getCachedJson());
+            } else {
+                writer.key(key).object();
+                value.write(writer);
+                writer.endObject();
+            }
+        }
+    }
 }
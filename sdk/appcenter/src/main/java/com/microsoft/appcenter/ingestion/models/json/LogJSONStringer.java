@@ -0,0 +1,42 @@
+package com.microsoft.appcenter.ingestion.models.json;
+
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+/**
+ * JSON writer for a single log object that can splice already serialized top level properties
+ * (like the device) instead of writing them field by field.
+ */
+public class LogJSONStringer extends JSONStringer {
+
+    /**
+     * Spliced properties, appended to the log object when converted to string.
+     */
+    private final StringBuilder mSplicedProperties = new StringBuilder();
+
+    /**
+     * Add a top level property of the log from its serialized JSON value.
+     *
+     * @param key  property name.
+     * @param json serialized JSON value.
+     */
+    public void splice(String key, String json) {
+        mSplicedProperties.append(',').append(JSONObject.quote(key)).append(':').append(json);
+    }
+
+    @Override
+    public String toString() {
+        String json = super.toString();
+        if (json == null || mSplicedProperties.length() == 0) {
+            return json;
+        }
+
+        /* Insert spliced properties before the closing brace of the log object. */
+        StringBuilder builder = new StringBuilder(json.length() + mSplicedProperties.length());
+        int end = json.length() - 1;
+        builder.append(json, 0, end);
+        builder.append(mSplicedProperties, end == 1 ? 1 : 0, mSplicedProperties.length());
+        builder.append('}');
+        return builder.toString();
+    }
+}
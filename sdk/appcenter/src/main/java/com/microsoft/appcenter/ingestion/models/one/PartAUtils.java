@@ -16,6 +16,11 @@ public class PartAUtils {
      */
     private static final Pattern NAME_REGEX = Pattern.compile("^[a-zA-Z0-9]((\\.(?!(\\.|$)))|[_a-zA-Z0-9]){3,99}$");
 
+    /**
+     * Part A values computed from the last device properties, they usually don't change in a process.
+     */
+    private static DeviceValues sDeviceValues;
+
     /**
      * Get the project identifier from the full target token (aka ingestion key or apiKey).
      *
@@ -52,8 +57,9 @@ public class PartAUtils {
      */
     public static void addPartAFromLog(Log src, CommonSchemaLog dest, String transmissionTarget) {
 
-        /* TODO: We should cache the extension. */
+        /* Device derived values are computed only when device properties change. */
         Device device = src.getDevice();
+        DeviceValues deviceValues = getDeviceValues(device);
 
         /* Add top level part A fields. */
         dest.setVer("3.0");
@@ -76,18 +82,18 @@ public class PartAUtils {
 
         /* Add user extension. */
         dest.getExt().setUser(new UserExtension());
-        dest.getExt().getUser().setLocale(device.getLocale().replace("_", "-"));
+        dest.getExt().getUser().setLocale(deviceValues.mLocale);
 
         /* Add OS extension. */
         dest.getExt().setOs(new OsExtension());
         dest.getExt().getOs().setName(device.getOsName());
-        dest.getExt().getOs().setVer(device.getOsVersion() + "-" + device.getOsBuild() + "-" + device.getOsApiLevel());
+        dest.getExt().getOs().setVer(deviceValues.mOsVer);
 
         /* TODO: Add app locale. */
         /* Add app extension. */
         dest.getExt().setApp(new AppExtension());
         dest.getExt().getApp().setVer(device.getAppVersion());
-        dest.getExt().getApp().setId("a:" + device.getAppNamespace());
+        dest.getExt().getApp().setId(deviceValues.mAppId);
 
         /* TODO: Add network type. */
         /* Add net extension. */
@@ -96,17 +102,140 @@ public class PartAUtils {
 
         /* Add SDK extension. */
         dest.getExt().setSdk(new SdkExtension());
-        dest.getExt().getSdk().setLibVer(device.getSdkName() + "-" + device.getSdkVersion());
+        dest.getExt().getSdk().setLibVer(deviceValues.mLibVer);
 
         /* Add loc extension. */
         dest.getExt().setLoc(new LocExtension());
-        String timezoneOffset = String.format(Locale.US, "%s%02d:%02d",
-                device.getTimeZoneOffset() >= 0 ? "+" : "-",
-                Math.abs(device.getTimeZoneOffset() / 60),
-                Math.abs(device.getTimeZoneOffset() % 60));
-        dest.getExt().getLoc().setTz(timezoneOffset);
+        dest.getExt().getLoc().setTz(deviceValues.mTimezoneOffset);
 
         /* Add device extension. */
         dest.getExt().setDevice(new DeviceExtension());
     }
+
+    /**
+     * Get Part A values for a device, reusing the last computed ones if the properties they are derived from did not change.
+     * The properties are compared by value since device objects can be modified or created again with the same values.
+     *
+     * @param device device properties.
+     * @return Part A values.
+     */
+    private static DeviceValues getDeviceValues(Device device) {
+        DeviceValues deviceValues = sDeviceValues;
+        if (deviceValues == null || !deviceValues.isDerivedFrom(device)) {
+            deviceValues = new DeviceValues(device);
+            sDeviceValues = deviceValues;
+        }
+        return deviceValues;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Part A values derived from device properties.
+     */
+    private static class DeviceValues {
+
+        /**
+         * Source locale.
+         */
+        final String mSourceLocale;
+
+        /**
+         * Source OS version.
+         */
+        final String mSourceOsVersion;
+
+        /**
+         * Source OS build.
+         */
+        final String mSourceOsBuild;
+
+        /**
+         * Source OS API level.
+         */
+        final Integer mSourceOsApiLevel;
+
+        /**
+         * Source application namespace.
+         */
+        final String mSourceAppNamespace;
+
+        /**
+         * Source SDK name.
+         */
+        final String mSourceSdkName;
+
+        /**
+         * Source SDK version.
+         */
+        final String mSourceSdkVersion;
+
+        /**
+         * Source time zone offset in minutes.
+         */
+        final Integer mSourceTimeZoneOffset;
+
+        /**
+         * User locale.
+         */
+        final String mLocale;
+
+        /**
+         * OS version.
+         */
+        final String mOsVer;
+
+        /**
+         * Application identifier.
+         */
+        final String mAppId;
+
+        /**
+         * SDK library version.
+         */
+        final String mLibVer;
+
+        /**
+         * Time zone offset.
+         */
+        final String mTimezoneOffset;
+
+        DeviceValues(Device device) {
+            mSourceLocale = device.getLocale();
+            mSourceOsVersion = device.getOsVersion();
+            mSourceOsBuild = device.getOsBuild();
+            mSourceOsApiLevel = device.getOsApiLevel();
+            mSourceAppNamespace = device.getAppNamespace();
+            mSourceSdkName = device.getSdkName();
+            mSourceSdkVersion = device.getSdkVersion();
+            mSourceTimeZoneOffset = device.getTimeZoneOffset();
+            mLocale = device.getLocale().replace("_", "-");
+            mOsVer = device.getOsVersion() + "-" + device.getOsBuild() + "-" + device.getOsApiLevel();
+            mAppId = "a:" + device.getAppNamespace();
+            mLibVer = device.getSdkName() + "-" + device.getSdkVersion();
+            mTimezoneOffset = String.format(Locale.US, "%s%02d:%02d",
+                    device.getTimeZoneOffset() >= 0 ? "+" : "-",
+                    Math.abs(device.getTimeZoneOffset() / 60),
+                    Math.abs(device.getTimeZoneOffset() % 60));
+        }
+
+        /**
+         * Check if these values were computed from the same properties as the ones of a device.
+         *
+         * @param device device properties.
+         * @return true if the values can be reused for this device.
+         */
+        boolean isDerivedFrom(Device device) {
+            return isEqual(mSourceLocale, device.getLocale())
+                    && isEqual(mSourceOsVersion, device.getOsVersion())
+                    && isEqual(mSourceOsBuild, device.getOsBuild())
+                    && isEqual(mSourceOsApiLevel, device.getOsApiLevel())
+                    && isEqual(mSourceAppNamespace, device.getAppNamespace())
+                    && isEqual(mSourceSdkName, device.getSdkName())
+                    && isEqual(mSourceSdkVersion, device.getSdkVersion())
+                    && isEqual(mSourceTimeZoneOffset, device.getTimeZoneOffset());
+        }
+    }
 }
@@ -15,7 +15,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.microsoft.appcenter.utils.AppCenterLog.LOG_TAG;
 
@@ -36,6 +38,23 @@ public class PartCUtils {
     @VisibleForTesting
     static final int DATA_TYPE_DATETIME = 9;
 
+    /**
+     * Maximum number of property names kept split by dot in memory.
+     */
+    @VisibleForTesting
+    static final int PROPERTY_PATH_CACHE_SIZE = 512;
+
+    /**
+     * Property names split by dot, least recently used names are evicted first.
+     */
+    private static final Map<String, String[]> sPropertyPaths = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > PROPERTY_PATH_CACHE_SIZE;
+        }
+    };
+
     /**
      * Adds part C properties to a log.
      *
@@ -69,8 +88,7 @@ public class PartCUtils {
                 Integer metadataType = getMetadataType(property);
 
                 /* Split property name by dot. */
-                String key = property.getName();
-                String[] keys = key.split("\\.", -1);
+                String[] keys = getPropertyPath(property.getName());
                 int lastIndex = keys.length - 1;
 
                 /* Handle all intermediate keys. */
@@ -92,8 +110,17 @@ public class PartCUtils {
                     }
                     destProperties = subDataObject;
 
-                    /* Handle metadata. */
-                    destMetadata = addIntermediateMetadata(destMetadata, subKey);
+                    /*
+                     * Handle metadata. Default types don't need metadata objects,
+                     * we only walk existing ones to clean up overridden types.
+                     */
+                    if (destMetadata != null) {
+                        if (metadataType != null) {
+                            destMetadata = addIntermediateMetadata(destMetadata, subKey);
+                        } else {
+                            destMetadata = getIntermediateMetadata(destMetadata, subKey);
+                        }
+                    }
                 }
 
                 /* Handle the last key for data, the leaf. */
@@ -104,7 +131,9 @@ public class PartCUtils {
                 destProperties.put(lastKey, value);
 
                 /* Handle the last key for meta-data, the leaf. */
-                addLeafMetadata(metadataType, destMetadata, lastKey);
+                if (destMetadata != null) {
+                    addLeafMetadata(metadataType, destMetadata, lastKey);
+                }
             }
 
             /* Add metadata extension only if not empty after cleanup. */
@@ -120,6 +149,51 @@ public class PartCUtils {
         }
     }
 
+    /**
+     * Get property name split by dot, using a cache since the same names are used by most events.
+     * The returned array must not be modified.
+     *
+     * @param key property name.
+     * @return keys, an empty key is kept for consecutive, leading or trailing dots.
+     */
+    @VisibleForTesting
+    static String[] getPropertyPath(String key) {
+        synchronized (sPropertyPaths) {
+            String[] keys = sPropertyPaths.get(key);
+            if (keys == null) {
+                keys = splitPropertyPath(key);
+                sPropertyPaths.put(key, keys);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Split property name by dot without using a regular expression.
+     *
+     * @param key property name.
+     * @return keys, same result as splitting with a negative limit.
+     */
+    private static String[] splitPropertyPath(String key) {
+        int count = 1;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == '.') {
+                count++;
+            }
+        }
+        String[] keys = new String[count];
+        int index = 0;
+        int start = 0;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == '.') {
+                keys[index++] = key.substring(start, i);
+                start = i + 1;
+            }
+        }
+        keys[index] = key.substring(start);
+        return keys;
+    }
+
     /**
      * Validate typed property.
      *
@@ -233,6 +307,26 @@ public class PartCUtils {
         return subMetadataObject;
     }
 
+    /**
+     * Get an existing level of metadata nesting without creating it.
+     * A leaf found instead of an object is removed as the data key becomes an object.
+     *
+     * @param destMetadata the parent metadata object.
+     * @param subKey       the intermediate key from the dot split.
+     * @return metadata object on next level or null if there is none.
+     */
+    private static JSONObject getIntermediateMetadata(JSONObject destMetadata, String subKey) {
+        JSONObject fields = destMetadata.optJSONObject(METADATA_FIELDS);
+        if (fields == null) {
+            return null;
+        }
+        JSONObject subMetadataObject = fields.optJSONObject(subKey);
+        if (subMetadataObject == null) {
+            fields.remove(subKey);
+        }
+        return subMetadataObject;
+    }
+
     /**
      * Remove all empty children from JSON object.
      * <p>
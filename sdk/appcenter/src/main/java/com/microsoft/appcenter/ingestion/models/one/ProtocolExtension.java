@@ -7,6 +7,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -47,10 +48,10 @@ public class ProtocolExtension implements Model {
     /**
      * Get the ticket keys.
      *
-     * @return ticket keys.
+     * @return ticket keys, read only.
      */
     public List<String> getTicketKeys() {
-        return ticketKeys;
+        return ticketKeys != null ? Collections.unmodifiableList(ticketKeys) : null;
     }
 
     /**
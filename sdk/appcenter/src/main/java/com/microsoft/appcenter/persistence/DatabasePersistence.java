@@ -2,6 +2,7 @@ package com.microsoft.appcenter.persistence;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
@@ -43,6 +44,18 @@ public class DatabasePersistence extends Persistence {
     @VisibleForTesting
     static final int VERSION_TYPE_API_KEY = 2;
 
+    /**
+     * Version of the schema that introduced target key field.
+     */
+    @VisibleForTesting
+    static final int VERSION_TARGET_KEY = 3;
+
+    /**
+     * Version of the schema that moved target tokens to their own table.
+     */
+    @VisibleForTesting
+    static final int VERSION_TARGET_TOKEN_TABLE = 4;
+
     /**
      * Name of group column in the table.
      */
@@ -56,11 +69,17 @@ public class DatabasePersistence extends Persistence {
     static final String COLUMN_LOG = "log";
 
     /**
-     * Name of target token column in the table.
+     * Name of target token column, in the token table and in logs table before schema version 4.
      */
     @VisibleForTesting
     static final String COLUMN_TARGET_TOKEN = "target_token";
 
+    /**
+     * Name of target token identifier column in the table.
+     */
+    @VisibleForTesting
+    static final String COLUMN_TARGET_TOKEN_ID = "target_token_id";
+
     /**
      * Name of target token column in the table.
      */
@@ -77,7 +96,7 @@ public class DatabasePersistence extends Persistence {
      * Table schema for Persistence.
      */
     @VisibleForTesting
-    static final ContentValues SCHEMA = getContentValues("", "", "", "", "");
+    static final ContentValues SCHEMA = getContentValues("", "", 0L, "", "");
 
     /**
      * Database name.
@@ -90,10 +109,23 @@ public class DatabasePersistence extends Persistence {
      */
     @VisibleForTesting
     static final String TABLE = "logs";
+
+    /**
+     * Target token table name, in the same database as logs.
+     */
+    @VisibleForTesting
+    static final String TARGET_TOKEN_TABLE = "target_tokens";
+
+    /**
+     * Target token table schema.
+     */
+    @VisibleForTesting
+    static final ContentValues TARGET_TOKEN_SCHEMA = getTargetTokenContentValues("");
+
     /**
      * Current version of the schema.
      */
-    private static final int VERSION = 3;
+    private static final int VERSION = VERSION_TARGET_TOKEN_TABLE;
 
     /**
      * Size limit (in bytes) for a database row log payload.
@@ -139,6 +171,22 @@ public class DatabasePersistence extends Persistence {
      */
     private final File mLargePayloadDirectory;
 
+    /**
+     * Target tokens in clear text by token table identifier, loaded on first use.
+     * Tokens that could not be stored have a negative identifier, only valid in this process.
+     */
+    private Map<Long, String> mTargetTokens;
+
+    /**
+     * Token table identifiers by target token in clear text, loaded on first use.
+     */
+    private Map<String, Long> mTargetTokenIds;
+
+    /**
+     * Next identifier for a target token that could not be stored.
+     */
+    private long mNextUnstoredTargetTokenId = -1;
+
     /**
      * Initializes variables with default values.
      *
@@ -170,7 +218,13 @@ public class DatabasePersistence extends Persistence {
                     db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_TOKEN + "` TEXT");
                     db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_DATA_TYPE + "` TEXT");
                 }
-                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_KEY + "` TEXT");
+                if (oldVersion < VERSION_TARGET_KEY) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_KEY + "` TEXT");
+                }
+                if (oldVersion < VERSION_TARGET_TOKEN_TABLE) {
+                    db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN `" + COLUMN_TARGET_TOKEN_ID + "` INTEGER");
+                    migrateTargetTokens(db);
+                }
                 return true;
             }
 
@@ -193,22 +247,124 @@ public class DatabasePersistence extends Persistence {
     /**
      * Instantiates {@link ContentValues} with the give values.
      *
-     * @param group       The group of the storage for the log.
-     * @param logJ        The JSON string for a log.
-     * @param targetToken target token if the log is common schema.
-     * @param targetKey   project identifier part of the target token in clear text.
+     * @param group         The group of the storage for the log.
+     * @param logJ          The JSON string for a log.
+     * @param targetTokenId target token identifier in the token table if the log is common schema.
+     * @param targetKey     project identifier part of the target token in clear text.
      * @return A {@link ContentValues} instance.
      */
-    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, String targetToken, String type, String targetKey) {
+    private static ContentValues getContentValues(@Nullable String group, @Nullable String logJ, Long targetTokenId, String type, String targetKey) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_GROUP, group);
         values.put(COLUMN_LOG, logJ);
-        values.put(COLUMN_TARGET_TOKEN, targetToken);
+        values.put(COLUMN_TARGET_TOKEN_ID, targetTokenId);
         values.put(COLUMN_DATA_TYPE, type);
         values.put(COLUMN_TARGET_KEY, targetKey);
         return values;
     }
 
+    /**
+     * Instantiates {@link ContentValues} for the target token table.
+     *
+     * @param encryptedTargetToken encrypted target token.
+     * @return A {@link ContentValues} instance.
+     */
+    private static ContentValues getTargetTokenContentValues(String encryptedTargetToken) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TARGET_TOKEN, encryptedTargetToken);
+        return values;
+    }
+
+    /**
+     * Load target tokens from the token table, decrypting each of them once.
+     */
+    private void loadTargetTokens() {
+        if (mTargetTokens != null) {
+            return;
+        }
+        mTargetTokens = new HashMap<>();
+        mTargetTokenIds = new HashMap<>();
+        CryptoUtils cryptoUtils = CryptoUtils.getInstance(mContext);
+        for (ContentValues values : mDatabaseStorage.getAll(TARGET_TOKEN_TABLE, TARGET_TOKEN_SCHEMA)) {
+            Long id = values.getAsLong(DatabaseManager.PRIMARY_KEY);
+            String encryptedTargetToken = values.getAsString(COLUMN_TARGET_TOKEN);
+            if (id != null && encryptedTargetToken != null) {
+                String targetToken = cryptoUtils.decryptWithCache(encryptedTargetToken).getDecryptedData();
+                mTargetTokens.put(id, targetToken);
+                mTargetTokenIds.put(targetToken, id);
+            }
+        }
+    }
+
+    /**
+     * Get the token table identifier of a target token, storing the token if needed.
+     * The token is stored in the logs database before the log referencing it,
+     * so a failure in between leaves at worst an unused token.
+     *
+     * @param targetToken target token in clear text.
+     * @return token table identifier, negative if the token could not be stored.
+     */
+    private synchronized long getTargetTokenId(String targetToken) {
+        loadTargetTokens();
+        Long id = mTargetTokenIds.get(targetToken);
+        if (id == null) {
+            String encryptedTargetToken = CryptoUtils.getInstance(mContext).encryptWithCache(targetToken);
+            id = mDatabaseStorage.put(TARGET_TOKEN_TABLE, getTargetTokenContentValues(encryptedTargetToken));
+
+            /*
+             * If the token could not be stored, logs are also in memory:
+             * use an identifier that cannot match a stored token.
+             */
+            if (id < 0) {
+                id = mNextUnstoredTargetTokenId--;
+            }
+            mTargetTokens.put(id, targetToken);
+            mTargetTokenIds.put(targetToken, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get a target token by its token table identifier.
+     *
+     * @param id token table identifier.
+     * @return target token in clear text or null if not found.
+     */
+    private synchronized String getTargetToken(long id) {
+        loadTargetTokens();
+        return mTargetTokens.get(id);
+    }
+
+    /**
+     * Move target tokens stored in each row by schema version 3 to the token table.
+     * This runs in the upgrade transaction of the logs database, so tokens and logs are migrated together.
+     *
+     * @param db database being upgraded.
+     */
+    private void migrateTargetTokens(SQLiteDatabase db) {
+        DatabaseManager.createTable(db, TARGET_TOKEN_TABLE, TARGET_TOKEN_SCHEMA);
+        Map<String, Long> targetTokenIds = new HashMap<>();
+        CryptoUtils cryptoUtils = CryptoUtils.getInstance(mContext);
+        Cursor cursor = db.query(TABLE, new String[]{DatabaseManager.PRIMARY_KEY, COLUMN_TARGET_TOKEN}, COLUMN_TARGET_TOKEN + " IS NOT NULL", null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                String targetToken = cryptoUtils.decrypt(cursor.getString(1), false).getDecryptedData();
+                Long targetTokenId = targetTokenIds.get(targetToken);
+                if (targetTokenId == null) {
+                    String encryptedTargetToken = cryptoUtils.encryptWithCache(targetToken);
+                    targetTokenId = db.insertOrThrow(TARGET_TOKEN_TABLE, null, getTargetTokenContentValues(encryptedTargetToken));
+                    targetTokenIds.put(targetToken, targetTokenId);
+                }
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_TARGET_TOKEN_ID, targetTokenId);
+                values.putNull(COLUMN_TARGET_TOKEN);
+                db.update(TABLE, values, DatabaseManager.PRIMARY_KEY + " = ?", new String[]{String.valueOf(cursor.getLong(0))});
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public long putLog(@NonNull String group, @NonNull Log log) throws PersistenceException {
 
@@ -219,19 +375,19 @@ public class DatabasePersistence extends Persistence {
             ContentValues contentValues;
             boolean isLargePayload = payload.getBytes("UTF-8").length >= PAYLOAD_MAX_SIZE;
             String targetKey;
-            String targetToken;
+            Long targetTokenId;
             if (log instanceof CommonSchemaLog) {
                 if (isLargePayload) {
                     throw new PersistenceException("Log is larger than " + PAYLOAD_MAX_SIZE + " bytes, cannot send to OneCollector.");
                 }
-                targetToken = log.getTransmissionTargetTokens().iterator().next();
+                String targetToken = log.getTransmissionTargetTokens().iterator().next();
                 targetKey = PartAUtils.getTargetKey(targetToken);
-                targetToken = CryptoUtils.getInstance(mContext).encrypt(targetToken);
+                targetTokenId = getTargetTokenId(targetToken);
             } else {
                 targetKey = null;
-                targetToken = null;
+                targetTokenId = null;
             }
-            contentValues = getContentValues(group, isLargePayload ? null : payload, targetToken, log.getType(), targetKey);
+            contentValues = getContentValues(group, isLargePayload ? null : payload, targetTokenId, log.getType(), targetKey);
             long databaseId = mDatabaseStorage.put(contentValues);
             AppCenterLog.debug(LOG_TAG, "Stored a log to the Persistence database for log type " + log.getType() + " with databaseId=" + databaseId);
             if (isLargePayload) {
@@ -399,11 +555,16 @@ public class DatabasePersistence extends Persistence {
                     String databasePayloadType = values.getAsString(COLUMN_DATA_TYPE);
                     Log log = getLogSerializer().deserializeLog(logPayload, databasePayloadType);
 
-                    /* Restore target token. */
-                    String targetToken = values.getAsString(COLUMN_TARGET_TOKEN);
-                    if (targetToken != null) {
-                        CryptoUtils.DecryptedData data = CryptoUtils.getInstance(mContext).decrypt(targetToken, false);
-                        log.addTransmissionTarget(data.getDecryptedData());
+                    /* Restore target token, checking it still matches the target key of the row. */
+                    Long targetTokenId = values.getAsLong(COLUMN_TARGET_TOKEN_ID);
+                    if (targetTokenId != null) {
+                        String targetToken = getTargetToken(targetTokenId);
+                        if (targetToken == null || !PartAUtils.getTargetKey(targetToken).equals(values.getAsString(COLUMN_TARGET_KEY))) {
+                            AppCenterLog.error(LOG_TAG, "Target token " + targetTokenId + " of log " + dbIdentifier + " is missing, deleting the log.");
+                            failedDbIdentifiers.add(dbIdentifier);
+                            continue;
+                        }
+                        log.addTransmissionTarget(targetToken);
                     }
 
                     /* Add log to list and count. */
@@ -2,26 +2,47 @@ package com.microsoft.appcenter.utils;
 
 import android.support.annotation.VisibleForTesting;
 
+import com.microsoft.appcenter.AppCenter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Ticket cache for One Collector protocol.
+ * <p>
+ * Tickets headers are computed once per set of ticket keys and updated when a ticket changes,
+ * so that uploads only look up a prepared header.
  */
 public class TicketCache {
 
+    /**
+     * Maximum number of cached tickets headers, cache is reset when reached.
+     */
+    @VisibleForTesting
+    static final int MAX_TICKETS_HEADERS = 16;
+
     /**
      * Cache backed by a simple map.
      */
     private static final Map<String, String> sTickets = new HashMap<>();
 
+    /**
+     * Tickets headers by ticket keys signature.
+     */
+    private static final Map<String, TicketsHeader> sTicketsHeaders = new HashMap<>();
+
     /**
      * Get cached ticket.
      *
      * @param key ticket key.
      * @return token value or null if not in cache.
      */
-    public static String getTicket(String key) {
+    public static synchronized String getTicket(String key) {
         return sTickets.get(key);
     }
 
@@ -31,12 +52,92 @@ public class TicketCache {
      * @param key   ticket key.
      * @param value ticket value.
      */
-    public static void putTicket(String key, String value) {
-        sTickets.put(key, value);
+    public static synchronized void putTicket(String key, String value) {
+        String previousValue = sTickets.put(key, value);
+        if (value != null && value.equals(previousValue)) {
+            return;
+        }
+
+        /* Update the prepared headers using this ticket. */
+        for (TicketsHeader ticketsHeader : sTicketsHeaders.values()) {
+            if (ticketsHeader.ticketKeys.contains(key)) {
+                ticketsHeader.value = buildTicketsHeader(ticketsHeader.ticketKeys);
+            }
+        }
+    }
+
+    /**
+     * Get the tickets header for a set of ticket keys.
+     *
+     * @param ticketKeys ticket keys in header order.
+     * @return tickets header as JSON or null if no ticket is known for these keys.
+     */
+    public static synchronized String getTicketsHeader(Collection<String> ticketKeys) {
+        if (ticketKeys.isEmpty()) {
+            return null;
+        }
+        StringBuilder signatureBuilder = new StringBuilder();
+        for (String ticketKey : ticketKeys) {
+            signatureBuilder.append(ticketKey).append(',');
+        }
+        String signature = signatureBuilder.toString();
+        TicketsHeader ticketsHeader = sTicketsHeaders.get(signature);
+        if (ticketsHeader == null) {
+            if (sTicketsHeaders.size() >= MAX_TICKETS_HEADERS) {
+                sTicketsHeaders.clear();
+            }
+            ticketsHeader = new TicketsHeader(new ArrayList<>(ticketKeys));
+            ticketsHeader.value = buildTicketsHeader(ticketsHeader.ticketKeys);
+            sTicketsHeaders.put(signature, ticketsHeader);
+        }
+        return ticketsHeader.value;
+    }
+
+    /**
+     * Build a tickets header.
+     *
+     * @param ticketKeys ticket keys.
+     * @return tickets header as JSON or null if no ticket is known or serialization failed.
+     */
+    private static String buildTicketsHeader(Collection<String> ticketKeys) {
+        JSONObject tickets = new JSONObject();
+        for (String ticketKey : ticketKeys) {
+            String token = sTickets.get(ticketKey);
+            if (token != null) {
+                try {
+                    tickets.put(ticketKey, token);
+                } catch (JSONException e) {
+                    AppCenterLog.error(AppCenter.LOG_TAG, "Cannot serialize tickets, sending log anonymously", e);
+                    return null;
+                }
+            }
+        }
+        return tickets.length() > 0 ? tickets.toString() : null;
     }
 
     @VisibleForTesting
-    public static void clear() {
+    public static synchronized void clear() {
         sTickets.clear();
+        sTicketsHeaders.clear();
+    }
+
+    /**
+     * Prepared tickets header.
+     */
+    private static class TicketsHeader {
+
+        /**
+         * Ticket keys in header order.
+         */
+        final Collection<String> ticketKeys;
+
+        /**
+         * Header value, null if no ticket is known.
+         */
+        String value;
+
+        TicketsHeader(Collection<String> ticketKeys) {
+            this.ticketKeys = ticketKeys;
+        }
     }
 }
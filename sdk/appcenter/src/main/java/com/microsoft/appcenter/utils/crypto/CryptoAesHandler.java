@@ -21,6 +21,11 @@ import static javax.crypto.Cipher.ENCRYPT_MODE;
 @RequiresApi(Build.VERSION_CODES.M)
 class CryptoAesHandler implements CryptoHandler {
 
+    /**
+     * Cipher of each thread, reused as it's initialized again before every operation.
+     */
+    private final ThreadLocal<CryptoUtils.ICipher> mCipher = new ThreadLocal<>();
+
     @Override
     public String getAlgorithm() {
         return CryptoConstants.CIPHER_AES + "/" + AES_KEY_SIZE;
@@ -41,24 +46,50 @@ class CryptoAesHandler implements CryptoHandler {
         keyGenerator.generateKey();
     }
 
+    /**
+     * Get the cipher of the current thread, creating it the first time.
+     */
+    private CryptoUtils.ICipher getCipher(CryptoUtils.ICryptoFactory cryptoFactory) throws Exception {
+        CryptoUtils.ICipher cipher = mCipher.get();
+        if (cipher == null) {
+            cipher = cryptoFactory.getCipher(CryptoConstants.CIPHER_AES, PROVIDER_ANDROID_M);
+            mCipher.set(cipher);
+        }
+        return cipher;
+    }
+
     @Override
     public byte[] encrypt(CryptoUtils.ICryptoFactory cryptoFactory, int apiLevel, KeyStore.Entry keyStoreEntry, byte[] input) throws Exception {
-        CryptoUtils.ICipher cipher = cryptoFactory.getCipher(CryptoConstants.CIPHER_AES, PROVIDER_ANDROID_M);
-        cipher.init(ENCRYPT_MODE, ((KeyStore.SecretKeyEntry) keyStoreEntry).getSecretKey());
-        byte[] cipherIV = cipher.getIV();
-        byte[] output = cipher.doFinal(input);
-        byte[] encryptedBytes = new byte[cipherIV.length + output.length];
-        System.arraycopy(cipherIV, 0, encryptedBytes, 0, cipherIV.length);
-        System.arraycopy(output, 0, encryptedBytes, cipherIV.length, output.length);
-        return encryptedBytes;
+        CryptoUtils.ICipher cipher = getCipher(cryptoFactory);
+        try {
+            cipher.init(ENCRYPT_MODE, ((KeyStore.SecretKeyEntry) keyStoreEntry).getSecretKey());
+            byte[] cipherIV = cipher.getIV();
+            byte[] output = cipher.doFinal(input);
+            byte[] encryptedBytes = new byte[cipherIV.length + output.length];
+            System.arraycopy(cipherIV, 0, encryptedBytes, 0, cipherIV.length);
+            System.arraycopy(output, 0, encryptedBytes, cipherIV.length, output.length);
+            return encryptedBytes;
+        } catch (Exception e) {
+
+            /* Don't reuse a cipher left in an unknown state. */
+            mCipher.remove();
+            throw e;
+        }
     }
 
     @Override
     public byte[] decrypt(CryptoUtils.ICryptoFactory cryptoFactory, int apiLevel, KeyStore.Entry keyStoreEntry, byte[] data) throws Exception {
-        CryptoUtils.ICipher cipher = cryptoFactory.getCipher(CryptoConstants.CIPHER_AES, PROVIDER_ANDROID_M);
-        int blockSize = cipher.getBlockSize();
-        IvParameterSpec ivParameterSpec = new IvParameterSpec(data, 0, blockSize);
-        cipher.init(DECRYPT_MODE, ((KeyStore.SecretKeyEntry) keyStoreEntry).getSecretKey(), ivParameterSpec);
-        return cipher.doFinal(data, blockSize, data.length - blockSize);
+        CryptoUtils.ICipher cipher = getCipher(cryptoFactory);
+        try {
+            int blockSize = cipher.getBlockSize();
+            IvParameterSpec ivParameterSpec = new IvParameterSpec(data, 0, blockSize);
+            cipher.init(DECRYPT_MODE, ((KeyStore.SecretKeyEntry) keyStoreEntry).getSecretKey(), ivParameterSpec);
+            return cipher.doFinal(data, blockSize, data.length - blockSize);
+        } catch (Exception e) {
+
+            /* Don't reuse a cipher left in an unknown state. */
+            mCipher.remove();
+            throw e;
+        }
     }
 }
@@ -29,6 +29,11 @@ import static javax.crypto.Cipher.ENCRYPT_MODE;
 @RequiresApi(Build.VERSION_CODES.KITKAT)
 class CryptoRsaHandler implements CryptoHandler {
 
+    /**
+     * Cipher of each thread, reused as it's initialized again before every operation.
+     */
+    private final ThreadLocal<CryptoUtils.ICipher> mCipher = new ThreadLocal<>();
+
     @Override
     public String getAlgorithm() {
         return CIPHER_RSA + "/" + RSA_KEY_SIZE;
@@ -56,21 +61,25 @@ class CryptoRsaHandler implements CryptoHandler {
     }
 
     /**
-     * Get new cipher.
+     * Get the cipher of the current thread, creating it the first time.
      */
     private CryptoUtils.ICipher getCipher(CryptoUtils.ICryptoFactory cipherFactory, int apiLevel) throws Exception {
-        String provider;
-        if (apiLevel >= Build.VERSION_CODES.M) {
-            provider = PROVIDER_ANDROID_M;
-        } else {
-            provider = PROVIDER_ANDROID_OLD;
+        CryptoUtils.ICipher cipher = mCipher.get();
+        if (cipher == null) {
+            String provider;
+            if (apiLevel >= Build.VERSION_CODES.M) {
+                provider = PROVIDER_ANDROID_M;
+            } else {
+                provider = PROVIDER_ANDROID_OLD;
+            }
+            cipher = cipherFactory.getCipher(CIPHER_RSA, provider);
+            mCipher.set(cipher);
         }
-        return cipherFactory.getCipher(CIPHER_RSA, provider);
+        return cipher;
     }
 
     @Override
     public byte[] encrypt(CryptoUtils.ICryptoFactory cryptoFactory, int apiLevel, KeyStore.Entry keyStoreEntry, byte[] input) throws Exception {
-        CryptoUtils.ICipher cipher = getCipher(cryptoFactory, apiLevel);
         KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) keyStoreEntry;
         X509Certificate certificate = (X509Certificate) privateKeyEntry.getCertificate();
         try {
@@ -78,14 +87,29 @@ class CryptoRsaHandler implements CryptoHandler {
         } catch (CertificateExpiredException e) {
             throw new InvalidKeyException(e);
         }
-        cipher.init(ENCRYPT_MODE, certificate.getPublicKey());
-        return cipher.doFinal(input);
+        CryptoUtils.ICipher cipher = getCipher(cryptoFactory, apiLevel);
+        try {
+            cipher.init(ENCRYPT_MODE, certificate.getPublicKey());
+            return cipher.doFinal(input);
+        } catch (Exception e) {
+
+            /* Don't reuse a cipher left in an unknown state. */
+            mCipher.remove();
+            throw e;
+        }
     }
 
     @Override
     public byte[] decrypt(CryptoUtils.ICryptoFactory cryptoFactory, int apiLevel, KeyStore.Entry keyStoreEntry, byte[] data) throws Exception {
         CryptoUtils.ICipher cipher = getCipher(cryptoFactory, apiLevel);
-        cipher.init(DECRYPT_MODE, ((KeyStore.PrivateKeyEntry) keyStoreEntry).getPrivateKey());
-        return cipher.doFinal(data);
+        try {
+            cipher.init(DECRYPT_MODE, ((KeyStore.PrivateKeyEntry) keyStoreEntry).getPrivateKey());
+            return cipher.doFinal(data);
+        } catch (Exception e) {
+
+            /* Don't reuse a cipher left in an unknown state. */
+            mCipher.remove();
+            throw e;
+        }
     }
 }
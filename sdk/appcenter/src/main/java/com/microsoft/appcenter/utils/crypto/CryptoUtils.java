@@ -17,6 +17,7 @@ import java.security.KeyStore;
 import java.security.Provider;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -36,6 +37,12 @@ import static com.microsoft.appcenter.utils.crypto.CryptoConstants.KEYSTORE_ALIA
  */
 public class CryptoUtils {
 
+    /**
+     * Maximum number of entries in each cache used by {@link #encryptWithCache(String)} and {@link #decryptWithCache(String)}.
+     */
+    @VisibleForTesting
+    static final int CACHE_SIZE = 32;
+
     @VisibleForTesting
     static final ICryptoFactory DEFAULT_CRYPTO_FACTORY = new ICryptoFactory() {
 
@@ -136,6 +143,33 @@ public class CryptoUtils {
      */
     private final KeyStore mKeyStore;
 
+    /**
+     * Key store entries by alias, cleared when an alias is replaced.
+     */
+    private final Map<String, KeyStore.Entry> mKeyStoreEntries = new HashMap<>();
+
+    /**
+     * Encrypted data by clear data, least recently used entries are evicted first.
+     */
+    private final Map<String, String> mEncryptedCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Decrypted data by encrypted data, least recently used entries are evicted first.
+     */
+    private final Map<String, DecryptedData> mDecryptedCache = new LinkedHashMap<String, DecryptedData>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DecryptedData> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
     /**
      * Init.
      *
@@ -260,7 +294,16 @@ public class CryptoUtils {
             return null;
         }
         String alias = getAlias(handlerEntry.mCryptoHandler, handlerEntry.mAliasIndex, mobileCenterFailOver);
-        return mKeyStore.getEntry(alias, null);
+        synchronized (mKeyStoreEntries) {
+            KeyStore.Entry keyStoreEntry = mKeyStoreEntries.get(alias);
+            if (keyStoreEntry == null) {
+                keyStoreEntry = mKeyStore.getEntry(alias, null);
+                if (keyStoreEntry != null) {
+                    mKeyStoreEntries.put(alias, keyStoreEntry);
+                }
+            }
+            return keyStoreEntry;
+        }
     }
 
     /**
@@ -297,6 +340,7 @@ public class CryptoUtils {
                 AppCenterLog.debug(LOG_TAG, "Alias expired: " + handlerEntry.mAliasIndex);
                 handlerEntry.mAliasIndex ^= 1;
                 String newAlias = getAlias(handler, handlerEntry.mAliasIndex, false);
+                invalidateCache();
 
                 /* If this is the second time we switch, we delete the previous key. */
                 if (mKeyStore.containsAlias(newAlias)) {
@@ -319,6 +363,79 @@ public class CryptoUtils {
         }
     }
 
+    /**
+     * Encrypt data, reusing the encrypted value of a previous call with the same data.
+     * This is meant for a few distinct values encrypted very often, like transmission target tokens.
+     *
+     * @param data data to encrypt.
+     * @return encrypted data, or original data on internal failure or if null.
+     */
+    @Nullable
+    public String encryptWithCache(@Nullable String data) {
+        if (data == null) {
+            return null;
+        }
+        synchronized (mEncryptedCache) {
+            String encryptedData = mEncryptedCache.get(data);
+            if (encryptedData != null) {
+                return encryptedData;
+            }
+        }
+        String encryptedData = encrypt(data);
+
+        /* Failure returns the same instance, don't cache it so that we can retry next time. */
+        if (encryptedData != data) {
+            synchronized (mEncryptedCache) {
+                mEncryptedCache.put(data, encryptedData);
+            }
+        }
+        return encryptedData;
+    }
+
+    /**
+     * Decrypt data using App Center keystore, reusing the result of a previous call with the same data.
+     * This is meant for a few distinct values decrypted very often, like transmission target tokens.
+     *
+     * @param data data to decrypt.
+     * @return decrypted data.
+     */
+    @NonNull
+    public DecryptedData decryptWithCache(@Nullable String data) {
+        if (data == null) {
+            return new DecryptedData(null, null);
+        }
+        synchronized (mDecryptedCache) {
+            DecryptedData decryptedData = mDecryptedCache.get(data);
+            if (decryptedData != null) {
+                return decryptedData;
+            }
+        }
+        DecryptedData decryptedData = decrypt(data, false);
+
+        /* Failure returns the same instance, don't cache it so that we can retry next time. */
+        if (decryptedData.getDecryptedData() != data) {
+            synchronized (mDecryptedCache) {
+                mDecryptedCache.put(data, decryptedData);
+            }
+        }
+        return decryptedData;
+    }
+
+    /**
+     * Clear cached key store entries and values when the keystore alias changes.
+     */
+    private void invalidateCache() {
+        synchronized (mKeyStoreEntries) {
+            mKeyStoreEntries.clear();
+        }
+        synchronized (mEncryptedCache) {
+            mEncryptedCache.clear();
+        }
+        synchronized (mDecryptedCache) {
+            mDecryptedCache.clear();
+        }
+    }
+
     /**
      * Decrypt data.
      *
@@ -112,26 +112,7 @@ public class DatabaseManager implements Closeable {
 
             @Override
             public void onCreate(SQLiteDatabase db) {
-
-                /* Generate a schema from specimen. */
-                StringBuilder sql = new StringBuilder("CREATE TABLE `");
-                sql.append(mTable);
-                sql.append("` (oid INTEGER PRIMARY KEY AUTOINCREMENT");
-                for (Map.Entry<String, Object> col : mSchema.valueSet()) {
-                    sql.append(", `").append(col.getKey()).append("` ");
-                    Object val = col.getValue();
-                    if (val instanceof Double || val instanceof Float) {
-                        sql.append("REAL");
-                    } else if (val instanceof Number || val instanceof Boolean) {
-                        sql.append("INTEGER");
-                    } else if (val instanceof byte[]) {
-                        sql.append("BLOB");
-                    } else {
-                        sql.append("TEXT");
-                    }
-                }
-                sql.append(");");
-                db.execSQL(sql.toString());
+                createTable(db, mTable, mSchema);
             }
 
             @Override
@@ -146,6 +127,36 @@ public class DatabaseManager implements Closeable {
         };
     }
 
+    /**
+     * Creates a table if it does not exist yet.
+     *
+     * @param db     The database.
+     * @param table  The table name.
+     * @param schema The schema, e.g. a specimen with dummy values to have keys and their corresponding value's type.
+     */
+    public static void createTable(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull ContentValues schema) {
+
+        /* Generate a schema from specimen. */
+        StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS `");
+        sql.append(table);
+        sql.append("` (oid INTEGER PRIMARY KEY AUTOINCREMENT");
+        for (Map.Entry<String, Object> col : schema.valueSet()) {
+            sql.append(", `").append(col.getKey()).append("` ");
+            Object val = col.getValue();
+            if (val instanceof Double || val instanceof Float) {
+                sql.append("REAL");
+            } else if (val instanceof Number || val instanceof Boolean) {
+                sql.append("INTEGER");
+            } else if (val instanceof byte[]) {
+                sql.append("BLOB");
+            } else {
+                sql.append("TEXT");
+            }
+        }
+        sql.append(");");
+        db.execSQL(sql.toString());
+    }
+
     /**
      * Converts a cursor to an entry.
      *
@@ -193,32 +204,12 @@ public class DatabaseManager implements Closeable {
      * @param values The entry to be stored.
      * @return If a log was inserted, the database identifier. Otherwise -1.
      */
-    @SuppressWarnings("TryFinallyCanBeTryWithResources")
     public long put(@NonNull ContentValues values) {
 
         /* Try SQLite. */
         if (mIMDB == null) {
             try {
-                while (true) {
-                    try {
-
-                        /* Insert data. */
-                        return getDatabase().insertOrThrow(mTable, null, values);
-                    } catch (SQLiteFullException e) {
-
-                        /* Delete the oldest log. */
-                        Cursor cursor = getCursor(null, null, null, null, true);
-                        try {
-                            if (cursor.moveToNext()) {
-                                delete(cursor.getLong(0));
-                            } else {
-                                return -1;
-                            }
-                        } finally {
-                            cursor.close();
-                        }
-                    }
-                }
+                return insert(mTable, values);
             } catch (RuntimeException e) {
                 switchToInMemory("put", e);
             }
@@ -230,6 +221,59 @@ public class DatabaseManager implements Closeable {
         return mIMDBAutoInc++;
     }
 
+    /**
+     * Stores an entry to another table of the same database, so that it is written to the same file
+     * as the entries of the main table. The table must have been created by {@link #getAll(String, ContentValues)}.
+     * If the database is full, the oldest entries of the main table are discarded until the new one can fit.
+     * There is no in-memory fallback for such a table.
+     *
+     * @param table  The table name.
+     * @param values The entry to be stored.
+     * @return If the entry was inserted, the database identifier. Otherwise -1.
+     */
+    public long put(@NonNull String table, @NonNull ContentValues values) {
+        if (mIMDB == null) {
+            try {
+                return insert(table, values);
+            } catch (RuntimeException e) {
+                switchToInMemory("put", e);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts an entry in SQLite, discarding the oldest entries of the main table while the database is full.
+     *
+     * @param table  The table name.
+     * @param values The entry to be stored.
+     * @return If the entry was inserted, the database identifier. Otherwise -1.
+     * @throws RuntimeException If an error occurs.
+     */
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    private long insert(String table, ContentValues values) throws RuntimeException {
+        while (true) {
+            try {
+
+                /* Insert data. */
+                return getDatabase().insertOrThrow(table, null, values);
+            } catch (SQLiteFullException e) {
+
+                /* Delete the oldest log. */
+                Cursor cursor = getCursor(null, null, null, null, true);
+                try {
+                    if (cursor.moveToNext()) {
+                        delete(cursor.getLong(0));
+                    } else {
+                        return -1;
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        }
+    }
+
     /**
      * Deletes the entry by the identifier from the database.
      *
@@ -349,6 +393,36 @@ public class DatabaseManager implements Closeable {
         return null;
     }
 
+    /**
+     * Gets all the entries of another table of the same database, creating the table if needed.
+     *
+     * @param table  The table name.
+     * @param schema The schema of that table.
+     * @return All the entries of the table, empty if SQLite cannot be used.
+     */
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    public List<ContentValues> getAll(@NonNull String table, @NonNull ContentValues schema) {
+        List<ContentValues> entries = new ArrayList<>();
+        if (mIMDB == null) {
+            try {
+                SQLiteDatabase db = getDatabase();
+                createTable(db, table, schema);
+                Cursor cursor = db.query(table, null, null, null, null, null, PRIMARY_KEY);
+                try {
+                    while (cursor.moveToNext()) {
+                        entries.add(buildValues(cursor, schema));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            } catch (RuntimeException e) {
+                entries.clear();
+                switchToInMemory("getAll", e);
+            }
+        }
+        return entries;
+    }
+
     /**
      * Gets a scanner to iterate all values those match
      * key1 == value1 and key2 not matching any values from the list in value2Filter.
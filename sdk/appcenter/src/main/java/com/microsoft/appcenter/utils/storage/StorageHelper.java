@@ -602,6 +602,17 @@ public class StorageHelper {
             return mDatabaseManager.put(values);
         }
 
+        /**
+         * Store an entry in another table of the same database.
+         *
+         * @param table  The table name, the table must have been created by {@link #getAll(String, ContentValues)}.
+         * @param values The entry to be stored.
+         * @return The identifier of the created database entry or -1 if it could not be stored.
+         */
+        public long put(@NonNull String table, @NonNull ContentValues values) {
+            return mDatabaseManager.put(table, values);
+        }
+
         /**
          * Delete an entry in a table.
          *
@@ -651,6 +662,17 @@ public class StorageHelper {
             return mDatabaseManager.get(key, value);
         }
 
+        /**
+         * Gets all the entries of another table of the same database, creating the table if needed.
+         *
+         * @param table  The table name.
+         * @param schema The schema of that table.
+         * @return All the entries of the table, empty if SQLite cannot be used.
+         */
+        public List<ContentValues> getAll(@NonNull String table, @NonNull ContentValues schema) {
+            return mDatabaseManager.getAll(table, schema);
+        }
+
         /**
          * Gets a scanner to iterate all values.
          *
@@ -1,6 +1,7 @@
 package com.microsoft.appcenter;
 
 import android.content.Context;
+import android.os.Handler;
 
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
@@ -13,6 +14,7 @@ import com.microsoft.appcenter.utils.ShutdownHelper;
 import com.microsoft.appcenter.utils.storage.StorageHelper;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -44,6 +46,7 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -96,6 +99,59 @@ public class AppCenterTest extends AbstractAppCenterTest {
         verify(mStartServiceLog).setServices(eq(services));
     }
 
+    @Test
+    public void deferOtherServicesStart() throws Exception {
+        Handler handler = mock(Handler.class);
+        whenNew(Handler.class).withAnyArguments().thenReturn(handler);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(handler).post(any(Runnable.class));
+        DummyService service = DummyService.getInstance();
+        AnotherDummyService anotherService = AnotherDummyService.getInstance();
+        doReturn(true).when(service).isDeferringOtherServices();
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class, AnotherDummyService.class);
+
+        /* Only the service keeping the startup minimal is started, log factories are registered for both. */
+        assertEquals(2, AppCenter.getInstance().getServices().size());
+        verify(service).onStarted(any(Context.class), any(Channel.class), eq(DUMMY_APP_SECRET), isNull(String.class), eq(true));
+        verify(anotherService).getLogFactories();
+        verify(anotherService, never()).onStarted(any(Context.class), any(Channel.class), anyString(), anyString(), anyBoolean());
+
+        /* Commands of the deferred service are kept until it starts. */
+        Runnable command = mock(Runnable.class);
+        anotherService.post(command);
+        verify(command, never()).run();
+
+        /* Commands of the started service run. */
+        Runnable serviceCommand = mock(Runnable.class);
+        service.post(serviceCommand);
+        verify(serviceCommand).run();
+
+        /* Start deferred services. */
+        ArgumentCaptor<Runnable> startDeferredServices = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(startDeferredServices.capture(), eq(AppCenter.DEFERRED_SERVICES_START_DELAY));
+        startDeferredServices.getValue().run();
+        verify(anotherService).onStarted(any(Context.class), any(Channel.class), eq(DUMMY_APP_SECRET), isNull(String.class), eq(true));
+        verify(command).run();
+
+        /* Commands now run right away. */
+        Runnable otherCommand = mock(Runnable.class);
+        anotherService.post(otherCommand);
+        verify(otherCommand).run();
+    }
+
+    @Test
+    public void startWithoutDeferringServices() {
+        AppCenter.start(mApplication, DUMMY_APP_SECRET, DummyService.class, AnotherDummyService.class);
+        verify(DummyService.getInstance()).onStarted(any(Context.class), any(Channel.class), eq(DUMMY_APP_SECRET), isNull(String.class), eq(true));
+        verify(AnotherDummyService.getInstance()).onStarted(any(Context.class), any(Channel.class), eq(DUMMY_APP_SECRET), isNull(String.class), eq(true));
+    }
+
     @Test
     public void useDummyServiceWhenDisablePersisted() {
         when(StorageHelper.PreferencesStorage.getBoolean(KEY_ENABLED, true)).thenReturn(false);
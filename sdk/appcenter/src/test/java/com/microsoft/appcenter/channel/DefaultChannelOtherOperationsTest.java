@@ -6,6 +6,7 @@ import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.UUIDUtils;
 
 import org.junit.Test;
@@ -13,6 +14,7 @@ import org.mockito.Matchers;
 
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -21,6 +23,7 @@ import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -28,6 +31,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.spy;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTest {
 
@@ -177,6 +181,27 @@ public class DefaultChannelOtherOperationsTest extends AbstractDefaultChannelTes
         }
     }
 
+    @Test
+    public void listenerTimingsLogged() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        Channel.Listener listener = mock(Channel.Listener.class);
+        when(listener.shouldFilter(any(Log.class))).thenReturn(true);
+        channel.addListener(listener);
+
+        /* Timings are logged periodically. */
+        when(AppCenterLog.getLogLevel()).thenReturn(android.util.Log.DEBUG);
+        for (int i = 1; i < DefaultChannel.LISTENER_TIMINGS_LOG_INTERVAL; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP);
+        }
+        verifyStatic(never());
+        AppCenterLog.debug(anyString(), startsWith("Channel listener timings"));
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verifyStatic();
+        AppCenterLog.debug(anyString(), startsWith("Channel listener timings"));
+        assertEquals(DefaultChannel.LISTENER_TIMINGS_LOG_INTERVAL, channel.getListenerPipeline().getStages().get(0).callCount);
+    }
+
     @Test
     public void groupCallbacks() {
         Persistence persistence = mock(Persistence.class);
@@ -0,0 +1,163 @@
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.ingestion.models.Log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ListenerPipelineTest {
+
+    private static final String TEST_GROUP = "group_test";
+
+    @Test
+    public void skipStagesNotImplemented() {
+
+        /* A listener only filtering is not called for other stages. */
+        final List<String> calls = new ArrayList<>();
+        Channel.Listener filterListener = new AbstractChannelListener() {
+
+            @Override
+            public boolean shouldFilter(@NonNull Log log) {
+                calls.add("shouldFilter");
+                return false;
+            }
+        };
+        Channel.Listener listener = mock(Channel.Listener.class);
+        List<Channel.Listener> listeners = new ArrayList<>();
+        listeners.add(filterListener);
+        listeners.add(listener);
+        ListenerPipeline pipeline = new ListenerPipeline();
+        pipeline.compile(listeners);
+        List<ListenerPipeline.Stage> stages = pipeline.getStages();
+        assertEquals(4, stages.size());
+        assertSame(listener, stages.get(0).listener);
+        assertEquals(ListenerPipeline.STAGE_PREPARING_LOG, stages.get(0).name);
+        assertSame(listener, stages.get(1).listener);
+        assertEquals(ListenerPipeline.STAGE_PREPARED_LOG, stages.get(1).name);
+        assertSame(filterListener, stages.get(2).listener);
+        assertEquals(ListenerPipeline.STAGE_SHOULD_FILTER, stages.get(2).name);
+        assertSame(listener, stages.get(3).listener);
+
+        /* Call all stages. */
+        Log log = mock(Log.class);
+        pipeline.onPreparingLog(log, TEST_GROUP);
+        pipeline.onPreparedLog(log, TEST_GROUP);
+        assertFalse(pipeline.shouldFilter(log));
+        verify(listener).onPreparingLog(log, TEST_GROUP);
+        verify(listener).onPreparedLog(log, TEST_GROUP);
+        verify(listener).shouldFilter(log);
+        assertEquals(Collections.singletonList("shouldFilter"), calls);
+        for (ListenerPipeline.Stage stage : stages) {
+            assertEquals(1, stage.callCount);
+            assertTrue(stage.totalNanos >= 0);
+            assertTrue(stage.maxNanos <= stage.totalNanos);
+        }
+    }
+
+    @Test
+    public void filterStopsPipeline() {
+        Channel.Listener listener1 = mock(Channel.Listener.class);
+        Channel.Listener listener2 = mock(Channel.Listener.class);
+        List<Channel.Listener> listeners = new ArrayList<>();
+        listeners.add(listener1);
+        listeners.add(listener2);
+        ListenerPipeline pipeline = new ListenerPipeline();
+        pipeline.compile(listeners);
+        Log log = mock(Log.class);
+        when(listener1.shouldFilter(log)).thenReturn(true);
+        assertTrue(pipeline.shouldFilter(log));
+        verify(listener2, never()).shouldFilter(log);
+    }
+
+    @Test
+    public void nestedTimeExcluded() {
+        final ListenerPipeline pipeline = new ListenerPipeline();
+        final Log log = mock(Log.class);
+        final Log nestedLog = mock(Log.class);
+
+        /* First listener enqueues another log, second listener is slow for that log. */
+        Channel.Listener nestingListener = new AbstractChannelListener() {
+
+            @Override
+            public void onPreparingLog(@NonNull Log preparingLog, @NonNull String groupName) {
+                if (preparingLog == log) {
+                    pipeline.onPreparingLog(nestedLog, groupName);
+                }
+            }
+        };
+        Channel.Listener slowListener = new AbstractChannelListener() {
+
+            @Override
+            public void onPreparingLog(@NonNull Log preparingLog, @NonNull String groupName) {
+                if (preparingLog == nestedLog) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        };
+        List<Channel.Listener> listeners = new ArrayList<>();
+        listeners.add(nestingListener);
+        listeners.add(slowListener);
+        pipeline.compile(listeners);
+        pipeline.onPreparingLog(log, TEST_GROUP);
+
+        /* The slow nested call is only counted in its own stage. */
+        List<ListenerPipeline.Stage> stages = pipeline.getStages();
+        assertEquals(2, stages.size());
+        assertEquals(2, stages.get(0).callCount);
+        assertEquals(2, stages.get(1).callCount);
+        assertTrue(stages.get(1).totalNanos >= 50 * 1000 * 1000);
+        assertTrue(stages.get(0).totalNanos < stages.get(1).totalNanos);
+        assertTrue(stages.get(0).totalNanos >= 0);
+    }
+
+    @Test
+    public void countersKeptWhenListenersChange() {
+        Channel.Listener listener1 = mock(Channel.Listener.class);
+        Channel.Listener listener2 = mock(Channel.Listener.class);
+        List<Channel.Listener> listeners = new ArrayList<>();
+        listeners.add(listener1);
+        ListenerPipeline pipeline = new ListenerPipeline();
+        pipeline.compile(listeners);
+        Log log = mock(Log.class);
+        pipeline.onPreparingLog(log, TEST_GROUP);
+
+        /* Add a listener: existing counters are kept. */
+        listeners.add(listener2);
+        pipeline.compile(listeners);
+        pipeline.onPreparingLog(log, TEST_GROUP);
+        List<ListenerPipeline.Stage> stages = pipeline.getStages();
+        assertEquals(6, stages.size());
+        assertEquals(2, stages.get(0).callCount);
+        assertEquals(1, stages.get(1).callCount);
+
+        /* Remove a listener. */
+        listeners.remove(listener1);
+        pipeline.compile(listeners);
+        stages = pipeline.getStages();
+        assertEquals(3, stages.size());
+        assertSame(listener2, stages.get(0).listener);
+        assertEquals(1, stages.get(0).callCount);
+
+        /* Summary has one line per stage. */
+        String summary = pipeline.getTimingsSummary();
+        assertEquals(4, summary.split("\n").length);
+        assertTrue(summary.contains(ListenerPipeline.STAGE_PREPARING_LOG + " calls=1"));
+    }
+}
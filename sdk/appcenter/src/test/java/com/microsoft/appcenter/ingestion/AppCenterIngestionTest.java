@@ -22,6 +22,7 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,7 +33,9 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.contains;
@@ -212,6 +215,21 @@ public class AppCenterIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void streamFileReferences() throws Exception {
+        HttpClient.CallTemplate callTemplate = getCallTemplate(UUIDUtils.randomUUID().toString());
+        assertTrue(callTemplate instanceof HttpClient.StreamingCallTemplate);
+        HttpClient.StreamingCallTemplate streamingCallTemplate = (HttpClient.StreamingCallTemplate) callTemplate;
+        assertFalse(streamingCallTemplate.shouldStreamRequestBody("{\"logs\":[]}"));
+
+        /* A missing referenced file is sent as empty content. */
+        String payload = "{\"logs\":[{\"data\":\"appcenter-base64-file:missing\"}]}";
+        assertTrue(streamingCallTemplate.shouldStreamRequestBody(payload));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        streamingCallTemplate.writeRequestBody(payload, outputStream);
+        assertEquals("{\"logs\":[{\"data\":\"\"}]}", outputStream.toString("UTF-8"));
+    }
+
     private HttpClient.CallTemplate getCallTemplate(String appSecret) throws Exception {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
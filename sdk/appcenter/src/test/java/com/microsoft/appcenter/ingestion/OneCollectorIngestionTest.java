@@ -68,7 +68,8 @@ import static org.powermock.api.mockito.PowerMockito.whenNew;
 @PrepareForTest({
         OneCollectorIngestion.class,
         AppCenterLog.class,
-        JSONObject.class
+        JSONObject.class,
+        TicketCache.class
 })
 public class OneCollectorIngestionTest {
 
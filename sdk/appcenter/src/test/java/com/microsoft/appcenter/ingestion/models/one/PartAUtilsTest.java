@@ -81,6 +81,35 @@ public class PartAUtilsTest {
         assertEquals(extensions, commonSchemaLog.getExt());
     }
 
+    @Test
+    public void checkPartAConversionAfterDeviceChange() {
+        Device device = getDevice(0);
+        Log log = mock(Log.class);
+        when(log.getDevice()).thenReturn(device);
+        MockCommonSchemaLog commonSchemaLog = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, commonSchemaLog, "T1UUID1-T2UUID2");
+        assertEquals("en-US", commonSchemaLog.getExt().getUser().getLocale());
+        assertEquals("+00:00", commonSchemaLog.getExt().getLoc().getTz());
+
+        /* Changing the same device object updates derived values. */
+        device.setLocale("fr_FR");
+        device.setTimeZoneOffset(60);
+        commonSchemaLog = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, commonSchemaLog, "T1UUID1-T2UUID2");
+        assertEquals("fr-FR", commonSchemaLog.getExt().getUser().getLocale());
+        assertEquals("+01:00", commonSchemaLog.getExt().getLoc().getTz());
+        assertEquals("8.1.0-ABC.123-23", commonSchemaLog.getExt().getOs().getVer());
+
+        /* Another device with other values is converted with its own values. */
+        Device otherDevice = getDevice(0);
+        otherDevice.setSdkVersion("2.0.0");
+        when(log.getDevice()).thenReturn(otherDevice);
+        commonSchemaLog = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, commonSchemaLog, "T1UUID1-T2UUID2");
+        assertEquals("en-US", commonSchemaLog.getExt().getUser().getLocale());
+        assertEquals("appcenter.android-2.0.0", commonSchemaLog.getExt().getSdk().getLibVer());
+    }
+
     /**
      * Convert to Part A and check.
      */
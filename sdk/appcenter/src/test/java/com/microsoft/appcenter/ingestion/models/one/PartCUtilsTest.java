@@ -13,7 +13,10 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -40,4 +43,26 @@ public class PartCUtilsTest {
         PartCUtils.addPartCFromLog(properties, commonSchemaLog);
         assertEquals(0, commonSchemaLog.getData().getProperties().length());
     }
+
+    @Test
+    public void propertyPath() {
+        assertArrayEquals(new String[]{"a"}, PartCUtils.getPropertyPath("a"));
+        assertArrayEquals(new String[]{"a", "b", "c"}, PartCUtils.getPropertyPath("a.b.c"));
+        assertArrayEquals(new String[]{"", "a", "", "b", ""}, PartCUtils.getPropertyPath(".a..b."));
+        assertArrayEquals(new String[]{""}, PartCUtils.getPropertyPath(""));
+
+        /* Same name returns cached path. */
+        assertSame(PartCUtils.getPropertyPath("x.y"), PartCUtils.getPropertyPath("x.y"));
+    }
+
+    @Test
+    public void propertyPathCacheIsBounded() {
+        String[] first = PartCUtils.getPropertyPath("first.key");
+        for (int i = 0; i < PartCUtils.PROPERTY_PATH_CACHE_SIZE; i++) {
+            PartCUtils.getPropertyPath("key." + i);
+        }
+        String[] evicted = PartCUtils.getPropertyPath("first.key");
+        assertArrayEquals(first, evicted);
+        assertNotSame(first, evicted);
+    }
 }
@@ -9,6 +9,7 @@ import java.util.List;
 
 import static com.microsoft.appcenter.test.TestUtils.checkEquals;
 import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
+import static org.junit.Assert.assertNull;
 
 public class ProtocolExtensionTest {
 
@@ -53,4 +54,12 @@ public class ProtocolExtensionTest {
         b.setDevModel("a2");
         checkEquals(a, b);
     }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void ticketKeysReadOnly() {
+        ProtocolExtension protocol = new ProtocolExtension();
+        assertNull(protocol.getTicketKeys());
+        protocol.setTicketKeys(new ArrayList<String>());
+        protocol.getTicketKeys().add("FIRST");
+    }
 }
@@ -1,14 +1,33 @@
 package com.microsoft.appcenter.utils;
 
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.verifyNew;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
 
+@PrepareForTest(TicketCache.class)
 public class TicketCacheTest {
 
+    @Rule
+    public PowerMockRule mPowerMockRule = new PowerMockRule();
+
     @Before
     public void setUp() {
         TicketCache.clear();
@@ -35,4 +54,54 @@ public class TicketCacheTest {
         assertEquals("2", TicketCache.getTicket("key1"));
         assertEquals("1", TicketCache.getTicket("key2"));
     }
+
+    @Test
+    public void ticketsHeaders() throws Exception {
+        JSONObject json = mock(JSONObject.class);
+        whenNew(JSONObject.class).withNoArguments().thenReturn(json);
+        when(json.length()).thenReturn(1);
+        when(json.toString()).thenReturn("header");
+
+        /* No keys, no header. */
+        assertNull(TicketCache.getTicketsHeader(Collections.<String>emptyList()));
+        verifyNew(JSONObject.class, never()).withNoArguments();
+
+        /* Header is built once for the same keys. */
+        TicketCache.putTicket("key1", "p:1");
+        assertEquals("header", TicketCache.getTicketsHeader(Arrays.asList("key1", "key2")));
+        assertEquals("header", TicketCache.getTicketsHeader(Arrays.asList("key1", "key2")));
+        verifyNew(JSONObject.class).withNoArguments();
+        verify(json).put("key1", "p:1");
+        verify(json, never()).put("key2", null);
+
+        /* Updating a ticket of the header rebuilds it once. */
+        TicketCache.putTicket("key2", "p:2");
+        TicketCache.putTicket("key2", "p:2");
+        TicketCache.putTicket("key3", "p:3");
+        assertEquals("header", TicketCache.getTicketsHeader(Arrays.asList("key1", "key2")));
+        verifyNew(JSONObject.class, times(2)).withNoArguments();
+        verify(json).put("key2", "p:2");
+        verify(json, never()).put("key3", "p:3");
+
+        /* No known ticket, no header. */
+        when(json.length()).thenReturn(0);
+        assertNull(TicketCache.getTicketsHeader(Collections.singletonList("unknown")));
+    }
+
+    @Test
+    public void ticketsHeadersCacheLimit() throws Exception {
+        JSONObject json = mock(JSONObject.class);
+        whenNew(JSONObject.class).withNoArguments().thenReturn(json);
+        when(json.length()).thenReturn(1);
+        when(json.toString()).thenReturn("header");
+        for (int i = 0; i <= TicketCache.MAX_TICKETS_HEADERS; i++) {
+            TicketCache.getTicketsHeader(Collections.singletonList("key" + i));
+        }
+        verifyNew(JSONObject.class, times(TicketCache.MAX_TICKETS_HEADERS + 1)).withNoArguments();
+
+        /* The cache was reset when full: first header is built again. */
+        TicketCache.getTicketsHeader(Collections.singletonList("key0"));
+        verifyNew(JSONObject.class, times(TicketCache.MAX_TICKETS_HEADERS + 2)).withNoArguments();
+        verify(json, never()).put(anyString(), anyString());
+    }
 }
@@ -340,7 +340,7 @@ public class CryptoTest {
         assertEquals(alias0, alias.getAllValues().get(2));
         verify(mKeyStore).deleteEntry(alias0);
         verify(mKeyStore, times(alias0count + 1)).getEntry(alias0, null);
-        verify(mKeyStore, times(3)).getEntry(alias1, null);
+        verify(mKeyStore, times(2)).getEntry(alias1, null);
 
         /* Check that it will reload alias0 again after restart. */
         calendar.add(Calendar.YEAR, 1);
@@ -349,7 +349,7 @@ public class CryptoTest {
         encrypted = cryptoUtils.encrypt("anything");
         assertEquals(CIPHER_RSA + "/" + RSA_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "anything", encrypted);
         verify(mKeyStore, times(alias0count + 2)).getEntry(alias0, null);
-        verify(mKeyStore, times(3)).getEntry(alias1, null);
+        verify(mKeyStore, times(2)).getEntry(alias1, null);
     }
 
     @Test
@@ -393,6 +393,83 @@ public class CryptoTest {
         assertTrue(alias.getValue().contains(CIPHER_AES));
     }
 
+    @Test
+    public void cachedEncryptionAndDecryption() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        assertNull(cryptoUtils.encryptWithCache(null));
+        assertNull(cryptoUtils.decryptWithCache(null).getDecryptedData());
+
+        /* Encrypt and decrypt twice. */
+        String encrypted = cryptoUtils.encryptWithCache("token");
+        assertEquals(CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV" + "token", encrypted);
+        assertEquals(encrypted, cryptoUtils.encryptWithCache("token"));
+        assertEquals("token", cryptoUtils.decryptWithCache(encrypted).getDecryptedData());
+        assertEquals("token", cryptoUtils.decryptWithCache(encrypted).getDecryptedData());
+
+        /* Cipher was used only once for each operation. */
+        verify(mCipher).doFinal(any(byte[].class));
+        verify(mCipher).doFinal(any(byte[].class), anyInt(), anyInt());
+    }
+
+    @Test
+    public void cacheDoesNotKeepFailures() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        when(mCryptoFactory.getCipher(anyString(), anyString())).thenThrow(new NoSuchAlgorithmException()).thenReturn(mCipher);
+        assertEquals("token", cryptoUtils.encryptWithCache("token"));
+        assertEquals(CIPHER_AES + "/" + AES_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "IV" + "token", cryptoUtils.encryptWithCache("token"));
+    }
+
+    @Test
+    public void cacheInvalidatedWhenAliasChanges() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.KITKAT);
+        cryptoUtils.encryptWithCache("token");
+        cryptoUtils.encryptWithCache("token");
+        verify(mCipher, times(1)).doFinal(any(byte[].class));
+
+        /* Expire certificate: a new alias is created. */
+        doThrow(new CertificateExpiredException()).doNothing().when(mRsaCert).checkValidity();
+        cryptoUtils.encrypt("other");
+        verify(mCipher, times(2)).doFinal(any(byte[].class));
+
+        /* Cached value was cleared. */
+        cryptoUtils.encryptWithCache("token");
+        verify(mCipher, times(3)).doFinal(any(byte[].class));
+    }
+
+    @Test
+    public void cipherAndKeyStoreEntryReused() throws Exception {
+        final CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.M);
+        String encrypted = cryptoUtils.encrypt("anything");
+        cryptoUtils.encrypt("anything");
+        cryptoUtils.decrypt(encrypted, false);
+
+        /* Same cipher and key store entry used for all operations on this thread. */
+        verify(mCryptoFactory).getCipher(anyString(), anyString());
+        verify(mKeyStore).getEntry(anyString(), any(KeyStore.ProtectionParameter.class));
+
+        /* Another thread gets its own cipher but shares key store entries. */
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                cryptoUtils.encrypt("anything");
+            }
+        };
+        thread.start();
+        thread.join();
+        verify(mCryptoFactory, times(2)).getCipher(anyString(), anyString());
+        verify(mKeyStore).getEntry(anyString(), any(KeyStore.ProtectionParameter.class));
+    }
+
+    @Test
+    public void cipherNotReusedAfterFailure() throws Exception {
+        CryptoUtils cryptoUtils = new CryptoUtils(mContext, mCryptoFactory, Build.VERSION_CODES.KITKAT);
+        when(mCipher.doFinal(any(byte[].class))).thenThrow(new BadPaddingException()).thenReturn("anything".getBytes());
+        assertEquals("anything", cryptoUtils.encrypt("anything"));
+        assertEquals(CIPHER_RSA + "/" + RSA_KEY_SIZE + ALGORITHM_DATA_SEPARATOR + "anything", cryptoUtils.encrypt("anything"));
+        verify(mCryptoFactory, times(2)).getCipher(anyString(), anyString());
+    }
+
     @Test
     public void registerHandlerWithOldMCKeyStore() throws Exception {
 